@@ -1,29 +1,44 @@
 package checkers.inference;
 
 import checkers.inference.model.VariableSlot;
+import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.UserError;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import checkers.inference.model.BinaryConstraint;
+import checkers.inference.model.ComparableConstraint;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.EqualityConstraint;
 import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.InequalityConstraint;
 import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
 
 /**
- * This class currently just removes ExistentialVariables from the set of constraints
- * and replaces them with ExistentialConstraints.  In the future, we may want to make
- * this an interface or make it customizable
+ * This class removes ExistentialVariables from the set of constraints and replaces them with
+ * ExistentialConstraints, or, if existential selectors are used, keeps them as variables that are
+ * selected by ExistentialConstraints. Afterwards, it runs the configured {@link Simplification}s on the
+ * constraints, see {@link #createSimplifications}. The changes made by the simplifications are
+ * recorded in a {@link SolutionReconstruction}, which maps the result of solving the simplified
+ * constraints back to the original ones.
  */
 public class ConstraintNormalizer {
 
@@ -33,32 +48,111 @@ public class ConstraintNormalizer {
         boolean accept(Constraint constraint);
     }
 
+    /**
+     * A simplification of the normalized constraints. A simplification may only replace the
+     * constraints by equivalent ones. Slots and constraints it removes have to be recorded in the
+     * given {@link SolutionReconstruction}.
+     */
+    public interface Simplification {
+        void simplify(Set<Constraint> constraints, SolutionReconstruction reconstruction);
+    }
+
+    private final boolean useExistentialSelectors;
+
+    private final List<Simplification> simplifications;
+
+    private final SolutionReconstruction reconstruction = new SolutionReconstruction();
+
     public ConstraintNormalizer() {
+        this(Collections.emptyList());
+    }
+
+    public ConstraintNormalizer(List<Simplification> simplifications) {
+        this(false, simplifications);
+    }
 
+    /**
+     * @param useExistentialSelectors whether existential variables are normalized by
+     *            {@link ExistentialSelectorNormalizer} instead of
+     *            {@link ExistentialVariableNormalizer}
+     */
+    public ConstraintNormalizer(boolean useExistentialSelectors,
+            List<Simplification> simplifications) {
+        this.useExistentialSelectors = useExistentialSelectors;
+        this.simplifications = simplifications;
+    }
+
+    /**
+     * Creates the simplifications with the given names, in the given order.
+     *
+     * @param names comma-separated names of simplifications: "equalities" merges slots that are
+     *            equal, "trivial" removes constraints that hold for all qualifiers and
+     *            "duplicates" removes constraints implied by another constraint on the same slots;
+     *            null for no simplifications
+     */
+    public static List<Simplification> createSimplifications(String names,
+            QualifierHierarchy qualifierHierarchy) {
+        List<Simplification> simplifications = new ArrayList<>();
+        if (names == null) {
+            return simplifications;
+        }
+        for (String name : names.split(",")) {
+            switch (name.trim()) {
+                case "equalities":
+                    simplifications.add(new EqualityMerging());
+                    break;
+                case "trivial":
+                    simplifications.add(new TrivialConstraintRemoval(qualifierHierarchy));
+                    break;
+                case "duplicates":
+                    simplifications.add(new DuplicateRemoval());
+                    break;
+                default:
+                    throw new UserError("Unknown constraint simplification: " + name
+                            + ", valid simplifications: equalities, trivial, duplicates");
+            }
+        }
+        return simplifications;
+    }
+
+    public SolutionReconstruction getSolutionReconstruction() {
+        return reconstruction;
     }
 
     public Set<Constraint> normalize(Set<Constraint> constraints) {
         Set<Constraint> filteredConstraints = new LinkedHashSet<>(constraints);
         logger.info("-- Normalization : NULL SLOT --");
-        filteredConstraints = filter(filteredConstraints, new NullSlotNormalizer());
+        filter(filteredConstraints, new NullSlotNormalizer());
 
         logger.info("-- Normalization : EXISTENTIAl CONSTRAINT --");
-        ExistentialVariableNormalizer existentialNormalizer = new ExistentialVariableNormalizer();
-        filteredConstraints = filter(filteredConstraints, existentialNormalizer);
-        filteredConstraints.addAll(existentialNormalizer.getConstraints());
+        if (useExistentialSelectors) {
+            ExistentialSelectorNormalizer existentialNormalizer = new ExistentialSelectorNormalizer();
+            filter(filteredConstraints, existentialNormalizer);
+            filteredConstraints.addAll(existentialNormalizer.getConstraints());
+        } else {
+            ExistentialVariableNormalizer existentialNormalizer = new ExistentialVariableNormalizer();
+            filter(filteredConstraints, existentialNormalizer);
+            filteredConstraints.addAll(existentialNormalizer.getConstraints());
+        }
+
+        for (Simplification simplification : simplifications) {
+            int size = filteredConstraints.size();
+            simplification.simplify(filteredConstraints, reconstruction);
+            logger.info("-- Simplification : " + simplification.getClass().getSimpleName() + " -- "
+                    + size + " -> " + filteredConstraints.size() + " constraints");
+        }
+        if (!simplifications.isEmpty()) {
+            logger.info("Merged " + reconstruction.getNumberOfMergedSlots() + " slots.");
+        }
 
         return filteredConstraints;
     }
 
-    private static Set<Constraint> filter(Set<Constraint> constraints, Normalizer normalizer) {
-        final Set<Constraint> normalizedConstraints = new HashSet<>(constraints.size());
-        for (final Constraint constraint : constraints) {
-            if (!normalizer.accept(constraint)) {
-                normalizedConstraints.add(constraint);
-            }
-        }
-
-        return normalizedConstraints;
+    /**
+     * Removes the constraints accepted by the normalizer, in place.
+     */
+    private static void filter(Set<Constraint> constraints, Normalizer normalizer) {
+        constraints.removeIf(normalizer::accept);
     }
 
     private static class ExistentialVariableNormalizer implements Normalizer {
@@ -171,6 +265,58 @@ public class ConstraintNormalizer {
 
     }
 
+    /**
+     * Keeps existential variables in the constraints and treats every ExistentialVariableSlot as a
+     * selector variable that equals the slot it resolves to. For {@code (@e (@p | @a))} it emits:
+     *
+     * {@code
+     * if (@p exists) {
+     *     @e == @p
+     * } else {
+     *     @e == @a
+     * }
+     * }
+     *
+     * If {@code @a} is an existential variable itself, it is a selector too, so every level of a
+     * chain of existential variables gets one ExistentialConstraint with one equality per branch.
+     * The size of the result is linear in the number of existential variables, while
+     * {@link ExistentialVariableNormalizer} expands every constraint over the cartesian product of
+     * the chains on both sides.
+     */
+    private static class ExistentialSelectorNormalizer implements Normalizer {
+
+        private final Set<ExistentialVariableSlot> selectors = new LinkedHashSet<>();
+
+        public Set<Constraint> getConstraints() {
+            final ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
+            final Set<Constraint> constraints = new LinkedHashSet<>();
+            for (final ExistentialVariableSlot selector : selectors) {
+                final Slot potential = selector.getPotentialSlot();
+                final Slot alternative = selector.getAlternativeSlot();
+                constraints.add(constraintManager.createExistentialConstraint(potential,
+                        Collections.singletonList(constraintManager.createEqualityConstraint(selector, potential)),
+                        Collections.singletonList(constraintManager.createEqualityConstraint(selector, alternative))));
+            }
+            return constraints;
+        }
+
+        /**
+         * Collects the existential variables of the constraint. The constraint itself is kept, so
+         * this always returns false.
+         */
+        @Override
+        public boolean accept(final Constraint constraint) {
+            for (final Slot slot : constraint.getSlots()) {
+                Slot current = slot;
+                while (current instanceof ExistentialVariableSlot
+                        && selectors.add((ExistentialVariableSlot) current)) {
+                    current = ((ExistentialVariableSlot) current).getAlternativeSlot();
+                }
+            }
+            return false;
+        }
+    }
+
     private static class ExistentialTree {
         private TreeMap<Slot, ExistentialNode> nodes = new TreeMap<>(SLOT_COMPARATOR);
 
@@ -354,4 +500,304 @@ public class ConstraintNormalizer {
             return false;
         }
     }
+
+    /**
+     * Merges the slots of every equality class into a representative slot, by substituting the
+     * representative for the other slots of the class in all binary constraints. The equality
+     * classes are computed with union-find over the equality constraints and the pairs of subtype
+     * constraints in both directions, so chains and cycles of equalities collapse to one slot.
+     *
+     * Only variable slots that occur in binary constraints only are substituted. The other slots of
+     * a class, e.g. constants or slots of combine constraints, keep their constraints and are
+     * constrained to be equal to the representative instead. Classes with more than one constant
+     * are left alone, so that the conflict is reported on the original constraints.
+     */
+    public static class EqualityMerging implements Simplification {
+
+        private final Map<Slot, Slot> parents = new HashMap<>();
+
+        @Override
+        public void simplify(Set<Constraint> constraints, SolutionReconstruction reconstruction) {
+            parents.clear();
+            Set<Slot> pinnedSlots = new HashSet<>();
+            for (Constraint constraint : constraints) {
+                if (constraint instanceof EqualityConstraint) {
+                    BinaryConstraint equality = (BinaryConstraint) constraint;
+                    union(equality.getFirst(), equality.getSecond());
+                } else if (constraint instanceof SubtypeConstraint) {
+                    BinaryConstraint subtype = (BinaryConstraint) constraint;
+                    if (constraints.contains(subtype.make(subtype.getSecond(), subtype.getFirst()))) {
+                        union(subtype.getFirst(), subtype.getSecond());
+                    }
+                } else if (!(constraint instanceof BinaryConstraint)) {
+                    pinnedSlots.addAll(constraint.getSlots());
+                }
+            }
+            if (parents.isEmpty()) {
+                return;
+            }
+
+            Map<Slot, List<Slot>> classes = new LinkedHashMap<>();
+            for (Slot slot : parents.keySet()) {
+                classes.computeIfAbsent(find(slot), root -> new ArrayList<>()).add(slot);
+            }
+
+            // The representative of every merged class, by root, and the slots of the class that
+            // are not substituted, by representative.
+            final Map<Slot, VariableSlot> representatives = new HashMap<>();
+            final Map<VariableSlot, List<Slot>> keptSlots = new HashMap<>();
+            final Map<Slot, Slot> substitution = new HashMap<>();
+            for (Map.Entry<Slot, List<Slot>> entry : classes.entrySet()) {
+                List<Slot> members = entry.getValue();
+                Collections.sort(members);
+
+                List<Slot> free = new ArrayList<>();
+                List<Slot> kept = new ArrayList<>();
+                int constants = 0;
+                for (Slot member : members) {
+                    if (member instanceof ConstantSlot) {
+                        constants++;
+                        kept.add(member);
+                    } else if (isSubstitutable(member) && !pinnedSlots.contains(member)) {
+                        free.add(member);
+                    } else {
+                        kept.add(member);
+                    }
+                }
+                if (free.isEmpty() || constants > 1) {
+                    continue;
+                }
+
+                VariableSlot representative = null;
+                for (Slot member : kept) {
+                    if (isSubstitutable(member)) {
+                        representative = (VariableSlot) member;
+                        break;
+                    }
+                }
+                if (representative == null) {
+                    representative = (VariableSlot) free.get(0);
+                }
+                for (Slot member : free) {
+                    if (member != representative) {
+                        substitution.put(member, representative);
+                        reconstruction.recordMerge(member, representative);
+                    }
+                }
+                kept.remove(representative);
+                representatives.put(entry.getKey(), representative);
+                keptSlots.put(representative, kept);
+            }
+            if (representatives.isEmpty()) {
+                return;
+            }
+
+            final List<Constraint> rewrittenConstraints = new ArrayList<>();
+            final Map<VariableSlot, BinaryConstraint> templates = new HashMap<>();
+            for (Iterator<Constraint> iterator = constraints.iterator(); iterator.hasNext(); ) {
+                Constraint constraint = iterator.next();
+                if (!(constraint instanceof BinaryConstraint)) {
+                    continue;
+                }
+                BinaryConstraint binary = (BinaryConstraint) constraint;
+                VariableSlot representative = getRepresentative(binary.getFirst(), representatives);
+
+                if (representative != null
+                        && representative == getRepresentative(binary.getSecond(), representatives)
+                        && !(constraint instanceof InequalityConstraint)) {
+                    // Holds once the slots of the class are equal.
+                    iterator.remove();
+                    reconstruction.recordMergingConstraint(representative, constraint);
+                    if (!(templates.get(representative) instanceof EqualityConstraint)
+                            && !(constraint instanceof ComparableConstraint)) {
+                        templates.put(representative, binary);
+                    }
+                    continue;
+                }
+
+                Slot first = substitution.getOrDefault(binary.getFirst(), binary.getFirst());
+                Slot second = substitution.getOrDefault(binary.getSecond(), binary.getSecond());
+                if (first != binary.getFirst() || second != binary.getSecond()) {
+                    iterator.remove();
+                    Constraint rewritten = intern(binary.make(first, second));
+                    recordRewrite(constraints, rewritten, constraint, reconstruction);
+                    rewrittenConstraints.add(rewritten);
+                }
+            }
+
+            for (Map.Entry<VariableSlot, List<Slot>> entry : keptSlots.entrySet()) {
+                VariableSlot representative = entry.getKey();
+                BinaryConstraint template = templates.get(representative);
+                if (template == null && !entry.getValue().isEmpty()) {
+                    throw new BugInCF("No constraint of the equality class of " + representative
+                            + " to link its slots " + entry.getValue());
+                }
+                for (Slot kept : entry.getValue()) {
+                    List<Constraint> links = template instanceof EqualityConstraint
+                            ? Collections.singletonList(intern(template.make(representative, kept)))
+                            : Arrays.asList(intern(template.make(representative, kept)),
+                                    intern(template.make(kept, representative)));
+                    for (Constraint link : links) {
+                        recordRewrite(constraints, link, (Constraint) template, reconstruction);
+                        rewrittenConstraints.add(link);
+                    }
+                }
+            }
+            constraints.addAll(rewrittenConstraints);
+        }
+
+        /**
+         * Records that {@code rewritten} replaces {@code original}, unless {@code rewritten} is
+         * also one of the constraints being simplified: that constraint is its own origin, so an
+         * explanation containing it must not point at {@code original} instead.
+         */
+        private static void recordRewrite(Set<Constraint> constraints, Constraint rewritten,
+                Constraint original, SolutionReconstruction reconstruction) {
+            // The rewritten constraints are only added to the set after all rewrites are recorded.
+            if (!constraints.contains(rewritten)) {
+                reconstruction.recordRewrite(rewritten, original);
+            }
+        }
+
+        /**
+         * Shares the constraints created by this simplification with equal constraints created
+         * during constraint generation.
+         */
+        private static Constraint intern(Constraint constraint) {
+            return InferenceMain.getInstance().getConstraintManager().intern(constraint);
+        }
+
+        private static boolean isSubstitutable(Slot slot) {
+            return slot instanceof VariableSlot && !(slot instanceof ExistentialVariableSlot);
+        }
+
+        private VariableSlot getRepresentative(Slot slot, Map<Slot, VariableSlot> representatives) {
+            return parents.containsKey(slot) ? representatives.get(find(slot)) : null;
+        }
+
+        private Slot find(Slot slot) {
+            Slot root = slot;
+            Slot parent;
+            while ((parent = parents.get(root)) != root) {
+                root = parent;
+            }
+            // Path compression.
+            while (slot != root) {
+                Slot next = parents.get(slot);
+                parents.put(slot, root);
+                slot = next;
+            }
+            return root;
+        }
+
+        private void union(Slot first, Slot second) {
+            parents.putIfAbsent(first, first);
+            parents.putIfAbsent(second, second);
+            Slot firstRoot = find(first);
+            Slot secondRoot = find(second);
+            if (firstRoot != secondRoot) {
+                parents.put(secondRoot, firstRoot);
+            }
+        }
+    }
+
+    /**
+     * Removes constraints that hold for every assignment of qualifiers: {@code x <: top},
+     * {@code bottom <: x}, comparisons of a slot with itself, comparability with top or bottom
+     * and constraints between constants that hold. Such constraints are usually created by
+     * substituting slots, since the {@link checkers.inference.model.ConstraintManager} already
+     * normalizes them away when constraints are created.
+     */
+    public static class TrivialConstraintRemoval implements Simplification {
+
+        private final QualifierHierarchy qualifierHierarchy;
+
+        public TrivialConstraintRemoval(QualifierHierarchy qualifierHierarchy) {
+            this.qualifierHierarchy = qualifierHierarchy;
+        }
+
+        @Override
+        public void simplify(Set<Constraint> constraints, SolutionReconstruction reconstruction) {
+            constraints.removeIf(this::isTrivial);
+        }
+
+        private boolean isTrivial(Constraint constraint) {
+            if (!(constraint instanceof BinaryConstraint)
+                    || constraint instanceof InequalityConstraint) {
+                return false;
+            }
+            Slot first = ((BinaryConstraint) constraint).getFirst();
+            Slot second = ((BinaryConstraint) constraint).getSecond();
+            if (first.equals(second)) {
+                return true;
+            }
+
+            if (constraint instanceof SubtypeConstraint) {
+                return isTop(second) || isBottom(first) || isSubtype(first, second);
+            } else if (constraint instanceof ComparableConstraint) {
+                return isTop(first) || isBottom(first) || isTop(second) || isBottom(second)
+                        || isSubtype(first, second) || isSubtype(second, first);
+            }
+            return false;
+        }
+
+        private boolean isTop(Slot slot) {
+            return slot instanceof ConstantSlot
+                    && qualifierHierarchy.getTopAnnotations().contains(((ConstantSlot) slot).getValue());
+        }
+
+        private boolean isBottom(Slot slot) {
+            return slot instanceof ConstantSlot
+                    && qualifierHierarchy.getBottomAnnotations().contains(((ConstantSlot) slot).getValue());
+        }
+
+        private boolean isSubtype(Slot first, Slot second) {
+            return first instanceof ConstantSlot && second instanceof ConstantSlot
+                    && qualifierHierarchy.isSubtype(((ConstantSlot) first).getValue(),
+                            ((ConstantSlot) second).getValue());
+        }
+    }
+
+    /**
+     * Removes constraints that are implied by a stronger constraint on the same slots:
+     * {@code x <: y} if {@code x == y} exists, and {@code x} comparable to {@code y} if
+     * {@code x == y}, {@code x <: y} or {@code y <: x} exists. Constraints that are exactly equal
+     * are already collapsed by the constraint set.
+     */
+    public static class DuplicateRemoval implements Simplification {
+
+        @Override
+        public void simplify(Set<Constraint> constraints, SolutionReconstruction reconstruction) {
+            final Set<List<Slot>> equalPairs = new HashSet<>();
+            final Set<List<Slot>> subtypePairs = new HashSet<>();
+            for (Constraint constraint : constraints) {
+                if (constraint instanceof EqualityConstraint) {
+                    BinaryConstraint equality = (BinaryConstraint) constraint;
+                    equalPairs.add(Arrays.asList(equality.getFirst(), equality.getSecond()));
+                    equalPairs.add(Arrays.asList(equality.getSecond(), equality.getFirst()));
+                } else if (constraint instanceof SubtypeConstraint) {
+                    BinaryConstraint subtype = (BinaryConstraint) constraint;
+                    subtypePairs.add(Arrays.asList(subtype.getFirst(), subtype.getSecond()));
+                }
+            }
+            if (equalPairs.isEmpty() && subtypePairs.isEmpty()) {
+                return;
+            }
+
+            constraints.removeIf(constraint -> {
+                if (!(constraint instanceof SubtypeConstraint)
+                        && !(constraint instanceof ComparableConstraint)) {
+                    return false;
+                }
+                BinaryConstraint binary = (BinaryConstraint) constraint;
+                List<Slot> pair = Arrays.asList(binary.getFirst(), binary.getSecond());
+                if (equalPairs.contains(pair)) {
+                    return true;
+                }
+                return constraint instanceof ComparableConstraint
+                        && (subtypePairs.contains(pair)
+                                || subtypePairs.contains(Arrays.asList(binary.getSecond(), binary.getFirst())));
+            });
+        }
+    }
 }
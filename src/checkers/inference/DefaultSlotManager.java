@@ -6,13 +6,13 @@ import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.BugInCF;
 
 import java.lang.annotation.Annotation;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
@@ -30,6 +30,7 @@ import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.ExistentialVariableSlot;
 import checkers.inference.model.RefinementVariableSlot;
 import checkers.inference.model.Slot;
+import checkers.inference.model.SlotStore;
 import checkers.inference.model.SourceVariableSlot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.qual.VarAnnot;
@@ -49,13 +50,11 @@ public class DefaultSlotManager implements SlotManager {
     private int nextId = 1;
 
     /**
-     * A map for storing all the slots encountered by this slot manager. Key is
-     * an {@link Integer}, representing a slot id. Value is a
-     * {@link Slot} that corresponds to this slot id. Note that
-     * ConstantSlots are also stored in this map, since ConstantSlot is subclass
-     * of Slot.
+     * Storage for all the slots encountered by this slot manager, indexed by
+     * slot id. Note that ConstantSlots are also stored here, since ConstantSlot
+     * is subclass of Slot.
      */
-    private final Map<Integer, Slot> slots;
+    private final SlotStore slots;
 
     /**
      * A map of {@link AnnotationMirror} to {@link Integer} for caching
@@ -106,7 +105,7 @@ public class DefaultSlotManager implements SlotManager {
         this.processingEnvironment = processingEnvironment;
         // sort the qualifiers so that they are always assigned the same varId
         this.realQualifiers = sortAnnotationClasses(realQualifiers);
-        slots = new LinkedHashMap<>();
+        slots = new SlotStore();
 
         AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, VarAnnot.class);
         builder.setValue("value", -1 );
@@ -159,7 +158,7 @@ public class DefaultSlotManager implements SlotManager {
     }
 
     private void addToSlots(final Slot slot) {
-        slots.put(slot.getId(), slot);
+        slots.add(slot);
     }
 
     /**
@@ -258,22 +257,15 @@ public class DefaultSlotManager implements SlotManager {
      */
     @Override
     public List<Slot> getSlots() {
-        return new ArrayList<Slot>(this.slots.values());
+        return slots.getSlots();
     }
 
-    // Sometimes, I miss scala.
     /**
      * @inheritDoc
      */
     @Override
     public List<VariableSlot> getVariableSlots() {
-        List<VariableSlot> varSlots = new ArrayList<>();
-        for (Slot slot : slots.values()) {
-            if (slot instanceof VariableSlot) {
-                varSlots.add((VariableSlot) slot);
-            }
-        }
-        return varSlots;
+        return slots.getVariableSlots();
     }
 
     /**
@@ -281,13 +273,23 @@ public class DefaultSlotManager implements SlotManager {
      */
     @Override
     public List<ConstantSlot> getConstantSlots() {
-        List<ConstantSlot> constants = new ArrayList<>();
-        for (Slot slot : slots.values()) {
-            if (slot instanceof ConstantSlot) {
-                constants.add((ConstantSlot) slot);
-            }
-        }
-        return constants;
+        return slots.getConstantSlots();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public IntStream getVariableSlotIds() {
+        return slots.variableIds();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public IntStream getConstantSlotIds() {
+        return slots.constantIds();
     }
 
     @Override
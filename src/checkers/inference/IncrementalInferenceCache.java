@@ -0,0 +1,474 @@
+package checkers.inference;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.serialization.LocationKeySerializer;
+
+/**
+ * An on-disk cache that lets {@link InferenceMain} avoid repeating work done by a previous run on
+ * (mostly) the same sources.
+ *
+ * The cache is keyed by a fingerprint of the checker, solver and options of the run and of the
+ * contents of the classpath, plus a SHA-256 hash of every compilation unit. It is used at two granularities:
+ *
+ * 1. If the fingerprint and all compilation unit hashes match the previous run, the JAIF of that
+ * run is reused and neither javac nor the solver is run.
+ *
+ * 2. Otherwise constraints are generated for the whole program as usual (slot ids are assigned
+ * globally, so compilation units cannot be skipped individually), and the constraints are
+ * partitioned into independent components over their variable slots. A component whose
+ * constraints, expressed in terms of slot locations rather than slot ids (see
+ * {@link LocationKeySerializer}), are identical to a component of the previous run gets that
+ * run's solution; only the remaining components are passed to the solver. Typically only the
+ * components touching the changed compilation units need solving.
+ */
+public class IncrementalInferenceCache {
+
+    private static final String STATE_FILE = "inference-cache.ser";
+    private static final String JAIF_FILE = "inference-cache.jaif";
+
+    private final Logger logger = Logger.getLogger(IncrementalInferenceCache.class.getName());
+
+    private final File cacheDir;
+
+    /** State of the previous run, or an empty state if there is none. */
+    private final CacheState previous;
+
+    /** State of the current run. */
+    private final CacheState current;
+
+    /**
+     * @param cacheDir the directory holding the cache, created if it does not exist
+     * @param javaFiles the compilation units of the current run
+     * @throws IOException if a compilation unit or classpath entry cannot be read
+     */
+    public IncrementalInferenceCache(File cacheDir, String[] javaFiles) throws IOException {
+        this.cacheDir = cacheDir;
+        InferenceLauncher.ensureDirectoryExists(cacheDir);
+
+        this.previous = readState(new File(cacheDir, STATE_FILE));
+        this.current = new CacheState();
+        current.fingerprint = computeFingerprint();
+        for (String javaFile : javaFiles) {
+            File file = new File(javaFile);
+            current.unitHashes.put(file.getAbsolutePath(), hashFile(file));
+        }
+    }
+
+    /**
+     * @return a hash of everything besides the sources that influences the result of inference
+     */
+    private static String computeFingerprint() throws IOException {
+        List<String> parts = Arrays.asList(
+                InferenceOptions.VERSION,
+                InferenceOptions.checker,
+                InferenceOptions.solver,
+                InferenceOptions.solverArgs,
+                InferenceOptions.cfArgs,
+                InferenceOptions.targetclasspath,
+                String.valueOf(InferenceOptions.hacks),
+                // The normalization of the constraints.
+                String.valueOf(InferenceOptions.existentialSelectors),
+                InferenceOptions.simplifyConstraints,
+                String.valueOf(InferenceOptions.javacOptions),
+                hashClasspath(getClasspathEntries()));
+        return LocationKeySerializer.digest(String.join("\n", parts));
+    }
+
+    /**
+     * @return the classpath of the target program and of the checker
+     */
+    private static Set<String> getClasspathEntries() {
+        List<String> classpaths = new ArrayList<>();
+        classpaths.add(InferenceOptions.targetclasspath);
+        if (InferenceOptions.javacOptions != null) {
+            for (int i = 0; i < InferenceOptions.javacOptions.size() - 1; i++) {
+                String option = InferenceOptions.javacOptions.get(i);
+                if (option.equals("-cp") || option.equals("-classpath") || option.equals("--class-path")) {
+                    classpaths.add(InferenceOptions.javacOptions.get(i + 1));
+                }
+            }
+        }
+        classpaths.add(System.getProperty("java.class.path"));
+
+        Set<String> entries = new LinkedHashSet<>();
+        for (String classpath : classpaths) {
+            if (classpath == null) {
+                continue;
+            }
+            for (String entry : classpath.split(File.pathSeparator)) {
+                if (!entry.isEmpty()) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Hashes the contents of the given classpath entries: the content of jars and other files, and
+     * the names and contents of the class files and jars in directories. Entries that do not exist
+     * are hashed as missing, so that creating them later invalidates the cache.
+     */
+    static String hashClasspath(Collection<String> entries) throws IOException {
+        MessageDigest md = newDigest();
+        for (String entry : entries) {
+            Path path = new File(entry).getAbsoluteFile().toPath();
+            update(md, path.toString());
+            if (Files.isRegularFile(path)) {
+                update(md, hashFile(path.toFile()));
+            } else if (Files.isDirectory(path)) {
+                List<Path> files = new ArrayList<>();
+                try (Stream<Path> walk = Files.walk(path)) {
+                    walk.filter(file -> Files.isRegularFile(file)
+                                    && (file.toString().endsWith(".class") || file.toString().endsWith(".jar")))
+                            .forEach(files::add);
+                }
+                Collections.sort(files);
+                for (Path file : files) {
+                    update(md, path.relativize(file).toString());
+                    update(md, hashFile(file.toFile()));
+                }
+            } else {
+                update(md, "missing");
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * @return the hex encoded SHA-256 digest of the file's content
+     * @throws IOException if the file cannot be read
+     */
+    private static String hashFile(File file) throws IOException {
+        return toHex(newDigest().digest(Files.readAllBytes(file.toPath())));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BugInCF("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest md, String value) {
+        md.update(value.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private boolean isFingerprintUnchanged() {
+        return current.fingerprint.equals(previous.fingerprint);
+    }
+
+    /**
+     * @return true if neither the options nor any compilation unit changed since the previous
+     * run and that run's JAIF is still in the cache
+     */
+    public boolean isUpToDate() {
+        return isFingerprintUnchanged()
+                && current.unitHashes.equals(previous.unitHashes)
+                && new File(cacheDir, JAIF_FILE).exists();
+    }
+
+    /**
+     * @return the compilation units that are new or changed since the previous run
+     */
+    public Set<String> getChangedUnits() {
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : current.unitHashes.entrySet()) {
+            if (!isFingerprintUnchanged() || !entry.getValue().equals(previous.unitHashes.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Copies the JAIF of the previous run to the given file.
+     */
+    public void restoreJaif(File jaifFile) throws IOException {
+        Files.copy(new File(cacheDir, JAIF_FILE).toPath(), jaifFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Looks up the solutions of the components of the given constraints in the cache.
+     *
+     * @param constraints all constraints of the program
+     * @param slotManager the slot manager of the current run
+     * @param reusedSolutions filled with the cached solutions of all components found in the cache
+     * @return the constraints of the components that were not found in the cache and have to be solved
+     */
+    public Collection<Constraint> reuseSolutions(Collection<Constraint> constraints, SlotManager slotManager,
+                                                 Map<Integer, AnnotationMirror> reusedSolutions) {
+        List<Component> components = partition(constraints);
+        current.components = components;
+
+        if (!isFingerprintUnchanged()) {
+            return constraints;
+        }
+
+        Map<String, AnnotationMirror> annotationsByName = new HashMap<>();
+        for (ConstantSlot constant : slotManager.getConstantSlots()) {
+            annotationsByName.put(constant.getValue().toString(), constant.getValue());
+        }
+
+        List<Constraint> toSolve = new ArrayList<>();
+        int reused = 0;
+        for (Component component : components) {
+            Map<Integer, AnnotationMirror> solution = component.key == null ? null
+                    : lookup(component, previous.componentSolutions.get(component.key), slotManager, annotationsByName);
+            if (solution != null) {
+                reusedSolutions.putAll(solution);
+                reused++;
+            } else {
+                toSolve.addAll(component.constraints);
+            }
+        }
+
+        logger.info(String.format("Reusing cached solutions for %d of %d constraint components (%d changed compilation units)",
+                reused, components.size(), getChangedUnits().size()));
+        return toSolve;
+    }
+
+    /**
+     * Maps a cached component solution, keyed by slot keys, to the slot ids of the current run.
+     *
+     * @return the solution, or null if there is no cached solution or it cannot be mapped
+     */
+    private Map<Integer, AnnotationMirror> lookup(Component component, Map<String, String> cached,
+                                                  SlotManager slotManager, Map<String, AnnotationMirror> annotationsByName) {
+        if (cached == null) {
+            return null;
+        }
+        Map<Integer, AnnotationMirror> solution = new HashMap<>();
+        for (int slotId : component.variableIds) {
+            String slotKey = component.slotKeys.get(slotId);
+            String annotation = cached.get(slotKey);
+            if (annotation == null) {
+                // The slot had no solution in the previous run either.
+                continue;
+            }
+            AnnotationMirror value = annotationsByName.get(annotation);
+            if (value == null) {
+                return null;
+            }
+            solution.put(slotId, value);
+        }
+        return solution;
+    }
+
+    /**
+     * Records the solution of the current run and writes the cache to disk, together with the JAIF
+     * created from the solution.
+     */
+    public void store(InferenceResult result, File jaifFile) {
+        if (current.components == null || result == null || !result.hasSolution()) {
+            return;
+        }
+
+        Map<Integer, AnnotationMirror> solutions = result.getSolutions();
+        for (Component component : current.components) {
+            if (component.key == null) {
+                continue;
+            }
+            HashMap<String, String> componentSolution = new HashMap<>();
+            for (int slotId : component.variableIds) {
+                AnnotationMirror value = solutions.get(slotId);
+                if (value != null) {
+                    componentSolution.put(component.slotKeys.get(slotId), value.toString());
+                }
+            }
+            current.componentSolutions.put(component.key, componentSolution);
+        }
+
+        try {
+            Files.copy(jaifFile.toPath(), new File(cacheDir, JAIF_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new FileOutputStream(new File(cacheDir, STATE_FILE)))) {
+                out.writeObject(current);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write the incremental inference cache to " + cacheDir, e);
+        }
+    }
+
+    private CacheState readState(File stateFile) {
+        if (stateFile.exists()) {
+            try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(stateFile))) {
+                return (CacheState) in.readObject();
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                logger.log(Level.WARNING, "Ignoring unreadable incremental inference cache " + stateFile, e);
+            }
+        }
+        return new CacheState();
+    }
+
+    /**
+     * Partitions the constraints into components connected by shared variable slots. Unlike
+     * {@link checkers.inference.solver.constraintgraph.ConstraintGraph}, components are not
+     * connected through constants, so that a change does not invalidate every component that
+     * happens to mention the same qualifier.
+     */
+    private List<Component> partition(Collection<Constraint> constraints) {
+        Map<Integer, Integer> parent = new HashMap<>();
+        for (Constraint constraint : constraints) {
+            int first = -1;
+            for (Slot slot : constraint.getSlots()) {
+                if (slot instanceof ConstantSlot) {
+                    continue;
+                }
+                int id = slot.getId();
+                if (!parent.containsKey(id)) {
+                    parent.put(id, id);
+                }
+                if (first == -1) {
+                    first = id;
+                } else {
+                    union(parent, first, id);
+                }
+            }
+        }
+
+        // Components are keyed by root slot id. Constraints without variable slots form a
+        // component of their own.
+        Map<Integer, Component> byRoot = new LinkedHashMap<>();
+        List<Component> components = new ArrayList<>();
+        for (Constraint constraint : constraints) {
+            Component component = null;
+            for (Slot slot : constraint.getSlots()) {
+                if (!(slot instanceof ConstantSlot)) {
+                    int root = find(parent, slot.getId());
+                    component = byRoot.get(root);
+                    if (component == null) {
+                        component = new Component();
+                        byRoot.put(root, component);
+                        components.add(component);
+                    }
+                    break;
+                }
+            }
+            if (component == null) {
+                component = new Component();
+                components.add(component);
+            }
+            component.constraints.add(constraint);
+        }
+
+        Set<Slot> slots = new LinkedHashSet<>();
+        for (Constraint constraint : constraints) {
+            slots.addAll(constraint.getSlots());
+        }
+        LocationKeySerializer keySerializer = new LocationKeySerializer();
+        keySerializer.assignKeys(slots);
+        for (Component component : components) {
+            component.computeKey(keySerializer);
+        }
+        return components;
+    }
+
+    private static int find(Map<Integer, Integer> parent, int id) {
+        int root = id;
+        while (parent.get(root) != root) {
+            root = parent.get(root);
+        }
+        while (id != root) {
+            int next = parent.get(id);
+            parent.put(id, root);
+            id = next;
+        }
+        return root;
+    }
+
+    private static void union(Map<Integer, Integer> parent, int id1, int id2) {
+        int root1 = find(parent, id1);
+        int root2 = find(parent, id2);
+        if (root1 != root2) {
+            parent.put(root2, root1);
+        }
+    }
+
+    /** A set of constraints that can be solved independently of all other constraints. */
+    private static class Component {
+        private final List<Constraint> constraints = new ArrayList<>();
+        private final Set<Integer> variableIds = new LinkedHashSet<>();
+        private final Map<Integer, String> slotKeys = new HashMap<>();
+
+        /** The run-independent key of this component, or null if it has none. */
+        private String key;
+
+        private void computeKey(LocationKeySerializer keySerializer) {
+            List<String> constraintKeys = new ArrayList<>(constraints.size());
+            for (Constraint constraint : constraints) {
+                String constraintKey = keySerializer.getConstraintKey(constraint);
+                if (constraintKey == null) {
+                    key = null;
+                    return;
+                }
+                constraintKeys.add(constraintKey);
+                for (Slot slot : constraint.getSlots()) {
+                    if (!(slot instanceof ConstantSlot) && variableIds.add(slot.getId())) {
+                        slotKeys.put(slot.getId(), keySerializer.getSlotKey(slot));
+                    }
+                }
+            }
+            Collections.sort(constraintKeys);
+            key = LocationKeySerializer.digest(String.join("\n", constraintKeys));
+        }
+    }
+
+    /** Everything that is persisted between runs. */
+    private static class CacheState implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String fingerprint = "";
+        private HashMap<String, String> unitHashes = new HashMap<>();
+
+        /** Solutions by component key. Each solution maps slot keys to annotation strings. */
+        private HashMap<String, HashMap<String, String>> componentSolutions = new HashMap<>();
+
+        /** Components of the current run, not persisted. */
+        private transient List<Component> components;
+    }
+}
@@ -9,17 +9,36 @@ import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import checkers.inference.InferenceOptions.InitStatus;
+import checkers.inference.util.JaifSplitter;
 
 
 /**
@@ -151,16 +170,36 @@ public class InferenceLauncher {
     /**
      * Infers annotations for the set of source files found in InferenceOptions.java
      * This method creates a process that runs InferenceMain on the same options
-     * in InferenceOptions but excluding those that do not apply to the inference step
+     * in InferenceOptions but excluding those that do not apply to the inference step.
+     * If InferenceOptions.inProcess is set, InferenceMain is instead run in this JVM when possible,
+     * see {@link #inferInProcess}.
      */
     public void infer() {
         printStep("Inferring", outStream);
+
+        String bcp = getInferenceRuntimeBootclassPath();
+        if (InferenceOptions.inProcess) {
+            if (bcp != null && !bcp.isEmpty()) {
+                outStream.println("Cannot infer in process with a runtime bootclasspath, running a new JVM instead.");
+            } else if (InferenceOptions.debug != null) {
+                outStream.println("Cannot debug inference in process, running a new JVM instead.");
+            } else {
+                int result = inferInProcess();
+                outStream.flush();
+                errStream.flush();
+
+                reportStatus("Inference", result, outStream);
+                outStream.flush();
+                exitOnNonZeroStatus(result);
+                return;
+            }
+        }
+
         final String java = getJavaCommand(System.getProperty("java.home"), outStream);
         List<String> argList = new LinkedList<>();
         argList.add(java);
         argList.addAll(getMemoryArgs());
 
-        String bcp = getInferenceRuntimeBootclassPath();
         if (bcp != null && !bcp.isEmpty()) {
             argList.add("-Xbootclasspath/p:" + bcp);
         }
@@ -177,17 +216,141 @@ public class InferenceLauncher {
                         "-ea", "-ea:checkers.inference...",
                         // TODO: enable assertions.
                         "-da:org.checkerframework.framework.flow...",
-                        "checkers.inference.InferenceMain",
-                        "--checker", InferenceOptions.checker)
+                        "checkers.inference.InferenceMain")
         );
+        argList.addAll(getInferenceMainArgs(false));
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running infer command:");
+            outStream.println(SystemUtil.join(" ", argList));
+        }
+
+        int result = ExecUtil.execute(argList.toArray(new String[argList.size()]), outStream, System.err);
+        outStream.flush();
+        errStream.flush();
+
+        reportStatus("Inference", result, outStream);
+        outStream.flush();
+        exitOnNonZeroStatus(result);
+    }
+
+    /**
+     * Runs InferenceMain in this JVM, in a classloader that only sees the inference runtime classpath, so
+     * that none of the launcher's classes or static state leak into inference.  Inference then uses the
+     * heap settings of this JVM instead of getMemoryArgs.  As in the forked JVM, assertions are enabled
+     * except in the dataflow framework.
+     *
+     * InferenceMain returns the status of a fatal error instead of exiting this JVM, and the logging
+     * configuration it changes is restored afterwards.
+     * @return 0 if inference succeeded, otherwise the status the forked JVM would have exited with
+     */
+    int inferInProcess() {
+        List<String> args = getInferenceMainArgs(true);
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running inference in process with classpath:");
+            outStream.println(getInferenceRuntimeClassPath());
+            outStream.println("checkers.inference.InferenceMain " + SystemUtil.join(" ", args));
+        }
+
+        List<URL> urls = new ArrayList<>();
+        for (String path : getInferenceRuntimeClassPath().split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                try {
+                    urls.add(new File(path).toURI().toURL());
+                } catch (MalformedURLException e) {
+                    throw new RuntimeException("Invalid classpath entry: " + path, e);
+                }
+            }
+        }
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        final LoggingConfiguration loggingConfiguration = new LoggingConfiguration();
+        try (URLClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[urls.size()]),
+                getPlatformClassLoader())) {
+            classLoader.setDefaultAssertionStatus(true);
+            // TODO: enable assertions.
+            classLoader.setPackageAssertionStatus("org.checkerframework.framework.flow", false);
+
+            thread.setContextClassLoader(classLoader);
+            Method runInProcess = Class.forName("checkers.inference.InferenceMain", true, classLoader)
+                    .getMethod("runInProcess", String[].class);
+            return (Integer) runInProcess.invoke(null, (Object) args.toArray(new String[args.size()]));
+
+        } catch (InvocationTargetException e) {
+            e.getCause().printStackTrace(errStream);
+            return 1;
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new RuntimeException("Could not run InferenceMain in process", e);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+            loggingConfiguration.restore();
+        }
+    }
+
+    /**
+     * The levels and handlers of the root logger, which InferenceMain sets for the whole JVM.
+     */
+    private static class LoggingConfiguration {
+        private final Logger root = Logger.getLogger("");
+        private final Level level = root.getLevel();
+        private final Map<Handler, Level> handlerLevels = new LinkedHashMap<>();
+
+        LoggingConfiguration() {
+            for (Handler handler : root.getHandlers()) {
+                handlerLevels.put(handler, handler.getLevel());
+            }
+        }
+
+        void restore() {
+            for (Handler handler : root.getHandlers()) {
+                if (!handlerLevels.containsKey(handler)) {
+                    handler.flush();
+                    root.removeHandler(handler);
+                }
+            }
+            for (Map.Entry<Handler, Level> entry : handlerLevels.entrySet()) {
+                entry.getKey().setLevel(entry.getValue());
+            }
+            root.setLevel(level);
+        }
+    }
+
+    /**
+     * @return the platform classloader on Java 9 and later, null (i.e. the bootstrap classloader) on Java 8
+     */
+    private static ClassLoader getPlatformClassLoader() {
+        try {
+            return (ClassLoader) ClassLoader.class.getMethod("getPlatformClassLoader").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param inProcess whether InferenceMain runs in this JVM.  The default classpath of javac is then
+     *                  the classpath of this JVM, so the inference runtime classpath is passed explicitly
+     * @return the arguments of InferenceMain
+     */
+    private List<String> getInferenceMainArgs(boolean inProcess) {
+        List<String> argList = new ArrayList<>();
+        argList.add("--checker");
+        argList.add(InferenceOptions.checker);
 
         addIfNotNull("--jaifFile", InferenceOptions.jaifFile, argList);
         addIfNotNull("--logLevel", InferenceOptions.logLevel, argList);
         addIfNotNull("--solver", InferenceOptions.solver, argList);
         addIfNotNull("--solverArgs", InferenceOptions.solverArgs, argList);
         addIfNotNull("--cfArgs", InferenceOptions.cfArgs, argList);
+        addIfNotNull("--incrementalCacheDir", InferenceOptions.incrementalCacheDir, argList);
+        addIfNotNull("--simplifyConstraints", InferenceOptions.simplifyConstraints, argList);
 
         addIfTrue("--hacks", InferenceOptions.hacks, argList);
+        addIfTrue("--existentialSelectors", InferenceOptions.existentialSelectors, argList);
+        addIfTrue("--dropConstraintLocations", InferenceOptions.dropConstraintLocations, argList);
 
         argList.add("--");
 
@@ -196,25 +359,20 @@ public class InferenceLauncher {
             argList.add("-Xbootclasspath/p:" + compilationBcp);
         }
 
+        if (inProcess && !InferenceOptions.javacOptions.contains("-classpath")
+                && !InferenceOptions.javacOptions.contains("-cp")
+                && !InferenceOptions.javacOptions.contains("--class-path")) {
+            argList.add("-classpath");
+            argList.add(getInferenceRuntimeClassPath());
+        }
+
         int preJavacOptsSize = argList.size();
         argList.addAll(InferenceOptions.javacOptions);
         removeXmArgs(argList, preJavacOptsSize, argList.size());
 
         // TODO: NEED TO HANDLE JDK
         argList.addAll(Arrays.asList(InferenceOptions.javaFiles));
-
-        if (InferenceOptions.printCommands) {
-            outStream.println("Running infer command:");
-            outStream.println(SystemUtil.join(" ", argList));
-        }
-
-        int result = ExecUtil.execute(argList.toArray(new String[argList.size()]), outStream, System.err);
-        outStream.flush();
-        errStream.flush();
-
-        reportStatus("Inference", result, outStream);
-        outStream.flush();
-        exitOnNonZeroStatus(result);
+        return argList;
     }
 
     public static String getJavaCommand(final String javaHome, final PrintStream out) {
@@ -263,6 +421,10 @@ public class InferenceLauncher {
         int result;
         String pathToAfuScripts = InferenceOptions.pathToAfuScripts == null ? "":InferenceOptions.pathToAfuScripts+File.separator;
         String insertAnnotationsScript = pathToAfuScripts+"insert-annotations-to-source";
+        if (InferenceOptions.insertionThreads > 0) {
+            return insertJaifByPackage(insertAnnotationsScript);
+        }
+
         if (!InferenceOptions.inPlace) {
             final File outputDir = new File(InferenceOptions.afuOutputDir);
             ensureDirectoryExists(outputDir);
@@ -324,6 +486,320 @@ public class InferenceLauncher {
         return outputJavaFiles;
     }
 
+    /**
+     * Splits the Jaif by package and inserts every package with its own insert-annotations-to-source
+     * process, running InferenceOptions.insertionThreads processes at a time.  The output of each
+     * process is streamed line by line, prefixed with its package.  If the insertion into a package fails,
+     * the failure is reported and the other packages are still inserted.
+     * @return The list of source files that were potentially altered, and the unaltered source files of
+     * packages that were not inserted.  This list is needed for subsequent typechecking.
+     */
+    private List<String> insertJaifByPackage(String insertAnnotationsScript) {
+        final File outputDir = InferenceOptions.inPlace ? null : new File(InferenceOptions.afuOutputDir);
+        final String jaifFile;
+        if (outputDir != null) {
+            ensureDirectoryExists(outputDir);
+            jaifFile = getJaifFilePath(outputDir);
+        } else {
+            jaifFile = getJaifFilePath(new File("."));
+        }
+
+        Map<String, List<String>> packageToJavaFiles = new LinkedHashMap<>();
+        for (String javaFile : InferenceOptions.javaFiles) {
+            String packageName = getPackageName(new File(javaFile));
+            List<String> javaFiles = packageToJavaFiles.get(packageName);
+            if (javaFiles == null) {
+                javaFiles = new ArrayList<>();
+                packageToJavaFiles.put(packageName, javaFiles);
+            }
+            javaFiles.add(javaFile);
+        }
+
+        final File jaifDir;
+        try {
+            jaifDir = Files.createTempDirectory("inference-jaifs").toFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        List<String> outputJavaFiles = new ArrayList<>(InferenceOptions.javaFiles.length);
+        List<String> failedPackages = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(InferenceOptions.insertionThreads);
+        try {
+            Map<String, File> packageJaifs = JaifSplitter.splitByPackage(new File(jaifFile), jaifDir);
+
+            Map<String, Future<PackageInsertion>> insertions = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : packageToJavaFiles.entrySet()) {
+                File packageJaif = packageJaifs.get(entry.getKey());
+                if (packageJaif == null) {
+                    // nothing to insert into this package
+                    outputJavaFiles.addAll(entry.getValue());
+                    continue;
+                }
+
+                List<String> options = new ArrayList<>();
+                options.add(insertAnnotationsScript);
+                options.add("-v");
+                if (outputDir != null) {
+                    options.add("--print-error-stack=true");
+                    options.add("--outdir=" + outputDir.getAbsolutePath());
+                } else {
+                    options.add("-i");
+                }
+                options.add(packageJaif.getAbsolutePath());
+                options.addAll(entry.getValue());
+
+                if (InferenceOptions.printCommands) {
+                    synchronized (outStream) {
+                        outStream.println("Running Insert Annotations Command:");
+                        outStream.println(SystemUtil.join(" ", options));
+                    }
+                }
+
+                insertions.put(entry.getKey(), executor.submit(new PackageInsertion(entry.getKey(), options)));
+            }
+
+            for (Map.Entry<String, Future<PackageInsertion>> entry : insertions.entrySet()) {
+                String packageName = entry.getKey();
+                PackageInsertion insertion;
+                try {
+                    insertion = entry.getValue().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+
+                if (insertion.result != 0) {
+                    failedPackages.add(packageName);
+                    reportStatus("Insert annotations into package " + packageName, insertion.result, errStream);
+                    outputJavaFiles.addAll(packageToJavaFiles.get(packageName));
+                } else if (outputDir != null) {
+                    for (File newJavaFile : insertion.writtenFiles) {
+                        outputJavaFiles.add(newJavaFile.getAbsolutePath());
+                    }
+                } else {
+                    outputJavaFiles.addAll(packageToJavaFiles.get(packageName));
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+            File[] packageJaifs = jaifDir.listFiles();
+            if (packageJaifs != null) {
+                for (File packageJaif : packageJaifs) {
+                    packageJaif.delete();
+                }
+            }
+            jaifDir.delete();
+        }
+
+        if (!failedPackages.isEmpty()) {
+            outStream.println("Could not insert annotations into packages: " + SystemUtil.join(", ", failedPackages));
+        }
+        reportStatus("Insert annotations", failedPackages.isEmpty() ? 0 : 1, outStream);
+        outStream.flush();
+        return outputJavaFiles;
+    }
+
+    /**
+     * Runs insert-annotations-to-source on the source files of one package and streams its output to
+     * outStream.
+     */
+    private class PackageInsertion implements Callable<PackageInsertion> {
+        private final String packageName;
+        private final List<String> command;
+
+        private final List<File> writtenFiles = new ArrayList<>();
+        private int result;
+
+        PackageInsertion(String packageName, List<String> command) {
+            this.packageName = packageName;
+            this.command = command;
+        }
+
+        @Override
+        public PackageInsertion call() {
+            final String prefix = "[" + (packageName.isEmpty() ? "default package" : packageName) + "] ";
+            try {
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        File writtenFile = findWrittenFile(line);
+                        if (writtenFile != null) {
+                            writtenFiles.add(writtenFile);
+                        }
+                        synchronized (outStream) {
+                            outStream.println(prefix + line);
+                        }
+                    }
+                }
+                result = process.waitFor();
+
+            } catch (IOException e) {
+                synchronized (errStream) {
+                    errStream.println(prefix + "Could not run insert-annotations-to-source: " + e.getMessage());
+                }
+                result = 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = 1;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @return the name of the package declared in javaFile, or the empty string for the default package
+     */
+    String getPackageName(File javaFile) {
+        String source;
+        try {
+            source = new String(Files.readAllBytes(javaFile.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read " + javaFile, e);
+        }
+        String packageName = scanPackageName(source);
+        if (packageName == null) {
+            outStream.println("No package declaration found in " + javaFile + ", using the default package.");
+            return "";
+        }
+        return packageName;
+    }
+
+    /**
+     * Scans the package declaration at the start of a compilation unit. Comments and annotations
+     * before the package declaration and comments within it are skipped, as by javac.
+     * @return the name of the declared package, or null if the source does not start with a
+     * package declaration
+     */
+    static String scanPackageName(CharSequence source) {
+        int i = skipWhitespaceAndComments(source, 0);
+        while (i < source.length() && source.charAt(i) == '@') {
+            i = skipWhitespaceAndComments(source, i + 1);
+            int nameEnd = skipIdentifier(source, i);
+            if (nameEnd == i || source.subSequence(i, nameEnd).toString().equals("interface")) {
+                // an annotation type declaration
+                return null;
+            }
+            i = skipQualifiedName(source, i);
+            if (i < source.length() && source.charAt(i) == '(') {
+                i = skipParenthesized(source, i);
+                i = skipWhitespaceAndComments(source, i);
+            }
+        }
+
+        int keywordEnd = skipIdentifier(source, i);
+        if (!source.subSequence(i, keywordEnd).toString().equals("package")) {
+            return null;
+        }
+        i = skipWhitespaceAndComments(source, keywordEnd);
+        StringBuilder packageName = new StringBuilder();
+        while (true) {
+            int identifierEnd = skipIdentifier(source, i);
+            if (identifierEnd == i) {
+                return null;
+            }
+            packageName.append(source, i, identifierEnd);
+            i = skipWhitespaceAndComments(source, identifierEnd);
+            if (i < source.length() && source.charAt(i) == '.') {
+                packageName.append('.');
+                i = skipWhitespaceAndComments(source, i + 1);
+            } else {
+                break;
+            }
+        }
+        return i < source.length() && source.charAt(i) == ';' ? packageName.toString() : null;
+    }
+
+    /**
+     * @return the index of the first character at or after start that is neither whitespace nor
+     * part of a comment
+     */
+    private static int skipWhitespaceAndComments(CharSequence source, int start) {
+        int i = start;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (startsWith(source, i, "//")) {
+                while (i < source.length() && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+                    i++;
+                }
+            } else if (startsWith(source, i, "/*")) {
+                int end = source.toString().indexOf("*/", i + 2);
+                i = end < 0 ? source.length() : end + 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean startsWith(CharSequence source, int start, String prefix) {
+        return source.length() - start >= prefix.length()
+                && source.subSequence(start, start + prefix.length()).toString().equals(prefix);
+    }
+
+    /**
+     * @return the index after the Java identifier at start, or start if there is none
+     */
+    private static int skipIdentifier(CharSequence source, int start) {
+        int i = start;
+        if (i < source.length() && Character.isJavaIdentifierStart(source.charAt(i))) {
+            i++;
+            while (i < source.length() && Character.isJavaIdentifierPart(source.charAt(i))) {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return the index of the first character after the qualified name at start and the
+     * whitespace and comments that follow it
+     */
+    private static int skipQualifiedName(CharSequence source, int start) {
+        int i = skipWhitespaceAndComments(source, skipIdentifier(source, start));
+        while (i < source.length() && source.charAt(i) == '.') {
+            i = skipWhitespaceAndComments(source, i + 1);
+            i = skipWhitespaceAndComments(source, skipIdentifier(source, i));
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after the parenthesis that closes the one at start, skipping string and
+     * character literals and comments, or the length of source if it is not closed
+     */
+    private static int skipParenthesized(CharSequence source, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                // skip the literal, including escaped quotes
+                i++;
+                while (i < source.length() && source.charAt(i) != c) {
+                    i += source.charAt(i) == '\\' ? 2 : 1;
+                }
+                i++;
+            } else if (startsWith(source, i, "//") || startsWith(source, i, "/*")) {
+                i = skipWhitespaceAndComments(source, i);
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return i + 1;
+                }
+                i++;
+            }
+        }
+        return source.length();
+    }
+
     public static void ensureDirectoryExists(File path) {
         if (!path.exists()) {
             if (!path.mkdirs()) {
@@ -339,9 +815,6 @@ public class InferenceLauncher {
      * @return The files that the AFU processed
      */
     private static List<File> findWrittenFiles(String output) {
-        // This will be brittle; if the AFU Changes it's output string then no files will be found
-        final Pattern afuWritePattern = Pattern.compile("^Writing (.*\\.java)$");
-
         List<File> writtenFiles = new ArrayList<>();
         BufferedReader reader = new BufferedReader(new StringReader(output));
         String line;
@@ -350,9 +823,9 @@ public class InferenceLauncher {
             try {
                 line = reader.readLine();
                 if (line != null) {
-                    Matcher afuWriteMatcher = afuWritePattern.matcher(line);
-                    if (afuWriteMatcher.matches()) {
-                        writtenFiles.add(new File(afuWriteMatcher.group(1)));
+                    File writtenFile = findWrittenFile(line);
+                    if (writtenFile != null) {
+                        writtenFiles.add(writtenFile);
                     }
                 }
 
@@ -364,6 +837,18 @@ public class InferenceLauncher {
         return writtenFiles;
     }
 
+    // This will be brittle; if the AFU Changes it's output string then no files will be found
+    private static final Pattern AFU_WRITE_PATTERN = Pattern.compile("^Writing (.*\\.java)$");
+
+    /**
+     * @param line a line of the output of the Annotation File Utilities
+     * @return The file that line reports as written, or null if it does not report a written file
+     */
+    private static File findWrittenFile(String line) {
+        Matcher afuWriteMatcher = AFU_WRITE_PATTERN.matcher(line);
+        return afuWriteMatcher.matches() ? new File(afuWriteMatcher.group(1)) : null;
+    }
+
     /**
      * @return InferenceOptions.jaifFile if it is non null, otherwise a path to "inference.jaif" in the
      * output directory
@@ -2,12 +2,16 @@ package checkers.inference;
 
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 
-import java.io.FileOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -19,13 +23,13 @@ import java.util.logging.Logger;
 import javax.lang.model.element.AnnotationMirror;
 
 import checkers.inference.InferenceOptions.InitStatus;
-import checkers.inference.model.AnnotationLocation;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.ConstraintManager;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.qual.VarAnnot;
+import checkers.inference.solver.frontend.LatticeCache;
 import checkers.inference.util.InferenceUtil;
-import checkers.inference.util.JaifBuilder;
+import checkers.inference.util.JaifWriter;
 import org.checkerframework.javacutil.SystemUtil;
 
 /**
@@ -104,6 +108,18 @@ public class InferenceMain {
 
     private ResultHandler resultHandler;
 
+    // Cache of the results of previous runs, null if incremental inference is disabled.
+    private IncrementalInferenceCache incrementalCache;
+
+    // Lattices shared by the LatticeBuilders of this run.
+    private final LatticeCache latticeCache = new LatticeCache();
+
+    // Whether inference runs in the JVM of another program, see runInProcess.
+    private static boolean inProcess = false;
+
+    // The status of the first fatal error of an in-process run, or null if there was none.
+    private static Integer inProcessStatus = null;
+
     public void setResultHandler(ResultHandler resultHandler) {
         this.resultHandler = resultHandler;
     }
@@ -116,6 +132,52 @@ public class InferenceMain {
         inferenceMain.run();
     }
 
+    /**
+     * Runs inference like {@link #main}, but returns the status that main would exit the JVM with
+     * instead of exiting, so that inference can run in the JVM of the InferenceLauncher.  A fatal
+     * error ends the run with an exception instead.  The first fatal error determines the status,
+     * even if javac catches the exception and inference fails again later.
+     *
+     * @return 0 if inference succeeded, otherwise the status of the first fatal error
+     */
+    public static int runInProcess(String [] args) {
+        inProcess = true;
+        inProcessStatus = null;
+        try {
+            main(args);
+        } catch (InferenceExit e) {
+            // The status was recorded by exit.
+        } finally {
+            inProcess = false;
+        }
+        return inProcessStatus == null ? 0 : inProcessStatus;
+    }
+
+    /**
+     * Exits the JVM with the given status, or ends inference with it if inference runs in the JVM
+     * of another program, see {@link #runInProcess}.
+     */
+    public static void exit(int status) {
+        if (!inProcess) {
+            System.exit(status);
+        }
+        if (inProcessStatus == null) {
+            inProcessStatus = status;
+        }
+        throw new InferenceExit(inProcessStatus);
+    }
+
+    /**
+     * Ends an in-process run of inference on a fatal error.
+     */
+    private static class InferenceExit extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        InferenceExit(int status) {
+            super("Inference exited with status " + status);
+        }
+    }
+
     /**
      * Create an InferenceMain instance.
      * Options are pulled from InferenceCli static fields.
@@ -140,6 +202,25 @@ public class InferenceMain {
     public void run() {
         logger.finer("Starting InferenceMain");
 
+        if (InferenceOptions.incrementalCacheDir != null) {
+            try {
+                incrementalCache = new IncrementalInferenceCache(new File(InferenceOptions.incrementalCacheDir),
+                        InferenceOptions.javaFiles);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to hash the inputs of the incremental inference cache, "
+                        + "running inference without the cache.", e);
+            }
+            if (incrementalCache != null && incrementalCache.isUpToDate()) {
+                try {
+                    incrementalCache.restoreJaif(new File(InferenceOptions.jaifFile));
+                    logger.info("No compilation unit changed since the cached run, reusing its jaif.");
+                    return;
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to restore the cached jaif, running inference.", e);
+                }
+            }
+        }
+
         // Start up javac
         startCheckerFramework();
         solve();
@@ -147,9 +228,13 @@ public class InferenceMain {
         // shouldn't exit
         if (solverResult != null && !solverResult.hasSolution()) {
             logger.info("No solution, exiting...");
-            System.exit(1);
+            exit(1);
         }
         writeJaif();
+
+        if (incrementalCache != null) {
+            incrementalCache.store(solverResult, new File(InferenceOptions.jaifFile));
+        }
     }
 
     /**
@@ -216,10 +301,9 @@ public class InferenceMain {
      */
     private void writeJaif() {
         try (PrintWriter writer
-                = new PrintWriter(new FileOutputStream(InferenceOptions.jaifFile))) {
+                = new PrintWriter(new BufferedWriter(new FileWriter(InferenceOptions.jaifFile)))) {
 
             List<VariableSlot> varSlots = slotManager.getVariableSlots();
-            Map<AnnotationLocation, String> values = new HashMap<>();
             Set<Class<? extends Annotation>> annotationClasses = new HashSet<>();
 
             if (solverResult == null) {
@@ -233,29 +317,29 @@ public class InferenceMain {
                     annotationClasses.add(annotation);
                 }
             }
-            for (VariableSlot slot : varSlots) {
-                if (slot.getLocation() != null && slot.isInsertable()
-                 && (solverResult == null || solverResult.containsSolutionForVariable(slot.getId()))) {
-                    // TODO: String serialization of annotations.
-                    if (solverResult != null) {
-                        // Not all VariableSlots will have an inferred value.
-                        // This happens for VariableSlots that have no constraints.
-                        AnnotationMirror result = solverResult.getSolutionForVariable(slot.getId());
-                        if (result != null) {
-                            values.put(slot.getLocation(), result.toString());
+
+            try (JaifWriter jaifWriter = new JaifWriter(writer, annotationClasses,
+                    realChecker.isInsertMainModOfLocalVar())) {
+                for (VariableSlot slot : varSlots) {
+                    if (slot.getLocation() != null && slot.isInsertable()
+                     && (solverResult == null || solverResult.containsSolutionForVariable(slot.getId()))) {
+                        // TODO: String serialization of annotations.
+                        if (solverResult != null) {
+                            // Not all VariableSlots will have an inferred value.
+                            // This happens for VariableSlots that have no constraints.
+                            AnnotationMirror result = solverResult.getSolutionForVariable(slot.getId());
+                            if (result != null) {
+                                jaifWriter.add(slot.getLocation(), result);
+                            }
+                        } else {
+                            // Just use the VarAnnot in the jaif.
+                            jaifWriter.add(slot.getLocation(), slotManager.getAnnotation(slot));
                         }
-                    } else {
-                        // Just use the VarAnnot in the jaif.
-                        String value = slotManager.getAnnotation(slot).toString();
-                        values.put(slot.getLocation(), value);
                     }
                 }
+                jaifWriter.finish();
             }
 
-            JaifBuilder builder = new JaifBuilder(values, annotationClasses, realChecker.isInsertMainModOfLocalVar());
-            String jaif = builder.createJaif();
-            writer.println(jaif);
-
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to write out jaif file!", e);
         }
@@ -267,7 +351,10 @@ public class InferenceMain {
     private void solve() {
         // TODO: PERHAPS ALLOW SOLVERS TO DECIDE IF/HOW THEY WANT CONSTRAINTS NORMALIZED
 
-        final ConstraintNormalizer constraintNormalizer = new ConstraintNormalizer();
+        final ConstraintNormalizer constraintNormalizer = new ConstraintNormalizer(
+                InferenceOptions.existentialSelectors,
+                ConstraintNormalizer.createSimplifications(InferenceOptions.simplifyConstraints,
+                        getRealTypeFactory().getQualifierHierarchy()));
         Set<Constraint> normalizedConstraints = constraintNormalizer.normalize(constraintManager.getConstraints());
 
         // TODO: Support multiple solvers or serialize before or after solving
@@ -275,13 +362,51 @@ public class InferenceMain {
         // TODO: Options to type-check after this.
 
         if (InferenceOptions.solver != null) {
-            InferenceSolver solver = getSolver();
-            this.solverResult = solver.solve(
-                    parseSolverArgs(),
-                    slotManager.getSlots(),
-                    normalizedConstraints,
-                    getRealTypeFactory().getQualifierHierarchy(),
-                    inferenceChecker.getProcessingEnvironment());
+            if (incrementalCache != null) {
+                solveIncrementally(normalizedConstraints);
+            } else {
+                InferenceSolver solver = getSolver();
+                this.solverResult = solver.solve(
+                        parseSolverArgs(),
+                        slotManager.getSlots(),
+                        normalizedConstraints,
+                        getRealTypeFactory().getQualifierHierarchy(),
+                        inferenceChecker.getProcessingEnvironment());
+            }
+
+            // Give the slots merged by the simplifications the solution of their representative.
+            this.solverResult = constraintNormalizer.getSolutionReconstruction().expand(solverResult);
+        }
+    }
+
+    /**
+     * Solve only the constraint components that have no cached solution from a previous run, and
+     * merge their solution with the cached ones.
+     */
+    private void solveIncrementally(Set<Constraint> normalizedConstraints) {
+        Map<Integer, AnnotationMirror> reusedSolutions = new HashMap<>();
+        Collection<Constraint> toSolve = incrementalCache.reuseSolutions(normalizedConstraints, slotManager, reusedSolutions);
+
+        if (toSolve.isEmpty()) {
+            this.solverResult = new DefaultInferenceResult(reusedSolutions);
+            return;
+        }
+
+        InferenceSolver solver = getSolver();
+        InferenceResult result = solver.solve(
+                parseSolverArgs(),
+                slotManager.getSlots(),
+                toSolve,
+                getRealTypeFactory().getQualifierHierarchy(),
+                inferenceChecker.getProcessingEnvironment());
+
+        if (result == null || !result.hasSolution()) {
+            this.solverResult = result;
+        } else {
+            Map<Integer, AnnotationMirror> solutions = new HashMap<>(result.getSolutions());
+            // Slots of reused components are not constrained by toSolve, keep their cached value.
+            solutions.putAll(reusedSolutions);
+            this.solverResult = new DefaultInferenceResult(solutions);
         }
     }
 
@@ -301,13 +426,13 @@ public class InferenceMain {
         if (realChecker == null) {
             try {
                 realChecker = (InferrableChecker) Class.forName(
-                        InferenceOptions.checker, true, ClassLoader.getSystemClassLoader()).getDeclaredConstructor().newInstance();
+                        InferenceOptions.checker, true, InferenceMain.class.getClassLoader()).getDeclaredConstructor().newInstance();
                 realChecker.init(inferenceChecker.getProcessingEnvironment());
                 realChecker.initChecker();
                 logger.finer(String.format("Created real checker: %s", realChecker));
             } catch (Throwable e) {
               logger.log(Level.SEVERE, "Error instantiating checker class \"" + InferenceOptions.checker + "\".", e);
-              System.exit(5);
+              exit(5);
           }
         }
         return realChecker;
@@ -318,6 +443,7 @@ public class InferenceMain {
             inferenceTypeFactory = realChecker.createInferenceATF(inferenceChecker, getRealChecker(),
                     getRealTypeFactory(), getSlotManager(), getConstraintManager());
             this.getConstraintManager().init(inferenceTypeFactory);
+            this.getConstraintManager().setRecordLocations(!InferenceOptions.dropConstraintLocations);
             logger.finer("Created InferenceAnnotatedTypeFactory");
         }
         return inferenceTypeFactory;
@@ -350,12 +476,12 @@ public class InferenceMain {
     protected InferenceSolver getSolver() {
         try {
             InferenceSolver solver = (InferenceSolver) Class.forName(
-                    InferenceOptions.solver, true, ClassLoader.getSystemClassLoader()).getDeclaredConstructor().newInstance();
+                    InferenceOptions.solver, true, InferenceMain.class.getClassLoader()).getDeclaredConstructor().newInstance();
             logger.finer("Created solver: " + solver);
             return solver;
         } catch (Throwable e) {
             logger.log(Level.SEVERE, "Error instantiating solver class \"" + InferenceOptions.solver + "\".", e);
-            System.exit(5);
+            exit(5);
             return null; // Dead code
         }
     }
@@ -410,6 +536,10 @@ public class InferenceMain {
         return constraintManager;
     }
 
+    public LatticeCache getLatticeCache() {
+        return latticeCache;
+    }
+
     public boolean isPerformingFlow() {
         return performingFlow;
     }
@@ -457,7 +587,7 @@ public class InferenceMain {
             if (!success) {
                 logger.severe("Error return code from javac! Quitting.");
                 logger.info(javacOutStr);
-                System.exit(1);
+                exit(1);
             }
         }
     }
@@ -81,6 +81,21 @@ public class InferenceOptions {
     @Option("Args to pass to checker framework, in the format -Axxx=xxx -Ayyy=yyy,z=z")
     public static String cfArgs;
 
+    @Option("Run inference in the launcher's JVM through an isolated classloader instead of forking a new JVM. Inference then uses the launcher's heap settings. Falls back to a new JVM with a runtime bootclasspath or --debug")
+    public static boolean inProcess;
+
+    @Option("[path] directory of the incremental inference cache. If set, results of unchanged code are reused from the previous run")
+    public static String incrementalCacheDir;
+
+    @Option("Comma-separated simplifications of the constraints before solving: equalities, trivial, duplicates")
+    public static String simplifyConstraints;
+
+    @Option("Normalize existential variables with one existential constraint per variable, instead of expanding constraints over all combinations of existing slots")
+    public static boolean existentialSelectors;
+
+    @Option("Do not record the source locations of constraints. Saves time and memory on large programs, but unsatisfiable constraints are reported without locations")
+    public static boolean dropConstraintLocations;
+
     /** If jsonFile is specified this will be set to the JsonSerializerSolver */
     @Option("The JSON file to which constraints should be dumped.  This field is mutually exclusive with solver.")
     public static String jsonFile;
@@ -100,6 +115,9 @@ public class InferenceOptions {
     @Option("Additional AFU options")
     public static String afuOptions;
 
+    @Option("Number of packages into which annotations are inserted in parallel. If greater than 0, the jaif is split by package and every package is inserted by its own AFU process; a failure only affects its package")
+    public static int insertionThreads;
+
     // ------------------------------------------------------
     @OptionGroup("Help")
 
@@ -217,6 +235,10 @@ public class InferenceOptions {
                     errors.add("You cannot specify both an Annotation File Utilities output directory (--afuOutputDir or -afud) and --inPlace.");
                 }
 
+                if (insertionThreads < 0) {
+                    errors.add("--insertionThreads must not be negative.");
+                }
+
                 if (afuOptions != null && afuOptions.contains("\\s-d\\s")) {
                     errors.add("Annotation File Utilities output dir must be specified via (--afuOutputDir or -afud) not -d in AFU Options.");
                 }
@@ -339,12 +361,12 @@ public class InferenceOptions {
             if (!errors.isEmpty()) {
                 System.out.println(SystemUtil.join(errorDelimiter, errors));
                 options.printUsage();
-                System.exit(1);
+                InferenceMain.exit(1);
             }
 
             if (printHelp) {
                 options.printUsage();
-                System.exit(0);
+                InferenceMain.exit(0);
             }
         }
     }
@@ -4,6 +4,7 @@ import checkers.inference.model.LubVariableSlot;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.type.TypeMirror;
@@ -190,16 +191,36 @@ public interface SlotManager {
     Slot getSlot(AnnotatedTypeMirror atm);
 
     /**
-     * Return all slots collected by this SlotManager
+     * Return all slots collected by this SlotManager. The returned list is a read-only view
+     * of the slots collected so far; slots created afterwards are not included.
      * @return a list of slots
      */
     List<Slot> getSlots();
 
     /**
-     * Return all VariableSlots collected by this SlotManager
+     * Return all VariableSlots collected by this SlotManager. The returned list is a read-only
+     * view of the VariableSlots collected so far.
      * @return a lit of VariableSlots
      */
     List<VariableSlot> getVariableSlots();
 
+    /**
+     * Return all ConstantSlots collected by this SlotManager. The returned list is a read-only
+     * view of the ConstantSlots collected so far.
+     * @return a list of ConstantSlots
+     */
     List<ConstantSlot> getConstantSlots();
+
+    /**
+     * Return the ids of all VariableSlots collected by this SlotManager, in increasing order,
+     * without materializing the slots themselves.
+     * @return a stream of VariableSlot ids
+     */
+    IntStream getVariableSlotIds();
+
+    /**
+     * Return the ids of all ConstantSlots collected by this SlotManager, in increasing order.
+     * @return a stream of ConstantSlot ids
+     */
+    IntStream getConstantSlotIds();
 }
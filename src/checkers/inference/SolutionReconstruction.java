@@ -0,0 +1,158 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Records how the simplifications of the {@link ConstraintNormalizer} changed the constraints, so
+ * that the result of solving the simplified constraints can be expressed in terms of the original
+ * ones.
+ *
+ * Slots that were substituted by the representative of their equality class get the solution of
+ * the representative. Constraints that were rewritten are explained by the constraints they were
+ * rewritten from, together with the equalities that merged their slots.
+ */
+public class SolutionReconstruction {
+
+    /**
+     * The slot that substituted every merged slot, by slot id. A representative may be merged
+     * again later, so the final representative of a slot is found by following these links, as
+     * in a union-find forest.
+     */
+    private final Map<Integer, VariableSlot> substitutes = new HashMap<>();
+
+    /** The original constraint of every constraint created by a simplification. */
+    private final Map<Constraint, Constraint> originals = new HashMap<>();
+
+    /** The constraints removed because they were implied by merging slots, by representative. */
+    private final Map<VariableSlot, List<Constraint>> mergingConstraints = new HashMap<>();
+
+    /**
+     * Records that {@code slot} was substituted by {@code representative} in all constraints.
+     */
+    public void recordMerge(Slot slot, VariableSlot representative) {
+        substitutes.put(slot.getId(), representative);
+
+        // The slot may have been the representative of an earlier merge. Move the smaller list of
+        // merging constraints into the larger one, so that every constraint is moved only a
+        // logarithmic number of times.
+        List<Constraint> merged = mergingConstraints.remove(slot);
+        if (merged == null) {
+            return;
+        }
+        List<Constraint> representativeMerged = mergingConstraints.get(representative);
+        if (representativeMerged == null) {
+            mergingConstraints.put(representative, merged);
+        } else if (representativeMerged.size() < merged.size()) {
+            merged.addAll(representativeMerged);
+            mergingConstraints.put(representative, merged);
+        } else {
+            representativeMerged.addAll(merged);
+        }
+    }
+
+    /**
+     * @return the slot that finally substitutes the slot with the given id
+     */
+    private VariableSlot getRepresentative(int slotId) {
+        VariableSlot root = substitutes.get(slotId);
+        VariableSlot next;
+        while ((next = substitutes.get(root.getId())) != null) {
+            root = next;
+        }
+        // Path compression.
+        int id = slotId;
+        while ((next = substitutes.get(id)) != root) {
+            substitutes.put(id, root);
+            id = next.getId();
+        }
+        return root;
+    }
+
+    /**
+     * Records that {@code constraint} was removed because it holds once the slots of the equality
+     * class of {@code representative} are merged.
+     */
+    public void recordMergingConstraint(VariableSlot representative, Constraint constraint) {
+        getMergingConstraints(representative).add(getOriginal(constraint));
+    }
+
+    /**
+     * Records that {@code rewritten} replaces {@code original}. If several constraints are
+     * rewritten to the same constraint, the first one explains it, since each of them implies it
+     * together with the merging constraints. A constraint that was not created by a
+     * simplification must not be recorded as rewritten, as it explains itself.
+     */
+    public void recordRewrite(Constraint rewritten, Constraint original) {
+        originals.putIfAbsent(rewritten, getOriginal(original));
+    }
+
+    private List<Constraint> getMergingConstraints(VariableSlot representative) {
+        return mergingConstraints.computeIfAbsent(representative, key -> new ArrayList<>());
+    }
+
+    private Constraint getOriginal(Constraint constraint) {
+        Constraint original = originals.get(constraint);
+        return original == null ? constraint : original;
+    }
+
+    public boolean isEmpty() {
+        return substitutes.isEmpty() && originals.isEmpty();
+    }
+
+    /**
+     * @return the number of slots that were substituted by a representative
+     */
+    public int getNumberOfMergedSlots() {
+        return substitutes.size();
+    }
+
+    /**
+     * Expands the result of solving the simplified constraints to the original constraints: every
+     * substituted slot gets the solution of its representative, and unsatisfiable constraints are
+     * mapped back to the constraints they were created from.
+     */
+    public InferenceResult expand(InferenceResult result) {
+        if (result == null || isEmpty()) {
+            return result;
+        }
+
+        if (result.hasSolution()) {
+            Map<Integer, AnnotationMirror> solutions = new HashMap<>(result.getSolutions());
+            for (Integer slotId : new ArrayList<>(substitutes.keySet())) {
+                AnnotationMirror solution = solutions.get(getRepresentative(slotId).getId());
+                if (solution != null) {
+                    solutions.put(slotId, solution);
+                }
+            }
+            return new DefaultInferenceResult(solutions);
+        }
+
+        Collection<Constraint> unsatisfiableConstraints = result.getUnsatisfiableConstraints();
+        if (unsatisfiableConstraints.isEmpty()) {
+            return result;
+        }
+        Set<Constraint> explanation = new LinkedHashSet<>();
+        for (Constraint constraint : unsatisfiableConstraints) {
+            explanation.add(getOriginal(constraint));
+            for (Slot slot : constraint.getSlots()) {
+                List<Constraint> merged = mergingConstraints.get(slot);
+                if (merged != null) {
+                    explanation.addAll(merged);
+                }
+            }
+        }
+        return new DefaultInferenceResult(explanation);
+    }
+}
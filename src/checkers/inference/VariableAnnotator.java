@@ -172,13 +172,20 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
 
 
     public static AnnotationLocation treeToLocation(AnnotatedTypeFactory typeFactory, Tree tree) {
-        final TreePath path = typeFactory.getPath(tree);
+        return pathToLocation(typeFactory, typeFactory.getPath(tree));
+    }
 
+    /**
+     * Computes the location of the leaf of the given path. Unlike
+     * {@link #treeToLocation(AnnotatedTypeFactory, Tree)}, this does not depend on the compilation
+     * unit currently visited by the type factory.
+     */
+    public static AnnotationLocation pathToLocation(AnnotatedTypeFactory typeFactory, TreePath path) {
         if (path == null) {
             return AnnotationLocation.MISSING_LOCATION;
         } // else
 
-        ASTPathUtil.getASTRecordForPath(typeFactory, path);
+        final Tree tree = path.getLeaf();
         if (tree.getKind() == Kind.CLASS || tree.getKind() == Kind.INTERFACE
          || tree.getKind() == Kind.ENUM  || tree.getKind() == Kind.ANNOTATION_TYPE) {
             TypeElement typeElement = TreeUtils.elementFromDeclaration((ClassTree) tree);
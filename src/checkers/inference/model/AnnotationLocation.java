@@ -1,5 +1,7 @@
 package checkers.inference.model;
 
+import java.util.function.Supplier;
+
 import scenelib.annotations.io.ASTPath;
 import scenelib.annotations.io.ASTRecord;
 
@@ -139,6 +141,64 @@ public abstract class AnnotationLocation {
         }
     }
 
+    /**
+     * A location that is computed on first use, for locations that are usually not needed, e.g.
+     * the locations of constraints. Computing an AstPathLocation walks the path to the tree, so
+     * {@link Constraint#getLocation()} replaces this handle with the computed location.
+     */
+    public static class DeferredLocation extends AnnotationLocation {
+        private Supplier<AnnotationLocation> supplier;
+        private AnnotationLocation location;
+
+        /**
+         * @param supplier computes the location; it must not depend on the current state of the
+         *            visitor, as it is called after the visitor has moved on
+         */
+        public DeferredLocation(Supplier<AnnotationLocation> supplier) {
+            super(null);
+            this.supplier = supplier;
+        }
+
+        /**
+         * @return the computed location
+         */
+        public synchronized AnnotationLocation resolve() {
+            if (location == null) {
+                location = supplier.get();
+                supplier = null;
+            }
+            return location;
+        }
+
+        @Override
+        public Kind getKind() {
+            return resolve().getKind();
+        }
+
+        @Override
+        public boolean isInsertable() {
+            return resolve().isInsertable();
+        }
+
+        @Override
+        public boolean equals(Object otherObj) {
+            if (otherObj instanceof DeferredLocation) {
+                otherObj = ((DeferredLocation) otherObj).resolve();
+            }
+            return resolve().equals(otherObj);
+        }
+
+        @Override
+        public int hashCode() {
+            return resolve().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return resolve().toString();
+        }
+    }
+
     /**
      * Indicates that a annotation is not insertable in source.  It is also used in location
      * where we haven't yet created the code to create an "implied tree", i.e. a place
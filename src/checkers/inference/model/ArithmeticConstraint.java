@@ -102,7 +102,7 @@ public class ArithmeticConstraint extends Constraint {
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         // We do not hash on annotation location as the result slot is unique for each annotation
         // location
         return Objects.hash(operation, leftOperand, rightOperand, result);
@@ -50,7 +50,7 @@ public class CombineConstraint extends Constraint {
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         int hc = 1;
         hc += ((target == null) ? 0 : target.hashCode());
         hc += ((decl == null) ? 0 : decl.hashCode());
@@ -19,6 +19,14 @@ public class ConstantSlot extends Slot {
      */
     private final AnnotationMirror value;
 
+    /**
+     * A string that is equal for constant slots with the same value, computed once, as printing
+     * an AnnotationMirror is expensive and constant slots are hashed for every constraint on them.
+     */
+    private final String canonicalKey;
+
+    private final int hashCode;
+
     /**
      *
      * @param value   The actual AnnotationMirror that this ConstantSlot represents.  This AnnotationMirror should
@@ -32,6 +40,8 @@ public class ConstantSlot extends Slot {
         super(id);
         checkValue(value);
         this.value = value;
+        this.canonicalKey = value.toString();
+        this.hashCode = 31 + canonicalKey.hashCode();
     }
 
     private void checkValue(AnnotationMirror value) {
@@ -62,17 +72,21 @@ public class ConstantSlot extends Slot {
         return this.value;
     }
 
+    /**
+     * @return a string that is equal for constant slots with the same value
+     */
+    public String getCanonicalKey() {
+        return canonicalKey;
+    }
+
     @Override
     public String toString() {
-        return value.toString();
+        return canonicalKey;
     }
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((value == null) ? 0 : value.toString().hashCode());
-        return result;
+        return hashCode;
     }
 
     @Override
@@ -84,6 +98,11 @@ public class ConstantSlot extends Slot {
         if (getClass() != obj.getClass())
             return false;
         ConstantSlot other = (ConstantSlot) obj;
+        // The slot manager creates one constant slot per value.
+        if (id == other.id)
+            return true;
+        if (hashCode != other.hashCode)
+            return false;
         if (value == null) {
             if (other.value != null)
                 return false;
@@ -15,9 +15,16 @@ public abstract class Constraint {
     private final List<Slot> slots;
 
     /**
-     * Used to locate this constraint in source code.
+     * Used to locate this constraint in source code. It may be a
+     * {@link AnnotationLocation.DeferredLocation} until it is first used.
      */
-    private final AnnotationLocation location;
+    private AnnotationLocation location;
+
+    /**
+     * The hash code of this constraint, computed on first use. Constraints are immutable, and
+     * they are hashed many times while they are collected and normalized.
+     */
+    private int hashCode;
 
     public Constraint(List<Slot> slots, AnnotationLocation location) {
         // Instead of:
@@ -40,6 +47,10 @@ public abstract class Constraint {
     }
 
     public AnnotationLocation getLocation() {
+        if (location instanceof AnnotationLocation.DeferredLocation) {
+            // Resolving is idempotent, so racing threads compute the same location.
+            location = ((AnnotationLocation.DeferredLocation) location).resolve();
+        }
         return location;
     }
 
@@ -52,6 +63,24 @@ public abstract class Constraint {
         return slots;
     }
 
+    @Override
+    public final int hashCode() {
+        int result = hashCode;
+        if (result == 0) {
+            result = computeHashCode();
+            hashCode = result;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the hash code of this constraint, which is cached by {@link #hashCode()}.
+     * Sub-classes that override {@link #equals(Object)} must override this method consistently.
+     */
+    protected int computeHashCode() {
+        return super.hashCode();
+    }
+
     @Override
     public String toString() {
         return this.getClass().getSimpleName() + ": " + slots;
@@ -1,8 +1,11 @@
 package checkers.inference.model;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import com.sun.source.util.TreePath;
 import org.checkerframework.framework.source.SourceChecker;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.framework.type.VisitorState;
@@ -23,6 +26,11 @@ public class ConstraintManager {
 
     private final Set<Constraint> constraints = new HashSet<Constraint>();
 
+    /**
+     * The canonical instance of every constraint created by this manager, see {@link #intern}.
+     */
+    private final Map<Constraint, Constraint> internedConstraints = new HashMap<>();
+
     private InferenceAnnotatedTypeFactory inferenceTypeFactory;
 
     private SourceChecker checker;
@@ -31,6 +39,12 @@ public class ConstraintManager {
 
     private VisitorState visitorState;
 
+    /**
+     * Whether the source locations of constraints are recorded. Locations are only used to report
+     * unsatisfiable constraints and in debugging output.
+     */
+    private boolean recordLocations = true;
+
     public void init(InferenceAnnotatedTypeFactory inferenceTypeFactory) {
         this.inferenceTypeFactory = inferenceTypeFactory;
         this.realQualHierarchy = inferenceTypeFactory.getRealQualifierHierarchy();
@@ -38,6 +52,28 @@ public class ConstraintManager {
         this.checker = inferenceTypeFactory.getContext().getChecker();
     }
 
+    /**
+     * Returns the canonical instance of the given constraint: the first equal constraint passed
+     * to this method, or the given constraint if there was none. All constraints created by this
+     * manager are interned, so equal constraints share one instance.
+     */
+    @SuppressWarnings("unchecked") // equal constraints have the same class
+    public <T extends Constraint> T intern(T constraint) {
+        if (constraint instanceof AlwaysTrueConstraint || constraint instanceof AlwaysFalseConstraint) {
+            return constraint;
+        }
+        Constraint interned = internedConstraints.putIfAbsent(constraint, constraint);
+        return interned == null ? constraint : (T) interned;
+    }
+
+    /**
+     * Sets whether the source locations of constraints are recorded. If not, constraints other
+     * than {@link ArithmeticConstraint}s get {@link AnnotationLocation#MISSING_LOCATION}.
+     */
+    public void setRecordLocations(boolean recordLocations) {
+        this.recordLocations = recordLocations;
+    }
+
     public Set<Constraint> getConstraints() {
         return constraints;
     }
@@ -90,8 +126,8 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint}, {@link AlwaysFalseConstraint}, or {@link EqualityConstraint}.
      */
     public Constraint createSubtypeConstraint(Slot subtype, Slot supertype) {
-        return SubtypeConstraint.create(subtype, supertype, getCurrentLocation(),
-                realQualHierarchy);
+        return intern(SubtypeConstraint.create(subtype, supertype, getCurrentLocation(),
+                realQualHierarchy));
     }
 
     /**
@@ -99,7 +135,7 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint} or {@link AlwaysFalseConstraint}.
      */
     public Constraint createEqualityConstraint(Slot first, Slot second) {
-        return EqualityConstraint.create(first, second, getCurrentLocation());
+        return intern(EqualityConstraint.create(first, second, getCurrentLocation()));
     }
 
     /**
@@ -107,7 +143,7 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint} or {@link AlwaysFalseConstraint}.
      */
     public Constraint createInequalityConstraint(Slot first, Slot second) {
-        return InequalityConstraint.create(first, second, getCurrentLocation());
+        return intern(InequalityConstraint.create(first, second, getCurrentLocation()));
     }
 
     /**
@@ -115,14 +151,14 @@ public class ConstraintManager {
      * {@link AlwaysTrueConstraint} or {@link AlwaysFalseConstraint}.
      */
     public Constraint createComparableConstraint(Slot first, Slot second) {
-        return ComparableConstraint.create(first, second, getCurrentLocation(), realQualHierarchy);
+        return intern(ComparableConstraint.create(first, second, getCurrentLocation(), realQualHierarchy));
     }
 
     /**
      * Creates a {@link CombineConstraint} between the three slots.
      */
     public CombineConstraint createCombineConstraint(Slot target, Slot decl, CombVariableSlot result) {
-        return CombineConstraint.create(target, decl, result, getCurrentLocation());
+        return intern(CombineConstraint.create(target, decl, result, getCurrentLocation()));
     }
 
     /**
@@ -130,7 +166,7 @@ public class ConstraintManager {
      */
     public PreferenceConstraint createPreferenceConstraint(VariableSlot variable, ConstantSlot goal,
             int weight) {
-        return PreferenceConstraint.create(variable, goal, weight, getCurrentLocation());
+        return intern(PreferenceConstraint.create(variable, goal, weight, getCurrentLocation()));
     }
 
     /**
@@ -138,12 +174,12 @@ public class ConstraintManager {
      */
     public ExistentialConstraint createExistentialConstraint(Slot slot,
             List<Constraint> ifExistsConstraints, List<Constraint> ifNotExistsConstraints) {
-        return ExistentialConstraint.create(slot, ifExistsConstraints,
-                ifNotExistsConstraints, getCurrentLocation());
+        return intern(ExistentialConstraint.create(slot, ifExistsConstraints,
+                ifNotExistsConstraints, getCurrentLocation()));
     }
 
     public Constraint createImplicationConstraint(List<Constraint> assumptions, Constraint conclusion) {
-        return ImplicationConstraint.create(assumptions, conclusion, getCurrentLocation());
+        return intern(ImplicationConstraint.create(assumptions, conclusion, getCurrentLocation()));
     }
 
     /**
@@ -151,18 +187,28 @@ public class ConstraintManager {
      */
     public ArithmeticConstraint createArithmeticConstraint(ArithmeticOperationKind operation,
             Slot leftOperand, Slot rightOperand, ArithmeticVariableSlot result) {
-        return ArithmeticConstraint.create(operation, leftOperand, rightOperand, result,
-                getCurrentLocation());
+        // The location of an arithmetic constraint is always needed, as it identifies the result.
+        return intern(ArithmeticConstraint.create(operation, leftOperand, rightOperand, result,
+                computeCurrentLocation()));
     }
 
     // TODO: give location directly in Constraint.create() methods
+    /**
+     * @return the location of the tree currently visited, computed when it is first used, or
+     * {@link AnnotationLocation#MISSING_LOCATION} if locations are not recorded
+     */
     private AnnotationLocation getCurrentLocation() {
-        if (visitorState.getPath() != null) {
-            return VariableAnnotator.treeToLocation(inferenceTypeFactory,
-                    visitorState.getPath().getLeaf());
-        } else {
+        final TreePath path = visitorState.getPath();
+        if (!recordLocations || path == null) {
             return AnnotationLocation.MISSING_LOCATION;
         }
+        final InferenceAnnotatedTypeFactory typeFactory = inferenceTypeFactory;
+        return new AnnotationLocation.DeferredLocation(
+                () -> VariableAnnotator.pathToLocation(typeFactory, path));
+    }
+
+    private AnnotationLocation computeCurrentLocation() {
+        return VariableAnnotator.pathToLocation(inferenceTypeFactory, visitorState.getPath());
     }
 
     // All addXXXConstraint methods create a (possibly normalized) constraint for the given slots.
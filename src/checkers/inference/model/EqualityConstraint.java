@@ -94,7 +94,7 @@ public class EqualityConstraint extends Constraint implements BinaryConstraint {
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         int result = 1;
         result = result + ((first == null) ? 0 : first.hashCode());
         result = result + ((second == null) ? 0 : second.hashCode());
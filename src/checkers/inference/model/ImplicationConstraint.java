@@ -144,7 +144,7 @@ public class ImplicationConstraint extends Constraint {
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         return Objects.hash(assumptions, conclusion);
     }
 
@@ -48,7 +48,7 @@ public class PreferenceConstraint extends Constraint {
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         final int prime = 31;
         int result = 1;
         result = prime * result + ((variable == null) ? 0 : variable.hashCode());
@@ -0,0 +1,222 @@
+package checkers.inference.model;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * A dense, array-backed store of {@link Slot}s indexed by slot id.
+ *
+ * Slot ids handed out by a {@link checkers.inference.SlotManager} are small, dense and
+ * monotonically increasing, so slots are kept in a growable array where the id is the index.
+ * The ids of each kind of slot are additionally recorded in a {@link BitSet} (for membership
+ * tests and primitive iteration) and in an insertion-ordered {@code int[]} (for random access
+ * views). No boxing or per-slot map entries are needed.
+ *
+ * The list views returned by {@link #getSlots()}, {@link #getVariableSlots()} and
+ * {@link #getConstantSlots()} do not copy anything. They are read-only and contain exactly the
+ * slots that were in the store when the view was created; slots added later are not visible
+ * through an existing view.
+ *
+ * This class is not thread safe.
+ */
+public class SlotStore {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /** Slots indexed by id. Entries for ids that were never added are null. */
+    private Slot[] slots;
+
+    /** Ids of all slots, variable slots and constant slots in the order they were added. */
+    private final IdList slotIds = new IdList();
+    private final IdList variableSlotIds = new IdList();
+    private final IdList constantSlotIds = new IdList();
+
+    /** Ids of all VariableSlots (including subclasses of VariableSlot). */
+    private final BitSet variableIdSet = new BitSet();
+
+    /** Ids of all ConstantSlots. */
+    private final BitSet constantIdSet = new BitSet();
+
+    public SlotStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedMaxId the largest id this store is expected to hold. The store grows past
+     *                      this if needed.
+     */
+    public SlotStore(int expectedMaxId) {
+        this.slots = new Slot[Math.max(expectedMaxId + 1, 1)];
+    }
+
+    /**
+     * Add the given slot to this store. A slot with the same id must not already be present.
+     */
+    public void add(Slot slot) {
+        final int id = slot.getId();
+        if (id < 0) {
+            throw new BugInCF("Slot ids must be non-negative: " + slot);
+        }
+        ensureCapacity(id + 1);
+        if (slots[id] != null) {
+            throw new BugInCF("A slot with id " + id + " is already stored: " + slots[id]);
+        }
+
+        slots[id] = slot;
+        slotIds.add(id);
+        if (slot instanceof VariableSlot) {
+            variableIdSet.set(id);
+            variableSlotIds.add(id);
+        } else if (slot instanceof ConstantSlot) {
+            constantIdSet.set(id);
+            constantSlotIds.add(id);
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > slots.length) {
+            int newCapacity = Math.max(minCapacity, slots.length + (slots.length >> 1) + 1);
+            slots = Arrays.copyOf(slots, newCapacity);
+        }
+    }
+
+    /**
+     * @return the slot with the given id, or null if no such slot has been added
+     */
+    public Slot get(int id) {
+        if (id < 0 || id >= slots.length) {
+            return null;
+        }
+        return slots[id];
+    }
+
+    public boolean contains(int id) {
+        return get(id) != null;
+    }
+
+    public boolean isVariable(int id) {
+        return id >= 0 && variableIdSet.get(id);
+    }
+
+    public boolean isConstant(int id) {
+        return id >= 0 && constantIdSet.get(id);
+    }
+
+    /**
+     * @return the number of slots in this store
+     */
+    public int size() {
+        return slotIds.size;
+    }
+
+    public int getNumberOfVariableSlots() {
+        return variableSlotIds.size;
+    }
+
+    public int getNumberOfConstantSlots() {
+        return constantSlotIds.size;
+    }
+
+    /**
+     * Returns the smallest VariableSlot id that is greater than or equal to {@code fromId}, or -1
+     * if there is none. Intended for allocation-free iteration in the style of
+     * {@link BitSet#nextSetBit(int)}:
+     * <pre>{@code
+     * for (int id = store.nextVariableId(0); id >= 0; id = store.nextVariableId(id + 1)) { ... }
+     * }</pre>
+     */
+    public int nextVariableId(int fromId) {
+        return variableIdSet.nextSetBit(fromId);
+    }
+
+    /**
+     * Returns the smallest ConstantSlot id that is greater than or equal to {@code fromId}, or -1
+     * if there is none.
+     * @see #nextVariableId(int)
+     */
+    public int nextConstantId(int fromId) {
+        return constantIdSet.nextSetBit(fromId);
+    }
+
+    /**
+     * @return the ids of all VariableSlots in increasing order
+     */
+    public IntStream variableIds() {
+        return variableIdSet.stream();
+    }
+
+    /**
+     * @return the ids of all ConstantSlots in increasing order
+     */
+    public IntStream constantIds() {
+        return constantIdSet.stream();
+    }
+
+    /**
+     * @return a read-only view of all slots, in the order they were added
+     */
+    public List<Slot> getSlots() {
+        return new SlotView<>(slotIds, slotIds.size);
+    }
+
+    /**
+     * @return a read-only view of all VariableSlots, in the order they were added
+     */
+    public List<VariableSlot> getVariableSlots() {
+        return new SlotView<>(variableSlotIds, variableSlotIds.size);
+    }
+
+    /**
+     * @return a read-only view of all ConstantSlots, in the order they were added
+     */
+    public List<ConstantSlot> getConstantSlots() {
+        return new SlotView<>(constantSlotIds, constantSlotIds.size);
+    }
+
+    /**
+     * A read-only list of the slots whose ids are the first {@code size} entries of an
+     * {@link IdList}. Since ids are only ever appended, those entries never change.
+     */
+    private class SlotView<S extends Slot> extends AbstractList<S> implements RandomAccess {
+        private final IdList ids;
+        private final int size;
+
+        private SlotView(IdList ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public S get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (S) slots[ids.elements[index]];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /** A minimal growable list of primitive ints. */
+    private static class IdList {
+        private int[] elements = new int[DEFAULT_CAPACITY];
+        private int size = 0;
+
+        private void add(int id) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, elements.length + (elements.length >> 1) + 1);
+            }
+            elements[size++] = id;
+        }
+    }
+}
@@ -125,7 +125,7 @@ public class SubtypeConstraint extends Constraint implements BinaryConstraint {
     }
 
     @Override
-    public int hashCode() {
+    protected int computeHashCode() {
         final int prime = 31;
         int result = 1;
         result = prime * result + ((subtype == null) ? 0 : subtype.hashCode());
@@ -0,0 +1,54 @@
+package checkers.inference.model;
+
+import java.util.Collections;
+
+import org.checkerframework.javacutil.BugInCF;
+
+/**
+ * Represents the restriction that a variable slot is assigned exactly one qualifier of the
+ * lattice. Solvers add this restriction for every variable slot themselves, so it is never
+ * created by the {@link ConstraintManager} and never serialized; it only appears in explanations
+ * of unsatisfiable constraints, when the restriction is part of the conflict.
+ */
+public class WellFormednessConstraint extends Constraint {
+
+    private final Slot slot;
+
+    public WellFormednessConstraint(Slot slot) {
+        super(Collections.singletonList(slot));
+        this.slot = slot;
+    }
+
+    @Override
+    public <S, T> T serialize(Serializer<S, T> serializer) {
+        throw new BugInCF(
+                "Attempting to serialize a " + WellFormednessConstraint.class.getCanonicalName()
+                        + ". This constraint should never be serialized.");
+    }
+
+    public Slot getSlot() {
+        return slot;
+    }
+
+    @Override
+    protected int computeHashCode() {
+        return 31 + slot.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        WellFormednessConstraint other = (WellFormednessConstraint) obj;
+        return slot.equals(other.slot);
+    }
+
+    @Override
+    public String toString() {
+        return "WellFormednessConstraint: " + slot + " has exactly one qualifier";
+    }
+}
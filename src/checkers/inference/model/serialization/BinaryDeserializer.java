@@ -0,0 +1,405 @@
+package checkers.inference.model.serialization;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.VariableSlot;
+import static checkers.inference.model.serialization.BinarySerializer.ANNOTATION_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.ARITHMETIC_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.COMBINE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.COMPARABLE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.END_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.EQUALITY_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.EXISTENTIAL_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.IMPLICATION_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.INEQUALITY_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.MAGIC;
+import static checkers.inference.model.serialization.BinarySerializer.PREFERENCE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.SUBTYPE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.VALUE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.VERSION;
+
+/**
+ * Reads the binary format written by {@link BinarySerializer}, one constraint at a time.
+ *
+ * Decoded slots and constraints are passed to a {@link RecordBuilder}, so the same reader is used
+ * to create inference Constraints ({@link ConstraintBuilder}) and to convert to JSON
+ * ({@link JsonBinaryConverter}).
+ */
+public class BinaryDeserializer implements Closeable {
+
+    /**
+     * Creates the result of deserialization from the decoded records.
+     *
+     * @param <S> the type of slots
+     * @param <C> the type of constraints
+     */
+    public interface RecordBuilder<S, C> {
+        S variable(int id);
+
+        S constant(String annotation);
+
+        C subtype(S subtype, S supertype);
+
+        C equality(S first, S second);
+
+        C inequality(S first, S second);
+
+        C comparable(S first, S second);
+
+        C combine(S target, S declared, S result);
+
+        C preference(S variable, S goal, int weight);
+
+        C existential(S potential, List<C> thenConstraints, List<C> elseConstraints);
+
+        C implication(List<C> assumptions, C conclusion);
+
+        C arithmetic(String operation, S leftOperand, S rightOperand, S result);
+
+        /** Called for the solution of a variable. */
+        void value(int variableId, S value);
+    }
+
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+
+    private final ByteBuffer in = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+
+    /** The body of the record currently being read. */
+    private ByteBuffer record = ByteBuffer.allocate(256);
+
+    private final List<String> annotationTable = new ArrayList<>();
+
+    private boolean finished = false;
+
+    /**
+     * @param channel the channel to read from; it is closed by {@link #close()}
+     * @throws IllegalArgumentException if the channel does not start with a supported header
+     */
+    public BinaryDeserializer(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        in.limit(0);
+
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = (magic << 8) | (readByte() & 0xFF);
+        }
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException("Parse error: not a binary constraint file");
+        }
+        int version = readVarInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Parse error: unsupported binary constraint file version: " + version);
+        }
+    }
+
+    /**
+     * Reads up to and including the next top-level constraint. Solutions read on the way are passed
+     * to {@link RecordBuilder#value}.
+     *
+     * @return the constraint created by {@code builder}, or null at the end of the file
+     */
+    public <S, C> C readConstraint(RecordBuilder<S, C> builder) throws IOException {
+        while (!finished) {
+            int length = readVarInt();
+            if (length == 0) {
+                finished = true;
+                break;
+            }
+            readRecord(length);
+
+            int tag = readRecordVarInt();
+            switch (tag) {
+                case ANNOTATION_TAG:
+                    annotationTable.add(readRecordString());
+                    break;
+                case VALUE_TAG:
+                    int variableId = readRecordVarInt();
+                    builder.value(variableId, readSlot(builder));
+                    break;
+                default:
+                    if (tag > ARITHMETIC_TAG) {
+                        // A record added by a later version of the format.
+                        break;
+                    }
+                    return readConstraintBody(tag, builder);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads all remaining constraints.
+     */
+    public <S, C> List<C> readConstraints(RecordBuilder<S, C> builder) throws IOException {
+        List<C> results = new LinkedList<>();
+        C constraint;
+        while ((constraint = readConstraint(builder)) != null) {
+            results.add(constraint);
+        }
+        return results;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private <S, C> C readConstraintBody(int tag, RecordBuilder<S, C> builder) {
+        switch (tag) {
+            case SUBTYPE_TAG:
+                return builder.subtype(readSlot(builder), readSlot(builder));
+            case EQUALITY_TAG:
+                return builder.equality(readSlot(builder), readSlot(builder));
+            case INEQUALITY_TAG:
+                return builder.inequality(readSlot(builder), readSlot(builder));
+            case COMPARABLE_TAG:
+                return builder.comparable(readSlot(builder), readSlot(builder));
+            case COMBINE_TAG:
+                return builder.combine(readSlot(builder), readSlot(builder), readSlot(builder));
+            case PREFERENCE_TAG: {
+                S variable = readSlot(builder);
+                S goal = readSlot(builder);
+                int zigzag = readRecordVarInt();
+                return builder.preference(variable, goal, (zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            case EXISTENTIAL_TAG: {
+                S potential = readSlot(builder);
+                List<C> thenConstraints = readList(builder);
+                List<C> elseConstraints = readList(builder);
+                return builder.existential(potential, thenConstraints, elseConstraints);
+            }
+            case IMPLICATION_TAG: {
+                List<C> assumptions = readList(builder);
+                int conclusionTag = readRecordVarInt();
+                return builder.implication(assumptions, readConstraintBody(conclusionTag, builder));
+            }
+            case ARITHMETIC_TAG: {
+                String operation = readRecordString();
+                return builder.arithmetic(operation, readSlot(builder), readSlot(builder), readSlot(builder));
+            }
+            default:
+                throw new IllegalArgumentException("Parse error: unknown constraint tag: " + tag);
+        }
+    }
+
+    private <S, C> List<C> readList(RecordBuilder<S, C> builder) {
+        List<C> constraints = new ArrayList<>();
+        int tag;
+        while ((tag = readRecordVarInt()) != END_TAG) {
+            constraints.add(readConstraintBody(tag, builder));
+        }
+        return constraints;
+    }
+
+    private <S> S readSlot(RecordBuilder<S, ?> builder) {
+        int value = readRecordVarInt();
+        int id = value >>> 1;
+        if ((value & 1) == 0) {
+            return builder.variable(id);
+        }
+        if (id >= annotationTable.size()) {
+            throw new IllegalArgumentException("Parse error: undefined annotation: " + id);
+        }
+        return builder.constant(annotationTable.get(id));
+    }
+
+    private int readRecordVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!record.hasRemaining()) {
+                throw new IllegalArgumentException("Parse error: truncated record");
+            }
+            byte b = record.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Parse error: malformed varint");
+    }
+
+    private String readRecordString() {
+        int length = readRecordVarInt();
+        if (length > record.remaining()) {
+            throw new IllegalArgumentException("Parse error: truncated record");
+        }
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private void readRecord(int length) throws IOException {
+        if (record.capacity() < length) {
+            record = ByteBuffer.allocate(Math.max(length, record.capacity() * 2));
+        }
+        record.clear();
+        record.limit(length);
+        while (record.hasRemaining()) {
+            if (!in.hasRemaining()) {
+                fill();
+            }
+            int chunk = Math.min(record.remaining(), in.remaining());
+            int oldLimit = in.limit();
+            in.limit(in.position() + chunk);
+            record.put(in);
+            in.limit(oldLimit);
+        }
+        record.flip();
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Parse error: malformed varint");
+    }
+
+    private byte readByte() throws IOException {
+        if (!in.hasRemaining()) {
+            fill();
+        }
+        return in.get();
+    }
+
+    private void fill() throws IOException {
+        in.clear();
+        int read;
+        do {
+            read = channel.read(in);
+        } while (read == 0);
+        in.flip();
+        if (read < 0) {
+            throw new EOFException("Unexpected end of binary constraint file");
+        }
+    }
+
+    /**
+     * Creates inference Constraints in the same way as {@link JsonDeserializer}: variables become
+     * SourceVariableSlots without a location and constants are created by the slot manager.
+     * Solutions are collected in {@link #getSolutions()}.
+     */
+    public static class ConstraintBuilder implements RecordBuilder<Slot, Constraint> {
+
+        private final AnnotationMirrorSerializer annotationSerializer;
+        private final ConstraintManager constraintManager;
+        private final SlotManager slotManager;
+
+        private final Map<String, ConstantSlot> constants = new HashMap<>();
+        private final Map<Integer, AnnotationMirror> solutions = new HashMap<>();
+
+        public ConstraintBuilder(AnnotationMirrorSerializer annotationSerializer) {
+            this(annotationSerializer, InferenceMain.getInstance().getConstraintManager(),
+                    InferenceMain.getInstance().getSlotManager());
+        }
+
+        public ConstraintBuilder(AnnotationMirrorSerializer annotationSerializer,
+                                 ConstraintManager constraintManager, SlotManager slotManager) {
+            this.annotationSerializer = annotationSerializer;
+            this.constraintManager = constraintManager;
+            this.slotManager = slotManager;
+        }
+
+        public Map<Integer, AnnotationMirror> getSolutions() {
+            return solutions;
+        }
+
+        @Override
+        public Slot variable(int id) {
+            return new SourceVariableSlot(id, AnnotationLocation.MISSING_LOCATION, null, true);
+        }
+
+        @Override
+        public Slot constant(String annotation) {
+            ConstantSlot slot = constants.get(annotation);
+            if (slot == null) {
+                slot = slotManager.createConstantSlot(annotationSerializer.deserialize(annotation));
+                constants.put(annotation, slot);
+            }
+            return slot;
+        }
+
+        @Override
+        public Constraint subtype(Slot subtype, Slot supertype) {
+            return constraintManager.createSubtypeConstraint(subtype, supertype);
+        }
+
+        @Override
+        public Constraint equality(Slot first, Slot second) {
+            return constraintManager.createEqualityConstraint(first, second);
+        }
+
+        @Override
+        public Constraint inequality(Slot first, Slot second) {
+            return constraintManager.createInequalityConstraint(first, second);
+        }
+
+        @Override
+        public Constraint comparable(Slot first, Slot second) {
+            return constraintManager.createComparableConstraint(first, second);
+        }
+
+        @Override
+        public Constraint combine(Slot target, Slot declared, Slot result) {
+            throw new IllegalArgumentException("Parse error: combine constraints cannot be deserialized");
+        }
+
+        @Override
+        public Constraint preference(Slot variable, Slot goal, int weight) {
+            if (!(variable instanceof VariableSlot) || !(goal instanceof ConstantSlot)) {
+                throw new IllegalArgumentException("Parse error: malformed preference constraint");
+            }
+            return constraintManager.createPreferenceConstraint((VariableSlot) variable, (ConstantSlot) goal, weight);
+        }
+
+        @Override
+        public Constraint existential(Slot potential, List<Constraint> thenConstraints,
+                                      List<Constraint> elseConstraints) {
+            return constraintManager.createExistentialConstraint(potential, thenConstraints, elseConstraints);
+        }
+
+        @Override
+        public Constraint implication(List<Constraint> assumptions, Constraint conclusion) {
+            return constraintManager.createImplicationConstraint(assumptions, conclusion);
+        }
+
+        @Override
+        public Constraint arithmetic(String operation, Slot leftOperand, Slot rightOperand, Slot result) {
+            throw new IllegalArgumentException("Parse error: arithmetic constraints cannot be deserialized");
+        }
+
+        @Override
+        public void value(int variableId, Slot value) {
+            if (!(value instanceof ConstantSlot)) {
+                throw new IllegalArgumentException("Parse error: the value of a variable must be a constant");
+            }
+            solutions.put(variableId, ((ConstantSlot) value).getValue());
+        }
+    }
+}
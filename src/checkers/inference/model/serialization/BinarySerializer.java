@@ -0,0 +1,463 @@
+package checkers.inference.model.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.ArithmeticConstraint;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Serializer;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.SubtypeConstraint;
+
+/**
+ * Serializes constraints and solutions to a compact binary format, streaming them to a channel
+ * one constraint at a time. It carries the same information as the format of
+ * {@link JsonSerializer}, see {@link JsonBinaryConverter} to convert between the two.
+ *
+ * The format is:
+ *
+ * <pre>
+ * file       := MAGIC (4 bytes) version (varint) record* end
+ * record     := length (varint, &gt; 0) tag (varint) body
+ * end        := 0 (varint)
+ *
+ * ANNOTATION := string                     defines the next entry of the annotation table
+ * VALUE      := varint(id) slot            the solution of a variable
+ * SUBTYPE    := slot(sub) slot(sup)
+ * EQUALITY, INEQUALITY, COMPARABLE := slot slot
+ * COMBINE    := slot(target) slot(declared) slot(result)
+ * PREFERENCE := slot(variable) slot(goal) zigzag-varint(weight)
+ * EXISTENTIAL := slot(potential) list(then) list(else)
+ * IMPLICATION := list(assumptions) constraint(conclusion)
+ * ARITHMETIC := string(operation) slot(left) slot(right) slot(result)
+ *
+ * slot       := varint(id &lt;&lt; 1) for variables, varint(index &lt;&lt; 1 | 1) for constants,
+ *               where index refers to the annotation table
+ * constraint := tag body                   nested constraints are not length-prefixed
+ * list       := constraint* 0
+ * string     := varint(length) UTF-8 bytes
+ * </pre>
+ *
+ * Every annotation is written once, in an ANNOTATION record preceding its first use. Readers
+ * skip records with unknown tags, using their length.
+ *
+ * If a nested constraint cannot be serialized, the whole top-level constraint containing it is
+ * skipped, since a constraint with a missing part has no meaning.
+ */
+public class BinarySerializer implements Serializer<Void, Void>, Closeable {
+
+    /** "CFIB" */
+    protected static final int MAGIC = 0x43464942;
+    protected static final int VERSION = 1;
+
+    protected static final int END_TAG = 0;
+    protected static final int ANNOTATION_TAG = 1;
+    protected static final int VALUE_TAG = 2;
+    protected static final int SUBTYPE_TAG = 3;
+    protected static final int EQUALITY_TAG = 4;
+    protected static final int INEQUALITY_TAG = 5;
+    protected static final int COMPARABLE_TAG = 6;
+    protected static final int COMBINE_TAG = 7;
+    protected static final int PREFERENCE_TAG = 8;
+    protected static final int EXISTENTIAL_TAG = 9;
+    protected static final int IMPLICATION_TAG = 10;
+    protected static final int ARITHMETIC_TAG = 11;
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final AnnotationMirrorSerializer annotationSerializer;
+
+    private final ByteBuffer out = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+
+    /** The body of the record currently being written. */
+    private final RecordBuffer record = new RecordBuffer();
+
+    /** ANNOTATION records for annotations first used by the current record. */
+    private final RecordBuffer pending = new RecordBuffer();
+
+    /** Index of each annotation string in the annotation table. */
+    private final Map<String, Integer> annotationTable = new HashMap<>();
+
+    /** Nesting depth of the constraint currently being written. */
+    private int depth = 0;
+
+    /** Whether a nested constraint of the current record was skipped. */
+    private boolean nestedSkipped = false;
+
+    /**
+     * @param channel the channel to write to; it is closed by {@link #close()}
+     * @param annotationSerializer used to serialize the values of constant slots, may be null if
+     * only the {@code write} methods taking annotation strings are used
+     */
+    public BinarySerializer(WritableByteChannel channel, AnnotationMirrorSerializer annotationSerializer) {
+        this.channel = channel;
+        this.annotationSerializer = annotationSerializer;
+        out.putInt(MAGIC);
+        putVarInt(out, VERSION);
+    }
+
+    /**
+     * Writes a top-level constraint. Constraints that cannot be serialized (see
+     * {@link JsonSerializer}), or that contain a nested constraint that cannot be serialized, are
+     * skipped.
+     */
+    public void writeConstraint(Constraint constraint) throws IOException {
+        constraint.serialize(this);
+        flushRecord();
+    }
+
+    public void writeConstraints(Iterable<Constraint> constraints) throws IOException {
+        for (Constraint constraint : constraints) {
+            writeConstraint(constraint);
+        }
+    }
+
+    public void writeSolutions(Map<Integer, AnnotationMirror> solutions) throws IOException {
+        for (Map.Entry<Integer, AnnotationMirror> entry : solutions.entrySet()) {
+            writeValue(entry.getKey(), annotationSerializer.serialize(entry.getValue()));
+        }
+    }
+
+    public void writeValue(int variableId, String annotation) throws IOException {
+        record.putVarInt(VALUE_TAG);
+        record.putVarInt(variableId);
+        writeConstant(annotation);
+        flushRecord();
+    }
+
+    /**
+     * Starts a constraint with the given tag. Its slots and nested constraints are written with
+     * the other {@code write} methods, and it must be finished with {@link #endConstraint()}. A
+     * top-level constraint is only written to the channel by {@link #flushRecord()}.
+     */
+    protected void beginConstraint(int tag) {
+        depth++;
+        record.putVarInt(tag);
+    }
+
+    protected void endConstraint() {
+        depth--;
+    }
+
+    /** Terminates a list of nested constraints. */
+    protected void endList() {
+        record.putVarInt(END_TAG);
+    }
+
+    protected void writeVariable(int id) {
+        record.putVarInt(id << 1);
+    }
+
+    protected void writeConstant(String annotation) {
+        Integer index = annotationTable.get(annotation);
+        if (index == null) {
+            index = annotationTable.size();
+            annotationTable.put(annotation, index);
+
+            byte[] bytes = annotation.getBytes(StandardCharsets.UTF_8);
+            pending.putVarInt(varIntSize(ANNOTATION_TAG) + varIntSize(bytes.length) + bytes.length);
+            pending.putVarInt(ANNOTATION_TAG);
+            pending.putVarInt(bytes.length);
+            pending.put(bytes, 0, bytes.length);
+        }
+        record.putVarInt(index << 1 | 1);
+    }
+
+    protected void writeInt(int value) {
+        record.putVarInt((value << 1) ^ (value >> 31));
+    }
+
+    protected void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        record.putVarInt(bytes.length);
+        record.put(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a nested constraint. If it writes nothing because it cannot be serialized, the
+     * enclosing top-level constraint is discarded by {@link #flushRecord()}.
+     */
+    protected void writeNested(Constraint constraint) {
+        int size = record.size;
+        constraint.serialize(this);
+        if (record.size == size) {
+            nestedSkipped = true;
+        }
+    }
+
+    /**
+     * Writes the current record, preceded by the definitions of the annotations it introduced, to
+     * the channel. Does nothing if the current record is empty, e.g. because the constraint was
+     * skipped, and discards it if one of its nested constraints was skipped. The definitions of
+     * the annotations are written in either case, as they are already in the annotation table.
+     */
+    protected void flushRecord() throws IOException {
+        if (depth != 0) {
+            throw new IllegalStateException("Unfinished constraint at depth " + depth);
+        }
+        write(pending.data, 0, pending.size);
+        pending.size = 0;
+        if (nestedSkipped) {
+            record.size = 0;
+            nestedSkipped = false;
+        }
+        if (record.size != 0) {
+            RecordBuffer length = new RecordBuffer();
+            length.putVarInt(record.size);
+            write(length.data, 0, length.size);
+            write(record.data, 0, record.size);
+            record.size = 0;
+        }
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!out.hasRemaining()) {
+                drain();
+            }
+            int chunk = Math.min(length, out.remaining());
+            out.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Writes the end marker and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushRecord();
+            write(new byte[] {END_TAG}, 0, 1);
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void serializeSlot(Slot slot) {
+        writeVariable(slot.getId());
+    }
+
+    private void serializeList(Iterable<Constraint> constraints) {
+        for (Constraint constraint : constraints) {
+            writeNested(constraint);
+        }
+        endList();
+    }
+
+    private void serializeBinary(int tag, Slot first, Slot second) {
+        beginConstraint(tag);
+        first.serialize(this);
+        second.serialize(this);
+        endConstraint();
+    }
+
+    @Override
+    public Void serialize(SourceVariableSlot slot) {
+        serializeSlot(slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(RefinementVariableSlot slot) {
+        serializeSlot(slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(ExistentialVariableSlot slot) {
+        throw new UnsupportedOperationException("Existential slots should be normalized away before serialization.");
+    }
+
+    @Override
+    public Void serialize(ConstantSlot slot) {
+        writeConstant(annotationSerializer.serialize(slot.getValue()));
+        return null;
+    }
+
+    @Override
+    public Void serialize(CombVariableSlot slot) {
+        serializeSlot(slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(LubVariableSlot slot) {
+        serializeSlot(slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(ArithmeticVariableSlot slot) {
+        serializeSlot(slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(SubtypeConstraint constraint) {
+        if (constraint.getSubtype() != null && constraint.getSupertype() != null) {
+            serializeBinary(SUBTYPE_TAG, constraint.getSubtype(), constraint.getSupertype());
+        }
+        return null;
+    }
+
+    @Override
+    public Void serialize(EqualityConstraint constraint) {
+        if (constraint.getFirst() != null && constraint.getSecond() != null) {
+            serializeBinary(EQUALITY_TAG, constraint.getFirst(), constraint.getSecond());
+        }
+        return null;
+    }
+
+    @Override
+    public Void serialize(InequalityConstraint constraint) {
+        if (constraint.getFirst() != null && constraint.getSecond() != null) {
+            serializeBinary(INEQUALITY_TAG, constraint.getFirst(), constraint.getSecond());
+        }
+        return null;
+    }
+
+    @Override
+    public Void serialize(ComparableConstraint constraint) {
+        if (constraint.getFirst() != null && constraint.getSecond() != null) {
+            serializeBinary(COMPARABLE_TAG, constraint.getFirst(), constraint.getSecond());
+        }
+        return null;
+    }
+
+    @Override
+    public Void serialize(ExistentialConstraint constraint) {
+        beginConstraint(EXISTENTIAL_TAG);
+        constraint.getPotentialVariable().serialize(this);
+        serializeList(constraint.potentialConstraints());
+        serializeList(constraint.getAlternateConstraints());
+        endConstraint();
+        return null;
+    }
+
+    @Override
+    public Void serialize(CombineConstraint constraint) {
+        if (constraint.getTarget() == null || constraint.getDeclared() == null || constraint.getResult() == null) {
+            return null;
+        }
+
+        beginConstraint(COMBINE_TAG);
+        constraint.getTarget().serialize(this);
+        constraint.getDeclared().serialize(this);
+        constraint.getResult().serialize(this);
+        endConstraint();
+        return null;
+    }
+
+    @Override
+    public Void serialize(PreferenceConstraint constraint) {
+        if (constraint.getVariable() == null || constraint.getGoal() == null) {
+            return null;
+        }
+
+        beginConstraint(PREFERENCE_TAG);
+        constraint.getVariable().serialize(this);
+        constraint.getGoal().serialize(this);
+        writeInt(constraint.getWeight());
+        endConstraint();
+        return null;
+    }
+
+    @Override
+    public Void serialize(ImplicationConstraint constraint) {
+        beginConstraint(IMPLICATION_TAG);
+        serializeList(constraint.getAssumptions());
+        writeNested(constraint.getConclusion());
+        endConstraint();
+        return null;
+    }
+
+    @Override
+    public Void serialize(ArithmeticConstraint constraint) {
+        beginConstraint(ARITHMETIC_TAG);
+        writeString(constraint.getOperation().name());
+        constraint.getLeftOperand().serialize(this);
+        constraint.getRightOperand().serialize(this);
+        constraint.getResult().serialize(this);
+        endConstraint();
+        return null;
+    }
+
+    protected static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /** Writes an unsigned LEB128 varint. */
+    protected static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /** A growable byte array. */
+    private static class RecordBuffer {
+        private byte[] data = new byte[256];
+        private int size = 0;
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+
+        private void putVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void put(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+    }
+}
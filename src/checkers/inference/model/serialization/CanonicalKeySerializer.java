@@ -0,0 +1,143 @@
+package checkers.inference.model.serialization;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+
+/**
+ * Serializes a set of constraints to a canonical string that does not depend on the slot ids, so
+ * that two sets of constraints that only differ in the numbering of their slots have the same key.
+ *
+ * The variable slots of the constraints are relabeled 0, 1, 2, ... in the order of their ids and
+ * keep their kind, constants are represented by their annotation, and the serialized constraints
+ * are sorted, as are the serialized assumptions of every implication.
+ * Unlike {@link LocationKeySerializer}, the key does not depend on source locations either, so
+ * structurally identical constraints from different code have the same key.
+ */
+public class CanonicalKeySerializer extends JsonSerializer {
+
+    /** The variable slot ids of the constraints, in the order of their labels. */
+    private final List<Integer> variableIds;
+
+    /** The label of every variable slot, by slot id. */
+    private final Map<Integer, Integer> labels = new HashMap<>();
+
+    private final String key;
+
+    public CanonicalKeySerializer(Collection<Constraint> constraints) {
+        super(null, null, null, null);
+
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                if (!(slot instanceof ConstantSlot)) {
+                    ids.add(slot.getId());
+                }
+            }
+        }
+        this.variableIds = new ArrayList<>(ids);
+        for (int label = 0; label < variableIds.size(); label++) {
+            labels.put(variableIds.get(label), label);
+        }
+
+        List<String> constraintKeys = new ArrayList<>(constraints.size());
+        for (Constraint constraint : constraints) {
+            JSONObject obj = constraint.serialize(this);
+            constraintKeys.add(obj == null ? constraint.getClass().getSimpleName() : obj.toJSONString());
+        }
+        Collections.sort(constraintKeys);
+        this.key = String.join("\n", constraintKeys);
+    }
+
+    /**
+     * @return the canonical string of the constraints
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the ids of the variable slots of the constraints; the index of an id is the label of
+     * the slot
+     */
+    public List<Integer> getVariableIds() {
+        return variableIds;
+    }
+
+    @Override
+    protected String getConstantString(AnnotationMirror value) {
+        return value.toString();
+    }
+
+    /**
+     * Serializes a variable slot by its label and kind: back ends encode some kinds of slots
+     * differently, e.g. the result of a lub or an arithmetic operation.
+     */
+    private String serializeVariable(Slot slot) {
+        return VAR_PREFIX + labels.get(slot.getId()) + ":" + slot.getKind();
+    }
+
+    /**
+     * Sorts the serialized assumptions, which {@link JsonSerializer} writes in the iteration order of
+     * the assumption set, i.e. in an order that depends on the slot ids.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public JSONObject serialize(ImplicationConstraint implicationConstraint) {
+        JSONObject obj = super.serialize(implicationConstraint);
+        List<JSONObject> assumptions = (List<JSONObject>) obj.get(IMPLICATION_ASSUMPTIONS);
+        assumptions.sort(Comparator.comparing(JSONValue::toJSONString));
+        return obj;
+    }
+
+    @Override
+    public String serialize(SourceVariableSlot slot) {
+        return serializeVariable(slot);
+    }
+
+    @Override
+    public String serialize(RefinementVariableSlot slot) {
+        return serializeVariable(slot);
+    }
+
+    @Override
+    public String serialize(ExistentialVariableSlot slot) {
+        return serializeVariable(slot);
+    }
+
+    @Override
+    public String serialize(CombVariableSlot slot) {
+        return serializeVariable(slot);
+    }
+
+    @Override
+    public String serialize(LubVariableSlot slot) {
+        return serializeVariable(slot);
+    }
+
+    @Override
+    public String serialize(ArithmeticVariableSlot slot) {
+        return serializeVariable(slot);
+    }
+}
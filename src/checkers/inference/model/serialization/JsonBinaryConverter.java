@@ -0,0 +1,347 @@
+package checkers.inference.model.serialization;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import static checkers.inference.model.serialization.BinarySerializer.ARITHMETIC_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.COMBINE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.COMPARABLE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.EQUALITY_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.EXISTENTIAL_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.IMPLICATION_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.INEQUALITY_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.PREFERENCE_TAG;
+import static checkers.inference.model.serialization.BinarySerializer.SUBTYPE_TAG;
+import static checkers.inference.model.serialization.JsonSerializer.ARITH_LEFT_OPERAND;
+import static checkers.inference.model.serialization.JsonSerializer.ARITH_RESULT;
+import static checkers.inference.model.serialization.JsonSerializer.ARITH_RIGHT_OPERAND;
+import static checkers.inference.model.serialization.JsonSerializer.COMB_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.COMB_DECL;
+import static checkers.inference.model.serialization.JsonSerializer.COMB_RESULT;
+import static checkers.inference.model.serialization.JsonSerializer.COMB_TARGET;
+import static checkers.inference.model.serialization.JsonSerializer.COMP_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.COMP_LHS;
+import static checkers.inference.model.serialization.JsonSerializer.COMP_RHS;
+import static checkers.inference.model.serialization.JsonSerializer.CONSTRAINTS_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.EQUALITY_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.EQUALITY_LHS;
+import static checkers.inference.model.serialization.JsonSerializer.EQUALITY_RHS;
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_ELSE;
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_ID;
+import static checkers.inference.model.serialization.JsonSerializer.EXISTENTIAL_THEN;
+import static checkers.inference.model.serialization.JsonSerializer.IMPLICATION_ASSUMPTIONS;
+import static checkers.inference.model.serialization.JsonSerializer.IMPLICATION_CONCLUSTION;
+import static checkers.inference.model.serialization.JsonSerializer.IMPLICATION_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.INEQUALITY_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.INEQUALITY_LHS;
+import static checkers.inference.model.serialization.JsonSerializer.INEQUALITY_RHS;
+import static checkers.inference.model.serialization.JsonSerializer.PREFERENCE_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.PREFERENCE_GOAL;
+import static checkers.inference.model.serialization.JsonSerializer.PREFERENCE_VARIABLE;
+import static checkers.inference.model.serialization.JsonSerializer.PREFERENCE_WEIGHT;
+import static checkers.inference.model.serialization.JsonSerializer.SUBTYPE_CONSTRAINT_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.SUBTYPE_SUB_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.SUBTYPE_SUPER_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.VARIABLES_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.VARIABLES_VALUE_KEY;
+import static checkers.inference.model.serialization.JsonSerializer.VAR_PREFIX;
+import static checkers.inference.model.serialization.JsonSerializer.VERSION;
+import static checkers.inference.model.serialization.JsonSerializer.VERSION_KEY;
+
+/**
+ * Converts constraint files between the JSON format of {@link JsonSerializer} and the binary
+ * format of {@link BinarySerializer}.
+ *
+ * Converting from binary to JSON streams the constraints; converting from JSON to binary has to
+ * parse the whole JSON file first.
+ *
+ * Usage: {@code JsonBinaryConverter input output}. Files ending in ".json" are treated as JSON,
+ * all other files as binary.
+ */
+public class JsonBinaryConverter {
+
+    private static final String SUBTYPE_STR = "<=";
+
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length != 2) {
+            System.out.println("Usage: JsonBinaryConverter input output");
+            System.exit(1);
+        }
+
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        if (isJson(input) && !isJson(output)) {
+            jsonToBinary(input, output);
+        } else if (!isJson(input) && isJson(output)) {
+            binaryToJson(input, output);
+        } else {
+            System.out.println("Exactly one of input and output has to be a .json file.");
+            System.exit(1);
+        }
+    }
+
+    private static boolean isJson(Path file) {
+        return file.toString().endsWith(".json");
+    }
+
+    public static void jsonToBinary(Path json, Path binary) throws IOException, ParseException {
+        JSONObject root;
+        try (Reader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8)) {
+            root = (JSONObject) new JSONParser().parse(reader);
+        }
+
+        try (BinarySerializer serializer = new BinarySerializer(
+                FileChannel.open(binary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING), null)) {
+            JSONArray constraints = (JSONArray) root.get(CONSTRAINTS_KEY);
+            if (constraints != null) {
+                for (Object constraint : constraints) {
+                    writeConstraint(serializer, constraint);
+                    serializer.flushRecord();
+                }
+            }
+
+            JSONObject variables = (JSONObject) root.get(VARIABLES_KEY);
+            if (variables != null) {
+                for (Object obj : variables.entrySet()) {
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+                    Object value = entry.getValue();
+                    if (value instanceof JSONObject) {
+                        value = ((JSONObject) value).get(VARIABLES_VALUE_KEY);
+                    }
+                    serializer.writeValue(parseVariableId((String) entry.getKey()), (String) value);
+                }
+            }
+        }
+    }
+
+    public static void binaryToJson(Path binary, Path json) throws IOException {
+        JsonBuilder builder = new JsonBuilder();
+        try (BinaryDeserializer deserializer = new BinaryDeserializer(FileChannel.open(binary, StandardOpenOption.READ));
+             Writer writer = Files.newBufferedWriter(json, StandardCharsets.UTF_8)) {
+            writer.write("{\"" + VERSION_KEY + "\":\"" + VERSION + "\",\n\"" + CONSTRAINTS_KEY + "\":[");
+
+            JSONObject constraint;
+            boolean first = true;
+            while ((constraint = deserializer.readConstraint(builder)) != null) {
+                writer.write(first ? "\n" : ",\n");
+                constraint.writeJSONString(writer);
+                first = false;
+            }
+            writer.write("\n]");
+
+            if (!builder.variables.isEmpty()) {
+                writer.write(",\n\"" + VARIABLES_KEY + "\":");
+                builder.variables.writeJSONString(writer);
+            }
+            writer.write("}\n");
+        }
+    }
+
+    private static void writeConstraint(BinarySerializer serializer, Object obj) {
+        if (obj instanceof String) {
+            String[] parts = ((String) obj).trim().split(" ");
+            if (parts.length != 3 || !SUBTYPE_STR.equals(parts[1])) {
+                throw new IllegalArgumentException("Parse error: could not parse constraint: " + obj);
+            }
+            serializer.beginConstraint(SUBTYPE_TAG);
+            writeSlot(serializer, parts[0]);
+            writeSlot(serializer, parts[2]);
+            serializer.endConstraint();
+            return;
+        }
+        if (!(obj instanceof JSONObject)) {
+            throw new IllegalArgumentException("Parse error: unexpected json value: " + obj);
+        }
+
+        JSONObject constraint = (JSONObject) obj;
+        String constraintType = (String) constraint.get(CONSTRAINT_KEY);
+        if (SUBTYPE_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(SUBTYPE_TAG);
+            writeSlots(serializer, constraint, SUBTYPE_SUB_KEY, SUBTYPE_SUPER_KEY);
+        } else if (EQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(EQUALITY_TAG);
+            writeSlots(serializer, constraint, EQUALITY_LHS, EQUALITY_RHS);
+        } else if (INEQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(INEQUALITY_TAG);
+            writeSlots(serializer, constraint, INEQUALITY_LHS, INEQUALITY_RHS);
+        } else if (COMP_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(COMPARABLE_TAG);
+            writeSlots(serializer, constraint, COMP_LHS, COMP_RHS);
+        } else if (COMB_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(COMBINE_TAG);
+            writeSlots(serializer, constraint, COMB_TARGET, COMB_DECL, COMB_RESULT);
+        } else if (PREFERENCE_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(PREFERENCE_TAG);
+            writeSlots(serializer, constraint, PREFERENCE_VARIABLE, PREFERENCE_GOAL);
+            serializer.writeInt(((Number) constraint.get(PREFERENCE_WEIGHT)).intValue());
+        } else if (EXISTENTIAL_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(EXISTENTIAL_TAG);
+            writeSlots(serializer, constraint, EXISTENTIAL_ID);
+            writeList(serializer, (List<?>) constraint.get(EXISTENTIAL_THEN));
+            writeList(serializer, (List<?>) constraint.get(EXISTENTIAL_ELSE));
+        } else if (IMPLICATION_CONSTRAINT_KEY.equals(constraintType)) {
+            serializer.beginConstraint(IMPLICATION_TAG);
+            writeList(serializer, (List<?>) constraint.get(IMPLICATION_ASSUMPTIONS));
+            writeConstraint(serializer, constraint.get(IMPLICATION_CONCLUSTION));
+        } else {
+            ArithmeticOperationKind operation = parseOperation(constraintType);
+            if (operation == null) {
+                throw new IllegalArgumentException("Parse error: unknown constraint type: " + obj);
+            }
+            serializer.beginConstraint(ARITHMETIC_TAG);
+            serializer.writeString(operation.name());
+            writeSlots(serializer, constraint, ARITH_LEFT_OPERAND, ARITH_RIGHT_OPERAND, ARITH_RESULT);
+        }
+        serializer.endConstraint();
+    }
+
+    private static ArithmeticOperationKind parseOperation(String constraintType) {
+        for (ArithmeticOperationKind operation : ArithmeticOperationKind.values()) {
+            if (operation.name().toLowerCase().equals(constraintType)) {
+                return operation;
+            }
+        }
+        return null;
+    }
+
+    private static void writeList(BinarySerializer serializer, List<?> constraints) {
+        if (constraints != null) {
+            for (Object constraint : constraints) {
+                writeConstraint(serializer, constraint);
+            }
+        }
+        serializer.endList();
+    }
+
+    private static void writeSlots(BinarySerializer serializer, JSONObject constraint, String... keys) {
+        for (String key : keys) {
+            writeSlot(serializer, (String) constraint.get(key));
+        }
+    }
+
+    private static void writeSlot(BinarySerializer serializer, String slot) {
+        if (slot == null) {
+            throw new IllegalArgumentException("Parse error: missing slot");
+        }
+        if (slot.startsWith(VAR_PREFIX)) {
+            serializer.writeVariable(parseVariableId(slot));
+        } else {
+            serializer.writeConstant(slot);
+        }
+    }
+
+    private static int parseVariableId(String slot) {
+        return Integer.parseInt(slot.substring(slot.indexOf(':') + 1));
+    }
+
+    /**
+     * Creates the same JSON objects as {@link JsonSerializer}.
+     */
+    private static class JsonBuilder implements BinaryDeserializer.RecordBuilder<String, JSONObject> {
+
+        private final JSONObject variables = new JSONObject();
+
+        @Override
+        public String variable(int id) {
+            return VAR_PREFIX + id;
+        }
+
+        @Override
+        public String constant(String annotation) {
+            return annotation;
+        }
+
+        @SuppressWarnings("unchecked")
+        private JSONObject create(String constraintType, Object... keysAndValues) {
+            JSONObject obj = new JSONObject();
+            obj.put(CONSTRAINT_KEY, constraintType);
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                obj.put(keysAndValues[i], keysAndValues[i + 1]);
+            }
+            return obj;
+        }
+
+        @SuppressWarnings("unchecked")
+        private JSONArray toArray(List<JSONObject> constraints) {
+            JSONArray array = new JSONArray();
+            array.addAll(constraints);
+            return array;
+        }
+
+        @Override
+        public JSONObject subtype(String subtype, String supertype) {
+            return create(SUBTYPE_CONSTRAINT_KEY, SUBTYPE_SUB_KEY, subtype, SUBTYPE_SUPER_KEY, supertype);
+        }
+
+        @Override
+        public JSONObject equality(String first, String second) {
+            return create(EQUALITY_CONSTRAINT_KEY, EQUALITY_LHS, first, EQUALITY_RHS, second);
+        }
+
+        @Override
+        public JSONObject inequality(String first, String second) {
+            return create(INEQUALITY_CONSTRAINT_KEY, INEQUALITY_LHS, first, INEQUALITY_RHS, second);
+        }
+
+        @Override
+        public JSONObject comparable(String first, String second) {
+            return create(COMP_CONSTRAINT_KEY, COMP_LHS, first, COMP_RHS, second);
+        }
+
+        @Override
+        public JSONObject combine(String target, String declared, String result) {
+            return create(COMB_CONSTRAINT_KEY, COMB_TARGET, target, COMB_DECL, declared, COMB_RESULT, result);
+        }
+
+        @Override
+        public JSONObject preference(String variable, String goal, int weight) {
+            return create(PREFERENCE_CONSTRAINT_KEY, PREFERENCE_VARIABLE, variable, PREFERENCE_GOAL, goal,
+                    PREFERENCE_WEIGHT, weight);
+        }
+
+        @Override
+        public JSONObject existential(String potential, List<JSONObject> thenConstraints,
+                                      List<JSONObject> elseConstraints) {
+            return create(EXISTENTIAL_CONSTRAINT_KEY, EXISTENTIAL_ID, potential,
+                    EXISTENTIAL_THEN, toArray(thenConstraints), EXISTENTIAL_ELSE, toArray(elseConstraints));
+        }
+
+        @Override
+        public JSONObject implication(List<JSONObject> assumptions, JSONObject conclusion) {
+            return create(IMPLICATION_CONSTRAINT_KEY, IMPLICATION_ASSUMPTIONS, toArray(assumptions),
+                    IMPLICATION_CONCLUSTION, conclusion);
+        }
+
+        @Override
+        public JSONObject arithmetic(String operation, String leftOperand, String rightOperand, String result) {
+            return create(operation.toLowerCase(), ARITH_LEFT_OPERAND, leftOperand,
+                    ARITH_RIGHT_OPERAND, rightOperand, ARITH_RESULT, result);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void value(int variableId, String value) {
+            JSONObject variable = new JSONObject();
+            variable.put(VARIABLES_VALUE_KEY, value);
+            variables.put(VAR_PREFIX + variableId, variable);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package checkers.inference.model.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.json.simple.JSONObject;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+
+/**
+ * Serializes constraints to strings that do not depend on slot ids, so that the same constraint
+ * generated by two different runs of inference has the same key.
+ *
+ * Slots with a source location are identified by their {@link AnnotationLocation}, constants by
+ * their annotation, and slots without a location (e.g. CombVariableSlot, LubVariableSlot) by a
+ * digest of the keys of the slots they are built from. A slot whose location is missing has no
+ * stable key, and neither does any constraint that uses it.
+ *
+ * Several slots of the same kind can share a location, e.g. the refinement slots of one AST path.
+ * {@link #assignKeys} tells them apart by their order of creation.
+ */
+public class LocationKeySerializer extends JsonSerializer {
+
+    /** Marker returned for slots without a stable key. */
+    private static final String UNSTABLE = "unstable";
+
+    /** Cache of slot keys by slot id. */
+    private final Map<Integer, String> slotKeys = new HashMap<>();
+
+    /** Whether the constraint currently being serialized uses a slot without a stable key. */
+    private boolean unstable;
+
+    public LocationKeySerializer() {
+        super(null, null, null, null);
+    }
+
+    /**
+     * @return the run-independent key of the given constraint, or null if it has none
+     */
+    public String getConstraintKey(Constraint constraint) {
+        unstable = false;
+        JSONObject obj = constraint.serialize(this);
+        if (obj == null || unstable) {
+            return null;
+        }
+        return obj.toJSONString();
+    }
+
+    /**
+     * @return the run-independent key of the given slot, or null if it has none
+     */
+    public String getSlotKey(Slot slot) {
+        String key = slot.serialize(this);
+        return UNSTABLE.equals(key) ? null : key;
+    }
+
+    /**
+     * Assigns the keys of the given slots up front, so that slots that would have the same key get
+     * distinct keys. Slots with a location that share a key are numbered in the order of their ids,
+     * i.e. in the order in which they were created while traversing the same source. Slots built
+     * from other slots that share a key have no stable key.
+     *
+     * @param slots all slots whose keys are used, e.g. the slots of all constraints
+     */
+    public void assignKeys(Collection<? extends Slot> slots) {
+        List<Slot> sorted = new ArrayList<>(slots);
+        sorted.sort(Comparator.comparingInt(Slot::getId));
+
+        Map<String, List<Slot>> locationSlots = new LinkedHashMap<>();
+        List<Slot> derivedSlots = new ArrayList<>();
+        for (Slot slot : sorted) {
+            if (slot instanceof SourceVariableSlot || slot instanceof RefinementVariableSlot
+                    || slot instanceof ArithmeticVariableSlot) {
+                locationSlots.computeIfAbsent(slot.serialize(this), key -> new ArrayList<>()).add(slot);
+            } else if (!(slot instanceof ConstantSlot)) {
+                derivedSlots.add(slot);
+            }
+        }
+        for (Map.Entry<String, List<Slot>> entry : locationSlots.entrySet()) {
+            List<Slot> sameKey = entry.getValue();
+            if (sameKey.size() > 1 && !UNSTABLE.equals(entry.getKey())) {
+                for (int i = 0; i < sameKey.size(); i++) {
+                    slotKeys.put(sameKey.get(i).getId(), entry.getKey() + "#" + i);
+                }
+            }
+        }
+
+        // The keys of derived slots are computed from the numbered keys.
+        Map<String, List<Slot>> derivedKeys = new HashMap<>();
+        for (Slot slot : derivedSlots) {
+            derivedKeys.computeIfAbsent(slot.serialize(this), key -> new ArrayList<>()).add(slot);
+        }
+        for (List<Slot> sameKey : derivedKeys.values()) {
+            if (sameKey.size() > 1) {
+                for (Slot slot : sameKey) {
+                    slotKeys.put(slot.getId(), UNSTABLE);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected String getConstantString(AnnotationMirror value) {
+        return value.toString();
+    }
+
+    @Override
+    public String serialize(SourceVariableSlot slot) {
+        return locationKey(slot, "source:", slot.getLocation());
+    }
+
+    @Override
+    public String serialize(RefinementVariableSlot slot) {
+        return locationKey(slot, "refinement:", slot.getLocation());
+    }
+
+    @Override
+    public String serialize(ArithmeticVariableSlot slot) {
+        return locationKey(slot, "arithmetic:", slot.getLocation());
+    }
+
+    @Override
+    public String serialize(ConstantSlot slot) {
+        return "constant:" + getConstantString(slot.getValue());
+    }
+
+    @Override
+    public String serialize(CombVariableSlot slot) {
+        return derivedKey(slot, "comb:", slot.getFirst(), slot.getSecond());
+    }
+
+    @Override
+    public String serialize(LubVariableSlot slot) {
+        return derivedKey(slot, "lub:", slot.getLeft(), slot.getRight());
+    }
+
+    @Override
+    public String serialize(ExistentialVariableSlot slot) {
+        return derivedKey(slot, "existential:", slot.getPotentialSlot(), slot.getAlternativeSlot());
+    }
+
+    private String locationKey(Slot slot, String prefix, AnnotationLocation location) {
+        String key = slotKeys.get(slot.getId());
+        if (key == null) {
+            if (location == null || location.getKind() == AnnotationLocation.Kind.MISSING) {
+                key = UNSTABLE;
+            } else {
+                key = prefix + location.toString();
+            }
+            slotKeys.put(slot.getId(), key);
+        }
+        return checkStable(key);
+    }
+
+    private String derivedKey(Slot slot, String prefix, Slot first, Slot second) {
+        String key = slotKeys.get(slot.getId());
+        if (key == null) {
+            String firstKey = first == null ? "null" : first.serialize(this);
+            String secondKey = second == null ? "null" : second.serialize(this);
+            if (UNSTABLE.equals(firstKey) || UNSTABLE.equals(secondKey)) {
+                key = UNSTABLE;
+            } else {
+                // Digest the ingredients so that keys of nested slots stay short.
+                key = prefix + digest(firstKey + "," + secondKey);
+            }
+            slotKeys.put(slot.getId(), key);
+        }
+        return checkStable(key);
+    }
+
+    private String checkStable(String key) {
+        if (UNSTABLE.equals(key)) {
+            unstable = true;
+        }
+        return key;
+    }
+
+    /**
+     * @return the hex encoded SHA-256 digest of the given string
+     */
+    public static String digest(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new BugInCF("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package checkers.inference.solver.backend;
+
+import java.util.Collection;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.serialization.CanonicalKeySerializer;
+import checkers.inference.solver.util.SolverResultCache;
+
+/**
+ * Looks up the solution of the constraints of another solver in a {@link SolverResultCache}
+ * before solving them, and stores the solution afterwards. The other solver is only invoked if
+ * the solution is not cached.
+ *
+ * @param <T> type of FormatTranslator required by the other solver
+ */
+public class CachingSolver<T extends FormatTranslator<?, ?, ?>> extends Solver<T> {
+
+    private final Solver<T> solver;
+
+    private final SolverResultCache cache;
+
+    public CachingSolver(Solver<T> solver, SolverResultCache cache) {
+        super(solver.solverEnvironment, solver.slots, solver.constraints, solver.formatTranslator,
+                solver.lattice);
+        this.solver = solver;
+        this.cache = cache;
+    }
+
+    @Override
+    public Map<Integer, AnnotationMirror> solve() {
+        CanonicalKeySerializer canonicalConstraints = new CanonicalKeySerializer(constraints);
+        String key = cache.getKey(canonicalConstraints, lattice);
+
+        Map<Integer, AnnotationMirror> solution = cache.lookup(key, canonicalConstraints, lattice);
+        if (solution != null) {
+            return solution;
+        }
+
+        solution = solver.solve();
+        if (solution != null) {
+            cache.store(key, canonicalConstraints, solution);
+        }
+        return solution;
+    }
+
+    @Override
+    public Collection<Constraint> explainUnsatisfiable() {
+        return solver.explainUnsatisfiable();
+    }
+
+    @Override
+    protected void encodeAllConstraints() {
+        solver.encodeAllConstraints();
+    }
+}
@@ -79,6 +79,13 @@ public abstract class Solver<T extends FormatTranslator<?, ?, ?>> {
         this.lattice = lattice;
     }
 
+    /**
+     * Returns the constraints this solver is responsible for.
+     */
+    public Collection<Constraint> getConstraints() {
+        return constraints;
+    }
+
     /**
      * A concrete solver adapter needs to override this method and implements its own
      * constraint-solving strategy. In general, there will be three steps in this method:
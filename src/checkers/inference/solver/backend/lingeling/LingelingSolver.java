@@ -1,15 +1,13 @@
 package checkers.inference.solver.backend.lingeling;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.util.ArrayList;
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.nio.file.Paths;
 
 import javax.lang.model.element.AnnotationMirror;
 
@@ -17,10 +15,14 @@ import org.sat4j.core.VecInt;
 
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.maxsat.AtMostOneEncoding;
+import checkers.inference.solver.backend.maxsat.DimacsWriter;
 import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
 import checkers.inference.solver.backend.maxsat.MaxSatSolver;
 import checkers.inference.solver.frontend.Lattice;
-import checkers.inference.solver.util.ExternalSolverUtils;
+import checkers.inference.solver.util.ExternalSatSolverRunner;
+import checkers.inference.solver.util.ParallelismUtils;
+import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
 
@@ -28,22 +30,53 @@ import checkers.inference.solver.util.Statistics;
  * LingelingSolver is also a MaxSatSolver but it calls Lingeling SAT solver to solve the clauses. It
  * doesn't support soft constraint.
  *
+ * The clauses are piped to the solver process through stdin, see {@link ExternalSatSolverRunner}.
+ * The DIMACS header has to announce the number of clauses before the first clause, so the
+ * constraints are encoded twice: once to count the clauses, and once more while writing them to
+ * the solver, and with {@code outputCNF} also to the CNF file. Neither pass keeps the clauses in
+ * memory, at the cost of encoding every constraint twice.
+ * Any other SAT solver that reads DIMACS CNF from stdin and reports its result in the format of
+ * the SAT competitions can be used instead of Lingeling through the {@code satSolverCommand}
+ * argument.
+ *
  * @author jianchu
  *
  */
 public class LingelingSolver extends MaxSatSolver {
 
+    protected enum LingelingSolverArg implements SolverArg {
+        /**
+         * The command to run the SAT solver, defaults to "lingeling".
+         */
+        satSolverCommand,
+
+        /**
+         * The maximum number of SAT solver processes running at the same time, defaults to the
+         * number of available processors.
+         */
+        satSolverProcesses;
+    }
+
     // Ensure the path to Lingeling binary executable file has been added into $PATH.
-    private final String lingeling = "lingeling";
+    private static final String lingeling = "lingeling";
 
     // record cnf integers in clauses. lingeling solver give the answer for all
     // the integers from 1 to the largest one. Some of them may be not in the
     // clauses.
-    private Set<Integer> variableSet = new HashSet<Integer>();
+    private final BitSet variableSet = new BitSet();
     private static AtomicInteger nth = new AtomicInteger(0);
     private long serializationStart;
     private long serializationEnd;
 
+    // Whether clauses are encoded for the SAT solver rather than for the explanation of an
+    // unsatisfiable result. While encoding for the SAT solver, clauses are only counted if
+    // there are no clauseWriters, and written to all of them otherwise.
+    private boolean encodingForSatSolver = false;
+    private List<DimacsWriter> clauseWriters = Collections.emptyList();
+    private int numberOfCNFClauses = 0;
+    private int numberOfHardClauses = 0;
+    private int numberOfSoftClauses = 0;
+
     public LingelingSolver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
             Collection<Constraint> constraints, MaxSatFormatTranslator formatTranslator,
             Lattice lattice) {
@@ -55,70 +88,133 @@ public class LingelingSolver extends MaxSatSolver {
         Map<Integer, AnnotationMirror> solutions = null;
 
         this.serializationStart = System.currentTimeMillis();
-        encodeAllConstraints();
-        encodeWellFormednessRestriction();
+        encodeForSatSolver();
         this.serializationEnd = System.currentTimeMillis();
 
-        buildCNFInput();
-        collectVals();
         recordData();
-        int localNth = nth.incrementAndGet();
-        writeCNFInput("cnfdata" + localNth + ".txt");
 
         this.solvingStart = System.currentTimeMillis();
-        int[] resultArray = getSolverOutput(localNth);
-        // TODO What's the value of resultArray if there is no solution? Need to adapt this to
-        // changes in the PR: https://github.com/opprop/checker-framework-inference/pull/128
-        // , i.e. set solutions to null if there is no solution
-        solutions = decode(resultArray);
+        int[] resultArray = getSolverOutput();
+        if (resultArray != null) {
+            solutions = decode(resultArray);
+        } else {
+            System.out.println("Not solvable!");
+            initUnsatisfiableConstraintExplainer();
+        }
         this.solvingEnd = System.currentTimeMillis();
 
-        long solvingTime = solvingEnd - solvingStart;
-        long serializationTime = serializationEnd - serializationStart;
-
-        Statistics.addOrIncrementEntry("sat_serialization_time(ms)", serializationTime);
-        Statistics.addOrIncrementEntry("sat_solving_time(ms)", solvingTime);
+        recordTimes(serializationEnd - serializationStart, solvingEnd - solvingStart);
 
         return solutions;
     }
 
     /**
-     * Create Lingeling process, and read output and error.
+     * Encodes the constraints and the well-formedness restriction for the SAT solver.
      *
-     * @param localNth
-     * @return and int array, which stores truth assignment for CNF predicate.
+     * @param writers receive the clauses; without writers the clauses are only counted
+     */
+    private void encodeForSatSolver(DimacsWriter... writers) {
+        encodingForSatSolver = true;
+        clauseWriters = Arrays.asList(writers);
+        try {
+            encodeAllConstraints();
+            encodeWellFormednessRestriction();
+        } finally {
+            encodingForSatSolver = false;
+            clauseWriters = Collections.emptyList();
+        }
+    }
+
+    /**
+     * Run the SAT solver, encoding the clauses again while they are piped to it, and written to
+     * the CNF file if {@code outputCNF} is set.
+     *
+     * @return an int array, which stores truth assignment for CNF predicate, or null if the
+     * clauses are unsatisfiable.
+     */
+    private int[] getSolverOutput() {
+        ExternalSatSolverRunner runner = new ExternalSatSolverRunner(getSolverCommand(), getMaxSolverProcesses());
+        int[] model = runner.solve(stdIn -> {
+            try (DimacsWriter writer = DimacsWriter.cnf(stdIn, getNumberOfCNFVariables(), numberOfCNFClauses);
+                    DimacsWriter cnfFile = shouldOutputCNF() ? DimacsWriter.cnf(
+                            new File(CNFData, "cnfdata" + nth.incrementAndGet() + ".txt"),
+                            getNumberOfCNFVariables()) : null) {
+                if (cnfFile == null) {
+                    encodeForSatSolver(writer);
+                } else {
+                    encodeForSatSolver(writer, cnfFile);
+                }
+            }
+        });
+
+        if (model == null) {
+            return null;
+        }
+
+        int size = 0;
+        for (int literal : model) {
+            if (variableSet.get(Math.abs(literal))) {
+                model[size++] = literal;
+            }
+        }
+        return Arrays.copyOf(model, size);
+    }
+
+    /**
+     * Lingeling only reads clauses, so native cardinality constraints fall back to the sequential
+     * counter encoding.
      */
-    private int[] getSolverOutput(int localNth) {
-        String[] command = { lingeling,
-                CNFData.getAbsolutePath() + "/cnfdata" + localNth + ".txt" };
+    @Override
+    protected AtMostOneEncoding getAtMostOneEncoding() {
+        AtMostOneEncoding encoding = super.getAtMostOneEncoding();
+        return encoding == AtMostOneEncoding.CARDINALITY ? AtMostOneEncoding.SEQUENTIAL : encoding;
+    }
 
-        final List<Integer> resultList = new ArrayList<Integer>();
-        ExternalSolverUtils.runExternalSolver(command, stdOut -> parseStdOut(stdOut, resultList),
-                stdErr -> ExternalSolverUtils.printStdStream(System.err, stdErr));
+    private String[] getSolverCommand() {
+        String command = solverEnvironment.getArg(LingelingSolverArg.satSolverCommand);
+        return command == null ? new String[] { lingeling } : command.trim().split("\\s+");
+    }
 
-        // Java 8 style of List<Integer> to int[] conversion
-        return resultList.stream().mapToInt(Integer::intValue).toArray();
+    private int getMaxSolverProcesses() {
+        return ParallelismUtils.getParallelism(LingelingSolverArg.satSolverProcesses.name(),
+                solverEnvironment.getArg(LingelingSolverArg.satSolverProcesses));
     }
 
-    private void parseStdOut(BufferedReader stdOut, List<Integer> resultList) {
-        String line;
+    @Override
+    protected void addHardClause(VecInt clause, Constraint constraint) {
+        if (!encodingForSatSolver) {
+            super.addHardClause(clause, constraint);
+        } else if (!clauseWriters.isEmpty()) {
+            for (DimacsWriter writer : clauseWriters) {
+                writer.writeHardClause(clause);
+            }
+        } else {
+            collectVals(clause);
+            numberOfHardClauses++;
+            numberOfCNFClauses++;
+        }
+    }
 
-        try {
-            while ((line = stdOut.readLine()) != null) {
-                if (line.charAt(0) == 'v') {
-                    for (String retval : line.split(" ")) {
-                        if (!retval.equals("") && !retval.equals(" ") && !retval.equals("\n")
-                                && !retval.equals("v")) {
-                            int val = Integer.parseInt(retval);
-                            if (variableSet.contains(Math.abs(val))) {
-                                resultList.add(val);
-                            }
-                        }
-                    }
-                }
+    @Override
+    protected void addSoftClause(VecInt clause) {
+        if (!encodingForSatSolver) {
+            super.addSoftClause(clause);
+        } else if (clauseWriters.isEmpty()) {
+            // Lingeling doesn't support soft constraints, they are only counted.
+            numberOfSoftClauses++;
+        }
+    }
+
+    @Override
+    protected void addWellFormednessClause(VecInt clause, int varSlotId) {
+        if (!encodingForSatSolver) {
+            super.addWellFormednessClause(clause, varSlotId);
+        } else if (!clauseWriters.isEmpty()) {
+            for (DimacsWriter writer : clauseWriters) {
+                writer.writeHardClause(clause);
             }
-        } catch (NumberFormatException | IOException e) {
-            e.printStackTrace();
+        } else {
+            numberOfCNFClauses++;
         }
     }
 
@@ -127,25 +223,15 @@ public class LingelingSolver extends MaxSatSolver {
      * numbers in this range may not has corresponding slot id. This method stores the variables
      * that we really care about.
      */
-    private void collectVals() {
-        for (VecInt clause : this.hardClauses) {
-            int[] clauseArray = clause.toArray();
-            for (int i = 0; i < clauseArray.length; i++) {
-                variableSet.add(Math.abs(clauseArray[i]));
-            }
+    private void collectVals(VecInt clause) {
+        for (int i = 0; i < clause.size(); i++) {
+            variableSet.set(Math.abs(clause.get(i)));
         }
     }
 
-    @Override
-    protected boolean shouldOutputCNF() {
-        // We need the CNF output to pass to Lingeling
-        // and so we unconditionally signal we want CNF output.
-        return true;
-    }
-
     private void recordData() {
-        int totalClauses = hardClauses.size() + softClauses.size();
-        int totalVariable = variableSet.size();
+        int totalClauses = numberOfHardClauses + numberOfSoftClauses;
+        int totalVariable = variableSet.cardinality();
         Statistics.addOrIncrementEntry("cnf_clause_size", totalClauses);
         Statistics.addOrIncrementEntry("cnf_variable_size", totalVariable);
     }
@@ -0,0 +1,116 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.sat4j.core.VecInt;
+
+/**
+ * Encodings of the constraint that at most one of a set of literals is true, used for the
+ * well-formedness restriction that every slot has exactly one type.
+ *
+ * For k literals, the pairwise encoding needs k(k-1)/2 binary clauses and no auxiliary variables.
+ * The sequential counter encoding (Sinz 2005) needs 3k-4 clauses and k-1 auxiliary variables, the
+ * commander encoding (Klieber and Kwon 2007) about 3.5k clauses and k/2 auxiliary variables.
+ * {@link #CARDINALITY} does not produce clauses at all: the literals are passed to Sat4j as a
+ * native cardinality constraint.
+ */
+public enum AtMostOneEncoding {
+
+    PAIRWISE {
+        @Override
+        public void encode(int[] literals, IntSupplier newVariable, List<VecInt> clauses) {
+            for (int i = 0; i < literals.length; i++) {
+                for (int j = i + 1; j < literals.length; j++) {
+                    clauses.add(VectorUtils.asVec(-literals[i], -literals[j]));
+                }
+            }
+        }
+    },
+
+    SEQUENTIAL {
+        @Override
+        public void encode(int[] literals, IntSupplier newVariable, List<VecInt> clauses) {
+            int k = literals.length;
+            if (k <= 1) {
+                return;
+            }
+            // s_i is true if one of the first i + 1 literals is true.
+            int previous = newVariable.getAsInt();
+            clauses.add(VectorUtils.asVec(-literals[0], previous));
+            for (int i = 1; i < k - 1; i++) {
+                int current = newVariable.getAsInt();
+                clauses.add(VectorUtils.asVec(-literals[i], current));
+                clauses.add(VectorUtils.asVec(-previous, current));
+                clauses.add(VectorUtils.asVec(-literals[i], -previous));
+                previous = current;
+            }
+            clauses.add(VectorUtils.asVec(-literals[k - 1], -previous));
+        }
+    },
+
+    COMMANDER {
+        /** Size of the groups that share a commander variable. */
+        private static final int GROUP_SIZE = 3;
+
+        @Override
+        public void encode(int[] literals, IntSupplier newVariable, List<VecInt> clauses) {
+            if (literals.length <= GROUP_SIZE + 1) {
+                PAIRWISE.encode(literals, newVariable, clauses);
+                return;
+            }
+
+            int[] commanders = new int[(literals.length + GROUP_SIZE - 1) / GROUP_SIZE];
+            for (int group = 0; group < commanders.length; group++) {
+                int[] members = Arrays.copyOfRange(literals, group * GROUP_SIZE,
+                        Math.min(literals.length, (group + 1) * GROUP_SIZE));
+                int commander = newVariable.getAsInt();
+                commanders[group] = commander;
+
+                // At most one member of the group is true.
+                PAIRWISE.encode(members, newVariable, clauses);
+                // The commander is true iff one of the members is true.
+                int[] commanderImpliesMember = Arrays.copyOf(members, members.length + 1);
+                commanderImpliesMember[members.length] = -commander;
+                clauses.add(VectorUtils.asVec(commanderImpliesMember));
+                for (int member : members) {
+                    clauses.add(VectorUtils.asVec(-member, commander));
+                }
+            }
+            // At most one group has a true member.
+            encode(commanders, newVariable, clauses);
+        }
+    },
+
+    CARDINALITY {
+        @Override
+        public void encode(int[] literals, IntSupplier newVariable, List<VecInt> clauses) {
+            throw new BugInCF("Cardinality constraints are not encoded as clauses.");
+        }
+    };
+
+    /**
+     * Adds clauses to {@code clauses} that are satisfiable iff at most one of the given literals
+     * is true.
+     *
+     * @param newVariable allocates auxiliary variables
+     */
+    public abstract void encode(int[] literals, IntSupplier newVariable, List<VecInt> clauses);
+
+    /**
+     * @param name the name of an encoding, case-insensitive; null for the default encoding
+     */
+    public static AtMostOneEncoding fromName(String name) {
+        if (name == null) {
+            return PAIRWISE;
+        }
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BugInCF("Unknown at-most-one encoding: " + name + ", valid encodings: "
+                    + Arrays.toString(values()).toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.sat4j.core.VecInt;
+
+/**
+ * Streams clauses in DIMACS CNF format, or in WCNF format for weighted MaxSAT, as they are encoded,
+ * without keeping the formula in memory.
+ *
+ * When writing to a file, the number of clauses does not need to be known in advance: a
+ * fixed-size region at the start of the file is reserved for the header and back-patched by
+ * {@link #close()}. The part of the region not taken by the "p" line is filled with a comment line
+ * before it. When writing to any other channel, e.g. the stdin of a solver process, the number of
+ * clauses has to be given up front.
+ */
+public class DimacsWriter implements Closeable {
+
+    /** Size of the reserved header region; large enough for any "p" line with int counts. */
+    private static final int HEADER_SIZE = 96;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Description of the destination for error messages. */
+    private final String destination;
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final int numberOfVariables;
+
+    /** The weight of hard clauses in WCNF format, or -1 for CNF format. */
+    private final long top;
+
+    /** The number of clauses announced in the header, or -1 if the header is back-patched. */
+    private final int expectedNumberOfClauses;
+
+    private int numberOfClauses = 0;
+
+    private DimacsWriter(File file, int numberOfVariables, long top) {
+        this.destination = "CNF file " + file;
+        this.numberOfVariables = numberOfVariables;
+        this.top = top;
+        this.expectedNumberOfClauses = -1;
+        try {
+            FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            fileChannel.position(HEADER_SIZE);
+            this.channel = fileChannel;
+        } catch (IOException e) {
+            throw new BugInCF("Cannot open " + destination, e);
+        }
+    }
+
+    private DimacsWriter(WritableByteChannel channel, int numberOfVariables, int numberOfClauses) {
+        this.destination = "CNF to " + channel;
+        this.channel = channel;
+        this.numberOfVariables = numberOfVariables;
+        this.top = -1;
+        this.expectedNumberOfClauses = numberOfClauses;
+        byte[] problemLine = ("p cnf " + numberOfVariables + " " + numberOfClauses + "\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        buffer.put(problemLine);
+    }
+
+    /**
+     * Creates a writer for a CNF formula, which only consists of hard clauses.
+     */
+    public static DimacsWriter cnf(File file, int numberOfVariables) {
+        return new DimacsWriter(file, numberOfVariables, -1);
+    }
+
+    /**
+     * Creates a writer for a CNF formula with the given number of clauses to the given channel,
+     * which is closed by {@link #close()}.
+     */
+    public static DimacsWriter cnf(WritableByteChannel channel, int numberOfVariables, int numberOfClauses) {
+        return new DimacsWriter(channel, numberOfVariables, numberOfClauses);
+    }
+
+    /**
+     * Creates a writer for a weighted MaxSAT formula.
+     *
+     * @param top the weight of hard clauses, which has to be greater than the sum of the weights
+     *            of all soft clauses
+     */
+    public static DimacsWriter wcnf(File file, int numberOfVariables, long top) {
+        if (top <= 0) {
+            throw new BugInCF("The weight of hard clauses has to be positive: " + top);
+        }
+        return new DimacsWriter(file, numberOfVariables, top);
+    }
+
+    public void writeHardClause(VecInt clause) {
+        if (top > 0) {
+            putLong(top);
+            putByte(' ');
+        }
+        writeLiterals(clause);
+    }
+
+    public void writeSoftClause(VecInt clause, long weight) {
+        if (top <= 0) {
+            throw new BugInCF("Soft clauses can only be written in WCNF format.");
+        }
+        putLong(weight);
+        putByte(' ');
+        writeLiterals(clause);
+    }
+
+    public int getNumberOfClauses() {
+        return numberOfClauses;
+    }
+
+    private void writeLiterals(VecInt clause) {
+        for (int i = 0; i < clause.size(); i++) {
+            putLong(clause.get(i));
+            putByte(' ');
+        }
+        endClause();
+    }
+
+    private void endClause() {
+        putByte('0');
+        putByte('\n');
+        numberOfClauses++;
+    }
+
+    private void putLong(long value) {
+        if (buffer.remaining() < 20) {
+            drain();
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        if (value == 0) {
+            buffer.put((byte) '0');
+            return;
+        }
+        int start = buffer.position();
+        while (value > 0) {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        }
+        // Digits were written least significant first.
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte tmp = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, tmp);
+        }
+    }
+
+    private void putByte(char c) {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) c);
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new BugInCF("Cannot write " + destination, e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the remaining clauses, writes the header if it is back-patched and closes the
+     * channel.
+     */
+    @Override
+    public void close() {
+        drain();
+
+        if (expectedNumberOfClauses >= 0) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new BugInCF("Cannot write " + destination, e);
+            }
+            if (numberOfClauses != expectedNumberOfClauses) {
+                throw new BugInCF("Announced " + expectedNumberOfClauses + " clauses but wrote "
+                        + numberOfClauses + " to " + destination);
+            }
+            return;
+        }
+
+        String problemLine = top > 0
+                ? "p wcnf " + numberOfVariables + " " + numberOfClauses + " " + top + "\n"
+                : "p cnf " + numberOfVariables + " " + numberOfClauses + "\n";
+        byte[] header = new byte[HEADER_SIZE];
+        Arrays.fill(header, (byte) ' ');
+        header[0] = 'c';
+        int problemLineStart = HEADER_SIZE - problemLine.length();
+        header[problemLineStart - 1] = '\n';
+        System.arraycopy(problemLine.getBytes(StandardCharsets.US_ASCII), 0, header, problemLineStart,
+                problemLine.length());
+
+        try {
+            FileChannel fileChannel = (FileChannel) channel;
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            while (headerBuffer.hasRemaining()) {
+                fileChannel.write(headerBuffer, headerBuffer.position());
+            }
+            fileChannel.close();
+        } catch (IOException e) {
+            throw new BugInCF("Cannot write " + destination, e);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package checkers.inference.solver.backend.maxsat;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -15,6 +14,7 @@ import checkers.inference.solver.backend.maxsat.encoder.MaxSATConstraintEncoderF
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.sat4j.core.VecInt;
 
+import checkers.inference.solver.frontend.IndexedLattice;
 import checkers.inference.solver.frontend.Lattice;
 
 /**
@@ -28,7 +28,8 @@ public class MaxSatFormatTranslator extends AbstractFormatTranslator<VecInt[], V
 
     /**
      * typeToInt maps each type qualifier to an unique integer value starts from
-     * 0 on continuous basis.
+     * 0 on continuous basis. The integer values are the indices of the
+     * {@link IndexedLattice} of the lattice.
      */
     protected final Map<AnnotationMirror, Integer> typeToInt;
 
@@ -38,21 +39,44 @@ public class MaxSatFormatTranslator extends AbstractFormatTranslator<VecInt[], V
      */
     protected final Map<Integer, AnnotationMirror> intToType;
 
+    /**
+     * The integer-indexed view of the lattice.
+     */
+    protected final IndexedLattice indexedLattice;
+
+    /**
+     * Maps the slots encoded by this translator to variables.
+     */
+    protected final SlotVariableMapping slotVariableMapping;
+
+    /**
+     * The encoding of the at-most-one part of the well-formedness restriction.
+     */
+    private AtMostOneEncoding atMostOneEncoding = AtMostOneEncoding.PAIRWISE;
+
+    /**
+     * The first variable available for auxiliary variables of the at-most-one encoding, and the
+     * number of auxiliary variables allocated so far.
+     */
+    private int firstAuxiliaryVariable;
+    private int numberOfAuxiliaryVariables = 0;
+
     public MaxSatFormatTranslator(Lattice lattice) {
         super(lattice);
+        indexedLattice = lattice.getIndexedLattice();
         // Initialize mappings between type and int.
         Map<AnnotationMirror, Integer>typeToIntRes = AnnotationUtils.createAnnotationMap();
         Map<Integer, AnnotationMirror> intToTypeRes = new HashMap<Integer, AnnotationMirror>();
 
-        int curInt = 0;
-        for (AnnotationMirror type : lattice.allTypes) {
+        for (int curInt = 0; curInt < indexedLattice.numTypes; curInt++) {
+            AnnotationMirror type = indexedLattice.getType(curInt);
             typeToIntRes.put(type, curInt);
             intToTypeRes.put(curInt, type);
-            curInt ++;
         }
 
         typeToInt = Collections.unmodifiableMap(typeToIntRes);
         intToType = Collections.unmodifiableMap(intToTypeRes);
+        slotVariableMapping = new SlotVariableMapping(lattice);
         finishInitializingEncoders();
     }
 
@@ -61,31 +85,72 @@ public class MaxSatFormatTranslator extends AbstractFormatTranslator<VecInt[], V
         return new MaxSATConstraintEncoderFactory(lattice, typeToInt, this);
     }
 
+    public SlotVariableMapping getSlotVariableMapping() {
+        return slotVariableMapping;
+    }
+
+    /**
+     * Sets the encoding of the at-most-one part of the well-formedness restriction, and restarts
+     * the allocation of auxiliary variables.
+     *
+     * @param firstAuxiliaryVariable the first variable not used by the encoding of the slots
+     */
+    public void setAtMostOneEncoding(AtMostOneEncoding atMostOneEncoding, int firstAuxiliaryVariable) {
+        this.atMostOneEncoding = atMostOneEncoding;
+        this.firstAuxiliaryVariable = firstAuxiliaryVariable;
+        this.numberOfAuxiliaryVariables = 0;
+    }
+
+    public AtMostOneEncoding getAtMostOneEncoding() {
+        return atMostOneEncoding;
+    }
+
+    public int getNumberOfAuxiliaryVariables() {
+        return numberOfAuxiliaryVariables;
+    }
+
+    private int newAuxiliaryVariable() {
+        return firstAuxiliaryVariable + numberOfAuxiliaryVariables++;
+    }
+
     /**
      * generate well form clauses such that there is one and only one beta value
      * can be true.
      *
      */
     public void generateWellFormednessClauses(List<VecInt> wellFormednessClauses, Integer varSlotId) {
+        generateWellFormednessClauses(wellFormednessClauses, null, varSlotId);
+    }
+
+    /**
+     * generate well form clauses such that there is one and only one beta value
+     * can be true.
+     *
+     * @param atMostOneConstraints if the at-most-one encoding is
+     *            {@link AtMostOneEncoding#CARDINALITY}, receives the literals of which at most one
+     *            may be true, to be added as cardinality constraint. If it is null, the pairwise
+     *            encoding is used instead.
+     */
+    public void generateWellFormednessClauses(List<VecInt> wellFormednessClauses,
+            List<VecInt> atMostOneConstraints, Integer varSlotId) {
         int[] leastOneIsTrue = new int[lattice.numTypes];
-        for (Integer i : intToType.keySet()) {
-            leastOneIsTrue[i] = MathUtils.mapIdToMatrixEntry(varSlotId, i.intValue(), lattice);
+        for (int i = 0; i < leastOneIsTrue.length; i++) {
+            leastOneIsTrue[i] = slotVariableMapping.getVariable(varSlotId, i);
         }
         wellFormednessClauses.add(VectorUtils.asVec(leastOneIsTrue));
-        List<Integer> varList = new ArrayList<Integer>(intToType.keySet());
-        for (int i = 0; i < varList.size(); i++) {
-            for (int j = i + 1; j < varList.size(); j++) {
-                VecInt vecInt = new VecInt(2);
-                vecInt.push(-MathUtils.mapIdToMatrixEntry(varSlotId, varList.get(i), lattice));
-                vecInt.push(-MathUtils.mapIdToMatrixEntry(varSlotId, varList.get(j), lattice));
-                wellFormednessClauses.add(vecInt);
-            }
+
+        if (atMostOneEncoding != AtMostOneEncoding.CARDINALITY) {
+            atMostOneEncoding.encode(leastOneIsTrue, this::newAuxiliaryVariable, wellFormednessClauses);
+        } else if (atMostOneConstraints != null) {
+            atMostOneConstraints.add(VectorUtils.asVec(leastOneIsTrue));
+        } else {
+            AtMostOneEncoding.PAIRWISE.encode(leastOneIsTrue, this::newAuxiliaryVariable, wellFormednessClauses);
         }
     }
 
     @Override
     public AnnotationMirror decodeSolution(Integer var, ProcessingEnvironment processingEnvironment) {
-        return intToType.get(MathUtils.getIntRep(var, lattice));
+        return indexedLattice.getType(slotVariableMapping.getIntRep(var));
     }
 
 }
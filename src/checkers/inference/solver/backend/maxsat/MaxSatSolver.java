@@ -1,10 +1,10 @@
 package checkers.inference.solver.backend.maxsat;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -14,22 +14,21 @@ import javax.lang.model.element.AnnotationMirror;
 
 import org.checkerframework.javacutil.BugInCF;
 import org.sat4j.core.VecInt;
-import org.sat4j.maxsat.SolverFactory;
 import org.sat4j.maxsat.WeightedMaxSatDecorator;
 import org.sat4j.pb.IPBSolver;
 import org.sat4j.specs.ContradictionException;
-import org.sat4j.specs.IConstr;
-import org.sat4j.tools.xplain.DeletionStrategy;
-import org.sat4j.tools.xplain.Xplain;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
 
 import checkers.inference.InferenceMain;
 import checkers.inference.SlotManager;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.PreferenceConstraint;
 import checkers.inference.model.Slot;
+import checkers.inference.model.WellFormednessConstraint;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.frontend.Lattice;
-import checkers.inference.solver.util.FileUtils;
 import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
@@ -47,16 +46,38 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         /**
          * Whether should print the CNF formulas.
          */
-        outputCNF;
+        outputCNF,
+
+        /**
+         * The encoding of the constraint that a slot has at most one type: pairwise (default),
+         * sequential, commander or cardinality, see {@link AtMostOneEncoding}.
+         */
+        atMostOneEncoding;
     }
 
     protected final SlotManager slotManager;
     protected final List<VecInt> hardClauses = new LinkedList<>();
     private List<VecInt> wellFormednessClauses = new LinkedList<>();
+    private final List<VecInt> atMostOneConstraints = new ArrayList<>();
     protected final List<VecInt> softClauses = new LinkedList<>();
+
+    // Every hard clause and at-most-one constraint is guarded by the selector variable of the
+    // constraint, or well-formedness restriction, it was encoded from. The selectors are passed
+    // as assumptions, so that an unsatisfiable core can be read from the solver, see
+    // MaxSATUnsatisfiableConstraintExplainer. Selectors are numbered after all other variables,
+    // so only their index is recorded while encoding.
+    private final VecInt hardClauseSelectors = new VecInt();
+    private final VecInt wellFormednessClauseSelectors = new VecInt();
+    private final VecInt atMostOneConstraintSelectors = new VecInt();
+    private final Map<Constraint, Integer> constraintSelectors = new HashMap<>();
+    private final Map<Integer, Integer> wellFormednessSelectors = new HashMap<>();
+    /** The constraint of each selector index. */
+    private final List<Constraint> selectorConstraints = new ArrayList<>();
     private MaxSATUnsatisfiableConstraintExplainer unsatisfiableConstraintExplainer;
+    // The well-formedness restriction may be encoded more than once, e.g. to explain
+    // unsatisfiability, but its statistics are only recorded for the first encoding.
+    private boolean wellFormednessStatisticsRecorded = false;
     protected final File CNFData = new File(new File("").getAbsolutePath() + "/cnfData");
-    protected StringBuilder CNFInput = new StringBuilder();
 
     private long serializationStart;
     private long serializationEnd;
@@ -88,39 +109,37 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         this.serializationEnd = System.currentTimeMillis();
 
         if (shouldOutputCNF()) {
-            buildCNFInput();
             writeCNFInput();
         }
         // printClauses();
         configureSatSolver(solver);
 
         try {
-            addClausesToSolver(solver);
+            final int firstSelector = getNumberOfCNFVariables() + 1;
+            addClausesToSolver(solver, firstSelector);
             cleanUpClauses();
 
             this.solvingStart = System.currentTimeMillis();
-            boolean isSatisfiable = solver.isSatisfiable();
+            boolean isSatisfiable = solver.isSatisfiable(getSelectors(firstSelector));
             this.solvingEnd = System.currentTimeMillis();
 
-            long solvingTime = solvingEnd - solvingStart;
-            long serializationTime = serializationEnd - serializationStart;
-
-            Statistics.addOrIncrementEntry("sat_serialization_time(ms)", serializationTime);
-            Statistics.addOrIncrementEntry("sat_solving_time(ms)", solvingTime);
+            recordTimes(serializationEnd - serializationStart, solvingEnd - solvingStart);
 
             if (isSatisfiable) {
                 solutions = decode(solver.model());
             } else {
                 System.out.println("Not solvable!");
-                // Lazily initialize unsatisfiableConstraintExplainer when there is no solution
-                unsatisfiableConstraintExplainer = new MaxSATUnsatisfiableConstraintExplainer();
+                // The solver already holds all hard clauses, guarded by selectors, and the
+                // clauses it learned, so it is reused for the explanation.
+                unsatisfiableConstraintExplainer = new MaxSATUnsatisfiableConstraintExplainer(
+                        solver.decorated(), firstSelector);
             }
 
         } catch (ContradictionException e) {
             InferenceMain.getInstance().logger.warning("Contradiction exception: ");
             // This case indicates that constraints are not solvable, too. This is normal so continue
             // execution and let solver strategy to explain why there is no solution
-            unsatisfiableConstraintExplainer = new MaxSATUnsatisfiableConstraintExplainer();
+            initUnsatisfiableConstraintExplainer();
         } catch (Exception e) {
             throw new BugInCF("Unexpected error occurred!", e);
         }
@@ -144,9 +163,9 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
             for (VecInt res : encoding) {
                 if (res != null && res.size() != 0) {
                     if (constraint instanceof PreferenceConstraint) {
-                        softClauses.add(res);
+                        addSoftClause(res);
                     } else {
-                        hardClauses.add(res);
+                        addHardClause(res, constraint);
                     }
                 }
             }
@@ -154,9 +173,120 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
     }
 
     protected void encodeWellFormednessRestriction() {
+        // Slots of constraints that could not be encoded have no variables yet.
+        for (Integer varSlotId : varSlotIds) {
+            formatTranslator.getSlotVariableMapping().getIndex(varSlotId);
+        }
+        // Auxiliary variables of the at-most-one encoding are numbered after the variables of the
+        // slots. The allocation restarts here, so encoding again gives the same clauses.
+        formatTranslator.setAtMostOneEncoding(getAtMostOneEncoding(), getNumberOfSlotVariables() + 1);
+
+        List<VecInt> clauses = new ArrayList<>();
+        List<VecInt> cardinalityConstraints = new ArrayList<>(1);
+        int numberOfClauses = 0;
         for (Integer varSlotId : varSlotIds) {
-            formatTranslator.generateWellFormednessClauses(wellFormednessClauses, varSlotId);
+            formatTranslator.generateWellFormednessClauses(clauses, cardinalityConstraints, varSlotId);
+            for (VecInt clause : clauses) {
+                addWellFormednessClause(clause, varSlotId);
+            }
+            for (VecInt literals : cardinalityConstraints) {
+                addAtMostOneConstraint(literals, varSlotId);
+            }
+            numberOfClauses += clauses.size();
+            clauses.clear();
+            cardinalityConstraints.clear();
+        }
+
+        if (wellFormednessStatisticsRecorded) {
+            return;
+        }
+        wellFormednessStatisticsRecorded = true;
+        // The number of clauses of the default pairwise encoding is recorded too, so that the
+        // encodings can be compared: one at-least-one clause and k(k-1)/2 binary clauses per slot.
+        final long pairwiseClausesPerSlot = 1 + (long) lattice.numTypes * (lattice.numTypes - 1) / 2;
+        Statistics.addOrIncrementEntry("well_formedness_clause_size", numberOfClauses);
+        Statistics.addOrIncrementEntry("well_formedness_pairwise_clause_size",
+                pairwiseClausesPerSlot * varSlotIds.size());
+        Statistics.addOrIncrementEntry("well_formedness_auxiliary_variable_size",
+                formatTranslator.getNumberOfAuxiliaryVariables());
+    }
+
+    /**
+     * Records the serialization and solving time. The solving time is also recorded per
+     * at-most-one encoding, to compare the encodings.
+     */
+    protected void recordTimes(long serializationTime, long solvingTime) {
+        Statistics.addOrIncrementEntry("sat_serialization_time(ms)", serializationTime);
+        Statistics.addOrIncrementEntry("sat_solving_time(ms)", solvingTime);
+        Statistics.addOrIncrementEntry("sat_solving_time_" + getAtMostOneEncoding().name().toLowerCase() + "(ms)",
+                solvingTime);
+    }
+
+    protected AtMostOneEncoding getAtMostOneEncoding() {
+        return AtMostOneEncoding.fromName(solverEnvironment.getArg(MaxSatSolverArg.atMostOneEncoding));
+    }
+
+    /**
+     * Receives the encoded clauses. By default, clauses are collected to be added to Sat4j;
+     * subclasses may override these methods to consume the clauses as they are encoded.
+     *
+     * @param constraint the constraint the clause is encoded from
+     */
+    protected void addHardClause(VecInt clause, Constraint constraint) {
+        hardClauses.add(clause);
+        hardClauseSelectors.push(getSelectorIndex(constraint));
+    }
+
+    protected void addSoftClause(VecInt clause) {
+        softClauses.add(clause);
+    }
+
+    /**
+     * @param varSlotId the id of the slot whose well-formedness the clause encodes
+     */
+    protected void addWellFormednessClause(VecInt clause, int varSlotId) {
+        wellFormednessClauses.add(clause);
+        wellFormednessClauseSelectors.push(getWellFormednessSelectorIndex(varSlotId));
+    }
+
+    /**
+     * Receives the literals of which at most one may be true, if the at-most-one encoding is
+     * {@link AtMostOneEncoding#CARDINALITY}.
+     */
+    protected void addAtMostOneConstraint(VecInt literals, int varSlotId) {
+        atMostOneConstraints.add(literals);
+        atMostOneConstraintSelectors.push(getWellFormednessSelectorIndex(varSlotId));
+    }
+
+    private int getSelectorIndex(Constraint constraint) {
+        Integer index = constraintSelectors.get(constraint);
+        if (index == null) {
+            index = selectorConstraints.size();
+            selectorConstraints.add(constraint);
+            constraintSelectors.put(constraint, index);
         }
+        return index;
+    }
+
+    private int getWellFormednessSelectorIndex(int varSlotId) {
+        Integer index = wellFormednessSelectors.get(varSlotId);
+        if (index == null) {
+            index = selectorConstraints.size();
+            selectorConstraints.add(new WellFormednessConstraint(slotManager.getSlot(varSlotId)));
+            wellFormednessSelectors.put(varSlotId, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the selector variables of all constraints, to be passed as assumptions
+     */
+    private VecInt getSelectors(int firstSelector) {
+        VecInt selectors = new VecInt(selectorConstraints.size());
+        for (int i = 0; i < selectorConstraints.size(); i++) {
+            selectors.push(firstSelector + i);
+        }
+        return selectors;
     }
 
     /**
@@ -166,8 +296,9 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
      */
     private void configureSatSolver(WeightedMaxSatDecorator solver) {
 
-        final int totalVars = (slotManager.getNumberOfSlots() * lattice.numTypes);
-        final int totalClauses = hardClauses.size() + wellFormednessClauses.size() + softClauses.size();
+        final int totalVars = getNumberOfCNFVariables() + selectorConstraints.size();
+        final int totalClauses = hardClauses.size() + wellFormednessClauses.size() + softClauses.size()
+                + atMostOneConstraints.size();
 
         solver.newVar(totalVars);
         solver.setExpectedNumberOfClauses(totalClauses);
@@ -176,32 +307,73 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         solver.setTimeoutMs(1000000);
     }
 
-    private void addClausesToSolver(WeightedMaxSatDecorator solver) throws ContradictionException {
+    private void addClausesToSolver(WeightedMaxSatDecorator solver, int firstSelector) throws ContradictionException {
+        // Hard clauses are added to the underlying pseudo-boolean solver, which also takes the
+        // at-most-one constraints as native cardinality constraints.
+        addHardClausesToSolver(solver.decorated(), firstSelector);
+
+        for (VecInt softclause : softClauses) {
+            solver.addSoftClause(softclause);
+        }
+    }
+
+    /**
+     * Adds the hard clauses and at-most-one constraints, each guarded by its selector: a clause
+     * c becomes (c | -s), and at most one of the literals l1..ln becomes
+     * l1 + ... + ln + (n - 1) * s <= n.
+     */
+    private void addHardClausesToSolver(IPBSolver solver, int firstSelector) throws ContradictionException {
+        int i = 0;
         for (VecInt hardClause : hardClauses) {
-            solver.addHardClause(hardClause);
+            hardClause.push(-(firstSelector + hardClauseSelectors.get(i++)));
+            solver.addClause(hardClause);
         }
 
+        i = 0;
         for (VecInt wellFormednessClause: wellFormednessClauses) {
-            solver.addHardClause(wellFormednessClause);
+            wellFormednessClause.push(-(firstSelector + wellFormednessClauseSelectors.get(i++)));
+            solver.addClause(wellFormednessClause);
         }
 
-        for (VecInt softclause : softClauses) {
-            solver.addSoftClause(softclause);
+        i = 0;
+        for (VecInt atMostOneConstraint : atMostOneConstraints) {
+            int n = atMostOneConstraint.size();
+            VecInt coefficients = new VecInt(n + 1, 1);
+            coefficients.set(n, n - 1);
+            atMostOneConstraint.push(firstSelector + atMostOneConstraintSelectors.get(i++));
+            solver.addAtMost(atMostOneConstraint, coefficients, n);
         }
     }
 
     private void cleanUpClauses() {
         hardClauses.clear();
         wellFormednessClauses.clear();
+        atMostOneConstraints.clear();
         softClauses.clear();
+        hardClauseSelectors.clear();
+        wellFormednessClauseSelectors.clear();
+        atMostOneConstraintSelectors.clear();
+    }
+
+    /**
+     * The at-most-one constraints as pairwise clauses, for consumers that only accept clauses.
+     */
+    private List<VecInt> getAtMostOneConstraintClauses() {
+        List<VecInt> clauses = new ArrayList<>();
+        for (VecInt literals : atMostOneConstraints) {
+            AtMostOneEncoding.PAIRWISE.encode(literals.toArray(), null, clauses);
+        }
+        return clauses;
     }
 
     protected Map<Integer, AnnotationMirror> decode(int[] solution) {
         Map<Integer, AnnotationMirror> result = new HashMap<>();
+        final int numberOfSlotVariables = getNumberOfSlotVariables();
         for (Integer var : solution) {
-            if (var > 0) {
-                var = var - 1;
-                int slotId = MathUtils.getSlotId(var, lattice);
+            // Variables beyond the slot variables are auxiliary variables of the well-formedness
+            // restriction.
+            if (var > 0 && var <= numberOfSlotVariables) {
+                int slotId = formatTranslator.getSlotVariableMapping().getSlotId(var);
                 AnnotationMirror type = formatTranslator.decodeSolution(var, solverEnvironment.processingEnvironment);
                 result.put(slotId, type);
             }
@@ -226,43 +398,64 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
     }
 
     /**
-     * Write CNF clauses into a string.
+     * @return the number of variables of the slots, which only depends on the number of slots in
+     * the solved constraints, see {@link SlotVariableMapping}
      */
-    protected void buildCNFInput() {
-
-        final int totalClauses = hardClauses.size()+ wellFormednessClauses.size();
-        final int totalVars = slotManager.getNumberOfSlots() * lattice.numTypes;
-
-        CNFInput.append("c This is the CNF input\n");
-        CNFInput.append("p cnf ");
-        CNFInput.append(totalVars);
-        CNFInput.append(" ");
-        CNFInput.append(totalClauses);
-        CNFInput.append("\n");
-
-        for (VecInt hardClause : hardClauses) {
-            buildCNFInputHelper(hardClause);
-        }
-        for (VecInt wellFormedNessClause: wellFormednessClauses) {
-            buildCNFInputHelper(wellFormedNessClause);
-        }
+    private int getNumberOfSlotVariables() {
+        return formatTranslator.getSlotVariableMapping().getNumberOfVariables();
     }
 
-    private void buildCNFInputHelper(VecInt clause) {
-        int[] literals = clause.toArray();
-        for (int i = 0; i < literals.length; i++) {
-            CNFInput.append(literals[i]);
-            CNFInput.append(" ");
-        }
-        CNFInput.append("0\n");
+    /**
+     * @return the number of variables of the encoding, including the auxiliary variables of the
+     * well-formedness restriction allocated so far
+     */
+    protected int getNumberOfCNFVariables() {
+        return getNumberOfSlotVariables() + formatTranslator.getNumberOfAuxiliaryVariables();
     }
 
+    /**
+     * Write the clauses to CNFData: the hard clauses in DIMACS CNF format and, if there are soft
+     * clauses, all clauses in WCNF format.
+     */
     protected void writeCNFInput() {
         writeCNFInput("cnfdata.txt");
+        if (!softClauses.isEmpty()) {
+            writeWCNFInput("wcnfdata.txt");
+        }
     }
 
     protected void writeCNFInput(String file) {
-        FileUtils.writeFile(new File(CNFData.getAbsolutePath() + "/" + file), CNFInput.toString());
+        try (DimacsWriter writer = DimacsWriter.cnf(new File(CNFData, file), getNumberOfCNFVariables())) {
+            for (VecInt hardClause : hardClauses) {
+                writer.writeHardClause(hardClause);
+            }
+            for (VecInt wellFormednessClause : wellFormednessClauses) {
+                writer.writeHardClause(wellFormednessClause);
+            }
+            for (VecInt atMostOneClause : getAtMostOneConstraintClauses()) {
+                writer.writeHardClause(atMostOneClause);
+            }
+        }
+    }
+
+    protected void writeWCNFInput(String file) {
+        // Soft clauses are added to Sat4j with weight 1, so hard clauses have to weigh more than
+        // all soft clauses together.
+        final long top = softClauses.size() + 1;
+        try (DimacsWriter writer = DimacsWriter.wcnf(new File(CNFData, file), getNumberOfCNFVariables(), top)) {
+            for (VecInt hardClause : hardClauses) {
+                writer.writeHardClause(hardClause);
+            }
+            for (VecInt wellFormednessClause : wellFormednessClauses) {
+                writer.writeHardClause(wellFormednessClause);
+            }
+            for (VecInt atMostOneClause : getAtMostOneConstraintClauses()) {
+                writer.writeHardClause(atMostOneClause);
+            }
+            for (VecInt softClause : softClauses) {
+                writer.writeSoftClause(softClause, 1);
+            }
+        }
     }
 
     /**
@@ -285,110 +478,118 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         }
     }
 
+    /**
+     * Initialize unsatisfiableConstraintExplainer when there is no solution, but the clauses were
+     * not added to a Sat4j solver, e.g. because they were solved by an external solver. The
+     * constraints are encoded again into a new solver.
+     */
+    protected void initUnsatisfiableConstraintExplainer() {
+        cleanUpClauses();
+        encodeAllConstraints();
+        encodeWellFormednessRestriction();
+
+        final int firstSelector = getNumberOfCNFVariables() + 1;
+        IPBSolver solver = org.sat4j.pb.SolverFactory.newDefault();
+        solver.newVar(getNumberOfCNFVariables() + selectorConstraints.size());
+        solver.setExpectedNumberOfClauses(hardClauses.size() + wellFormednessClauses.size()
+                + atMostOneConstraints.size());
+        try {
+            addHardClausesToSolver(solver, firstSelector);
+        } catch (ContradictionException e) {
+            // Cannot happen, as every clause contains a selector.
+            throw new BugInCF("Contradiction while adding guarded clauses to the explanation solver.", e);
+        }
+        cleanUpClauses();
+        unsatisfiableConstraintExplainer = new MaxSATUnsatisfiableConstraintExplainer(solver, firstSelector);
+    }
+
     @Override
     public Collection<Constraint> explainUnsatisfiable() {
         return unsatisfiableConstraintExplainer.minimumUnsatisfiableConstraints();
     }
 
+    /**
+     * Computes a minimal unsatisfiable subset of the constraints, including well-formedness
+     * restrictions as {@link WellFormednessConstraint}s, on a solver that holds all hard clauses
+     * guarded by selectors.
+     *
+     * Starting from the unsatisfiable core of the failed solve, each selector is removed in turn;
+     * if the rest is still unsatisfiable, the selector is dropped, together with all other
+     * selectors not in the new core, otherwise it is kept. Every check reuses the same solver
+     * and the clauses it learned before.
+     */
     class MaxSATUnsatisfiableConstraintExplainer {
 
-        /**
-         * A mapping from VecInt to Constraint.
-         * */
-        private final Map<VecInt, Constraint> vecIntConstraintMap;
+        private final ISolver solver;
 
-        /**
-         * A mapping from IConstr to VecInt. IConstr is the result of adding VecInt to solver.
-         */
+        private final int firstSelector;
 
-        private final Map<IConstr, VecInt> iConstrVecIntMap;
-
-        private MaxSATUnsatisfiableConstraintExplainer() {
-            // Using IdentityHashMap because different VecInts can share the same hash code,
-            // one VecInt might be overriden by a different VecInt.But VecInt has one-to-one
-            // relation to Constraint. Therefore, IdentityHashMap is used.
-            vecIntConstraintMap = new IdentityHashMap<>();
-            iConstrVecIntMap = new IdentityHashMap<>();
-            cleanUpClauses();
-            // Fill up hardClauses and wellFormednessClauses again(cleared before) to feed into
-            // explanation solver
-            fillHardClauses();
-            encodeWellFormednessRestriction();
-
-        }
-
-        // Compared to encodeAllConstrains(), this method doesn't format translate soft clauses,
-        // and additionally stores the mapping from VecInt to Constraint, so that Constraint can
-        // be reversly looked up by VecInt
-        private void fillHardClauses() {
-            // Fill up vecIntConstraintMap to reversely lookup Constraint from VecInt
-            for (Constraint constraint : constraints) {
-                VecInt[] encoding = constraint.serialize(formatTranslator);
-                if (encoding == null) {
-                    // Happens for unsupported Constraints. Already warned in encodeAllConstraints()
-                    continue;
-                }
-                for (VecInt e : encoding) {
-                    if (e != null && e.size() != 0 && !(constraint instanceof PreferenceConstraint)) {
-                        hardClauses.add(e);
-                        vecIntConstraintMap.put(e, constraint);
-                    }
-                }
-            }
+        private MaxSATUnsatisfiableConstraintExplainer(ISolver solver, int firstSelector) {
+            this.solver = solver;
+            this.firstSelector = firstSelector;
         }
 
         public Collection<Constraint> minimumUnsatisfiableConstraints() {
             // It's ok to use HashSet for Constraint, because its hashCose() implementation differentiates different
             // Constraints well.
             Set<Constraint> mus = new HashSet<>();
-            // Explainer solver that is used
-            Xplain<IPBSolver> explanationSolver = new Xplain<>(SolverFactory.newDefault());
-            configureExplanationSolver(hardClauses, wellFormednessClauses, slotManager, lattice, explanationSolver);
             try {
-                addClausesToExplanationSolver(explanationSolver);
-                assert !explanationSolver.isSatisfiable();
-
-                Collection<IConstr> explanation = explanationSolver.explain();
+                VecInt core = getCore(getSelectors(firstSelector));
+                if (core == null) {
+                    throw new BugInCF("The explanation solver found a solution for unsatisfiable constraints.");
+                }
 
-                for (IConstr i : explanation) {
-                    VecInt vecInt = iConstrVecIntMap.get(i);
-                    if (vecIntConstraintMap.get(vecInt) != null) {
-                        // This case is reached if vecInt is from Constraint
-                        mus.add(vecIntConstraintMap.get(vecInt));
+                int kept = 0;
+                while (kept < core.size()) {
+                    VecInt candidate = new VecInt(core.size() - 1);
+                    for (int i = 0; i < core.size(); i++) {
+                        if (i != kept) {
+                            candidate.push(core.get(i));
+                        }
+                    }
+                    VecInt smallerCore = getCore(candidate);
+                    if (smallerCore == null) {
+                        // The selector is necessary.
+                        kept++;
                     } else {
-                        // This case indicates vecInt is well-formedness restriction
-                        // TODO Instead of printing it, can we have a dedicated type, e.g. WellFormednessConstraint <: Constraint
-                        // TODO so that we can also add it to the result set?
-                        System.out.println("Explanation hits well-formedness restriction: " + i);
+                        // The necessary selectors before it are in every core of the candidate.
+                        core = smallerCore;
                     }
                 }
-            } catch (Exception e) {
-                throw new BugInCF("Explanation solver encountered not-expected exception: ", e);
+
+                for (int i = 0; i < core.size(); i++) {
+                    mus.add(selectorConstraints.get(core.get(i) - firstSelector));
+                }
+            } catch (TimeoutException e) {
+                throw new BugInCF("Explanation solver timed out: ", e);
             }
+            Statistics.addOrIncrementEntry("unsat_explanation_size", mus.size());
             return mus;
         }
 
-        private void configureExplanationSolver(final List<VecInt> hardClauses, final List<VecInt> wellformedness,
-                final SlotManager slotManager, final Lattice lattice, final Xplain<IPBSolver> explainer) {
-            int numberOfNewVars = slotManager.getNumberOfSlots() * lattice.numTypes;
-            System.out.println("Number of variables: " + numberOfNewVars);
-            int numberOfClauses = hardClauses.size() + wellformedness.size();
-            System.out.println("Number of clauses: " + numberOfClauses);
-            explainer.setMinimizationStrategy(new DeletionStrategy());
-            explainer.newVar(numberOfNewVars);
-            explainer.setExpectedNumberOfClauses(numberOfClauses);
-        }
-
-        private void addClausesToExplanationSolver(Xplain<IPBSolver> explanationSolver) throws ContradictionException {
-            for (VecInt clause : hardClauses) {
-                IConstr iConstr = explanationSolver.addClause(clause);
-                iConstrVecIntMap.put(iConstr, clause);
-
+        /**
+         * @return the selectors of an unsatisfiable core of the given selectors, in the order they
+         * were given, or null if the selected constraints are satisfiable
+         */
+        private VecInt getCore(VecInt selectors) throws TimeoutException {
+            if (solver.isSatisfiable(selectors)) {
+                return null;
             }
-            for (VecInt clause : wellFormednessClauses) {
-                IConstr iConstr = explanationSolver.addClause(clause);
-                iConstrVecIntMap.put(iConstr, clause);
+            IVecInt explanation = solver.unsatExplanation();
+            if (explanation == null) {
+                return selectors;
+            }
+            Set<Integer> inExplanation = new HashSet<>();
+            for (int i = 0; i < explanation.size(); i++) {
+                inExplanation.add(Math.abs(explanation.get(i)));
+            }
+            VecInt core = new VecInt(explanation.size());
+            for (int i = 0; i < selectors.size(); i++) {
+                if (inExplanation.contains(selectors.get(i))) {
+                    core.push(selectors.get(i));
+                }
             }
+            return core;
         }
     }
 }
@@ -0,0 +1,92 @@
+package checkers.inference.solver.backend.maxsat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * Maps the slots of the solved constraints to a dense range of Max-SAT variables.
+ *
+ * Slot ids are global to the whole program, while a solver usually only solves one component of
+ * the constraint graph. Slots are given a dense index, starting from 1, in the order they are
+ * first encoded, and the variables are laid out like in {@link MathUtils#mapIdToMatrixEntry} with
+ * the index in place of the slot id. So the number of variables only depends on the number of
+ * slots in the component, not on the number of slots in the program.
+ *
+ * The indices of slots never change once assigned, so encoding the constraints again, e.g. to
+ * explain unsatisfiability, gives the same variables.
+ */
+public class SlotVariableMapping {
+
+    private final Lattice lattice;
+
+    private final Map<Integer, Integer> slotIdToIndex = new HashMap<>();
+
+    /** The slot id of each index; element 0 is unused. */
+    private int[] indexToSlotId = new int[16];
+
+    private int numberOfSlots = 0;
+
+    public SlotVariableMapping(Lattice lattice) {
+        this.lattice = lattice;
+    }
+
+    /**
+     * Returns the dense index of the given slot, assigning the next one if the slot has none yet.
+     */
+    public int getIndex(int slotId) {
+        Integer index = slotIdToIndex.get(slotId);
+        if (index != null) {
+            return index;
+        }
+        numberOfSlots++;
+        if (numberOfSlots == indexToSlotId.length) {
+            indexToSlotId = Arrays.copyOf(indexToSlotId, indexToSlotId.length * 2);
+        }
+        indexToSlotId[numberOfSlots] = slotId;
+        slotIdToIndex.put(slotId, numberOfSlots);
+        return numberOfSlots;
+    }
+
+    /**
+     * @return the variable that is true iff the given slot is the type with the given integer
+     * representation
+     */
+    public int getVariable(int slotId, int typeInt) {
+        return MathUtils.mapIdToMatrixEntry(getIndex(slotId), typeInt, lattice);
+    }
+
+    /**
+     * @return the id of the slot of the given variable or literal
+     */
+    public int getSlotId(int var) {
+        int index = (Math.abs(var) - 1) / lattice.numTypes + 1;
+        if (index > numberOfSlots) {
+            throw new BugInCF("Variable " + var + " does not belong to a slot.");
+        }
+        return indexToSlotId[index];
+    }
+
+    /**
+     * @return the integer representation of the type of the given variable or literal
+     */
+    public int getIntRep(int var) {
+        return MathUtils.getIntRep(Math.abs(var) - 1, lattice);
+    }
+
+    public int getNumberOfSlots() {
+        return numberOfSlots;
+    }
+
+    /**
+     * @return the number of variables of the slots mapped so far, which are the variables from 1
+     * to this number
+     */
+    public int getNumberOfVariables() {
+        return numberOfSlots * lattice.numTypes;
+    }
+}
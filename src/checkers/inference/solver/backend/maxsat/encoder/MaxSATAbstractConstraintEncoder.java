@@ -1,7 +1,9 @@
 package checkers.inference.solver.backend.maxsat.encoder;
 
 import checkers.inference.solver.backend.encoder.AbstractConstraintEncoder;
+import checkers.inference.solver.backend.maxsat.SlotVariableMapping;
 import checkers.inference.solver.backend.maxsat.VectorUtils;
+import checkers.inference.solver.frontend.IndexedLattice;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
 
@@ -15,10 +17,8 @@ public abstract class MaxSATAbstractConstraintEncoder extends AbstractConstraint
 
     private static VecInt[] EMPTY_CLAUSE = new VecInt[0];
 
-    // Any contradictory two clauses can be used to model contradiction. But here 1,-1 are chosen because it's simple and
-    // doesn't collides with real variable id 1 since 1 is almost always reserved for ConstantSlot(because every type system must
-    // have at least one real qualifier). The only exception to this assumption is when storeConstants is false when initializing
-    // DefaultSlotManager, but right now all the creation of DefaultSlotManager stores constants.
+    // Any contradictory two clauses can be used to model contradiction. Here 1,-1 are chosen because it's simple. Variable 1
+    // may also be used by a slot, but that doesn't matter, as the two clauses are unsatisfiable either way.
     private static VecInt[] CONTRADICTORY_CLAUSES = new VecInt[]{VectorUtils.asVec(1), VectorUtils.asVec(-1)};
 
     /**
@@ -27,8 +27,22 @@ public abstract class MaxSATAbstractConstraintEncoder extends AbstractConstraint
      */
     protected final Map<AnnotationMirror, Integer> typeToInt;
 
-    public MaxSATAbstractConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt) {
+    /**
+     * The integer-indexed view of the lattice. Its indices are the integer representations of
+     * {@link #typeToInt}.
+     */
+    protected final IndexedLattice indexedLattice;
+
+    /**
+     * The mapping from slots to variables of the solver the encoders belong to.
+     */
+    protected final SlotVariableMapping slotVariableMapping;
+
+    public MaxSATAbstractConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt,
+            SlotVariableMapping slotVariableMapping) {
         super(lattice, EMPTY_CLAUSE, CONTRADICTORY_CLAUSES);
         this.typeToInt = typeToInt;
+        this.indexedLattice = lattice.getIndexedLattice();
+        this.slotVariableMapping = slotVariableMapping;
     }
 }
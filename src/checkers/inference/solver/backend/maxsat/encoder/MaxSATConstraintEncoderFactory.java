@@ -6,6 +6,7 @@ import checkers.inference.solver.backend.encoder.combine.CombineConstraintEncode
 import checkers.inference.solver.backend.encoder.existential.ExistentialConstraintEncoder;
 import checkers.inference.solver.backend.encoder.implication.ImplicationConstraintEncoder;
 import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.SlotVariableMapping;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
 
@@ -20,41 +21,43 @@ import java.util.Map;
 public class MaxSATConstraintEncoderFactory extends AbstractConstraintEncoderFactory<VecInt[], MaxSatFormatTranslator> {
 
     private final Map<AnnotationMirror, Integer> typeToInt;
+    private final SlotVariableMapping slotVariableMapping;
 
     public MaxSATConstraintEncoderFactory(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt,
                                           MaxSatFormatTranslator formatTranslator) {
         super(lattice, formatTranslator);
         this.typeToInt = typeToInt;
+        this.slotVariableMapping = formatTranslator.getSlotVariableMapping();
     }
 
     @Override
     public MaxSATSubtypeConstraintEncoder createSubtypeConstraintEncoder() {
-        return new MaxSATSubtypeConstraintEncoder(lattice, typeToInt);
+        return new MaxSATSubtypeConstraintEncoder(lattice, typeToInt, slotVariableMapping);
     }
 
     @Override
     public MaxSATEqualityConstraintEncoder createEqualityConstraintEncoder() {
-        return new MaxSATEqualityConstraintEncoder(lattice, typeToInt);
+        return new MaxSATEqualityConstraintEncoder(lattice, typeToInt, slotVariableMapping);
     }
 
     @Override
     public MaxSATInequalityConstraintEncoder createInequalityConstraintEncoder() {
-        return new MaxSATInequalityConstraintEncoder(lattice, typeToInt);
+        return new MaxSATInequalityConstraintEncoder(lattice, typeToInt, slotVariableMapping);
     }
 
     @Override
     public MaxSATComparableConstraintEncoder createComparableConstraintEncoder() {
-        return new MaxSATComparableConstraintEncoder(lattice, typeToInt);
+        return new MaxSATComparableConstraintEncoder(lattice, typeToInt, slotVariableMapping);
     }
 
     @Override
     public MaxSATPreferenceConstraintEncoder createPreferenceConstraintEncoder() {
-        return new MaxSATPreferenceConstraintEncoder(lattice, typeToInt);
+        return new MaxSATPreferenceConstraintEncoder(lattice, typeToInt, slotVariableMapping);
     }
 
     @Override
     public MaxSATImplicationConstraintEncoder createImplicationConstraintEncoder() {
-        return new MaxSATImplicationConstraintEncoder(lattice, typeToInt, formatTranslator);
+        return new MaxSATImplicationConstraintEncoder(lattice, typeToInt, slotVariableMapping, formatTranslator);
     }
 
     @Override
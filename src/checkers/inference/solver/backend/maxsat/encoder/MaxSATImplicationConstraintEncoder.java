@@ -4,6 +4,7 @@ import checkers.inference.model.Constraint;
 import checkers.inference.model.ImplicationConstraint;
 import checkers.inference.solver.backend.encoder.implication.ImplicationConstraintEncoder;
 import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.SlotVariableMapping;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
 
@@ -26,8 +27,9 @@ public class MaxSATImplicationConstraintEncoder
 
     public MaxSATImplicationConstraintEncoder(Lattice lattice,
             Map<AnnotationMirror, Integer> typeToInt,
+            SlotVariableMapping slotVariableMapping,
             MaxSatFormatTranslator formatTranslator) {
-        super(lattice, typeToInt);
+        super(lattice, typeToInt, slotVariableMapping);
         this.formatTranslator = formatTranslator;
     }
 
@@ -3,7 +3,7 @@ package checkers.inference.solver.backend.maxsat.encoder;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.backend.encoder.binary.InequalityConstraintEncoder;
-import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.maxsat.SlotVariableMapping;
 import checkers.inference.solver.backend.maxsat.VectorUtils;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
@@ -13,24 +13,23 @@ import java.util.Map;
 
 public class MaxSATInequalityConstraintEncoder extends MaxSATAbstractConstraintEncoder implements InequalityConstraintEncoder<VecInt[]> {
 
-    public MaxSATInequalityConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt) {
-        super(lattice, typeToInt);
+    public MaxSATInequalityConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt,
+            SlotVariableMapping slotVariableMapping) {
+        super(lattice, typeToInt, slotVariableMapping);
     }
 
     @Override
     public VecInt[] encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
         // a <=> !b which is the same as (!a v !b) & (b v a)
-        VecInt[] result = new VecInt[lattice.numTypes * 2];
+        VecInt[] result = new VecInt[indexedLattice.numTypes * 2];
         int i = 0;
-        for (AnnotationMirror type : lattice.allTypes) {
-            if (lattice.allTypes.contains(type)) {
-                result[i++] = VectorUtils.asVec(
-                        -MathUtils.mapIdToMatrixEntry(fst.getId(), typeToInt.get(type), lattice),
-                        -MathUtils.mapIdToMatrixEntry(snd.getId(), typeToInt.get(type), lattice));
-                result[i++] = VectorUtils.asVec(
-                        MathUtils.mapIdToMatrixEntry(snd.getId(), typeToInt.get(type), lattice),
-                        MathUtils.mapIdToMatrixEntry(fst.getId(), typeToInt.get(type), lattice));
-            }
+        for (int type = 0; type < indexedLattice.numTypes; type++) {
+            result[i++] = VectorUtils.asVec(
+                    -slotVariableMapping.getVariable(fst.getId(), type),
+                    -slotVariableMapping.getVariable(snd.getId(), type));
+            result[i++] = VectorUtils.asVec(
+                    slotVariableMapping.getVariable(snd.getId(), type),
+                    slotVariableMapping.getVariable(fst.getId(), type));
         }
         return result;
     }
@@ -42,9 +41,9 @@ public class MaxSATInequalityConstraintEncoder extends MaxSATAbstractConstraintE
 
     @Override
     public VecInt[] encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
-        if (lattice.allTypes.contains(fst.getValue())) {
-            return VectorUtils.asVecArray(
-                    -MathUtils.mapIdToMatrixEntry(snd.getId(), typeToInt.get(fst.getValue()), lattice));
+        int constant = indexedLattice.indexOf(fst.getValue());
+        if (constant >= 0) {
+            return VectorUtils.asVecArray(-slotVariableMapping.getVariable(snd.getId(), constant));
         } else {
             return emptyValue;
         }
@@ -4,7 +4,7 @@ import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.PreferenceConstraint;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.backend.encoder.preference.PreferenceConstraintEncoder;
-import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.maxsat.SlotVariableMapping;
 import checkers.inference.solver.backend.maxsat.VectorUtils;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
@@ -14,8 +14,9 @@ import java.util.Map;
 
 public class MaxSATPreferenceConstraintEncoder extends MaxSATAbstractConstraintEncoder implements PreferenceConstraintEncoder<VecInt[]> {
 
-    public MaxSATPreferenceConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt) {
-        super(lattice, typeToInt);
+    public MaxSATPreferenceConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt,
+            SlotVariableMapping slotVariableMapping) {
+        super(lattice, typeToInt, slotVariableMapping);
     }
 
     // TODO: we should consider the situation that the type annotations with
@@ -24,9 +25,9 @@ public class MaxSATPreferenceConstraintEncoder extends MaxSATAbstractConstraintE
     public VecInt[] encode(PreferenceConstraint constraint) {
         VariableSlot vs = constraint.getVariable();
         ConstantSlot cs = constraint.getGoal();
-        if (lattice.allTypes.contains(cs.getValue())) {
-            return VectorUtils.asVecArray(MathUtils.mapIdToMatrixEntry(vs.getId(), typeToInt.get(cs.getValue()),
-                    lattice));
+        int goal = indexedLattice.indexOf(cs.getValue());
+        if (goal >= 0) {
+            return VectorUtils.asVecArray(slotVariableMapping.getVariable(vs.getId(), goal));
         } else {
             return emptyValue;
         }
@@ -4,126 +4,122 @@ import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.backend.encoder.binary.SubtypeConstraintEncoder;
-import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.maxsat.SlotVariableMapping;
 import checkers.inference.solver.backend.maxsat.VectorUtils;
 import checkers.inference.solver.frontend.Lattice;
-import org.checkerframework.javacutil.AnnotationUtils;
 import org.sat4j.core.VecInt;
 
 import javax.lang.model.element.AnnotationMirror;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class MaxSATSubtypeConstraintEncoder extends MaxSATAbstractConstraintEncoder implements SubtypeConstraintEncoder<VecInt[]> {
 
-    public MaxSATSubtypeConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt) {
-        super(lattice, typeToInt);
+    public MaxSATSubtypeConstraintEncoder(Lattice lattice, Map<AnnotationMirror, Integer> typeToInt,
+            SlotVariableMapping slotVariableMapping) {
+        super(lattice, typeToInt, slotVariableMapping);
     }
 
     /**
      * For subtype constraint, if supertype is constant slot, then the subtype
      * cannot be the super type of supertype, same for subtype
+     *
+     * @param vSlot the variable slot of the constraint
+     * @param constant the index of the constant of the constraint
+     * @param constantIsSupertype whether the constant is the supertype of the constraint
      */
-    protected VecInt[] getMustNotBe(Set<AnnotationMirror> mustNotBe, Slot vSlot, ConstantSlot cSlot) {
-
-        List<Integer> resultList = new ArrayList<Integer>();
-
-        for (AnnotationMirror sub : mustNotBe) {
-            if (!AnnotationUtils.areSame(sub, cSlot.getValue())) {
-                resultList.add(-MathUtils.mapIdToMatrixEntry(vSlot.getId(), typeToInt.get(sub), lattice));
+    protected VecInt[] getMustNotBe(Slot vSlot, int constant, boolean constantIsSupertype) {
+        int size = 0;
+        for (int type = 0; type < indexedLattice.numTypes; type++) {
+            if (mustNotBe(type, constant, constantIsSupertype)) {
+                size++;
             }
         }
+        if (size == 0) {
+            return emptyValue;
+        }
 
-        VecInt[] result = new VecInt[resultList.size()];
-        if (resultList.size() > 0) {
-            Iterator<Integer> iterator = resultList.iterator();
-            for (int i = 0; i < result.length; i++) {
-                result[i] = VectorUtils.asVec(iterator.next().intValue());
+        VecInt[] result = new VecInt[size];
+        int i = 0;
+        for (int type = 0; type < indexedLattice.numTypes; type++) {
+            if (mustNotBe(type, constant, constantIsSupertype)) {
+                result[i++] = VectorUtils.asVec(-slotVariableMapping.getVariable(vSlot.getId(), type));
             }
-            return result;
         }
-        return emptyValue;
+        return result;
     }
 
-    protected int[] getMaybe(AnnotationMirror type, Slot knownType, Slot unknownType,
-                             Collection<AnnotationMirror> maybeSet) {
-        int[] maybeArray = new int[maybeSet.size() + 1];
-        int i = 1;
-        maybeArray[0] = -MathUtils.mapIdToMatrixEntry(knownType.getId(), typeToInt.get(type), lattice);
-        for (AnnotationMirror sup : maybeSet) {
-            maybeArray[i] = MathUtils.mapIdToMatrixEntry(unknownType.getId(), typeToInt.get(sup), lattice);
-            i++;
+    private boolean mustNotBe(int type, int constant, boolean constantIsSupertype) {
+        return constantIsSupertype
+                ? !indexedLattice.isSubtype(type, constant)
+                : !indexedLattice.isSubtype(constant, type);
+    }
+
+    protected int[] getMaybe(int type, Slot knownType, Slot unknownType, int[] maybeSet) {
+        int[] maybeArray = new int[maybeSet.length + 1];
+        maybeArray[0] = -slotVariableMapping.getVariable(knownType.getId(), type);
+        for (int i = 0; i < maybeSet.length; i++) {
+            maybeArray[i + 1] = slotVariableMapping.getVariable(unknownType.getId(), maybeSet[i]);
         }
         return maybeArray;
     }
 
     @Override
     public VecInt[] encodeVariable_Variable(VariableSlot subtype, VariableSlot supertype) {
+        final int top = indexedLattice.top;
+        final int bottom = indexedLattice.bottom;
+
         // if subtype is top, then supertype is top.
         // if supertype is bottom, then subtype is bottom.
         VecInt supertypeOfTop = VectorUtils.asVec(
-                -MathUtils.mapIdToMatrixEntry(subtype.getId(), typeToInt.get(lattice.top), lattice),
-                MathUtils.mapIdToMatrixEntry(supertype.getId(), typeToInt.get(lattice.top), lattice));
+                -slotVariableMapping.getVariable(subtype.getId(), top),
+                slotVariableMapping.getVariable(supertype.getId(), top));
         VecInt subtypeOfBottom = VectorUtils.asVec(
-                -MathUtils.mapIdToMatrixEntry(supertype.getId(), typeToInt.get(lattice.bottom), lattice),
-                MathUtils.mapIdToMatrixEntry(subtype.getId(), typeToInt.get(lattice.bottom), lattice));
+                -slotVariableMapping.getVariable(supertype.getId(), bottom),
+                slotVariableMapping.getVariable(subtype.getId(), bottom));
 
-        List<VecInt> resultList = new ArrayList<VecInt>();
-        for (AnnotationMirror type : lattice.allTypes) {
+        VecInt[] result = new VecInt[indexedLattice.numTypes * 2];
+        int i = 0;
+        for (int type = 0; type < indexedLattice.numTypes; type++) {
             // if we know subtype
-            if (!AnnotationUtils.areSame(type, lattice.top)) {
-                resultList.add(VectorUtils
-                        .asVec(getMaybe(type, subtype, supertype, lattice.superType.get(type))));
+            if (type != top) {
+                result[i++] = VectorUtils.asVec(
+                        getMaybe(type, subtype, supertype, indexedLattice.getSupertypes(type)));
             }
 
             // if we know supertype
-            if (!AnnotationUtils.areSame(type, lattice.bottom)) {
-                resultList.add(VectorUtils
-                        .asVec(getMaybe(type, supertype, subtype, lattice.subType.get(type))));
+            if (type != bottom) {
+                result[i++] = VectorUtils.asVec(
+                        getMaybe(type, supertype, subtype, indexedLattice.getSubtypes(type)));
             }
         }
-        resultList.add(supertypeOfTop);
-        resultList.add(subtypeOfBottom);
-        VecInt[] result = resultList.toArray(new VecInt[resultList.size()]);
+        result[i++] = supertypeOfTop;
+        result[i++] = subtypeOfBottom;
         return result;
     }
 
     @Override
     public VecInt[] encodeVariable_Constant(VariableSlot subtype, ConstantSlot supertype) {
-        final Set<AnnotationMirror> mustNotBe = new HashSet<>();
-        if (AnnotationUtils.areSame(supertype.getValue(), lattice.bottom)) {
-            return VectorUtils.asVecArray(
-                    MathUtils.mapIdToMatrixEntry(subtype.getId(), typeToInt.get(lattice.bottom), lattice));
+        int constant = indexedLattice.indexOf(supertype.getValue());
+        if (constant < 0) {
+            return emptyValue;
         }
-
-        if (lattice.superType.get(supertype.getValue()) != null) {
-            mustNotBe.addAll(lattice.superType.get(supertype.getValue()));
-        }
-        if (lattice.incomparableType.keySet().contains(supertype.getValue())) {
-            mustNotBe.addAll(lattice.incomparableType.get(supertype.getValue()));
+        if (constant == indexedLattice.bottom) {
+            return VectorUtils.asVecArray(
+                    slotVariableMapping.getVariable(subtype.getId(), indexedLattice.bottom));
         }
-        return getMustNotBe(mustNotBe, subtype, supertype);
+        return getMustNotBe(subtype, constant, true);
     }
 
     @Override
     public VecInt[] encodeConstant_Variable(ConstantSlot subtype, VariableSlot supertype) {
-        final Set<AnnotationMirror> mustNotBe = new HashSet<>();
-        if (AnnotationUtils.areSame(subtype.getValue(), lattice.top)) {
-            return VectorUtils.asVecArray(
-                    MathUtils.mapIdToMatrixEntry(supertype.getId(), typeToInt.get(lattice.top), lattice));
+        int constant = indexedLattice.indexOf(subtype.getValue());
+        if (constant < 0) {
+            return emptyValue;
         }
-        if (lattice.subType.get(subtype.getValue()) != null) {
-            mustNotBe.addAll(lattice.subType.get(subtype.getValue()));
-        }
-
-        if (lattice.incomparableType.keySet().contains(subtype.getValue())) {
-            mustNotBe.addAll(lattice.incomparableType.get(subtype.getValue()));
+        if (constant == indexedLattice.top) {
+            return VectorUtils.asVecArray(
+                    slotVariableMapping.getVariable(supertype.getId(), indexedLattice.top));
         }
-        return getMustNotBe(mustNotBe, supertype, subtype);
+        return getMustNotBe(supertype, constant, false);
     }
 }
@@ -26,6 +26,7 @@ import checkers.inference.model.LubVariableSlot;
 import checkers.inference.model.RefinementVariableSlot;
 import checkers.inference.model.SourceVariableSlot;
 import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.frontend.IndexedLattice;
 import checkers.inference.solver.frontend.Lattice;
 
 public abstract class Z3BitVectorFormatTranslator extends AbstractFormatTranslator<BitVecExpr, BoolExpr, BitVecNum> {
@@ -36,12 +37,19 @@ public abstract class Z3BitVectorFormatTranslator extends AbstractFormatTranslat
 
     private Map<Integer, BitVecExpr> serializedSlots;
 
+    /**
+     * The encoded bit vector of every qualifier of the lattice, by the index of the qualifier in
+     * the {@link IndexedLattice}. Constant slots with the same qualifier share the bit vector.
+     */
+    private final BitVecNum[] serializedConstants;
+
     protected final Z3BitVectorCodec z3BitVectorCodec;
 
     public Z3BitVectorFormatTranslator(Lattice lattice) {
         super(lattice);
         z3BitVectorCodec = createZ3BitVectorCodec();
         serializedSlots = new HashMap<>();
+        serializedConstants = new BitVecNum[lattice.getIndexedLattice().numTypes];
     }
 
     public final void initContext(Context context) {
@@ -105,9 +113,15 @@ public abstract class Z3BitVectorFormatTranslator extends AbstractFormatTranslat
             return serializedSlots.get(slotId);
         }
 
-        BigInteger numeralValue = z3BitVectorCodec.encodeConstantAM(slot.getValue());
-
-        BitVecNum bitVecNum = context.mkBV(numeralValue.toString(), z3BitVectorCodec.getFixedBitVectorSize());
+        int type = lattice.getIndexedLattice().indexOf(slot.getValue());
+        BitVecNum bitVecNum = type < 0 ? null : serializedConstants[type];
+        if (bitVecNum == null) {
+            BigInteger numeralValue = z3BitVectorCodec.encodeConstantAM(slot.getValue());
+            bitVecNum = context.mkBV(numeralValue.toString(), z3BitVectorCodec.getFixedBitVectorSize());
+            if (type >= 0) {
+                serializedConstants[type] = bitVecNum;
+            }
+        }
         serializedSlots.put(slotId, bitVecNum);
 
         return bitVecNum;
@@ -18,15 +18,22 @@ import checkers.inference.solver.util.Statistics;
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
 import com.microsoft.z3.Expr;
+import com.microsoft.z3.FuncDecl;
+import com.microsoft.z3.IntNum;
+import com.microsoft.z3.Model;
+import com.microsoft.z3.Status;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import javax.lang.model.element.AnnotationMirror;
 import org.checkerframework.javacutil.BugInCF;
@@ -36,7 +43,29 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
 
     public enum Z3SolverEngineArg implements SolverArg {
         /** option to use optimizing mode or not */
-        optimizingMode
+        optimizingMode,
+
+        /**
+         * option to solve with the in-process Z3 library instead of the external z3 program. The
+         * constraints are asserted directly and the model is read through the Z3 API, without
+         * generating SMT-LIB text.
+         */
+        inProcess,
+
+        /**
+         * option to minimize the unsat core in in-process mode, by checking whether the
+         * constraints of the core are still unsatisfiable without each of them
+         */
+        minimizeUnsatCore,
+
+        /**
+         * option to write the SMT-LIB constraints to files, and append them to the stats file,
+         * for debugging. Only has an effect in in-process mode, as the constraints for the
+         * external program are always written and appended. In in-process mode the file is Z3's
+         * rendering of the in-process constraints, see {@link #getInProcessSMT}, so it differs
+         * from the file written for the external program.
+         */
+        outputSMT
     }
 
     private static final Logger logger = Logger.getLogger(Z3SmtSolver.class.getName());
@@ -49,6 +78,29 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
 
     protected static final String z3Program = "z3";
     protected boolean optimizingMode;
+    protected boolean inProcess;
+
+    /**
+     * In in-process mode, the live Z3 session holding the hard constraints. Every constraint is
+     * asserted as an implication from its own assumption literal, named like the constraint, so
+     * that the unsat core is available right after the failed check, and subsets of the
+     * constraints can be checked again without encoding anything. In optimizing mode, it is only
+     * created when unsatisfiability is explained.
+     */
+    protected com.microsoft.z3.Solver session;
+
+    /** The result of checking the session with all assumption literals, or null if not checked. */
+    private Status sessionStatus;
+
+    /** The assumption literals of the constraints, in the order they were encoded. */
+    private final List<BoolExpr> assumptionLiterals = new ArrayList<>();
+
+    /**
+     * In optimizing in-process mode, the encoded hard constraints and the encoded constraints of
+     * the assumption literals, to create the session from.
+     */
+    private final List<BoolExpr> hardConstraints = new ArrayList<>();
+    private final List<BoolExpr> trackedConstraints = new ArrayList<>();
 
     /** This field indicates that whether we are going to explain unsatisfiable.*/
     protected boolean explainUnsat;
@@ -99,6 +151,7 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
     public Map<Integer, AnnotationMirror> solve() {
         // serialize based on user choice of running in optimizing or non-optimizing mode
         optimizingMode = solverEnvironment.getBoolArg(Z3SolverEngineArg.optimizingMode);
+        inProcess = solverEnvironment.getBoolArg(Z3SolverEngineArg.inProcess);
         explainUnsat = false;
 
         if (optimizingMode) {
@@ -107,6 +160,10 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             logger.fine("Encoding for non-optimizing mode");
         }
 
+        if (inProcess) {
+            return solveInProcess();
+        }
+
         serializeSMTFileContents();
 
         List<String> results = new ArrayList<>();
@@ -129,11 +186,123 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
                         results, solverEnvironment.processingEnvironment);
     }
 
+    /**
+     * Asserts the constraints directly on the in-process Z3 library and reads the solution from
+     * its model. In optimizing mode, the constraints are solved by an Optimize, otherwise by the
+     * {@link #session}.
+     */
+    private Map<Integer, AnnotationMirror> solveInProcess() {
+        serializedConstraints.clear();
+        assumptionLiterals.clear();
+        hardConstraints.clear();
+        trackedConstraints.clear();
+        if (optimizingMode) {
+            solver = ctx.mkOptimize();
+            session = null;
+        } else {
+            session = ctx.mkSolver();
+        }
+
+        serializationStart = System.currentTimeMillis();
+        encodeAllSlots();
+        encodeAllConstraints();
+        if (optimizingMode) {
+            encodeAllSoftConstraints();
+        }
+        serializationEnd = System.currentTimeMillis();
+
+        if (shouldOutputSMT()) {
+            writeConstraintsToSMTFile(getInProcessSMT(), constraintsFile);
+        }
+
+        solvingStart = System.currentTimeMillis();
+        sessionStatus = null;
+        Status status;
+        if (optimizingMode) {
+            status = solver.Check();
+        } else {
+            status = session.check(assumptionLiterals.toArray(new BoolExpr[0]));
+            sessionStatus = status;
+        }
+        solvingEnd = System.currentTimeMillis();
+
+        Statistics.addOrIncrementEntry(
+                "smt_serialization_time(millisec)", serializationEnd - serializationStart);
+        Statistics.addOrIncrementEntry("smt_solving_time(millisec)", solvingEnd - solvingStart);
+
+        if (status != Status.SATISFIABLE) {
+            if (status == Status.UNKNOWN) {
+                logger.warning("Z3 failed to solve the constraints: "
+                        + (optimizingMode ? solver.getReasonUnknown() : session.getReasonUnknown()));
+            }
+            logger.fine("!!! The set of constraints is unsatisfiable! !!!");
+            return null;
+        }
+
+        Model model = optimizingMode ? solver.getModel() : session.getModel();
+        return formatTranslator.decodeSolution(
+                getModelResults(model), solverEnvironment.processingEnvironment);
+    }
+
+    /**
+     * @return the SMT-LIB text of the in-process constraints as Z3 prints them, followed by the
+     * commands to solve them. In non-optimizing mode, every constraint is asserted as an implication
+     * from its assumption literal, and the constraints are checked assuming all of these literals,
+     * instead of being asserted directly as in the file for the external program.
+     */
+    private String getInProcessSMT() {
+        if (optimizingMode) {
+            // The text of an Optimize already ends with "(check-sat)".
+            return solver.toString() + "(get-model)\n";
+        }
+        StringBuilder smt = new StringBuilder(session.toString());
+        smt.append("(check-sat-assuming (");
+        for (int i = 0; i < assumptionLiterals.size(); i++) {
+            if (i > 0) {
+                smt.append(' ');
+            }
+            smt.append(assumptionLiterals.get(i));
+        }
+        smt.append("))\n(get-model)\n");
+        return smt.toString();
+    }
+
+    /**
+     * Converts the model to the "varName value" lines expected by
+     * {@link Z3SmtFormatTranslator#decodeSolution(List, javax.annotation.processing.ProcessingEnvironment)},
+     * in the same format as they are parsed from the output of the external program. The
+     * assumption literals of the tracked constraints are not slots and are skipped.
+     */
+    private List<String> getModelResults(Model model) {
+        List<String> results = new ArrayList<>();
+        for (FuncDecl constDecl : model.getConstDecls()) {
+            String name = constDecl.getName().toString();
+            if (serializedConstraints.containsKey(name)) {
+                continue;
+            }
+            Expr value = model.getConstInterp(constDecl);
+            String valueString;
+            if (value.isBool()) {
+                valueString = value.isTrue() ? "true" : "false";
+            } else if (value.isIntNum()) {
+                valueString = ((IntNum) value).getBigInteger().toString();
+            } else {
+                valueString = value.toString();
+            }
+            results.add(name + " " + valueString);
+        }
+        return results;
+    }
+
     @Override
     public Collection<Constraint> explainUnsatisfiable() {
         optimizingMode = false;
         explainUnsat = true;
 
+        if (inProcess) {
+            return explainUnsatisfiableInProcess();
+        }
+
         logger.fine("Now encoding for unsat core dump.");
         serializeSMTFileContents();
 
@@ -160,6 +329,103 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
         return unsatConstraints;
     }
 
+    /**
+     * Reads the unsat core from the {@link #session} of the failed solve, without encoding the
+     * constraints again. In optimizing mode, the constraints were solved by an Optimize, so the
+     * session is first created from the already encoded constraints.
+     */
+    private Collection<Constraint> explainUnsatisfiableInProcess() {
+        solvingStart = System.currentTimeMillis();
+        if (session == null) {
+            session = ctx.mkSolver();
+            for (BoolExpr hardConstraint : hardConstraints) {
+                session.Assert(hardConstraint);
+            }
+            for (int i = 0; i < trackedConstraints.size(); i++) {
+                session.Assert(ctx.mkImplies(assumptionLiterals.get(i), trackedConstraints.get(i)));
+            }
+        }
+        if (sessionStatus == null) {
+            sessionStatus = session.check(assumptionLiterals.toArray(new BoolExpr[0]));
+        }
+
+        List<Constraint> unsatConstraints = new ArrayList<>();
+        if (sessionStatus == Status.UNSATISFIABLE) {
+            BoolExpr[] core = session.getUnsatCore();
+            if (solverEnvironment.getBoolArg(Z3SolverEngineArg.minimizeUnsatCore)) {
+                core = minimizeUnsatCore(core);
+            }
+            for (BoolExpr assumptionLiteral : core) {
+                unsatConstraints.add(serializedConstraints.get(assumptionLiteral.getFuncDecl().getName().toString()));
+            }
+        } else {
+            logger.warning("Z3 did not find the constraints unsatisfiable when explaining: " + sessionStatus);
+        }
+        solvingEnd = System.currentTimeMillis();
+
+        Statistics.addOrIncrementEntry(
+                "smt_unsat_solving_time(millisec)", solvingEnd - solvingStart);
+        Statistics.addOrIncrementEntry("smt_unsat_core_size", unsatConstraints.size());
+        return unsatConstraints;
+    }
+
+    /**
+     * Removes assumption literals from the core as long as the rest is still unsatisfiable. If
+     * it is, the core is refined to the new unsat core; otherwise the literal is necessary and
+     * kept. All checks run on the same session.
+     */
+    private BoolExpr[] minimizeUnsatCore(BoolExpr[] unsatCore) {
+        List<BoolExpr> core = new ArrayList<>(Arrays.asList(unsatCore));
+        int kept = 0;
+        while (kept < core.size()) {
+            List<BoolExpr> candidate = new ArrayList<>(core);
+            candidate.remove(kept);
+            if (session.check(candidate.toArray(new BoolExpr[0])) == Status.UNSATISFIABLE) {
+                // The necessary literals before it are in every core of the candidate.
+                Set<BoolExpr> smallerCore = new HashSet<>(Arrays.asList(session.getUnsatCore()));
+                candidate.retainAll(smallerCore);
+                core = candidate;
+            } else {
+                kept++;
+            }
+        }
+        return core.toArray(new BoolExpr[0]);
+    }
+
+    protected boolean shouldOutputSMT() {
+        return solverEnvironment.getBoolArg(Z3SolverEngineArg.outputSMT);
+    }
+
+    /**
+     * Asserts a hard constraint that is not tracked by an assumption literal.
+     */
+    protected void assertHardConstraint(BoolExpr constraint) {
+        if (!inProcess) {
+            solver.Assert(constraint);
+        } else if (session != null) {
+            session.Assert(constraint);
+        } else {
+            solver.Assert(constraint);
+            hardConstraints.add(constraint);
+        }
+    }
+
+    /**
+     * In in-process mode, asserts the encoding of a constraint, tracked by a new assumption
+     * literal with the given name.
+     */
+    protected void assertTrackedConstraint(String constraintName, Constraint constraint, BoolExpr encoding) {
+        BoolExpr assumptionLiteral = ctx.mkBoolConst(constraintName);
+        assumptionLiterals.add(assumptionLiteral);
+        serializedConstraints.put(constraintName, constraint);
+        if (session != null) {
+            session.Assert(ctx.mkImplies(assumptionLiteral, encoding));
+        } else {
+            solver.Assert(encoding);
+            trackedConstraints.add(encoding);
+        }
+    }
+
     private void serializeSMTFileContents() {
         // make a fresh solver to contain encodings of the slots
         solver = ctx.mkOptimize();
@@ -188,21 +454,15 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             smtFileContents.append("(get-model)\n");
         }
         
-        logger.fine("Writing constraints to file: " + constraintsFile);
-
-        writeConstraintsToSMTFile();
+        // write the constraints, or the unsat core constraints, to the file for external solver use
+        writeConstraintsToSMTFile(smtFileContents.toString(),
+                explainUnsat ? constraintsUnsatCoreFile : constraintsFile);
     }
 
-    private void writeConstraintsToSMTFile() {
-        String fileContents = smtFileContents.toString();
+    private void writeConstraintsToSMTFile(String fileContents, String file) {
+        logger.fine("Writing constraints to file: " + file);
+        FileUtils.writeFile(new File(file), fileContents);
 
-        if (!explainUnsat) {
-            // write the constraints to the file for external solver use
-            FileUtils.writeFile(new File(constraintsFile), fileContents);
-        } else {
-            // write the unsat core constraints to the file for external solver use
-            FileUtils.writeFile(new File(constraintsUnsatCoreFile), fileContents);
-        }
         // write a copy in append mode to stats file for later bulk analysis
         FileUtils.appendFile(new File(constraintsStatsFile), fileContents);
     }
@@ -217,7 +477,7 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
                 BoolExpr wfConstraint = formatTranslator.encodeSlotWellformednessConstraint((VariableSlot) slot);
 
                 if (!wfConstraint.simplify().isTrue()) {
-                    solver.Assert(wfConstraint);
+                    assertHardConstraint(wfConstraint);
                 }
                 if (optimizingMode) {
                     encodeSlotPreferenceConstraint((VariableSlot) slot);
@@ -225,6 +485,10 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
             }
         }
 
+        if (inProcess) {
+            return;
+        }
+
         // solver.toString() also includes "(check-sat)" as the last line,
         // remove it
         String slotDefinitionsAndConstraints = solver.toString();
@@ -276,6 +540,14 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
                                 + serializedConstraint);
             }
 
+            if (inProcess) {
+                // track assertions with names, for the unsat core
+                String constraintName = constraint.getClass().getSimpleName() + current;
+                assertTrackedConstraint(constraintName, constraint, (BoolExpr) simplifiedConstraint);
+                current++;
+                continue;
+            }
+
             String clause = simplifiedConstraint.toString();
 
             if (!optimizingMode && explainUnsat) {
@@ -303,7 +575,11 @@ public class Z3SmtSolver<SlotEncodingT, SlotSolutionT>
 
     protected void encodeAllSoftConstraints() {
     	final Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT> encoder = formatTranslator.createSoftConstraintEncoder();
-        smtFileContents.append(encoder.encodeAndGetSoftConstraints(constraints));
+        if (inProcess) {
+            encoder.encodeSoftConstraints(constraints, solver);
+        } else {
+            smtFileContents.append(encoder.encodeAndGetSoftConstraints(constraints));
+        }
     }
 
     protected void encodeSlotPreferenceConstraint(VariableSlot varSlot) {
@@ -2,8 +2,12 @@ package checkers.inference.solver.backend.z3smt.encoder;
 
 import java.util.Collection;
 
+import org.checkerframework.javacutil.BugInCF;
+
+import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
 import com.microsoft.z3.Expr;
+import com.microsoft.z3.Optimize;
 
 import checkers.inference.model.ArithmeticConstraint;
 import checkers.inference.model.CombineConstraint;
@@ -23,6 +27,9 @@ public abstract class Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT>
 
     protected final StringBuilder softConstraints;
 
+    /** If not null, soft constraints are asserted on it instead of being serialized. */
+    private Optimize optimize;
+
     public Z3SmtSoftConstraintEncoder(
             Lattice lattice,
             Context ctx,
@@ -32,10 +39,34 @@ public abstract class Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT>
     }
 
     protected void addSoftConstraint(Expr serializedConstraint, int weight) {
+        if (optimize != null) {
+            if (!serializedConstraint.isBool()) {
+                throw new BugInCF("Soft constraint is not boolean: " + serializedConstraint);
+            }
+            optimize.AssertSoft((BoolExpr) serializedConstraint, weight, "");
+            return;
+        }
         softConstraints.append("(assert-soft " + serializedConstraint + " :weight " + weight + ")\n");
     }
-    
+
     public String encodeAndGetSoftConstraints(Collection<Constraint> constraints) {
+        encodeSoftConstraints(constraints);
+        return softConstraints.toString();
+    }
+
+    /**
+     * Asserts the soft constraints directly on the given Optimize.
+     */
+    public void encodeSoftConstraints(Collection<Constraint> constraints, Optimize optimize) {
+        this.optimize = optimize;
+        try {
+            encodeSoftConstraints(constraints);
+        } finally {
+            this.optimize = null;
+        }
+    }
+
+    private void encodeSoftConstraints(Collection<Constraint> constraints) {
         for (Constraint constraint : constraints) {
             // Generate a soft constraint for subtype constraint
             if (constraint instanceof SubtypeConstraint) {
@@ -74,6 +105,5 @@ public abstract class Z3SmtSoftConstraintEncoder<SlotEncodingT, SlotSolutionT>
                 encodePreferenceConstraint((PreferenceConstraint) constraint);
             }
         }
-        return softConstraints.toString();
     }
 }
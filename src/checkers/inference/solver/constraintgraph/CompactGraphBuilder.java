@@ -0,0 +1,382 @@
+package checkers.inference.solver.constraintgraph;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.BugInCF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation.Kind;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import dataflow.DataflowVisitor;
+import dataflow.util.DataflowUtils;
+
+/**
+ * CompactGraphBuilder builds the same {@link ConstraintGraph} as {@link GraphBuilder}, i.e. the
+ * same independent components and the same constant paths, but without materializing
+ * {@link Vertex} and {@link Edge} objects for every slot and constraint.
+ *
+ * Edges are collected into primitive arrays and turned into a compressed sparse row (CSR)
+ * adjacency structure indexed by slot id. Independent components are computed with a union-find
+ * pass over the edges, and constant paths with a breadth-first search over the CSR arrays. Edges
+ * of an n-ary constraint are derived in the same order as {@link GraphBuilder} derives them, but
+ * iteratively, so graph construction is linear in the total arity of the constraints (constraints
+ * with runs of several ConstantSlots may cost up to quadratic in their own arity).
+ *
+ * Unlike {@link GraphBuilder}, a constraint is never dropped because another constraint already
+ * produced an edge between the same pair of slots.
+ */
+public class CompactGraphBuilder {
+    private final Collection<Constraint> constraints;
+    private final ConstraintGraph graph;
+    private final AnnotationMirror top;
+
+    /** Constraints that produced at least one edge, indexed by their position in this list. */
+    private final List<Constraint> edgeConstraints = new ArrayList<>();
+
+    /** Slots that appear in an edge, indexed by slot id. */
+    private Slot[] slotsById = new Slot[16];
+
+    // Edge list. Edge i goes from edgeFrom[i] to edgeTo[i] and represents constraint edgeConstraint[i].
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+    private int[] edgeConstraint = new int[16];
+    private final BitSet subtypeEdges = new BitSet();
+    private int numEdges = 0;
+
+    // CSR adjacency. The half edges of vertex v are at indices adjOffsets[v] .. adjOffsets[v + 1] - 1.
+    private int[] adjOffsets;
+    private int[] adjNeighbor;
+    private int[] adjConstraint;
+    /** Half edges that a constant path search must not follow, i.e. from a supertype to its subtype. */
+    private BitSet adjBlocked;
+
+    public CompactGraphBuilder(Collection<Slot> slots, Collection<Constraint> constraints, AnnotationMirror top) {
+        this.constraints = constraints;
+        this.graph = new ConstraintGraph();
+        this.top = top;
+    }
+
+    public ConstraintGraph buildGraph() {
+        // Reused buffer holding the slots of the current n-ary constraint.
+        Slot[] buffer = new Slot[8];
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint) {
+                addSubtypeEdge((SubtypeConstraint) constraint);
+            } else if (constraint instanceof ExistentialConstraint) {
+                continue;
+            } else {
+                List<Slot> slots = constraint.getSlots();
+                if (slots.size() > buffer.length) {
+                    buffer = new Slot[Math.max(slots.size(), buffer.length * 2)];
+                }
+                slots.toArray(buffer);
+                addEdges(buffer, slots.size(), constraint);
+            }
+        }
+        buildAdjacency();
+        calculateIndependentPath();
+        calculateConstantPath();
+        return getGraph();
+    }
+
+    /**
+     * Derives the edges of an n-ary constraint. This is an iterative version of
+     * {@link GraphBuilder}'s recursive edge derivation: each frame takes the first remaining slot
+     * and connects it to the following slots, descending into a new frame after every edge. The
+     * remaining slots are {@code slots[head..length)}, so taking the first slot is a pointer bump
+     * instead of a list removal.
+     */
+    private void addEdges(Slot[] slots, int length, Constraint constraint) {
+        if (length == 0) {
+            return;
+        }
+        // Each frame is the slot it connects from plus the offset of the next slot to look at.
+        int[] frameFirst = new int[length];
+        int[] frameOffset = new int[length];
+        int depth = 0;
+        int head = 0;
+
+        frameFirst[depth] = head++;
+        frameOffset[depth] = 0;
+        depth++;
+
+        while (depth > 0) {
+            int frame = depth - 1;
+            int nextIndex = head + frameOffset[frame];
+            if (nextIndex >= length) {
+                depth--;
+                continue;
+            }
+            frameOffset[frame]++;
+
+            Slot first = slots[frameFirst[frame]];
+            Slot next = slots[nextIndex];
+            if (first instanceof ConstantSlot && next instanceof ConstantSlot) {
+                continue;
+            }
+            addEdge(first, next, constraint, false);
+
+            frameFirst[depth] = head++;
+            frameOffset[depth] = 0;
+            depth++;
+        }
+    }
+
+    /**
+     * The order of subtype and supertype matters, first one has to be subtype,
+     * second one has to be supertype.
+     *
+     * @param subtypeConstraint
+     */
+    private void addSubtypeEdge(SubtypeConstraint subtypeConstraint) {
+        Slot subtype = subtypeConstraint.getSubtype();
+        Slot supertype = subtypeConstraint.getSupertype();
+        if (subtype instanceof ConstantSlot && supertype instanceof ConstantSlot) {
+            return;
+        }
+        addEdge(subtype, supertype, subtypeConstraint, true);
+    }
+
+    private void addEdge(Slot from, Slot to, Constraint constraint, boolean isSubtype) {
+        // Edges of the same constraint are always added consecutively.
+        int constraintIndex = edgeConstraints.size() - 1;
+        if (constraintIndex < 0 || edgeConstraints.get(constraintIndex) != constraint) {
+            edgeConstraints.add(constraint);
+            constraintIndex++;
+        }
+
+        recordSlot(from);
+        recordSlot(to);
+
+        if (numEdges == edgeFrom.length) {
+            int newLength = numEdges * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, newLength);
+            edgeTo = Arrays.copyOf(edgeTo, newLength);
+            edgeConstraint = Arrays.copyOf(edgeConstraint, newLength);
+        }
+        edgeFrom[numEdges] = from.getId();
+        edgeTo[numEdges] = to.getId();
+        edgeConstraint[numEdges] = constraintIndex;
+        if (isSubtype) {
+            subtypeEdges.set(numEdges);
+        }
+        numEdges++;
+    }
+
+    private void recordSlot(Slot slot) {
+        int id = slot.getId();
+        if (id >= slotsById.length) {
+            slotsById = Arrays.copyOf(slotsById, Math.max(id + 1, slotsById.length * 2));
+        }
+        slotsById[id] = slot;
+    }
+
+    /**
+     * Builds the CSR adjacency from the edge list. A self loop contributes a single half edge.
+     */
+    private void buildAdjacency() {
+        final int numIds = slotsById.length;
+        adjOffsets = new int[numIds + 1];
+        for (int e = 0; e < numEdges; e++) {
+            adjOffsets[edgeFrom[e] + 1]++;
+            if (edgeFrom[e] != edgeTo[e]) {
+                adjOffsets[edgeTo[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < numIds; v++) {
+            adjOffsets[v + 1] += adjOffsets[v];
+        }
+
+        final int numHalfEdges = adjOffsets[numIds];
+        adjNeighbor = new int[numHalfEdges];
+        adjConstraint = new int[numHalfEdges];
+        adjBlocked = new BitSet(numHalfEdges);
+        int[] fill = Arrays.copyOf(adjOffsets, numIds);
+
+        for (int e = 0; e < numEdges; e++) {
+            final int from = edgeFrom[e];
+            final int to = edgeTo[e];
+            final boolean isSubtype = subtypeEdges.get(e);
+
+            int pos = fill[from]++;
+            adjNeighbor[pos] = to;
+            adjConstraint[pos] = edgeConstraint[e];
+            // A subtype self loop is only ever seen from its supertype end.
+            if (isSubtype && from == to) {
+                adjBlocked.set(pos);
+            }
+
+            if (from != to) {
+                pos = fill[to]++;
+                adjNeighbor[pos] = from;
+                adjConstraint[pos] = edgeConstraint[e];
+                if (isSubtype) {
+                    adjBlocked.set(pos);
+                }
+            }
+        }
+    }
+
+    private boolean isVertex(int id) {
+        return adjOffsets[id] != adjOffsets[id + 1];
+    }
+
+    /**
+     * Calculates all independent components with a union-find pass over the edges. Components
+     * are ordered by their smallest slot id.
+     */
+    private void calculateIndependentPath() {
+        final int numIds = slotsById.length;
+        int[] parent = new int[numIds];
+        for (int v = 0; v < numIds; v++) {
+            parent[v] = v;
+        }
+        for (int e = 0; e < numEdges; e++) {
+            int root1 = find(parent, edgeFrom[e]);
+            int root2 = find(parent, edgeTo[e]);
+            if (root1 != root2) {
+                // Keep the smaller id as root so component order is stable.
+                if (root1 < root2) {
+                    parent[root2] = root1;
+                } else {
+                    parent[root1] = root2;
+                }
+            }
+        }
+
+        List<Set<Constraint>> components = new ArrayList<>();
+        int[] componentOfRoot = new int[numIds];
+        Arrays.fill(componentOfRoot, -1);
+        for (int v = 0; v < numIds; v++) {
+            if (isVertex(v) && find(parent, v) == v) {
+                componentOfRoot[v] = components.size();
+                components.add(new HashSet<Constraint>());
+            }
+        }
+
+        for (int e = 0; e < numEdges; e++) {
+            int root = find(parent, edgeFrom[e]);
+            components.get(componentOfRoot[root]).add(edgeConstraints.get(edgeConstraint[e]));
+        }
+
+        for (Set<Constraint> component : components) {
+            this.graph.addIndependentPath(component);
+        }
+    }
+
+    private static int find(int[] parent, int v) {
+        int root = v;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // Path compression
+        while (parent[v] != root) {
+            int next = parent[v];
+            parent[v] = root;
+            v = next;
+        }
+        return root;
+    }
+
+    /**
+     * For each constant vertex, this method runs a BFS on it and puts all
+     * constraints that can be reached by the vertex into one set.
+     */
+    private void calculateConstantPath() {
+        final int numIds = slotsById.length;
+        final boolean isDataflow = InferenceMain.getInstance().getVisitor() instanceof DataflowVisitor;
+
+        // A constant vertex that a search stops at, i.e. that is reached but not expanded.
+        BitSet stopConstants = new BitSet(numIds);
+        for (int v = 0; v < numIds; v++) {
+            if (isVertex(v) && slotsById[v] instanceof ConstantSlot) {
+                AnnotationMirror value = ((ConstantSlot) slotsById[v]).getValue();
+                if (AnnotationUtils.areSame(top, value)) {
+                    stopConstants.set(v);
+                } else if (isDataflow) {
+                    String[] typeNames = DataflowUtils.getTypeNames(value);
+                    if (typeNames.length == 1 && typeNames[0].length() == 0) {
+                        stopConstants.set(v);
+                    }
+                }
+            }
+        }
+
+        // Stamps avoid clearing the visited marks between searches.
+        int[] visitedStamp = new int[numIds];
+        int[] constraintStamp = new int[edgeConstraints.size()];
+        int[] queue = new int[numIds];
+        int stamp = 0;
+
+        for (int start = 0; start < numIds; start++) {
+            if (!isVertex(start) || !(slotsById[start] instanceof ConstantSlot)) {
+                continue;
+            }
+            stamp++;
+            Set<Constraint> constantPathConstraints = new HashSet<>();
+            int queueHead = 0;
+            int queueTail = 0;
+            queue[queueTail++] = start;
+            visitedStamp[start] = stamp;
+
+            while (queueHead < queueTail) {
+                final int current = queue[queueHead++];
+                for (int pos = adjOffsets[current]; pos < adjOffsets[current + 1]; pos++) {
+                    if (adjBlocked.get(pos)) {
+                        continue;
+                    }
+                    final int constraintIndex = adjConstraint[pos];
+                    if (constraintStamp[constraintIndex] != stamp) {
+                        constraintStamp[constraintIndex] = stamp;
+                        constantPathConstraints.add(edgeConstraints.get(constraintIndex));
+                    }
+
+                    final int next = adjNeighbor[pos];
+                    if (visitedStamp[next] == stamp) {
+                        continue;
+                    }
+                    Slot nextSlot = slotsById[next];
+                    if (nextSlot instanceof ConstantSlot) {
+                        if (stopConstants.get(next)) {
+                            continue;
+                        }
+                    } else {
+                        VariableSlot slot = (VariableSlot) nextSlot;
+                        if (slot.getLocation() != null && slot.getLocation().getKind().equals(Kind.MISSING)) {
+                            if (InferenceMain.isHackMode()) {
+                                continue;
+                            } else {
+                                throw new BugInCF("In CompactGraphBuilder.calculateConstantPath: find a slot of which " +
+                                        "the location is either null or MISSING_LOCATION!");
+                            }
+                        }
+                    }
+                    visitedStamp[next] = stamp;
+                    queue[queueTail++] = next;
+                }
+            }
+
+            Vertex vertex = new Vertex(slotsById[start]);
+            this.graph.addConstant(vertex);
+            this.graph.addConstantPath(vertex, constantPathConstraints);
+        }
+    }
+
+    public ConstraintGraph getGraph() {
+        return this.graph;
+    }
+}
@@ -0,0 +1,171 @@
+package checkers.inference.solver.frontend;
+
+import java.util.Collection;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+/**
+ * An integer-indexed view of a {@link Lattice}, for encoders that query the lattice once per
+ * constraint.
+ *
+ * The type qualifiers are numbered 0, 1, ..., numTypes - 1 in the iteration order of
+ * {@link Lattice#allTypes}. The subtype and incomparable relations are stored as bitsets, so
+ * queries neither compare nor hash AnnotationMirrors, and the subtypes, supertypes and
+ * incomparable types of every qualifier are precomputed as arrays of indices.
+ *
+ * Use {@link Lattice#getIndexedLattice()} to get the view of a lattice.
+ */
+public final class IndexedLattice {
+
+    /**
+     * Number of type qualifiers.
+     */
+    public final int numTypes;
+
+    /**
+     * Index of the top qualifier.
+     */
+    public final int top;
+
+    /**
+     * Index of the bottom qualifier.
+     */
+    public final int bottom;
+
+    /** The qualifier of every index. */
+    private final AnnotationMirror[] types;
+
+    /** The index of every qualifier. */
+    private final Map<AnnotationMirror, Integer> indices;
+
+    /** Bit j of subtypeBits[i] is set iff j is a subtype of i. */
+    private final long[][] subtypeBits;
+
+    /** Bit j of incomparableBits[i] is set iff i and j are incomparable. */
+    private final long[][] incomparableBits;
+
+    private final int[][] subtypes;
+
+    private final int[][] supertypes;
+
+    private final int[][] incomparableTypes;
+
+    IndexedLattice(Lattice lattice) {
+        numTypes = lattice.allTypes.size();
+        types = new AnnotationMirror[numTypes];
+        indices = AnnotationUtils.createAnnotationMap();
+        int index = 0;
+        for (AnnotationMirror type : lattice.allTypes) {
+            types[index] = type;
+            indices.put(type, index);
+            index++;
+        }
+        top = indexOf(lattice.top);
+        bottom = indexOf(lattice.bottom);
+
+        int words = (numTypes + 63) >>> 6;
+        subtypeBits = new long[numTypes][words];
+        incomparableBits = new long[numTypes][words];
+        long[][] supertypeBits = new long[numTypes][words];
+        for (int i = 0; i < numTypes; i++) {
+            setBits(subtypeBits[i], lattice.subType.get(types[i]));
+            setBits(supertypeBits[i], lattice.superType.get(types[i]));
+            setBits(incomparableBits[i], lattice.incomparableType.get(types[i]));
+        }
+
+        subtypes = new int[numTypes][];
+        supertypes = new int[numTypes][];
+        incomparableTypes = new int[numTypes][];
+        for (int i = 0; i < numTypes; i++) {
+            subtypes[i] = toIndices(subtypeBits[i]);
+            supertypes[i] = toIndices(supertypeBits[i]);
+            incomparableTypes[i] = toIndices(incomparableBits[i]);
+        }
+    }
+
+    private void setBits(long[] bits, Collection<AnnotationMirror> relatedTypes) {
+        if (relatedTypes == null) {
+            return;
+        }
+        for (AnnotationMirror type : relatedTypes) {
+            int index = indexOf(type);
+            if (index >= 0) {
+                bits[index >>> 6] |= 1L << index;
+            }
+        }
+    }
+
+    private static int[] toIndices(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (int word = 0; word < bits.length; word++) {
+            for (long rest = bits[word]; rest != 0; rest &= rest - 1) {
+                result[i++] = (word << 6) + Long.numberOfTrailingZeros(rest);
+            }
+        }
+        return result;
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return the index of the given qualifier, or -1 if it is not in the lattice
+     */
+    public int indexOf(AnnotationMirror type) {
+        Integer index = indices.get(type);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the qualifier of the given index
+     */
+    public AnnotationMirror getType(int index) {
+        return types[index];
+    }
+
+    /**
+     * @return true iff the qualifier {@code sub} is a subtype of the qualifier {@code sup}
+     */
+    public boolean isSubtype(int sub, int sup) {
+        return get(subtypeBits[sup], sub);
+    }
+
+    /**
+     * @return true iff the qualifiers {@code a} and {@code b} are incomparable
+     */
+    public boolean isIncomparable(int a, int b) {
+        return get(incomparableBits[a], b);
+    }
+
+    /**
+     * @return the subtypes of the given qualifier, including itself. The array must not be
+     * modified.
+     */
+    public int[] getSubtypes(int type) {
+        return subtypes[type];
+    }
+
+    /**
+     * @return the supertypes of the given qualifier, including itself. The array must not be
+     * modified.
+     */
+    public int[] getSupertypes(int type) {
+        return supertypes[type];
+    }
+
+    /**
+     * @return the qualifiers incomparable to the given qualifier. The array must not be modified.
+     */
+    public int[] getIncomparableTypes(int type) {
+        return incomparableTypes[type];
+    }
+}
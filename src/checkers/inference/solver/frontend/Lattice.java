@@ -73,6 +73,11 @@ public class Lattice {
     /* @Nullable */
     private final QualifierHierarchy underlyingQualifierHierarchy;
 
+    /**
+     * Integer-indexed view of this lattice, created on first use.
+     */
+    private volatile IndexedLattice indexedLattice;
+
     public Lattice(Map<AnnotationMirror, Collection<AnnotationMirror>> subType,
             Map<AnnotationMirror, Collection<AnnotationMirror>> superType,
             Map<AnnotationMirror, Collection<AnnotationMirror>> incomparableType,
@@ -89,8 +94,43 @@ public class Lattice {
         this.allAnnotations = runtimeAMs;
     }
 
+    /**
+     * Creates a lattice with the qualifiers of {@code structure} and the given runtime
+     * annotations. The relations and the integer-indexed view are shared with {@code structure}.
+     */
+    Lattice(Lattice structure, Collection<AnnotationMirror> runtimeAMs) {
+        this.subType = structure.subType;
+        this.superType = structure.superType;
+        this.incomparableType = structure.incomparableType;
+        this.allTypes = structure.allTypes;
+        this.top = structure.top;
+        this.bottom = structure.bottom;
+        this.numTypes = structure.numTypes;
+        this.underlyingQualifierHierarchy = structure.underlyingQualifierHierarchy;
+        this.allAnnotations = runtimeAMs;
+        this.indexedLattice = structure.getIndexedLattice();
+    }
+
     public boolean isSubtype(AnnotationMirror a1, AnnotationMirror a2) {
         return underlyingQualifierHierarchy.isSubtype(a1, a2);
 
     }
+
+    /**
+     * @return the integer-indexed view of this lattice. Solvers of different components may
+     * share a lattice, so the view is created at most once.
+     */
+    public IndexedLattice getIndexedLattice() {
+        IndexedLattice result = indexedLattice;
+        if (result == null) {
+            synchronized (this) {
+                result = indexedLattice;
+                if (result == null) {
+                    result = new IndexedLattice(this);
+                    indexedLattice = result;
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -19,44 +19,6 @@ import checkers.inference.model.Slot;
 
 public class LatticeBuilder {
 
-    /**
-     * subType maps each type qualifier to its sub types.
-     */
-    private final Map<AnnotationMirror, Collection<AnnotationMirror>> subType;
-
-    /**
-     * superType maps each type qualifier to its super types.
-     */
-    private final Map<AnnotationMirror, Collection<AnnotationMirror>> superType;
-
-    /**
-     * incomparableType maps each type qualifier to its incomparable types.
-     */
-    private final Map<AnnotationMirror, Collection<AnnotationMirror>> incomparableType;
-
-    /**
-     * All type qualifiers in underling type system.
-     * Requires annotation ordering, so must created with {@code AnnotationUtils.createAnnotationSet()} when constructing from empty set,
-     * even if being converted to {@code UnmodifiableSet} later on
-     * TODO remove the dependency to TreeSet
-     */
-    private Set<? extends AnnotationMirror> allTypes;
-
-    /**
-     * Top qualifier of underling type system.
-     */
-    private AnnotationMirror top;
-
-    /**
-     * Bottom type qualifier of underling type system.
-     */
-    private AnnotationMirror bottom;
-
-    /**
-     * Number of type qualifier in underling type system.
-     */
-    private int numTypes;
-
     /**
      * All concrete qualifiers extracted from slots collected from the program
      * that CF Inference running on.
@@ -66,9 +28,6 @@ public class LatticeBuilder {
     public final Collection<AnnotationMirror> allAnnotations;
 
     public LatticeBuilder() {
-        subType = AnnotationUtils .createAnnotationMap();
-        superType = AnnotationUtils.createAnnotationMap();
-        incomparableType = AnnotationUtils.createAnnotationMap();
         allAnnotations = AnnotationUtils.createAnnotationSet();
 
     }
@@ -76,45 +35,64 @@ public class LatticeBuilder {
     /**
      * Build a normal lattice with all fields configured.
      *
+     * The qualifiers and their relations only depend on the qualifier hierarchy and the supported
+     * qualifiers, so they are computed once per run of inference and cached across invocations;
+     * only the constant annotations of the slots are collected for every lattice.
+     *
      * @param qualHierarchy of underling type system.
      * @return a new Lattice instance.
      */
     public Lattice buildLattice(QualifierHierarchy qualHierarchy, Collection<Slot> slots) {
         clear();
 
-        Set<AnnotationMirror> supportedAnnos = AnnotationUtils.createAnnotationSet();
         Set<Class<? extends Annotation>> annoClasses =
                 InferenceMain.getInstance().getRealTypeFactory().getSupportedTypeQualifiers();
+        Lattice structure = getLatticeCache().getLattice(qualHierarchy, annoClasses,
+                () -> buildLatticeStructure(qualHierarchy, annoClasses));
+
+        collectConstantAnnotationMirrors(slots);
+
+        return new Lattice(structure, allAnnotations);
+    }
+
+    /**
+     * Build a lattice of the given qualifiers without runtime annotations. The maps are not
+     * shared with this builder, as the lattice is cached.
+     */
+    private Lattice buildLatticeStructure(QualifierHierarchy qualHierarchy,
+            Set<Class<? extends Annotation>> annoClasses) {
+        Set<AnnotationMirror> supportedAnnos = AnnotationUtils.createAnnotationSet();
         for (Class<? extends Annotation> ac: annoClasses) {
             supportedAnnos.add(new AnnotationBuilder(
                     InferenceMain.getInstance().getRealTypeFactory().getProcessingEnv(), ac).build());
         }
 
-        top = qualHierarchy.getTopAnnotations().iterator().next();
-        bottom = qualHierarchy.getBottomAnnotations().iterator().next();
+        AnnotationMirror top = qualHierarchy.getTopAnnotations().iterator().next();
+        AnnotationMirror bottom = qualHierarchy.getBottomAnnotations().iterator().next();
 
         // this is a workaround for "computed" bottoms. e.g. DataFlow bottom
         if (!AnnotationUtils.containsSame(supportedAnnos, bottom)) {
             supportedAnnos.add(bottom);
         }
 
-        allTypes = Collections.unmodifiableSet(supportedAnnos);
-        numTypes = supportedAnnos.size();
+        Set<AnnotationMirror> allTypes = Collections.unmodifiableSet(supportedAnnos);
+
+        Map<AnnotationMirror, Collection<AnnotationMirror>> subType = AnnotationUtils.createAnnotationMap();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> superType = AnnotationUtils.createAnnotationMap();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> incomparableType = AnnotationUtils.createAnnotationMap();
+        for (AnnotationMirror i : allTypes) {
+            subType.put(i, new HashSet<AnnotationMirror>());
+            superType.put(i, new HashSet<AnnotationMirror>());
+        }
 
-        // Calculate subtypes map and supertypes map
+        // Calculate subtypes map and supertypes map, with one isSubtype query per pair
         for (AnnotationMirror i : allTypes) {
-            Set<AnnotationMirror> subtypeOfi = new HashSet<AnnotationMirror>();
-            Set<AnnotationMirror> supertypeOfi = new HashSet<AnnotationMirror>();
             for (AnnotationMirror j : allTypes) {
                 if (qualHierarchy.isSubtype(j, i)) {
-                    subtypeOfi.add(j);
-                }
-                if (qualHierarchy.isSubtype(i, j)) {
-                    supertypeOfi.add(j);
+                    subType.get(i).add(j);
+                    superType.get(j).add(i);
                 }
             }
-            subType.put(i, subtypeOfi);
-            superType.put(i, supertypeOfi);
         }
 
         // Calculate incomparable types map
@@ -130,47 +108,64 @@ public class LatticeBuilder {
             }
         }
 
-        collectConstantAnnotationMirrors(slots);
-
         return new Lattice(subType, superType, incomparableType, allTypes, top,
-                bottom, numTypes, allAnnotations, qualHierarchy);
+                bottom, allTypes.size(), Collections.<AnnotationMirror>emptySet(), qualHierarchy);
     }
 
     /**
      * Build a two-qualifier lattice with all fields configured.
-     * 
+     *
+     * The lattice only depends on the two qualifiers, so it is cached across invocations and the
+     * same instance is returned for the same pair of qualifiers within a run of inference.
+     *
      * @param top type qualifier of underling type system.
      * @param bottom type qualifier of underling type system.
-     * @return a new TwoQualifiersLattice instance.
+     * @return a TwoQualifiersLattice instance.
      */
     public TwoQualifiersLattice buildTwoTypeLattice(AnnotationMirror top, AnnotationMirror bottom) {
         clear();
+        return getLatticeCache().getTwoTypeLattice(top, bottom, () -> buildTwoTypeLatticeStructure(top, bottom));
+    }
+
+    /**
+     * @return the lattices of the current run, or an empty cache if there is no InferenceMain
+     * instance
+     */
+    private static LatticeCache getLatticeCache() {
+        InferenceMain inferenceMain = InferenceMain.getInstance();
+        return inferenceMain == null ? new LatticeCache() : inferenceMain.getLatticeCache();
+    }
+
+    /**
+     * Build a two-qualifier lattice. The maps are not shared with this builder, as the lattice is
+     * cached.
+     */
+    private static TwoQualifiersLattice buildTwoTypeLatticeStructure(AnnotationMirror top, AnnotationMirror bottom) {
         Set<AnnotationMirror> tempSet = AnnotationUtils.createAnnotationSet();
         tempSet.add(top);
         tempSet.add(bottom);
-        allTypes = Collections.unmodifiableSet(tempSet);
-        this.top = top;
-        this.bottom = bottom;
-        numTypes = 2;
+        Set<AnnotationMirror> allTypes = Collections.unmodifiableSet(tempSet);
 
         // Calculate subertypes map and supertypes map.
+        Map<AnnotationMirror, Collection<AnnotationMirror>> subType = AnnotationUtils.createAnnotationMap();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> superType = AnnotationUtils.createAnnotationMap();
         Set<AnnotationMirror> topSet = AnnotationUtils.createAnnotationSet();
         Set<AnnotationMirror> bottomSet = AnnotationUtils.createAnnotationSet();
         topSet.add(top);
         bottomSet.add(bottom);
-        subType.put(top, Collections.unmodifiableSet(allTypes));
-        superType.put(top, topSet);
-        subType.put(bottom, bottomSet);
-        superType.put(bottom, Collections.unmodifiableSet(allTypes));
+        subType.put(top, allTypes);
+        superType.put(top, Collections.unmodifiableSet(topSet));
+        subType.put(bottom, Collections.unmodifiableSet(bottomSet));
+        superType.put(bottom, allTypes);
 
         // Incomparable map should be empty in two qualifiers lattice.
-        incomparableType.clear();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> incomparableType = AnnotationUtils.createAnnotationMap();
 
         //TODO: RuntimeAMs information seems only useful for dynamic lattices.
         // Is there a need to extract runtime annotation mirrors for two qualifiers lattice?
 
         return new TwoQualifiersLattice(subType, superType, incomparableType,
-                allTypes, top, bottom, numTypes);
+                allTypes, top, bottom, 2);
     }
 
     /**
@@ -179,13 +174,6 @@ public class LatticeBuilder {
      */
     private void clear() {
         allAnnotations.clear();
-        this.subType.clear();
-        this.superType.clear();
-        this.incomparableType.clear();
-        allTypes = null;
-        top = null;
-        bottom = null;
-        numTypes = 0;
     }
 
     /**
@@ -0,0 +1,129 @@
+package checkers.inference.solver.frontend;
+
+import java.lang.annotation.Annotation;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.AnnotationUtils;
+
+/**
+ * The lattices shared by the {@link LatticeBuilder}s of one run of inference. The lattices hold
+ * the qualifier hierarchy and annotation mirrors of the run's compilation, so the cache belongs to
+ * the {@link checkers.inference.InferenceMain} instance and is dropped with it.
+ */
+public class LatticeCache {
+
+    /**
+     * Maximum number of lattices kept in {@link #lattices}.
+     */
+    private static final int MAX_CACHED_LATTICES = 8;
+
+    /**
+     * Maximum number of lattices kept in {@link #twoTypeLattices}.
+     */
+    private static final int MAX_CACHED_TWO_TYPE_LATTICES = 64;
+
+    /**
+     * Lattices without runtime annotations, by qualifier hierarchy and supported qualifiers. The
+     * least recently used lattice is evicted first.
+     */
+    private final Map<LatticeKey, Lattice> lattices = createLruMap(MAX_CACHED_LATTICES);
+
+    /**
+     * Two-qualifier lattices, by top and bottom qualifier. The least recently used lattice is
+     * evicted first.
+     */
+    private final Map<TwoTypeLatticeKey, TwoQualifiersLattice> twoTypeLattices =
+            createLruMap(MAX_CACHED_TWO_TYPE_LATTICES);
+
+    private static <K, V> Map<K, V> createLruMap(int maxSize) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached lattice of the qualifier hierarchy and supported qualifiers, built by the
+     * given supplier if there is none
+     */
+    synchronized Lattice getLattice(QualifierHierarchy qualHierarchy,
+            Set<Class<? extends Annotation>> annoClasses, Supplier<Lattice> builder) {
+        return lattices.computeIfAbsent(new LatticeKey(qualHierarchy, annoClasses), key -> builder.get());
+    }
+
+    /**
+     * @return the cached lattice of the two qualifiers, built by the given supplier if there is none
+     */
+    synchronized TwoQualifiersLattice getTwoTypeLattice(AnnotationMirror top, AnnotationMirror bottom,
+            Supplier<TwoQualifiersLattice> builder) {
+        return twoTypeLattices.computeIfAbsent(new TwoTypeLatticeKey(top, bottom), key -> builder.get());
+    }
+
+    /**
+     * The key of a cached lattice: the identity of the qualifier hierarchy and the set of
+     * supported qualifiers.
+     */
+    private static final class LatticeKey {
+        private final QualifierHierarchy qualHierarchy;
+        private final Set<Class<? extends Annotation>> annoClasses;
+
+        LatticeKey(QualifierHierarchy qualHierarchy, Set<Class<? extends Annotation>> annoClasses) {
+            this.qualHierarchy = qualHierarchy;
+            this.annoClasses = new HashSet<>(annoClasses);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LatticeKey)) {
+                return false;
+            }
+            LatticeKey other = (LatticeKey) obj;
+            return qualHierarchy == other.qualHierarchy && annoClasses.equals(other.annoClasses);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(qualHierarchy) + annoClasses.hashCode();
+        }
+    }
+
+    /**
+     * The key of a cached two-qualifier lattice: the top and bottom qualifiers, compared with
+     * {@link AnnotationUtils#areSame}.
+     */
+    private static final class TwoTypeLatticeKey {
+        private final AnnotationMirror top;
+        private final AnnotationMirror bottom;
+
+        TwoTypeLatticeKey(AnnotationMirror top, AnnotationMirror bottom) {
+            this.top = top;
+            this.bottom = bottom;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TwoTypeLatticeKey)) {
+                return false;
+            }
+            TwoTypeLatticeKey other = (TwoTypeLatticeKey) obj;
+            return AnnotationUtils.areSame(top, other.top) && AnnotationUtils.areSame(bottom, other.bottom);
+        }
+
+        @Override
+        public int hashCode() {
+            // The string form includes the element values, like the comparison of areSame.
+            return 31 * top.toString().hashCode() + bottom.toString().hashCode();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package checkers.inference.solver.strategy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import com.sun.tools.javac.util.Pair;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * Solves the components of a separated constraint graph concurrently on a work-stealing
+ * {@link ForkJoinPool}.
+ *
+ * Components are submitted largest-first (by number of constraints), so that a few large
+ * components do not end up being started last and leave the other threads idle. As soon as one
+ * component turns out to be unsatisfiable, components that have not started yet are skipped and
+ * the results collected so far are returned, since there is no solution for the whole program
+ * anymore.
+ */
+public class ComponentSolvingScheduler {
+
+    /** Number of worker threads. */
+    private final int parallelism;
+
+    public ComponentSolvingScheduler(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Solves all given underlying solvers.
+     *
+     * @param underlyingSolvers one solver per component
+     * @return the results of all components that were solved, in the order of
+     * {@code underlyingSolvers}. If a component is unsatisfiable, its result (a null solution
+     * together with the explanation) is included and components that were skipped because of
+     * it are missing.
+     * @throws InterruptedException
+     * @throws ExecutionException if solving any component throws an exception
+     */
+    public List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> solve(List<Solver<?>> underlyingSolvers)
+            throws InterruptedException, ExecutionException {
+        final int numComponents = underlyingSolvers.size();
+
+        List<Integer> order = new ArrayList<>(numComponents);
+        for (int i = 0; i < numComponents; i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingInt(
+                (Integer i) -> underlyingSolvers.get(i).getConstraints().size()).reversed());
+
+        final AtomicBoolean unsatFound = new AtomicBoolean(false);
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        final CompletionService<ComponentResult> completionService = new ExecutorCompletionService<>(pool);
+
+        @SuppressWarnings("unchecked")
+        Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>[] results = new Pair[numComponents];
+        try {
+            for (final int index : order) {
+                final Solver<?> underlyingSolver = underlyingSolvers.get(index);
+                completionService.submit(() -> solveComponent(index, underlyingSolver, unsatFound));
+            }
+
+            for (int i = 0; i < numComponents; i++) {
+                ComponentResult componentResult = completionService.take().get();
+                if (componentResult.result == null) {
+                    continue;
+                }
+                results[componentResult.index] = componentResult.result;
+                if (componentResult.result.fst == null) {
+                    // No need to wait for the remaining components.
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> solved = new ArrayList<>();
+        for (Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>> result : results) {
+            if (result != null) {
+                solved.add(result);
+            }
+        }
+        Statistics.addOrIncrementEntry("skipped_components", numComponents - solved.size());
+        return solved;
+    }
+
+    private ComponentResult solveComponent(int index, Solver<?> underlyingSolver, AtomicBoolean unsatFound) {
+        if (unsatFound.get()) {
+            return new ComponentResult(index, null);
+        }
+
+        long start = System.currentTimeMillis();
+        Map<Integer, AnnotationMirror> solution = underlyingSolver.solve();
+        Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>> result;
+        if (solution != null) {
+            result = new Pair<>(solution, new HashSet<>());
+        } else {
+            unsatFound.set(true);
+            result = new Pair<>(null, underlyingSolver.explainUnsatisfiable());
+        }
+        long time = System.currentTimeMillis() - start;
+
+        Statistics.addOrIncrementEntry("component_solving_time(ms)", time);
+        Statistics.updateMaxEntry("max_component_solving_time(ms)", time);
+        return new ComponentResult(index, result);
+    }
+
+    /** The result of one component, or a null result if the component was skipped. */
+    private static class ComponentResult {
+        private final int index;
+        private final Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>> result;
+
+        private ComponentResult(int index, Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>> result) {
+            this.index = index;
+            this.result = result;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package checkers.inference.solver.strategy;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -8,11 +9,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
@@ -22,17 +19,21 @@ import checkers.inference.InferenceMain;
 import checkers.inference.InferenceResult;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
-import checkers.inference.solver.SolverEngine.SolverEngineArg;
+import checkers.inference.solver.backend.CachingSolver;
+import checkers.inference.solver.backend.FormatTranslator;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.backend.SolverFactory;
+import checkers.inference.solver.constraintgraph.CompactGraphBuilder;
 import checkers.inference.solver.constraintgraph.ConstraintGraph;
-import checkers.inference.solver.constraintgraph.GraphBuilder;
 import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.ParallelismUtils;
 import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.solver.util.SolverResultCache;
 import checkers.inference.solver.util.Statistics;
 import com.sun.tools.javac.util.Pair;
 import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.UserError;
 
 /**
  * GraphSolvingStrategy solves a given set of constraints by a divide-and-conquer way:
@@ -48,9 +49,28 @@ import org.checkerframework.framework.type.QualifierHierarchy;
 public class GraphSolvingStrategy extends AbstractSolvingStrategy {
 
     enum GraphSolveStrategyArg implements SolverArg {
-        solveInParallel;
+        solveInParallel,
+
+        /**
+         * number of threads used to solve components in parallel, defaults to the number
+         * of available processors
+         */
+        parallelism,
+
+        /**
+         * directory of an on-disk cache of component solutions, shared between runs; no cache is
+         * used if it is not set
+         */
+        solverCacheDir,
+
+        /**
+         * maximum number of component solutions kept in the cache, defaults to 10000
+         */
+        solverCacheSize;
     }
 
+    private static final int DEFAULT_SOLVER_CACHE_SIZE = 10000;
+
     public GraphSolvingStrategy(SolverFactory solverFactory) {
         super(solverFactory);
     }
@@ -59,9 +79,7 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
     public InferenceResult solve(SolverEnvironment solverEnvironment, Collection<Slot> slots,
                                  Collection<Constraint> constraints, Lattice lattice) {
 
-        //TODO: Remove the coupling of using SolverEngineArg.
-        final boolean solveInParallel = !"lingeling".equals(solverEnvironment.getArg(SolverEngineArg.solver))
-                && solverEnvironment.getBoolArg(GraphSolveStrategyArg.solveInParallel);
+        final boolean solveInParallel = solverEnvironment.getBoolArg(GraphSolveStrategyArg.solveInParallel);
 
         // Build graph
         final long graphBuildingStart = System.currentTimeMillis();
@@ -72,13 +90,22 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
         List<Solver<?>> separatedGraphSolvers = separateGraph(solverEnvironment, constraintGraph,
                 slots, constraints, lattice);
 
+        SolverResultCache cache = createSolverResultCache(solverEnvironment);
+        if (cache != null) {
+            List<Solver<?>> cachingSolvers = new ArrayList<>(separatedGraphSolvers.size());
+            for (Solver<?> solver : separatedGraphSolvers) {
+                cachingSolvers.add(createCachingSolver(solver, cache));
+            }
+            separatedGraphSolvers = cachingSolvers;
+        }
+
         // Solving.
         List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> inferenceResults = new LinkedList<>();
 
         if (separatedGraphSolvers.size() > 0) {
             if (solveInParallel) {
                 try {
-                    inferenceResults = solveInparallel(separatedGraphSolvers);
+                    inferenceResults = solveInparallel(separatedGraphSolvers, getParallelism(solverEnvironment));
                 } catch (InterruptedException | ExecutionException e) {
                     e.printStackTrace();
                 }
@@ -87,6 +114,10 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
             }
         }
 
+        if (cache != null) {
+            cache.evict();
+        }
+
         // Merge solutions.
         InferenceResult result = mergeInferenceResults(inferenceResults);
 
@@ -96,6 +127,40 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
         return result;
     }
 
+    /**
+     * @return the cache of component solutions, or null if {@code solverCacheDir} is not set
+     */
+    protected SolverResultCache createSolverResultCache(SolverEnvironment solverEnvironment) {
+        String cacheDir = solverEnvironment.getArg(GraphSolveStrategyArg.solverCacheDir);
+        if (cacheDir == null) {
+            return null;
+        }
+
+        int cacheSize = DEFAULT_SOLVER_CACHE_SIZE;
+        String cacheSizeArg = solverEnvironment.getArg(GraphSolveStrategyArg.solverCacheSize);
+        if (cacheSizeArg != null) {
+            try {
+                cacheSize = Integer.parseInt(cacheSizeArg);
+            } catch (NumberFormatException e) {
+                throw new UserError("Invalid value for solverCacheSize: " + cacheSizeArg);
+            }
+        }
+
+        // The arguments of the cache itself and the number of threads do not influence the
+        // solutions.
+        Map<String, String> solverArgs = new HashMap<>(solverEnvironment.getArgs());
+        solverArgs.remove(GraphSolveStrategyArg.solverCacheDir.name());
+        solverArgs.remove(GraphSolveStrategyArg.solverCacheSize.name());
+        solverArgs.remove(GraphSolveStrategyArg.parallelism.name());
+        return new SolverResultCache(new File(cacheDir), cacheSize,
+                solverFactory.getClass().getName(), solverArgs);
+    }
+
+    private static <T extends FormatTranslator<?, ?, ?>> Solver<T> createCachingSolver(Solver<T> solver,
+            SolverResultCache cache) {
+        return new CachingSolver<>(solver, cache);
+    }
+
     /**
      * Get the top qualifier in the underlying type hierarchy, which is used in simplifying the
      * constraint graph. By default, the first (and usually the only) annotation in the top
@@ -112,7 +177,7 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
 
     protected ConstraintGraph generateGraph(Collection<Slot> slots, Collection<Constraint> constraints,
             ProcessingEnvironment processingEnvironment) {
-        GraphBuilder graphBuilder = new GraphBuilder(slots, constraints, getGraphTopAnnotation());
+        CompactGraphBuilder graphBuilder = new CompactGraphBuilder(slots, constraints, getGraphTopAnnotation());
         ConstraintGraph constraintGraph = graphBuilder.buildGraph();
         return constraintGraph;
     }
@@ -140,41 +205,34 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
      * This method is called if user wants to call all underlying solvers in parallel.
      *
      * @param underlyingSolvers
-     * @return A list of Map that contains solutions from all underlying solvers.
+     * @param parallelism the number of threads to use
+     * @return A list of Map that contains solutions from all underlying solvers. If any solver finds
+     * no solution, solvers that have not been started yet are skipped and not included.
      * @throws InterruptedException
      * @throws ExecutionException
      */
-    protected List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> solveInparallel(List<Solver<?>> underlyingSolvers)
-            throws InterruptedException, ExecutionException {
+    protected List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> solveInparallel(List<Solver<?>> underlyingSolvers,
+            int parallelism) throws InterruptedException, ExecutionException {
 
-        ExecutorService service = Executors.newFixedThreadPool(30);
-        List<Future<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>>> futures = new ArrayList<>();
+        ComponentSolvingScheduler scheduler = new ComponentSolvingScheduler(parallelism);
 
         long solvingStart = System.currentTimeMillis();
-        for (final Solver<?> underlyingSolver : underlyingSolvers) {
-            Callable<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> callable = () -> {
-                Map<Integer, AnnotationMirror> solution = underlyingSolver.solve();
-                if (solution != null) {
-                    return new Pair<>(solution, new HashSet<>());
-                } else {
-                    return new Pair<>(solution, underlyingSolver.explainUnsatisfiable());
-                }
-            };
-            futures.add(service.submit(callable));
-        }
-        service.shutdown();
-
-        List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> results = new ArrayList<>();
-
-        for (Future<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> future : futures) {
-            results.add(future.get());
-        }
+        List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> results = scheduler.solve(underlyingSolvers);
         long solvingEnd = System.currentTimeMillis();
 
         Statistics.addOrIncrementEntry("overall_parallel_solving_time(ms)", (solvingEnd - solvingStart));
         return results;
     }
 
+    /**
+     * Returns the number of threads used to solve components in parallel: the value of the
+     * {@code parallelism} solver argument if given, otherwise the number of available processors.
+     */
+    protected int getParallelism(SolverEnvironment solverEnvironment) {
+        return ParallelismUtils.getParallelism(GraphSolveStrategyArg.parallelism.name(),
+                solverEnvironment.getArg(GraphSolveStrategyArg.parallelism));
+    }
+
     /**
      * This method is called if user wants to call all underlying solvers in sequence.
      *
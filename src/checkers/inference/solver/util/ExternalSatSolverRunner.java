@@ -0,0 +1,205 @@
+package checkers.inference.solver.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * Runs an external SAT solver that reads a DIMACS CNF formula from stdin and prints its result in
+ * the output format of the SAT competitions, i.e. an "s SATISFIABLE" or "s UNSATISFIABLE" line
+ * followed by "v" lines with the model. Lingeling, CaDiCaL and Kissat all behave like this.
+ *
+ * No temporary files are used: the formula is piped to the solver process while it is being
+ * written, and the model is parsed directly from the bytes of the solver's stdout. The number of
+ * solver processes running at the same time is bounded, so that many components can be solved in
+ * parallel without starting more processes than there are processors.
+ *
+ * @see ExternalSolverUtils
+ */
+public class ExternalSatSolverRunner {
+
+    public static final Logger logger = Logger.getLogger(ExternalSatSolverRunner.class.getName());
+
+    /**
+     * The process permits by bound. All runners of a solving run have the same bound, so the
+     * bound holds across all components being solved, and a run with a different bound gets
+     * permits of its own.
+     */
+    private static final Map<Integer, Semaphore> processPermits = new ConcurrentHashMap<>();
+
+    private final String[] command;
+    private final Semaphore permits;
+
+    /**
+     * @param command the solver command, without an input file
+     * @param maxProcesses the maximum number of solver processes of all runners with this bound
+     *            running at the same time
+     */
+    public ExternalSatSolverRunner(String[] command, int maxProcesses) {
+        if (maxProcesses < 1) {
+            throw new BugInCF("Invalid bound of external solver processes: " + maxProcesses);
+        }
+        this.command = command;
+        this.permits = processPermits.computeIfAbsent(maxProcesses, max -> new Semaphore(max, true));
+    }
+
+    /**
+     * Runs the solver, waiting for a free process slot first.
+     *
+     * @param formulaWriter writes the formula in DIMACS CNF format to the given stdin of the
+     *            solver, on a separate thread; the channel is closed afterwards
+     * @return the literals of the model, or null if the formula is unsatisfiable
+     */
+    public int[] solve(Consumer<WritableByteChannel> formulaWriter) {
+        permits.acquireUninterruptibly();
+        try {
+            return run(formulaWriter);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private int[] run(Consumer<WritableByteChannel> formulaWriter) {
+        logger.info("Running external SAT solver command \"" + String.join(" ", command) + "\".");
+
+        final Process process;
+        try {
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        } catch (IOException e) {
+            // UserError has no constructor taking a cause.
+            UserError error = new UserError("Could not run external solver \"" + command[0] + "\".");
+            error.initCause(e);
+            throw error;
+        }
+
+        final AtomicReference<Exception> writeFailure = new AtomicReference<>();
+        Thread stdInWriterThread = new Thread(() -> {
+            try (WritableByteChannel stdIn = Channels.newChannel(process.getOutputStream())) {
+                formulaWriter.accept(stdIn);
+            } catch (IOException | RuntimeException e) {
+                writeFailure.set(e);
+            }
+        });
+        stdInWriterThread.start();
+
+        ModelParser parser = new ModelParser();
+        try (InputStream stdOut = process.getInputStream()) {
+            parser.parse(stdOut);
+        } catch (IOException e) {
+            process.destroy();
+            throw new BugInCF("Could not read the output of the external solver.", e);
+        }
+
+        int exitStatus;
+        try {
+            stdInWriterThread.join();
+            exitStatus = process.waitFor();
+        } catch (InterruptedException e) {
+            throw new BugInCF("The threads for the external solver was interrupted.");
+        }
+
+        if (writeFailure.get() != null) {
+            throw new BugInCF("Could not pass the formula to the external solver.", writeFailure.get());
+        }
+        if (!parser.hasResult) {
+            throw new BugInCF("External solver finished with exit status " + exitStatus
+                    + " without reporting a result.");
+        }
+
+        logger.info("External solver process finished");
+        return parser.satisfiable ? Arrays.copyOf(parser.model, parser.modelSize) : null;
+    }
+
+    /**
+     * Parses the "s" and "v" lines of the solver output byte by byte, without creating strings.
+     */
+    private static class ModelParser {
+        private boolean hasResult = false;
+        private boolean satisfiable = false;
+
+        private int[] model = new int[1024];
+        private int modelSize = 0;
+
+        /** The first character of the current line, or 0 at the start of a line. */
+        private int lineType = 0;
+
+        /** The first characters of the status on an "s" line. */
+        private final byte[] status = new byte[3];
+        private int statusLength = 0;
+
+        private boolean inNumber = false;
+        private boolean negative = false;
+        private int value = 0;
+
+        private void parse(InputStream stdOut) throws IOException {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = stdOut.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    accept(buffer[i]);
+                }
+            }
+            endLine();
+        }
+
+        private void accept(byte b) {
+            if (b == '\n') {
+                endLine();
+            } else if (lineType == 0) {
+                lineType = b;
+            } else if (lineType == 's') {
+                if (b != ' ' && statusLength < status.length) {
+                    status[statusLength++] = b;
+                }
+            } else if (lineType == 'v') {
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    inNumber = true;
+                } else if (b == '-') {
+                    negative = true;
+                } else {
+                    endNumber();
+                }
+            }
+        }
+
+        private void endLine() {
+            if (lineType == 'v') {
+                endNumber();
+            } else if (lineType == 's' && statusLength == status.length) {
+                if (status[0] == 'S' && status[1] == 'A' && status[2] == 'T') {
+                    hasResult = true;
+                    satisfiable = true;
+                } else if (status[0] == 'U' && status[1] == 'N' && status[2] == 'S') {
+                    hasResult = true;
+                    satisfiable = false;
+                }
+            }
+            lineType = 0;
+            statusLength = 0;
+        }
+
+        private void endNumber() {
+            if (inNumber && value != 0) {
+                if (modelSize == model.length) {
+                    model = Arrays.copyOf(model, model.length * 2);
+                }
+                model[modelSize++] = negative ? -value : value;
+            }
+            inNumber = false;
+            negative = false;
+            value = 0;
+        }
+    }
+}
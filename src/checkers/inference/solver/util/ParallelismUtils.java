@@ -0,0 +1,33 @@
+package checkers.inference.solver.util;
+
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * Utility class with methods to configure the number of threads or processes that solvers use.
+ */
+public class ParallelismUtils {
+
+    /**
+     * Parses the value of a solver argument that gives a number of threads or processes.
+     *
+     * @param argName the name of the solver argument, for the error message
+     * @param value the value of the solver argument, or null if it was not given
+     * @return the value, or the number of available processors if the argument was not given
+     * @throws UserError if the value is not a positive integer
+     */
+    public static int getParallelism(String argName, String value) {
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        int parallelism;
+        try {
+            parallelism = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new UserError("Invalid value for solver argument " + argName + ": " + value);
+        }
+        if (parallelism < 1) {
+            throw new UserError("Solver argument " + argName + " must be at least 1: " + value);
+        }
+        return parallelism;
+    }
+}
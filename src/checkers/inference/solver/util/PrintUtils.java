@@ -32,6 +32,7 @@ import checkers.inference.model.Slot;
 import checkers.inference.model.SourceVariableSlot;
 import checkers.inference.model.SubtypeConstraint;
 import checkers.inference.model.VariableSlot;
+import checkers.inference.model.WellFormednessConstraint;
 import checkers.inference.model.serialization.ToStringSerializer;
 
 /**
@@ -147,12 +148,21 @@ public class PrintUtils {
         // Print constraints and related slots
         stream.println("--- Constraints :");
         for (Constraint constraint : unsatConstraints) {
+            if (constraint instanceof WellFormednessConstraint) {
+                // Added by the solver, so it cannot be serialized and has no location.
+                stream.println(toStringSerializer.getCurrentIndentString() + constraint);
+                continue;
+            }
             stream.println(constraint.serialize(toStringSerializer));
             stream.println("\t" + constraint.getLocation());
         }
 
         // collect unique list of slots from all unsat constraints
         for (Constraint constraint : unsatConstraints) {
+            if (constraint instanceof WellFormednessConstraint) {
+                slotsCollector.addSlotIfNotAdded(((WellFormednessConstraint) constraint).getSlot());
+                continue;
+            }
             constraint.serialize(slotsCollector);
         }
 
@@ -0,0 +1,198 @@
+package checkers.inference.solver.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.serialization.CanonicalKeySerializer;
+import checkers.inference.model.serialization.LocationKeySerializer;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * An on-disk cache of the solutions of constraint components, shared by all runs that use the
+ * same cache directory.
+ *
+ * A component is keyed by a SHA-256 hash of its canonical form (see
+ * {@link CanonicalKeySerializer}), the lattice it is solved in, and the back end and solver
+ * arguments used to solve it. Solutions are stored per key with the slots relabeled, so a cached
+ * solution can be mapped to the slot ids of any component with the same key.
+ *
+ * Every solution is one file in the cache directory. When there are more than the maximum number
+ * of files, the least recently used ones are deleted by {@link #evict()}. Only satisfiable
+ * components are cached, since an explanation of unsatisfiable constraints needs the back end.
+ */
+public class SolverResultCache {
+
+    private static final Logger logger = Logger.getLogger(SolverResultCache.class.getName());
+
+    private final File cacheDir;
+
+    private final int maxEntries;
+
+    /** A hash of the back end and solver arguments. */
+    private final String solverFingerprint;
+
+    /** Fingerprints of the lattices seen so far. */
+    private final Map<Lattice, String> latticeFingerprints = new IdentityHashMap<>();
+
+    /**
+     * @param cacheDir the directory holding the cache, created if it does not exist
+     * @param maxEntries the maximum number of solutions kept in the cache
+     * @param backend the name of the back end
+     * @param solverArgs the solver arguments that influence the solutions
+     */
+    public SolverResultCache(File cacheDir, int maxEntries, String backend, Map<String, String> solverArgs) {
+        this.cacheDir = cacheDir;
+        this.maxEntries = maxEntries;
+        cacheDir.mkdirs();
+        this.solverFingerprint = backend + "\n" + new TreeMap<>(solverArgs);
+    }
+
+    /**
+     * @return the key of the given constraints solved in the given lattice
+     */
+    public String getKey(CanonicalKeySerializer constraints, Lattice lattice) {
+        return LocationKeySerializer.digest(
+                solverFingerprint + "\n" + getLatticeFingerprint(lattice) + "\n" + constraints.getKey());
+    }
+
+    private String getLatticeFingerprint(Lattice lattice) {
+        synchronized (latticeFingerprints) {
+            String fingerprint = latticeFingerprints.get(lattice);
+            if (fingerprint == null) {
+                TreeMap<String, List<String>> superTypes = new TreeMap<>();
+                for (AnnotationMirror type : lattice.allTypes) {
+                    superTypes.put(type.toString(), toSortedStrings(lattice.superType.get(type)));
+                }
+                fingerprint = LocationKeySerializer.digest(
+                        lattice.top + "\n" + lattice.bottom + "\n" + superTypes);
+                latticeFingerprints.put(lattice, fingerprint);
+            }
+            return fingerprint;
+        }
+    }
+
+    private static List<String> toSortedStrings(Collection<AnnotationMirror> annotations) {
+        List<String> strings = new ArrayList<>();
+        if (annotations != null) {
+            for (AnnotationMirror annotation : annotations) {
+                strings.add(annotation.toString());
+            }
+        }
+        strings.sort(null);
+        return strings;
+    }
+
+    /**
+     * Looks up the solution of a component.
+     *
+     * @param key the key of the component
+     * @param constraints the canonical form of the component, used to map labels to slot ids
+     * @param lattice the lattice of the component, used to map annotation strings to annotations
+     * @return the solution mapped to the slot ids of the component, or null if it is not cached
+     */
+    public Map<Integer, AnnotationMirror> lookup(String key, CanonicalKeySerializer constraints, Lattice lattice) {
+        File file = new File(cacheDir, key);
+        if (!file.exists()) {
+            Statistics.addOrIncrementEntry("solver_cache_misses", 1);
+            return null;
+        }
+
+        Map<String, AnnotationMirror> annotations = new HashMap<>();
+        for (AnnotationMirror type : lattice.allTypes) {
+            annotations.put(type.toString(), type);
+        }
+
+        List<Integer> variableIds = constraints.getVariableIds();
+        Map<Integer, AnnotationMirror> solution = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(' ');
+                int label = Integer.parseInt(line.substring(0, separator));
+                AnnotationMirror annotation = annotations.get(line.substring(separator + 1));
+                if (annotation == null || label >= variableIds.size()) {
+                    throw new IOException("Solution does not match the component: " + line);
+                }
+                solution.put(variableIds.get(label), annotation);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Ignoring unreadable cached solution " + file, e);
+            Statistics.addOrIncrementEntry("solver_cache_misses", 1);
+            return null;
+        }
+
+        // Mark the solution as recently used.
+        file.setLastModified(System.currentTimeMillis());
+        Statistics.addOrIncrementEntry("solver_cache_hits", 1);
+        return solution;
+    }
+
+    /**
+     * Stores the solution of a component.
+     *
+     * @param key the key of the component
+     * @param constraints the canonical form of the component, used to map slot ids to labels
+     * @param solution the solution of the component
+     */
+    public void store(String key, CanonicalKeySerializer constraints, Map<Integer, AnnotationMirror> solution) {
+        List<Integer> variableIds = constraints.getVariableIds();
+        File temp = null;
+        try {
+            temp = File.createTempFile(key, ".tmp", cacheDir);
+            try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                for (int label = 0; label < variableIds.size(); label++) {
+                    AnnotationMirror annotation = solution.get(variableIds.get(label));
+                    if (annotation != null) {
+                        writer.write(label + " " + annotation);
+                        writer.newLine();
+                    }
+                }
+            }
+            // Components with the same key may be stored by several threads at the same time.
+            Files.move(temp.toPath(), new File(cacheDir, key).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write the solver result cache to " + cacheDir, e);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used solutions, so that at most the maximum number of solutions
+     * remain in the cache.
+     */
+    public void evict() {
+        File[] files = cacheDir.listFiles(file -> !file.getName().endsWith(".tmp"));
+        if (files == null || files.length <= maxEntries) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        int evicted = 0;
+        for (int i = 0; i < files.length - maxEntries; i++) {
+            if (files[i].delete()) {
+                evicted++;
+            }
+        }
+        Statistics.addOrIncrementEntry("solver_cache_evictions", evicted);
+    }
+}
@@ -39,6 +39,27 @@ public class Statistics {
         }
     }
 
+    /**
+     * Sets the statistic for the given key to the given value if there is no entry for the key yet
+     * or the existing value is smaller.
+     *
+     * @param key
+     *            a statistic key. The key is treated case-insensitive, see
+     *            {@link #addOrIncrementEntry(String, long)}.
+     * @param value
+     *            a value
+     */
+    public static void updateMaxEntry(String key, long value) {
+        synchronized (statistics) {
+            key = key.toLowerCase();
+
+            Long current = statistics.get(key);
+            if (current == null || current < value) {
+                statistics.put(key, value);
+            }
+        }
+    }
+
     /**
      * Adds a count of each kind of slot to the statistics.
      *
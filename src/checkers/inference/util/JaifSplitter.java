@@ -6,12 +6,15 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import checkers.inference.util.JaifFileReader.Block;
 import checkers.inference.util.JaifFileReader.JaifPackage;
 
 /**
@@ -147,6 +150,57 @@ public class JaifSplitter {
         writeInsertShellScript(commandFile, insertionCommands, visitedFiles);
     }
 
+    /**
+     * Split a jaif into one jaif per package.  Unlike {@link #split()}, the header of every output jaif
+     * is the set of annotation definitions found in jaifFile itself.
+     * @param jaifFile The file to be split
+     * @param outputDir The directory to place the output jaifs
+     * @return a map from each package name in jaifFile to the jaif of that package
+     */
+    public static Map<String, File> splitByPackage(File jaifFile, File outputDir) {
+        List<String> header = new ArrayList<>();
+        for (JaifPackage jaifPackage : new JaifFileReader(jaifFile)) {
+            if (isAnnotationDefinition(jaifPackage)) {
+                header.addAll(jaifPackage.getLines());
+            }
+        }
+
+        Map<String, File> packageJaifs = new LinkedHashMap<>();
+        for (JaifPackage jaifPackage : new JaifFileReader(jaifFile)) {
+            // an empty jaif is read as a single package without a name
+            if (jaifPackage.name == null || isAnnotationDefinition(jaifPackage)) {
+                continue;
+            }
+
+            File outputJaif = packageJaifs.get(jaifPackage.name);
+            if (outputJaif == null) {
+                // the default package has an empty name
+                String fileName = jaifPackage.name.isEmpty() ? "default-package" : jaifPackage.name;
+                outputJaif = new File(outputDir, fileName + ".jaif");
+                overwriteLines(outputJaif, header);
+                packageJaifs.put(jaifPackage.name, outputJaif);
+            }
+            appendLines(outputJaif, jaifPackage.getLines());
+        }
+
+        return packageJaifs;
+    }
+
+    /**
+     * @return true if jaifPackage only defines annotations, i.e. it is part of the header of a jaif
+     */
+    private static boolean isAnnotationDefinition(JaifPackage jaifPackage) {
+        if (jaifPackage.entries.isEmpty()) {
+            return false;
+        }
+        for (Block block : jaifPackage.entries) {
+            if (!block.lines.get(0).startsWith("annotation ")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static void writeInsertShellScript(File commandFile, Set<String> insertionCommands, Set<File> jaifs) {
 
         List<String> shFileCommands = new ArrayList<>(insertionCommands.size() + 6);
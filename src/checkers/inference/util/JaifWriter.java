@@ -0,0 +1,693 @@
+package checkers.inference.util;
+
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTPath.ASTEntry;
+import scenelib.annotations.io.ASTRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+
+import com.sun.source.tree.Tree;
+
+import org.checkerframework.javacutil.Pair;
+
+/**
+ * JaifWriter writes a Jaif for annotations that are added one location at a time, without
+ * building the whole Jaif in memory.
+ *
+ * All annotations of a class form one section of the Jaif, so the annotations are sorted by
+ * class and member before they are written. They are sorted in chunks of a bounded number of
+ * records: a full chunk is sorted and spilled to a temporary file, and {@link #finish()} merges
+ * the chunks while it writes the Jaif. Each distinct annotation is rendered to a string once and
+ * kept in a table; records only refer to their annotation by its index in the table.
+ *
+ * As in a Map from location to annotation, if several annotations are added for the same
+ * location, the last one is written.
+ */
+public class JaifWriter implements Closeable {
+
+    /**
+     * Default maximum number of records sorted in memory.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    // Sections of a class, in the order they are written.
+    private static final byte DECLARATION = 0;
+    private static final byte INITIALIZER = 1;
+    private static final byte FIELD = 2;
+    private static final byte METHOD = 3;
+
+    private final Writer out;
+
+    private final Set<? extends Class<? extends Annotation>> supportedAnnotations;
+
+    private final boolean insertMainModOfLocalVar;
+
+    private final int chunkSize;
+
+    /** The index of every annotation added as an AnnotationMirror. */
+    private final Map<AnnotationMirror, Integer> annotationIndices = new IdentityHashMap<>();
+
+    /** The index of every distinct annotation string. */
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+
+    private final List<String> annotations = new ArrayList<>();
+
+    /** The records not spilled yet. */
+    private final List<Record> chunk = new ArrayList<>();
+
+    /** Class and member names of the current chunk, so that records share them. */
+    private final Map<String, String> names = new HashMap<>();
+
+    private final List<File> spilledChunks = new ArrayList<>();
+
+    private long nextSequenceNumber = 0;
+
+    /**
+     * Caches annotation definitions that have been written
+     */
+    private final Set<Class<? extends Annotation>> writeAnnotationHeaderCache = new HashSet<>();
+
+    // State of the section being written.
+    private String currentClass;
+    private final Set<String> declAnnos = new LinkedHashSet<>();
+    private boolean classHeaderWritten;
+    private Record currentMember;
+
+    public JaifWriter(Writer out, Set<? extends Class<? extends Annotation>> supportedAnnotations,
+            boolean insertMainModOfLocalVar) {
+        this(out, supportedAnnotations, insertMainModOfLocalVar, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out receives the Jaif; it is not closed by this writer
+     * @param supportedAnnotations the annotations whose definitions are written in the header
+     * @param insertMainModOfLocalVar whether to insert annotations on the main modifier of local
+     *            variables
+     * @param chunkSize maximum number of records sorted in memory
+     */
+    public JaifWriter(Writer out, Set<? extends Class<? extends Annotation>> supportedAnnotations,
+            boolean insertMainModOfLocalVar, int chunkSize) {
+        this.out = out;
+        this.supportedAnnotations = supportedAnnotations;
+        this.insertMainModOfLocalVar = insertMainModOfLocalVar;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Adds an annotation to insert at the given location.
+     */
+    public void add(AnnotationLocation location, AnnotationMirror annotation) throws IOException {
+        Integer index = annotationIndices.get(annotation);
+        if (index == null) {
+            index = getAnnotationIndex(annotation.toString());
+            annotationIndices.put(annotation, index);
+        }
+        add(location, index);
+    }
+
+    /**
+     * Adds an annotation to insert at the given location.
+     */
+    public void add(AnnotationLocation location, String annotation) throws IOException {
+        add(location, getAnnotationIndex(annotation));
+    }
+
+    private int getAnnotationIndex(String annotation) {
+        Integer index = stringIndices.get(annotation);
+        if (index == null) {
+            index = annotations.size();
+            annotations.add(annotation);
+            stringIndices.put(annotation, index);
+        }
+        return index;
+    }
+
+    private void add(AnnotationLocation location, int annotation) throws IOException {
+        switch (location.getKind()) {
+            case AST_PATH:
+                ASTRecord astRecord = ((AstPathLocation) location).getAstRecord();
+                if (!insertMainModOfLocalVar && isMainModOfLocalVar(astRecord.astPath)) {
+                    return;
+                }
+
+                // Don't insert annotation for empty ASTPath
+                // TODO: this is not a feature but a workaround of a bug:
+                // We should create a non-empty correct ASTPath for constructor
+                if (astRecord.astPath.equals(ASTPath.empty())) {
+                    return;
+                }
+
+                String member = getMemberString(astRecord.methodName, astRecord.varName);
+                byte section;
+                if (member == null) {
+                    section = INITIALIZER;
+                } else if (member.startsWith("field")) {
+                    section = FIELD;
+                } else {
+                    section = METHOD;
+                }
+                addRecord(new Record(name(astRecord.className), section, name(member),
+                        astRecord.astPath.toString(), nextSequenceNumber++, annotation));
+                break;
+
+            case CLASS_DECL:
+                String className = ((ClassDeclLocation) location).getFullyQualifiedClassName();
+                addRecord(new Record(name(className), DECLARATION, null, null,
+                        nextSequenceNumber++, annotation));
+                break;
+
+            case MISSING:
+                break;
+
+            default:
+                throw new RuntimeException("Unhandled AnnotationLocation " + location +
+                        " with value " + annotations.get(annotation));
+        }
+    }
+
+    private String name(String name) {
+        if (name == null) {
+            return null;
+        }
+        String shared = names.putIfAbsent(name, name);
+        return shared == null ? name : shared;
+    }
+
+    private void addRecord(Record record) throws IOException {
+        chunk.add(record);
+        if (chunk.size() >= chunkSize) {
+            spillChunk();
+        }
+    }
+
+    private void spillChunk() throws IOException {
+        chunk.sort(Record.ORDER);
+        File file = File.createTempFile("jaif-chunk", ".bin");
+        spilledChunks.add(file);
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (Record record : chunk) {
+                record.write(output);
+            }
+        }
+        chunk.clear();
+        names.clear();
+    }
+
+    /**
+     * Writes the Jaif of all added annotations.
+     */
+    public void finish() throws IOException {
+        // Write out annotation definitions for all supported annotation mirrors
+        for (Class<? extends Annotation> annotation : supportedAnnotations) {
+            writeAnnotationHeader(annotation);
+        }
+
+        chunk.sort(Record.ORDER);
+        PriorityQueue<RecordSource> sources = new PriorityQueue<>(
+                Math.max(1, spilledChunks.size() + 1),
+                Comparator.comparing((RecordSource source) -> source.head, Record.ORDER));
+        List<RecordSource> opened = new ArrayList<>();
+        try {
+            opened.add(new ChunkSource(chunk.iterator()));
+            for (File file : spilledChunks) {
+                opened.add(new FileSource(file));
+            }
+            for (RecordSource source : opened) {
+                if (source.advance()) {
+                    sources.add(source);
+                }
+            }
+
+            // Records of the same location are adjacent; the last one added wins.
+            Record pending = null;
+            while (!sources.isEmpty()) {
+                RecordSource source = sources.poll();
+                Record record = source.head;
+                if (source.advance()) {
+                    sources.add(source);
+                }
+                if (pending != null && !pending.isSameLocation(record)) {
+                    writeRecord(pending);
+                }
+                pending = record;
+            }
+            if (pending != null) {
+                writeRecord(pending);
+            }
+            finishClass();
+        } finally {
+            for (RecordSource source : opened) {
+                source.close();
+            }
+        }
+        chunk.clear();
+        out.flush();
+    }
+
+    /**
+     * Deletes the temporary files of spilled chunks.
+     */
+    @Override
+    public void close() {
+        for (File file : spilledChunks) {
+            file.delete();
+        }
+        spilledChunks.clear();
+    }
+
+    private void writeRecord(Record record) throws IOException {
+        if (!record.className.equals(currentClass)) {
+            finishClass();
+            currentClass = record.className;
+        }
+
+        if (record.section == DECLARATION) {
+            declAnnos.add(annotations.get(record.annotation));
+            return;
+        }
+
+        if (!classHeaderWritten) {
+            writeClassHeader();
+        }
+        if (currentMember == null || currentMember.section != record.section
+                || !equals(currentMember.member, record.member)) {
+            if (currentMember != null) {
+                out.write("\n");
+            }
+            // Member name is null for InstanceInitializers
+            if (record.member != null) {
+                out.write(record.member);
+            }
+            currentMember = record;
+        }
+
+        out.write("insert-annotation ");
+        out.write(record.astPath);
+        out.write(": ");
+        out.write(annotations.get(record.annotation));
+        out.write("\n");
+    }
+
+    private void writeClassHeader() throws IOException {
+        Pair<String, String> packageToClass = ASTPathUtil.splitFullyQualifiedClass(currentClass);
+        out.write("package " + packageToClass.first + ":\n");
+        out.write("class " + packageToClass.second + ":");
+        if (!declAnnos.isEmpty()) {
+            out.write(String.join(" ", declAnnos));
+        }
+        out.write("\n");
+        classHeaderWritten = true;
+    }
+
+    private void finishClass() throws IOException {
+        if (currentClass != null && !classHeaderWritten) {
+            writeClassHeader();
+        }
+        if (currentMember != null) {
+            out.write("\n");
+        }
+        currentClass = null;
+        declAnnos.clear();
+        classHeaderWritten = false;
+        currentMember = null;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Add a header for a single supported annotation mirror, and recursively adds headers for any
+     * annotations used as the return type of this annotation's methods. The annotations used as
+     * return types must always be added as a header before the annotation using it in a method.
+     */
+    private void writeAnnotationHeader(Class<? extends Annotation> annotation) throws IOException {
+        // each annotation only needs to be written once to the header, skip if already written
+        if (writeAnnotationHeaderCache.contains(annotation)) {
+            // this case happens if a supported annotation contains multiple methods with the same
+            // annotation return type
+            return;
+        }
+        // cache early to prevent infinite recursion in case there are any mutually-dependent pairs
+        // of annotations (Java forbids mutually-dependent annotations)
+        writeAnnotationHeaderCache.add(annotation);
+
+        // for each supported annotation, we also create headers for any annotation classes used as
+        // the return type of a method of the supported annotation
+        for (Method method : annotation.getDeclaredMethods()) {
+            Class<?> methodReturnType = method.getReturnType();
+
+            // de-sugar 1D array return types for their array component type
+            // note: Java only permits 1D arrays as the return types of methods in an annotation
+            if (methodReturnType.isArray()) {
+                methodReturnType = methodReturnType.getComponentType();
+            }
+
+            // if any return type is an annotation, then recursively create a header for the return
+            // type and check the return type's fields for annotations
+            if (methodReturnType.isAnnotation()) {
+                writeAnnotationHeader(methodReturnType.asSubclass(Annotation.class));
+            }
+        }
+
+        // write the header for the given annotation
+        out.write(buildAnnotationHeader(annotation));
+        out.write("\n");
+    }
+
+    /**
+     * Create annotation headers for an Annotation.
+     *
+     * @param annotation the Annotation to create the header for
+     * @return the header
+     */
+    private String buildAnnotationHeader(Class<? extends Annotation> annotation) {
+        StringBuilder sb = new StringBuilder();
+        // insert package name
+        sb.append(annotation.getPackage())
+          .append(":\n  annotation @")
+          // insert class name
+          .append(annotation.getSimpleName())
+          .append(":\n");
+
+        for (Method method : annotation.getDeclaredMethods()) {
+            // insert 4 space indentation for each return type
+            sb.append("    ")
+              // insert the return type
+              .append(getAnnotationHeaderReturnType(method.getReturnType()))
+              .append(" ")
+              // insert method name
+              .append(method.getName())
+              .append("\n");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Java allows the method return types in an annotation to be:
+     *
+     * 1) Enums
+     *
+     * 2) Annotations
+     *
+     * 3) String types
+     *
+     * 4) Class types
+     *
+     * 5) primitive types
+     *
+     * 6) 1D arrays with a component type of one of the above
+     *
+     * This method returns the appropriate return type name according to the JAIF specification for
+     * each of these scenarios for the given returnType argument.
+     */
+    private String getAnnotationHeaderReturnType(final Class<?> returnType) {
+        // de-sugar array return types
+        boolean isArray = returnType.isArray();
+        final Class<?> actualReturnType = isArray ? returnType.getComponentType() : returnType;
+
+        String result;
+
+        if (Enum.class.isAssignableFrom(actualReturnType)) {
+            result = "enum " + actualReturnType.getCanonicalName();
+        } else if (actualReturnType.isAnnotation()) {
+            result = "annotation-field " + actualReturnType.getCanonicalName();
+        } else if (actualReturnType.getCanonicalName().equals(String.class.getCanonicalName())
+                || actualReturnType.getCanonicalName().equals(Class.class.getCanonicalName())) {
+            // TODO: AFU should support "java.lang.String" and "java.lang.Class" in its
+            // specification
+            result = actualReturnType.getSimpleName();
+        } else {
+            // this case is for all primitives
+            result = actualReturnType.getCanonicalName();
+        }
+
+        // append "[]" if return type is an array
+        return isArray ? result + "[]" : result;
+    }
+
+    /**
+     * @param astPath
+     * @return true if the given AST path represents a main modifier of a local variable
+     * An AST Path represents a main modifier of a local variable should have pattern like
+     * 1) ..., Block.statement #, ..., Variable.type
+     * 2) ..., Block.statement #, ..., Variable.type, ParameterizedType.type
+     * reference: Local Variable Declaration Statements in JLS8
+     * https://docs.oracle.com/javase/specs/jls/se8/html/jls-14.html#jls-14.4
+     */
+    protected boolean isMainModOfLocalVar(ASTPath astPath) {
+        return isMainModifierOfLocalVariable(astPath);
+    }
+
+    /**
+     * The default implementation of {@link #isMainModOfLocalVar(ASTPath)}, shared with
+     * {@link JaifBuilder}.
+     */
+    static boolean isMainModifierOfLocalVariable(ASTPath astPath) {
+        Iterator<ASTEntry> iterator = astPath.iterator();
+
+        // first determine whether this astPath is a block statement
+        while (iterator.hasNext()) {
+            if (isEntry(Tree.Kind.BLOCK, ASTPath.STATEMENT, iterator.next())) {
+                break;
+            }
+        }
+
+        if (!iterator.hasNext()) {
+            // this astPath either does not has Block.statement, or end up with
+            // Block.statement. in both cases it doesn't represent a main modifier
+            // of a local variable
+            return false;
+        }
+
+        // next get the last two entry of this AST Path
+        ASTEntry prevEntry = null;
+        ASTEntry leafEntry = null;
+        while (iterator.hasNext()) {
+            leafEntry = iterator.next();
+            if (!iterator.hasNext()) {
+                break;
+            }
+            prevEntry = leafEntry;
+        }
+
+        assert leafEntry != null;
+
+        if (isEntry(Tree.Kind.VARIABLE, ASTPath.TYPE, leafEntry)) {
+            // the first kind of AST path of main modifier of local variable
+            return true;
+        } else if (prevEntry != null && isEntry(Tree.Kind.VARIABLE, ASTPath.TYPE, prevEntry) &&
+            isEntry(Tree.Kind.PARAMETERIZED_TYPE, ASTPath.TYPE, leafEntry)) {
+            // the second kind
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * determine whether a given {@code ASTEntry} represents
+     * {@code (Tree.Kind).childSelector }, e.g. given an ASTEntry entry:
+     * <pre>
+     * {@code
+     * Block.statement #
+     * }</pre>
+     * the tree kind is "Block", the childSelector is "statement"
+     * thus, {@code isEntry(Tree.BLOCK, ASTPATH.STATEMENT, entry) } will return true
+     * @param kind
+     * @param childSelector
+     * @param entry
+     * @return true if the given Entry represents {@code (Tree.Kind).childSelector }
+     */
+    protected static boolean isEntry(Tree.Kind kind, String childSelector, ASTEntry entry) {
+        return entry.getTreeKind() == kind && entry.getChildSelector().equals(childSelector);
+    }
+
+    private static String getMemberString(String methodName, String variableName) {
+        String result = "";
+        // Write out the member type
+        if (methodName != null && variableName != null) {
+            result += "method " + methodName + ":\n";
+            if (variableName.equals("-1")) {
+                result += "receiver:\n";
+            } else {
+                result += "parameter " + variableName + ":\n";
+            }
+
+        } else if (methodName != null) {
+            result += "method " + methodName + ":\n";
+        } else if (variableName != null) {
+            result += "field " + variableName + ":\n";
+        } else {
+            return null;
+        }
+
+        return result;
+    }
+
+    /**
+     * An annotation to insert, sorted by class, section, member and location, and then in the
+     * order the annotations were added.
+     */
+    private static class Record {
+        static final Comparator<Record> ORDER = Comparator
+                .comparing((Record record) -> record.className)
+                .thenComparingInt(record -> record.section)
+                .thenComparing(record -> record.member, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparing(record -> record.astPath, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparingLong(record -> record.sequenceNumber);
+
+        final String className;
+        final byte section;
+        final String member;
+        final String astPath;
+        final long sequenceNumber;
+        final int annotation;
+
+        Record(String className, byte section, String member, String astPath, long sequenceNumber,
+                int annotation) {
+            this.className = className;
+            this.section = section;
+            this.member = member;
+            this.astPath = astPath;
+            this.sequenceNumber = sequenceNumber;
+            this.annotation = annotation;
+        }
+
+        boolean isSameLocation(Record other) {
+            return className.equals(other.className) && section == other.section
+                    && JaifWriter.equals(member, other.member) && JaifWriter.equals(astPath, other.astPath);
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            writeString(output, className);
+            output.writeByte(section);
+            writeString(output, member);
+            writeString(output, astPath);
+            output.writeLong(sequenceNumber);
+            output.writeInt(annotation);
+        }
+
+        static Record read(DataInputStream input) throws IOException {
+            int classNameLength;
+            try {
+                classNameLength = input.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            return new Record(readString(input, classNameLength), input.readByte(), readString(input),
+                    readString(input), input.readLong(), input.readInt());
+        }
+
+        /**
+         * Writes the length of the UTF-8 encoding of the string, or -1 for null, followed by the
+         * encoding. Unlike writeUTF, this is not limited to 65535 bytes, which a long AST path
+         * can exceed.
+         */
+        private static void writeString(DataOutputStream output, String value) throws IOException {
+            if (value == null) {
+                output.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        private static String readString(DataInputStream input) throws IOException {
+            return readString(input, input.readInt());
+        }
+
+        private static String readString(DataInputStream input, int length) throws IOException {
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A sorted sequence of records, positioned at its smallest remaining record.
+     */
+    private abstract static class RecordSource implements Closeable {
+        Record head;
+
+        /**
+         * Moves to the next record.
+         *
+         * @return false if there is none
+         */
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static class ChunkSource extends RecordSource {
+        private final Iterator<Record> records;
+
+        ChunkSource(Iterator<Record> records) {
+            this.records = records;
+        }
+
+        @Override
+        boolean advance() {
+            head = records.hasNext() ? records.next() : null;
+            return head != null;
+        }
+    }
+
+    private static class FileSource extends RecordSource {
+        private final DataInputStream input;
+
+        FileSource(File file) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            head = Record.read(input);
+            return head != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
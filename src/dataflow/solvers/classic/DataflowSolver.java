@@ -2,6 +2,8 @@ package dataflow.solvers.classic;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,20 +26,27 @@ import checkers.inference.InferenceResult;
 import checkers.inference.InferenceSolver;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
+import checkers.inference.solver.constraintgraph.CompactGraphBuilder;
 import checkers.inference.solver.constraintgraph.ConstraintGraph;
-import checkers.inference.solver.constraintgraph.GraphBuilder;
 import checkers.inference.solver.constraintgraph.Vertex;
+import checkers.inference.solver.util.ParallelismUtils;
 import dataflow.qual.DataFlow;
 import dataflow.util.DataflowUtils;
 
 /**
  * A solver for dataflow type system that is independent from GeneralSolver.
  *
+ * Every datatype is solved by its own {@link DatatypeSolver}, on a pool whose size is given by
+ * the "threads" solver argument and defaults to the number of available processors. Constant
+ * paths of the same datatype are solved together.
+ *
  * @author jianchu
  *
  */
 public class DataflowSolver implements InferenceSolver {
 
+    private static final String THREADS_KEY = "threads";
+
     protected AnnotationMirror DATAFLOW;
 
     @Override
@@ -49,31 +58,41 @@ public class DataflowSolver implements InferenceSolver {
         Elements elements = processingEnvironment.getElementUtils();
         DATAFLOW = AnnotationBuilder.fromClass(elements, DataFlow.class);
         AnnotationMirror dataflowTop = AnnotationBuilder.fromClass(elements, DataFlowTop.class);
-        GraphBuilder graphBuilder = new GraphBuilder(slots, constraints, dataflowTop);
+        CompactGraphBuilder graphBuilder = new CompactGraphBuilder(slots, constraints, dataflowTop);
         ConstraintGraph constraintGraph = graphBuilder.buildGraph();
 
-        List<DatatypeSolver> dataflowSolvers = new ArrayList<>();
-
-        // Configure datatype solvers
+        // The constraints of every datatype, by datatype and whether it is a root. Constant paths
+        // of the same datatype are merged, so that their CNF is converted only once.
+        Map<String, Set<Constraint>> datatypeConstraints = new LinkedHashMap<>();
+        Map<String, Set<Constraint>> rootConstraints = new LinkedHashMap<>();
         for (Map.Entry<Vertex, Set<Constraint>> entry : constraintGraph.getConstantPath().entrySet()) {
             AnnotationMirror anno = entry.getKey().getValue();
             if (AnnotationUtils.areSameByName(anno, DATAFLOW)) {
                 String[] dataflowValues = DataflowUtils.getTypeNames(anno);
                 String[] dataflowRoots = DataflowUtils.getTypeNameRoots(anno);
                 if (dataflowValues.length == 1) {
-                    DatatypeSolver solver = new DatatypeSolver(dataflowValues[0], entry.getValue(),getSerializer(dataflowValues[0], false));
-                    dataflowSolvers.add(solver);
+                    datatypeConstraints.computeIfAbsent(dataflowValues[0], datatype -> new LinkedHashSet<>())
+                            .addAll(entry.getValue());
                 } else if (dataflowRoots.length == 1) {
-                    DatatypeSolver solver = new DatatypeSolver(dataflowRoots[0], entry.getValue(),getSerializer(dataflowRoots[0], true));
-                    dataflowSolvers.add(solver);
+                    rootConstraints.computeIfAbsent(dataflowRoots[0], datatype -> new LinkedHashSet<>())
+                            .addAll(entry.getValue());
                 }
             }
         }
 
+        // Configure datatype solvers, their CNF is converted when they are solved.
+        List<DatatypeSolver> dataflowSolvers = new ArrayList<>();
+        for (Map.Entry<String, Set<Constraint>> entry : datatypeConstraints.entrySet()) {
+            dataflowSolvers.add(new DatatypeSolver(entry.getKey(), entry.getValue(), getSerializer(entry.getKey(), false)));
+        }
+        for (Map.Entry<String, Set<Constraint>> entry : rootConstraints.entrySet()) {
+            dataflowSolvers.add(new DatatypeSolver(entry.getKey(), entry.getValue(), getSerializer(entry.getKey(), true)));
+        }
+
         List<DatatypeSolution> solutions = new ArrayList<>();
         try {
             if (dataflowSolvers.size() > 0) {
-                solutions = solveInparallel(dataflowSolvers);
+                solutions = solveInparallel(dataflowSolvers, getThreads(configuration));
             }
         } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
@@ -82,9 +101,9 @@ public class DataflowSolver implements InferenceSolver {
         return getMergedResultFromSolutions(processingEnvironment, solutions);
     }
 
-    private List<DatatypeSolution> solveInparallel(List<DatatypeSolver> dataflowSolvers)
+    private List<DatatypeSolution> solveInparallel(List<DatatypeSolver> dataflowSolvers, int threads)
             throws InterruptedException, ExecutionException {
-        ExecutorService service = Executors.newFixedThreadPool(dataflowSolvers.size());
+        ExecutorService service = Executors.newFixedThreadPool(threads);
 
         List<Future<DatatypeSolution>> futures = new ArrayList<Future<DatatypeSolution>>();
 
@@ -106,6 +125,10 @@ public class DataflowSolver implements InferenceSolver {
         return solutions;
     }
 
+    private int getThreads(Map<String, String> configuration) {
+        return ParallelismUtils.getParallelism(THREADS_KEY, configuration.get(THREADS_KEY));
+    }
+
     protected DataflowSerializer getSerializer(String datatype, boolean isRoot) {
         return new DataflowSerializer(datatype, isRoot);
     }
@@ -2,6 +2,7 @@ package dataflow.solvers.classic;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -10,22 +11,28 @@ import java.util.Map;
 import org.sat4j.core.VecInt;
 import org.sat4j.maxsat.WeightedMaxSatDecorator;
 
-import checkers.inference.InferenceMain;
-import checkers.inference.SlotManager;
 import checkers.inference.model.Constraint;
 
+/**
+ * Solves the constraints of the constant path of one datatype.
+ *
+ * The constraints are converted to CNF when the solver is solved, and the variables of the
+ * clauses are renumbered to a dense range, so the size of the SAT problem only depends on the
+ * slots in the constant path, not on the number of slots in the program.
+ */
 public class DatatypeSolver {
-    private final SlotManager slotManager;
     private final String datatype;
     private final DataflowSerializer serializer;
-    private final List<VecInt> clauses;
+    private Collection<Constraint> constraints;
+    private List<VecInt> clauses;
+
+    /** The original variable of every dense variable; element 0 is unused. */
+    private int[] denseToVar;
 
     public DatatypeSolver(String datatype, Collection<Constraint> constraints, DataflowSerializer serializer) {
         this.datatype = datatype;
         this.serializer = serializer;
-        this.slotManager = InferenceMain.getInstance().getSlotManager();
-        this.clauses = convertToCNF(constraints);
-        // writeCNF();
+        this.constraints = constraints;
     }
 
     private void writeCNF() {
@@ -56,14 +63,50 @@ public class DatatypeSolver {
     }
 
     private List<VecInt> convertToCNF(Collection<Constraint> constraints) {
-        return serializer.convertAll(constraints);
+        return serializer.convertAll(constraints, new ArrayList<VecInt>());
+    }
+
+    /**
+     * Renumbers the variables of the clauses in place to 1..n, where n is the number of distinct
+     * variables.
+     *
+     * @return n
+     */
+    private int renumberVariables() {
+        Map<Integer, Integer> varToDense = new HashMap<>();
+        List<Integer> vars = new ArrayList<>();
+        vars.add(0);
+        for (VecInt clause : clauses) {
+            for (int i = 0; i < clause.size(); i++) {
+                int literal = clause.get(i);
+                int var = Math.abs(literal);
+                Integer dense = varToDense.get(var);
+                if (dense == null) {
+                    dense = vars.size();
+                    vars.add(var);
+                    varToDense.put(var, dense);
+                }
+                clause.set(i, literal > 0 ? dense : -dense);
+            }
+        }
+
+        denseToVar = new int[vars.size()];
+        for (int i = 1; i < denseToVar.length; i++) {
+            denseToVar[i] = vars.get(i);
+        }
+        return vars.size() - 1;
     }
 
     public DatatypeSolution solve() {
         Map<Integer, Boolean> idToExistence = new HashMap<>();
         Map<Integer, Boolean> result = new HashMap<>();
 
-        final int totalVars = slotManager.getNumberOfSlots();
+        this.clauses = convertToCNF(constraints);
+        // The constraints are not needed anymore.
+        this.constraints = null;
+        // writeCNF();
+
+        final int totalVars = renumberVariables();
         final int totalClauses = clauses.size();
 
         try {
@@ -92,7 +135,7 @@ public class DatatypeSolver {
                 for (Integer var : solution) {
                     boolean varIsTrue = var > 0;
                     //Need postive var
-                    var = Math.abs(var);
+                    var = denseToVar[Math.abs(var)];
                     Integer potential = existentialToPotentialIds.get(var);
                     if (potential != null) {
                         idToExistence.put(potential, varIsTrue);
@@ -23,7 +23,6 @@ import checkers.inference.model.Slot;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.backend.SolverFactory;
 import checkers.inference.solver.constraintgraph.ConstraintGraph;
-import checkers.inference.solver.constraintgraph.GraphBuilder;
 import checkers.inference.solver.constraintgraph.Vertex;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.frontend.LatticeBuilder;
@@ -66,17 +65,9 @@ public class DataflowGraphSolvingStrategy extends GraphSolvingStrategy {
         for (Map.Entry<Vertex, Set<Constraint>> entry : constraintGraph.getConstantPath().entrySet()) {
             AnnotationMirror anno = entry.getKey().getValue();
             if (AnnotationUtils.areSameByName(anno, DATAFLOW)) {
-                String[] dataflowValues = DataflowUtils.getTypeNames(anno);
-                String[] dataflowRoots = DataflowUtils.getTypeNameRoots(anno);
-                if (dataflowValues.length == 1) {
-                    AnnotationMirror DATAFLOWTOP = DataflowUtils.createDataflowAnnotation(
-                            DataflowUtils.convert(dataflowValues), processingEnvironment);
-                    TwoQualifiersLattice latticeFor2 = new LatticeBuilder().buildTwoTypeLattice(DATAFLOWTOP, DATAFLOWBOTTOM);
-                    solvers.add(solverFactory.createSolver(solverEnvironment, slots, entry.getValue(), latticeFor2));
-                } else if (dataflowRoots.length == 1) {
-                    AnnotationMirror DATAFLOWTOP = DataflowUtils.createDataflowAnnotationForByte(
-                            DataflowUtils.convert(dataflowRoots), processingEnvironment);
-                    TwoQualifiersLattice latticeFor2 = new LatticeBuilder().buildTwoTypeLattice(DATAFLOWTOP, DATAFLOWBOTTOM);
+                // LatticeBuilder shares the lattice of constants with the same top qualifier.
+                TwoQualifiersLattice latticeFor2 = buildTwoQualifiersLattice(anno, DATAFLOWBOTTOM);
+                if (latticeFor2 != null) {
                     solvers.add(solverFactory.createSolver(solverEnvironment, slots, entry.getValue(), latticeFor2));
                 }
             }
@@ -85,6 +76,26 @@ public class DataflowGraphSolvingStrategy extends GraphSolvingStrategy {
         return solvers;
     }
 
+    /**
+     * @return the two-qualifier lattice of the components of the given constant, or null if the
+     * constant has neither a single type name nor a single root
+     */
+    private TwoQualifiersLattice buildTwoQualifiersLattice(AnnotationMirror anno, AnnotationMirror DATAFLOWBOTTOM) {
+        String[] dataflowValues = DataflowUtils.getTypeNames(anno);
+        String[] dataflowRoots = DataflowUtils.getTypeNameRoots(anno);
+        AnnotationMirror DATAFLOWTOP;
+        if (dataflowValues.length == 1) {
+            DATAFLOWTOP = DataflowUtils.createDataflowAnnotation(
+                    DataflowUtils.convert(dataflowValues), processingEnvironment);
+        } else if (dataflowRoots.length == 1) {
+            DATAFLOWTOP = DataflowUtils.createDataflowAnnotationForByte(
+                    DataflowUtils.convert(dataflowRoots), processingEnvironment);
+        } else {
+            return null;
+        }
+        return new LatticeBuilder().buildTwoTypeLattice(DATAFLOWTOP, DATAFLOWBOTTOM);
+    }
+
     @Override
     protected InferenceResult mergeInferenceResults(List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> inferenceResults) {
         Map<Integer, AnnotationMirror> solutions = new HashMap<>();
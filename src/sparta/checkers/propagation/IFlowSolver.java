@@ -7,10 +7,14 @@ import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.javacutil.AnnotationBuilder;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -51,9 +55,11 @@ import sparta.checkers.qual.Source;
  * For both modes, an equality constraint causes the Sets for both involved Slots
  * to be equal and include all Strings from either set.
  *
- * The algorithm processes list of constraints, adding the Strings to the inferredValues
- * map as needed. The entire list of constraints is processed repeatedly until the inferredValues map
- * no longer changes.
+ * The constraints are turned into edges from the slot whose Strings are added to the slot that
+ * receives them. The Strings are propagated along these edges with a worklist: only the edges of
+ * slots whose Strings changed are visited again, until the inferredValues map no longer changes.
+ * The Strings are interned to indices, and the Sets of Strings are represented as BitSets of
+ * these indices.
  *
  * @author mcarthur
  */
@@ -67,10 +73,26 @@ public abstract class IFlowSolver implements InferenceSolver {
     private ProcessingEnvironment processingEnvironment;
     private Map<String, String> configuration;
 
+    /**
+     * The interned Strings, the index of a String is its bit in the sets of Strings.
+     */
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
     /**
      * Map of inferred Strings for an VariableSlot's id.
      */
-    private final Map<Integer, Set<String>> inferredValues = new HashMap<>();
+    private final Map<Integer, BitSet> inferredValues = new HashMap<>();
+
+    /**
+     * Map of the Strings of a ConstantSlot's id, which never change.
+     */
+    private final Map<Integer, BitSet> constantValues = new HashMap<>();
+
+    /**
+     * Map of the ids of the VariableSlots that receive the Strings of a Slot, by the Slot's id.
+     */
+    private final Map<Integer, List<Integer>> successors = new HashMap<>();
 
     // private final Map<String, Set<String>> flowPolicy = new HashMap<>();
 
@@ -85,44 +107,42 @@ public abstract class IFlowSolver implements InferenceSolver {
         this.processingEnvironment = processingEnvironment;
         this.configuration = configuration;
 
-        // Fixed point
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-
-            for (Constraint constraint : constraints) {
-                if (constraint instanceof SubtypeConstraint) {
-                    Slot subtype = ((SubtypeConstraint)constraint).getSubtype();
-                    Slot supertype = ((SubtypeConstraint)constraint).getSupertype();
-
-                    Set<String> subtypePerms = getInferredSlotPermissions(subtype);
-                    Set<String> supertypePerms = getInferredSlotPermissions(supertype);
-
-                    if (isSinkSolver()) {
-                        if (subtype instanceof VariableSlot) {
-                            changed |= subtypePerms.addAll(supertypePerms);
-                        }
-                    } else {
-                        if (supertype instanceof VariableSlot) {
-                            changed |= supertypePerms.addAll(subtypePerms);
-                        }
-                    }
-                } else if (constraint instanceof EqualityConstraint) {
-                    Slot first = ((EqualityConstraint)constraint).getFirst();
-                    Slot second = ((EqualityConstraint)constraint).getSecond();
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint) {
+                Slot subtype = ((SubtypeConstraint)constraint).getSubtype();
+                Slot supertype = ((SubtypeConstraint)constraint).getSupertype();
 
-                    Set<String> firstPerms = getInferredSlotPermissions(first);
-                    Set<String> secondPerms = getInferredSlotPermissions(second);
+                if (isSinkSolver()) {
+                    addEdge(supertype, subtype);
+                } else {
+                    addEdge(subtype, supertype);
+                }
+            } else if (constraint instanceof EqualityConstraint) {
+                Slot first = ((EqualityConstraint)constraint).getFirst();
+                Slot second = ((EqualityConstraint)constraint).getSecond();
 
-                    if (first instanceof VariableSlot) {
-                        changed |= firstPerms.addAll(secondPerms);
-                    }
+                addEdge(first, second);
+                addEdge(second, first);
+            } else {
+                logger.info("Ignoring constraint type: " + constraint.getClass());
+            }
+        }
 
-                    if (second instanceof VariableSlot) {
-                        changed |= secondPerms.addAll(firstPerms);
-                    }
-                } else {
-                    logger.info("Ignoring constraint type: " + constraint.getClass());
+        // Fixed point
+        Deque<Integer> worklist = new ArrayDeque<>(successors.keySet());
+        Set<Integer> queued = new HashSet<>(successors.keySet());
+        while (!worklist.isEmpty()) {
+            int id = worklist.poll();
+            queued.remove(id);
+
+            BitSet perms = getPermissions(id);
+            for (int successor : successors.get(id)) {
+                BitSet successorPerms = inferredValues.get(successor);
+                int size = successorPerms.cardinality();
+                successorPerms.or(perms);
+                if (successorPerms.cardinality() != size && successors.containsKey(successor)
+                        && queued.add(successor)) {
+                    worklist.add(successor);
                 }
             }
         }
@@ -135,8 +155,8 @@ public abstract class IFlowSolver implements InferenceSolver {
     private Map<Integer, AnnotationMirror> createAnnotations() {
         // Create annotations of the inferred sets.
         Map<Integer, AnnotationMirror> solutions = new HashMap<>();
-        for (Entry<Integer, Set<String>> inferredEntry : inferredValues.entrySet()) {
-            Set<String> strings = inferredEntry.getValue();
+        for (Entry<Integer, BitSet> inferredEntry : inferredValues.entrySet()) {
+            Set<String> strings = toStrings(inferredEntry.getValue());
             if (!(strings.size() == 1 && strings.contains("ANY"))) {
                 strings.remove("ANY");
                 AnnotationMirror atm;
@@ -158,18 +178,31 @@ public abstract class IFlowSolver implements InferenceSolver {
     }
 
 
+    /**
+     * Add an edge along which the Strings of {@code from} are added to {@code to}, if {@code to}
+     * is a VariableSlot.
+     */
+    private void addEdge(Slot from, Slot to) {
+        getInferredSlotPermissions(from);
+        getInferredSlotPermissions(to);
+        if (to instanceof VariableSlot
+                && (from instanceof VariableSlot || from instanceof ConstantSlot)) {
+            successors.computeIfAbsent(from.getId(), id -> new ArrayList<>()).add(to.getId());
+        }
+    }
+
     /**
      * Look up the set of inferred Strings for a Slot.
      *
      * If the Slot is a VariableSlot, return its entry in inferredValues.
      *
-     * If the Slot is a ConstantSlot, return an unmodifiable set based
-     * on the Strings used in the constant slots value.
+     * If the Slot is a ConstantSlot, return the Strings used in the constant slots value,
+     * which should not be modified.
      *
      * @param slot The slot to lookup
      * @return The slots current Set of Strings.
      */
-    private Set<String> getInferredSlotPermissions(Slot slot) {
+    private BitSet getInferredSlotPermissions(Slot slot) {
         if (slot instanceof VariableSlot) {
             if (slot.getKind() == Kind.EXISTENTIAL_VARIABLE) {
                 throw new IllegalArgumentException("Unexpected variable type:" + slot);
@@ -177,7 +210,11 @@ public abstract class IFlowSolver implements InferenceSolver {
             return getFlowSet(slot.getId());
 
         } else if (slot instanceof ConstantSlot) {
-            Set<String> constantSet = new HashSet<>();
+            BitSet constantSet = constantValues.get(slot.getId());
+            if (constantSet != null) {
+                return constantSet;
+            }
+            constantSet = new BitSet();
             for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
                     ((ConstantSlot) slot).getValue().getElementValues().entrySet()) {
                 if (entry.getKey().getSimpleName().toString().equals("value")) {
@@ -186,18 +223,44 @@ public abstract class IFlowSolver implements InferenceSolver {
                         String flowPermString = elem.toString();
                         flowPermString = flowPermString.substring(flowPermString.lastIndexOf(".") + 1);
                         flowPermString = flowPermString.replace("\"", "");
-                        constantSet.add(String.valueOf(flowPermString).intern());
+                        constantSet.set(getStringIndex(flowPermString));
                     }
                 }
             }
-            // The set of constants should not be modified
-            return Collections.unmodifiableSet(constantSet);
+            constantValues.put(slot.getId(), constantSet);
+            return constantSet;
         } else {
-            return new HashSet<>();
+            return new BitSet();
 //            throw new BugInCF("Found slot that was neither a variable or a constant: " + slot);
         }
     }
 
+    /**
+     * @return the Strings of the VariableSlot or ConstantSlot with the given id
+     */
+    private BitSet getPermissions(int id) {
+        BitSet perms = inferredValues.get(id);
+        return perms != null ? perms : constantValues.get(id);
+    }
+
+    private int getStringIndex(String string) {
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndices.put(string, index);
+        }
+        return index;
+    }
+
+    private Set<String> toStrings(BitSet bits) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result.add(strings.get(i));
+        }
+        return result;
+    }
+
     private AnnotationMirror createAnnotationMirror(Set<String> strings, Class<? extends Annotation> clazz) {
         AnnotationBuilder builder = new AnnotationBuilder( processingEnvironment, clazz);
         builder.setValue("value", strings.toArray());
@@ -205,20 +268,19 @@ public abstract class IFlowSolver implements InferenceSolver {
     }
 
     /**
-     * Get the Set of Strings in aggregatedValues map for the given id.
+     * Get the Set of Strings in inferredValues map for the given id.
      * Create the Set and add it to the map if it does not already exist.
      *
      * @param id The id of the VariableSlot
      * @return The set of Strings for the id
      */
-    private Set<String> getFlowSet(int id) {
-        if (inferredValues.containsKey(id)) {
-            return inferredValues.get(id);
-        } else {
-            Set<String> newSet = new HashSet<>();
-            inferredValues.put(id, newSet);
-            return newSet;
+    private BitSet getFlowSet(int id) {
+        BitSet flowSet = inferredValues.get(id);
+        if (flowSet == null) {
+            flowSet = new BitSet();
+            inferredValues.put(id, flowSet);
         }
+        return flowSet;
     }
 
     /**
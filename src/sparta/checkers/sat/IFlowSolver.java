@@ -5,18 +5,33 @@ import checkers.inference.InferenceSolver;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
+import checkers.inference.solver.util.ParallelismUtils;
+import checkers.inference.solver.util.Statistics;
 import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.BugInCF;
 import sparta.checkers.iflow.util.PFPermission;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
 /**
  * Created by smillst on 9/17/15.
+ *
+ * The permissions are solved independently of each other, on a pool whose size is given by the
+ * "threads" configuration value and defaults to the number of available processors. The
+ * constraints are indexed once in {@link SharedConstraints} for all permissions.
  */
 public abstract class IFlowSolver implements InferenceSolver {
 
+    private static final Logger logger = Logger.getLogger(IFlowSolver.class.getName());
+
+    private static final String THREADS_KEY = "threads";
 
     public InferenceResult solve(Map<String, String> configuration,
                                  Collection<Slot> slots,
@@ -24,22 +39,51 @@ public abstract class IFlowSolver implements InferenceSolver {
                                  QualifierHierarchy qualHierarchy,
                                  ProcessingEnvironment processingEnvironment) {
         Collection<PFPermission> permissionsUsed = getPermissionsUsed(slots);
-        List<PermissionSolver> permissionSolvers = new ArrayList<>();
+        SharedConstraints sharedConstraints = new SharedConstraints(constraints, getSerializer(PFPermission.ANY));
 
-        // Configure permission solvers
-        for (PFPermission permission : permissionsUsed) {
-            PermissionSolver solver = new PermissionSolver(permission);
-            solver.configure(constraints, getSerializer(permission));
-            permissionSolvers.add(solver);
-        }
+        // The pool only starts threads for the permissions that are submitted.
+        ExecutorService executor = Executors.newFixedThreadPool(getThreads(configuration));
+        List<Future<PermissionSolution>> futures = new ArrayList<>();
+        try {
+            // Configure and solve permission solvers
+            for (PFPermission permission : permissionsUsed) {
+                futures.add(executor.submit(() -> solve(permission, sharedConstraints)));
+            }
 
-        // Solve
-        List<PermissionSolution> solutions = new ArrayList<>();
-        for (PermissionSolver solver : permissionSolvers) {
-            solutions.add(solver.solve());
+            List<PermissionSolution> solutions = new ArrayList<>();
+            for (Future<PermissionSolution> future : futures) {
+                solutions.add(future.get());
+            }
+            return getMergedResultFromSolutions(processingEnvironment, solutions);
+        } catch (InterruptedException e) {
+            throw new BugInCF("Solving permissions was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new BugInCF("Error solving permissions.", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+    }
+
+    private PermissionSolution solve(PFPermission permission, SharedConstraints sharedConstraints) {
+        long start = System.currentTimeMillis();
+        PermissionSolver solver = new PermissionSolver(permission);
+        solver.configure(sharedConstraints, getSerializer(permission));
+        long configured = System.currentTimeMillis();
+        PermissionSolution solution = solver.solve();
+        long end = System.currentTimeMillis();
+
+        String name = permission.toString().toLowerCase();
+        Statistics.addOrIncrementEntry("permission_" + name + "_serialization_time(ms)", configured - start);
+        Statistics.addOrIncrementEntry("permission_" + name + "_solving_time(ms)", end - configured);
+        logger.info("Solved permission " + permission + " in " + (end - start) + " ms.");
+        return solution;
+    }
 
-        return getMergedResultFromSolutions(processingEnvironment, solutions);
+    private int getThreads(Map<String, String> configuration) {
+        return ParallelismUtils.getParallelism(THREADS_KEY, configuration.get(THREADS_KEY));
     }
 
     private Collection<PFPermission> getPermissionsUsed(Collection<Slot> solts) {
@@ -6,6 +6,7 @@ import org.sat4j.core.VecInt;
 import org.sat4j.maxsat.WeightedMaxSatDecorator;
 import sparta.checkers.iflow.util.PFPermission;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -28,6 +29,29 @@ public class PermissionSolver {
         this.clauses = convertToCNF(constraints);
     }
 
+    /**
+     * Configures the solver with the clauses shared by all permissions and the clauses of the
+     * constraints that depend on this permission.
+     */
+    public void configure(SharedConstraints constraints, IFlowSerializer serializer) {
+        this.serializer = serializer;
+        this.slotManager = InferenceMain.getInstance().getSlotManager();
+
+        List<VecInt> sharedClauses = constraints.getSharedClauses();
+        this.clauses = new ArrayList<>(sharedClauses.size() + constraints.getPermissionConstraints().size());
+        for (VecInt clause : sharedClauses) {
+            // The solver may modify the clauses it is given.
+            VecInt copy = new VecInt(clause.size());
+            clause.copyTo(copy);
+            clauses.add(copy);
+        }
+        serializer.convertAll(constraints.getPermissionConstraints(), clauses);
+    }
+
+    public PFPermission getPermission() {
+        return permission;
+    }
+
     private List<VecInt> convertToCNF(Collection<Constraint> constraints) {
         return serializer.convertAll(constraints);
     }
@@ -0,0 +1,70 @@
+package sparta.checkers.sat;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.Slot;
+import org.sat4j.core.VecInt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The constraints of all permissions, indexed once so that they can be shared by the
+ * {@link PermissionSolver}s of all permissions.
+ *
+ * Only constraints on constant slots depend on the permission, through
+ * {@link IFlowSerializer#isTop}. The clauses of all other constraints are the same for every
+ * permission, so they are serialized once here. Existential constraints are serialized per
+ * permission too, as the serializer allocates the existential variables.
+ */
+public class SharedConstraints {
+
+    private final List<VecInt> sharedClauses;
+
+    private final List<Constraint> permissionConstraints = new ArrayList<>();
+
+    /**
+     * @param serializer the serializer of any permission, used for the constraints that do not
+     *            depend on the permission
+     */
+    public SharedConstraints(Collection<Constraint> constraints, IFlowSerializer serializer) {
+        List<Constraint> sharedConstraints = new ArrayList<>();
+        for (Constraint constraint : constraints) {
+            if (dependsOnPermission(constraint)) {
+                permissionConstraints.add(constraint);
+            } else {
+                sharedConstraints.add(constraint);
+            }
+        }
+        this.sharedClauses = serializer.convertAll(sharedConstraints, new ArrayList<VecInt>());
+    }
+
+    private static boolean dependsOnPermission(Constraint constraint) {
+        if (constraint instanceof ExistentialConstraint) {
+            return true;
+        }
+        for (Slot slot : constraint.getSlots()) {
+            if (slot instanceof ConstantSlot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the clauses of the constraints that are the same for every permission. The clauses
+     * must not be modified, the solvers have to copy them.
+     */
+    public List<VecInt> getSharedClauses() {
+        return sharedClauses;
+    }
+
+    /**
+     * @return the constraints that have to be serialized for every permission
+     */
+    public List<Constraint> getPermissionConstraints() {
+        return permissionConstraints;
+    }
+}
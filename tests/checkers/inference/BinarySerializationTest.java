@@ -0,0 +1,87 @@
+package checkers.inference;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.model.serialization.BinarySerializer;
+import checkers.inference.model.serialization.JsonBinaryConverter;
+import junit.framework.TestCase;
+
+public class BinarySerializationTest extends TestCase {
+
+    private static final String CONSTRAINTS = "{\"version\":\"2\",\"constraints\":["
+            + "{\"constraint\":\"subtype\",\"sub\":\"var:1\",\"sup\":\"type:1\"},"
+            + "{\"constraint\":\"equality\",\"lhs\":\"var:2\",\"rhs\":\"var:300000\"},"
+            + "{\"constraint\":\"preference\",\"variable\":\"var:2\",\"goal\":\"type:0\",\"weight\":-5},"
+            + "{\"constraint\":\"enabled_check\",\"id\":\"var:3\","
+            + "\"then\":[{\"constraint\":\"inequality\",\"lhs\":\"var:4\",\"rhs\":\"type:1\"}],\"else\":[]},"
+            + "{\"constraint\":\"implication\",\"assumptions\":[{\"constraint\":\"comparable\",\"lhs\":\"var:5\",\"rhs\":\"var:6\"}],"
+            + "\"conclusion\":{\"constraint\":\"subtype\",\"sub\":\"var:6\",\"sup\":\"type:0\"}},"
+            + "{\"constraint\":\"plus\",\"left_operand\":\"var:7\",\"right_operand\":\"type:0\",\"result\":\"var:8\"}"
+            + "],\"variables\":{\"var:1\":{\"type_value\":\"type:1\"},\"var:2\":{\"type_value\":\"type:0\"}}}";
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        File dir = Files.createTempDirectory("binary-serialization").toFile();
+        Path json = new File(dir, "in.json").toPath();
+        Path binary = new File(dir, "constraints.bin").toPath();
+        Path converted = new File(dir, "out.json").toPath();
+        Files.write(json, CONSTRAINTS.getBytes(StandardCharsets.UTF_8));
+
+        JsonBinaryConverter.jsonToBinary(json, binary);
+        JsonBinaryConverter.binaryToJson(binary, converted);
+
+        JSONParser parser = new JSONParser();
+        JSONObject expected = (JSONObject) parser.parse(CONSTRAINTS);
+        JSONObject actual = (JSONObject) parser.parse(new String(Files.readAllBytes(converted), StandardCharsets.UTF_8));
+        assertEquals(expected.get("constraints"), actual.get("constraints"));
+        assertEquals(expected.get("variables"), actual.get("variables"));
+        assertTrue(Files.size(binary) < CONSTRAINTS.length() / 2);
+    }
+
+    @Test
+    public void testSkipsConstraintWithSkippedNestedConstraint() throws Exception {
+        TestConstraints factory = new TestConstraints();
+        SourceVariableSlot v1 = factory.variable();
+        SourceVariableSlot v2 = factory.variable();
+        SourceVariableSlot v3 = factory.variable();
+        SourceVariableSlot v4 = factory.variable();
+        // A mock constraint writes nothing, like a constraint with a null slot.
+        Constraint skipped = mock(Constraint.class);
+        Constraint implication = new ImplicationConstraint(Collections.singleton(factory.equality(v1, v2)),
+                skipped, AnnotationLocation.MISSING_LOCATION);
+
+        File dir = Files.createTempDirectory("binary-serialization").toFile();
+        Path binary = new File(dir, "constraints.bin").toPath();
+        Path converted = new File(dir, "out.json").toPath();
+        try (BinarySerializer serializer = new BinarySerializer(
+                FileChannel.open(binary, StandardOpenOption.CREATE, StandardOpenOption.WRITE), null)) {
+            serializer.writeConstraint(implication);
+            serializer.writeConstraint(factory.equality(v3, v4));
+        }
+        JsonBinaryConverter.binaryToJson(binary, converted);
+
+        JSONParser parser = new JSONParser();
+        JSONObject actual = (JSONObject) parser.parse(new String(Files.readAllBytes(converted), StandardCharsets.UTF_8));
+        JSONArray expected = (JSONArray) parser.parse(
+                "[{\"constraint\":\"equality\",\"lhs\":\"var:3\",\"rhs\":\"var:4\"}]");
+        assertEquals(expected, actual.get("constraints"));
+    }
+}
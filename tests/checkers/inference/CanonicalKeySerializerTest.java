@@ -0,0 +1,155 @@
+package checkers.inference;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Test;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.model.serialization.CanonicalKeySerializer;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverResultCache;
+import junit.framework.TestCase;
+
+public class CanonicalKeySerializerTest extends TestCase {
+
+    private TestConstraints factory;
+
+    @Override
+    protected void setUp() {
+        factory = new TestConstraints();
+    }
+
+    /**
+     * Creates the same component for every call, with new slot ids. The component has a unique
+     * optimal solution.
+     */
+    private List<Constraint> createComponent(List<Slot> vars) {
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        for (int i = 0; i < 4; i++) {
+            // Unrelated slots between the slots of the component.
+            factory.variable();
+            vars.add(factory.variable());
+        }
+        List<Constraint> constraints = new ArrayList<>(TestConstraints.list(
+                factory.equality(vars.get(0), bottom),
+                factory.subtype(vars.get(1), vars.get(0)),
+                factory.inequality(vars.get(2), vars.get(1)),
+                factory.equality(vars.get(2), vars.get(3)),
+                factory.preference(factory.variable(), factory.top, 1)));
+        return constraints;
+    }
+
+    @Test
+    public void testKeyDoesNotDependOnSlotIdsOrOrder() {
+        List<Constraint> first = createComponent(new ArrayList<>());
+        List<Constraint> second = createComponent(new ArrayList<>());
+        Collections.reverse(second);
+
+        assertEquals(new CanonicalKeySerializer(first).getKey(), new CanonicalKeySerializer(second).getKey());
+    }
+
+    @Test
+    public void testKeyDistinguishesStructure() {
+        List<Slot> vars = new ArrayList<>();
+        List<Constraint> constraints = createComponent(vars);
+        String key = new CanonicalKeySerializer(constraints).getKey();
+
+        List<Constraint> swapped = new ArrayList<>(constraints);
+        swapped.set(1, factory.subtype(vars.get(0), vars.get(1)));
+        assertFalse(key.equals(new CanonicalKeySerializer(swapped).getKey()));
+
+        List<Constraint> withOtherConstant = new ArrayList<>(constraints);
+        withOtherConstant.set(0, factory.equality(vars.get(0), factory.constant(factory.top)));
+        assertFalse(key.equals(new CanonicalKeySerializer(withOtherConstant).getKey()));
+    }
+
+    @Test
+    public void testKeyDistinguishesSlotKinds() {
+        List<Slot> vars = new ArrayList<>();
+        List<Constraint> constraints = createComponent(vars);
+        String key = new CanonicalKeySerializer(constraints).getKey();
+
+        // The same constraints, except that the last variable is an existential slot.
+        Slot existential = factory.existentialVariable(factory.variable(), factory.variable());
+        List<Constraint> withExistential = new ArrayList<>(constraints);
+        withExistential.set(3, factory.equality(vars.get(2), existential));
+        assertFalse(key.equals(new CanonicalKeySerializer(withExistential).getKey()));
+    }
+
+    @Test
+    public void testKeyDoesNotDependOnAssumptionOrder() {
+        String key = null;
+        for (int i = 0; i < 8; i++) {
+            // Unrelated slots shift the ids, and with them the iteration order of the assumptions.
+            for (int j = 0; j < i; j++) {
+                factory.variable();
+            }
+            List<Slot> vars = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                vars.add(factory.variable());
+            }
+            List<Constraint> assumptions = new ArrayList<>(TestConstraints.list(
+                    factory.equality(vars.get(0), factory.constant(factory.bottom)),
+                    factory.subtype(vars.get(1), vars.get(2)),
+                    factory.inequality(vars.get(3), vars.get(0))));
+            if (i % 2 == 1) {
+                Collections.reverse(assumptions);
+            }
+            Constraint implication = ImplicationConstraint.create(assumptions,
+                    factory.subtype(vars.get(4), vars.get(1)), AnnotationLocation.MISSING_LOCATION);
+
+            String implicationKey = new CanonicalKeySerializer(TestConstraints.list(implication)).getKey();
+            if (key == null) {
+                key = implicationKey;
+            }
+            assertEquals(key, implicationKey);
+        }
+    }
+
+    @Test
+    public void testCachedSolutionMatchesSolving() throws IOException {
+        File cacheDir = Files.createTempDirectory("solver-cache").toFile();
+        try {
+            Lattice lattice = factory.lattice();
+            Map<String, String> solverArgs = new HashMap<>();
+            SolverResultCache cache = new SolverResultCache(cacheDir, 10, "MaxSAT", solverArgs);
+
+            List<Constraint> first = createComponent(new ArrayList<>());
+            CanonicalKeySerializer firstKey = new CanonicalKeySerializer(first);
+            String key = cache.getKey(firstKey, lattice);
+            assertNull(cache.lookup(key, firstKey, lattice));
+            cache.store(key, firstKey, factory.solveWithMaxSat(first));
+
+            List<Constraint> second = createComponent(new ArrayList<>());
+            CanonicalKeySerializer secondKey = new CanonicalKeySerializer(second);
+            assertEquals(key, cache.getKey(secondKey, lattice));
+            Map<Integer, AnnotationMirror> cached = cache.lookup(key, secondKey, lattice);
+
+            Map<Integer, AnnotationMirror> expected = new HashMap<>();
+            Map<Integer, AnnotationMirror> solution = factory.solveWithMaxSat(second);
+            for (Integer id : secondKey.getVariableIds()) {
+                expected.put(id, solution.get(id));
+            }
+            assertEquals(expected, cached);
+        } finally {
+            for (File file : cacheDir.listFiles()) {
+                file.delete();
+            }
+            cacheDir.delete();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package checkers.inference;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.ArithmeticConstraint;
+import checkers.inference.model.ArithmeticVariableSlot;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.solver.constraintgraph.CompactGraphBuilder;
+import checkers.inference.solver.constraintgraph.ConstraintGraph;
+import checkers.inference.solver.constraintgraph.GraphBuilder;
+import checkers.inference.solver.constraintgraph.Vertex;
+import junit.framework.TestCase;
+
+public class CompactGraphBuilderTest extends TestCase {
+
+    @Test
+    public void testSameGraphAsGraphBuilder() {
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot top = factory.constant(factory.top);
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        List<SourceVariableSlot> vars = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            vars.add(factory.variable());
+        }
+
+        // Constants are only related by equalities, preferences and inequalities, which are not
+        // simplified away, and no constant path reaches a constant other than top.
+        List<Constraint> constraints = TestConstraints.list(
+                // a component with the bottom constant
+                factory.equality(vars.get(0), bottom),
+                factory.subtype(vars.get(0), vars.get(1)),
+                factory.equality(vars.get(1), vars.get(2)),
+                factory.comparable(vars.get(2), vars.get(3)),
+                // a component without constants
+                factory.equality(vars.get(4), vars.get(5)),
+                factory.subtype(vars.get(5), vars.get(6)),
+                factory.inequality(vars.get(6), vars.get(4)),
+                // also reached from the bottom constant
+                factory.preference(vars.get(7), factory.bottom, 1),
+                factory.subtype(vars.get(7), vars.get(8)),
+                // a component with the top constant
+                factory.inequality(vars.get(9), top),
+                factory.subtype(vars.get(10), vars.get(9)));
+
+        List<Slot> slots = new ArrayList<>(vars);
+        slots.add(top);
+        slots.add(bottom);
+
+        ConstraintGraph expected = new GraphBuilder(slots, constraints, factory.top).buildGraph();
+        ConstraintGraph actual = new CompactGraphBuilder(slots, constraints, factory.top).buildGraph();
+
+        assertEquals(new HashSet<>(expected.getIndependentPath()), new HashSet<>(actual.getIndependentPath()));
+        assertEquals(bySlotId(expected.getConstantPath()), bySlotId(actual.getConstantPath()));
+        assertEquals(2, bySlotId(actual.getConstantPath()).size());
+    }
+
+    @Test
+    public void testSameGraphForNaryConstraints() {
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot top = factory.constant(factory.top);
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        List<SourceVariableSlot> vars = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            vars.add(factory.variable());
+        }
+        int nextId = factory.getSlots().size() + 1;
+        CombVariableSlot comb = new CombVariableSlot(nextId++, new ClassDeclLocation("Test"), vars.get(0), bottom);
+        CombVariableSlot constantsComb = new CombVariableSlot(nextId++, new ClassDeclLocation("Test"), bottom, top);
+        ArithmeticVariableSlot sum = new ArithmeticVariableSlot(nextId++, new ClassDeclLocation("Test"));
+        ArithmeticVariableSlot product = new ArithmeticVariableSlot(nextId++, new ClassDeclLocation("Test"));
+
+        List<Constraint> constraints = TestConstraints.list(
+                // a combine constraint connects its target, declared type and result
+                combine(vars.get(0), bottom, comb),
+                factory.subtype(comb, vars.get(1)),
+                // no edge between the two constants, but both reach the result
+                combine(bottom, top, constantsComb),
+                factory.equality(constantsComb, vars.get(2)),
+                // the same operand twice adds a self loop on the operand
+                arithmetic(vars.get(3), vars.get(3), sum),
+                factory.subtype(sum, vars.get(4)),
+                arithmetic(vars.get(4), top, product),
+                // a component without constants, where the assumption and the conclusion share
+                // vars.get(6)
+                factory.implication(factory.equality(vars.get(5), vars.get(6)),
+                        factory.subtype(vars.get(6), vars.get(7))),
+                factory.comparable(vars.get(7), vars.get(5)));
+
+        List<Slot> slots = new ArrayList<>(factory.getSlots());
+        slots.addAll(Arrays.asList(comb, constantsComb, sum, product));
+
+        ConstraintGraph expected = new GraphBuilder(slots, constraints, factory.top).buildGraph();
+        ConstraintGraph actual = new CompactGraphBuilder(slots, constraints, factory.top).buildGraph();
+
+        assertEquals(new HashSet<>(expected.getIndependentPath()), new HashSet<>(actual.getIndependentPath()));
+        assertEquals(bySlotId(expected.getConstantPath()), bySlotId(actual.getConstantPath()));
+        assertEquals(2, actual.getIndependentPath().size());
+    }
+
+    @Test
+    public void testKeepsConstraintsWithDuplicateEdges() {
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        SourceVariableSlot first = factory.variable();
+        SourceVariableSlot second = factory.variable();
+
+        Constraint equality = factory.equality(first, bottom);
+        Constraint subtype = factory.subtype(first, second);
+        // Same edge as the subtype constraint, from first to second.
+        Constraint comparable = factory.comparable(first, second);
+        List<Constraint> constraints = TestConstraints.list(equality, subtype, comparable);
+
+        ConstraintGraph expected = new GraphBuilder(factory.getSlots(), constraints, factory.top).buildGraph();
+        ConstraintGraph actual = new CompactGraphBuilder(factory.getSlots(), constraints, factory.top).buildGraph();
+
+        // GraphBuilder drops an edge between a pair of slots that already has one, and with it
+        // the constraint of that edge.
+        Set<Constraint> withoutDuplicate = new HashSet<>(Arrays.asList(equality, subtype));
+        assertEquals(Arrays.asList(withoutDuplicate), expected.getIndependentPath());
+        assertEquals(withoutDuplicate, bySlotId(expected.getConstantPath()).get(bottom.getId()));
+
+        Set<Constraint> all = new HashSet<>(constraints);
+        assertEquals(Arrays.asList(all), actual.getIndependentPath());
+        assertEquals(all, bySlotId(actual.getConstantPath()).get(bottom.getId()));
+    }
+
+    /**
+     * The graph builders only look at the slots of combine and arithmetic constraints, so mocks
+     * stand in for constraints that would need a type factory to create.
+     */
+    private static Constraint combine(Slot target, Slot declared, CombVariableSlot result) {
+        CombineConstraint combine = mock(CombineConstraint.class);
+        when(combine.getSlots()).thenReturn(Arrays.asList(target, declared, result));
+        return combine;
+    }
+
+    private static Constraint arithmetic(Slot left, Slot right, ArithmeticVariableSlot result) {
+        ArithmeticConstraint arithmetic = mock(ArithmeticConstraint.class);
+        when(arithmetic.getSlots()).thenReturn(Arrays.asList(left, right, result));
+        return arithmetic;
+    }
+
+    private static Map<Integer, Set<Constraint>> bySlotId(Map<Vertex, Set<Constraint>> constantPath) {
+        Map<Integer, Set<Constraint>> result = new HashMap<>();
+        for (Map.Entry<Vertex, Set<Constraint>> entry : constantPath.entrySet()) {
+            result.put(entry.getKey().getSlot().getId(), new HashSet<>(entry.getValue()));
+        }
+        return result;
+    }
+}
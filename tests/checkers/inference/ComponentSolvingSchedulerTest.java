@@ -0,0 +1,103 @@
+package checkers.inference;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Test;
+
+import com.sun.tools.javac.util.Pair;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.strategy.ComponentSolvingScheduler;
+import junit.framework.TestCase;
+
+public class ComponentSolvingSchedulerTest extends TestCase {
+
+    @Test
+    public void testSameSolutionsAsSequentialSolving() throws Exception {
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot top = factory.constant(factory.top);
+        ConstantSlot bottom = factory.constant(factory.bottom);
+
+        // Components of different sizes, each with a unique solution.
+        List<List<Constraint>> components = new ArrayList<>();
+        for (int size = 1; size <= 6; size++) {
+            List<Constraint> component = new ArrayList<>();
+            SourceVariableSlot previous = factory.variable();
+            component.add(factory.equality(previous, size % 2 == 0 ? top : bottom));
+            for (int i = 1; i < size; i++) {
+                SourceVariableSlot next = factory.variable();
+                component.add(factory.equality(previous, next));
+                previous = next;
+            }
+            components.add(component);
+        }
+
+        List<Map<Integer, AnnotationMirror>> expected = new ArrayList<>();
+        for (List<Constraint> component : components) {
+            expected.add(factory.solveWithMaxSat(component));
+        }
+
+        List<Solver<?>> solvers = new ArrayList<>();
+        for (List<Constraint> component : components) {
+            solvers.add(factory.maxSatSolver(component, new HashMap<>()));
+        }
+        List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> results =
+                new ComponentSolvingScheduler(3).solve(solvers);
+
+        assertEquals(components.size(), results.size());
+        for (int i = 0; i < components.size(); i++) {
+            assertEquals(expected.get(i), results.get(i).fst);
+            assertTrue(factory.satisfies(results.get(i).fst, components.get(i)));
+        }
+    }
+
+    @Test
+    public void testSkipsComponentsAfterUnsatisfiableComponent() throws Exception {
+        Collection<Constraint> explanation = Collections.singletonList(mock(Constraint.class));
+        Solver<?> unsatisfiable = mockSolver(10, null);
+        when(unsatisfiable.explainUnsatisfiable()).thenReturn(explanation);
+        Solver<?> smaller = mockSolver(1, Collections.emptyMap());
+
+        // A single thread takes the largest component, the unsatisfiable one, first.
+        List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> results =
+                new ComponentSolvingScheduler(1).solve(list(smaller, unsatisfiable));
+
+        assertEquals(1, results.size());
+        assertNull(results.get(0).fst);
+        assertEquals(explanation, results.get(0).snd);
+        verify(smaller, never()).solve();
+    }
+
+    private static Solver<?> mockSolver(int numConstraints, Map<Integer, AnnotationMirror> solution) {
+        Solver<?> solver = mock(Solver.class);
+        List<Constraint> constraints = new ArrayList<>();
+        for (int i = 0; i < numConstraints; i++) {
+            constraints.add(mock(Constraint.class));
+        }
+        when(solver.getConstraints()).thenReturn(constraints);
+        when(solver.solve()).thenReturn(solution);
+        return solver;
+    }
+
+    private static List<Solver<?>> list(Solver<?>... solvers) {
+        List<Solver<?>> result = new ArrayList<>();
+        Collections.addAll(result, solvers);
+        return result;
+    }
+}
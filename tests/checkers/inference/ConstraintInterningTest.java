@@ -0,0 +1,116 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import junit.framework.TestCase;
+
+public class ConstraintInterningTest extends TestCase {
+
+    private static Constraint randomConstraint(TestConstraints factory, Random random, List<Slot> slots,
+            List<SourceVariableSlot> vars) {
+        Slot first = slots.get(random.nextInt(slots.size()));
+        Slot second = slots.get(random.nextInt(slots.size()));
+        switch (random.nextInt(5)) {
+            case 0:
+                return factory.subtype(first, second);
+            case 1:
+                return factory.equality(first, second);
+            case 2:
+                return factory.inequality(first, second);
+            case 3:
+                return factory.comparable(first, second);
+            default:
+                return factory.implication(factory.equality(vars.get(random.nextInt(vars.size())), first),
+                        factory.subtype(second, vars.get(random.nextInt(vars.size()))));
+        }
+    }
+
+    @Test
+    public void testInterningMatchesHashSetDeduplication() {
+        TestConstraints factory = new TestConstraints();
+        List<SourceVariableSlot> vars = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            vars.add(factory.variable());
+        }
+        List<Slot> slots = new ArrayList<>(vars);
+        slots.add(factory.constant(factory.top));
+        slots.add(factory.constant(factory.bottom));
+
+        // Equal constraints are created as separate instances, as by different visitors.
+        Random random = new Random(22);
+        List<Constraint> constraints = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            constraints.add(randomConstraint(factory, random, slots, vars));
+        }
+
+        ConstraintManager constraintManager = new ConstraintManager();
+        Map<Constraint, Boolean> interned = new IdentityHashMap<>();
+        for (Constraint constraint : constraints) {
+            Constraint canonical = constraintManager.intern(constraint);
+            assertEquals(constraint, canonical);
+            assertEquals(constraint.hashCode(), canonical.hashCode());
+            assertSame(canonical, constraintManager.intern(canonical));
+            interned.put(canonical, Boolean.TRUE);
+        }
+
+        Set<Constraint> deduplicated = new HashSet<>(constraints);
+        assertTrue(deduplicated.size() < constraints.size());
+        assertEquals(deduplicated.size(), interned.size());
+        assertEquals(deduplicated, new HashSet<>(interned.keySet()));
+    }
+
+    @Test
+    public void testSymmetricConstraintsShareOneInstance() {
+        TestConstraints factory = new TestConstraints();
+        SourceVariableSlot first = factory.variable();
+        SourceVariableSlot second = factory.variable();
+        ConstraintManager constraintManager = new ConstraintManager();
+
+        Constraint equality = constraintManager.intern(factory.equality(first, second));
+        assertSame(equality, constraintManager.intern(factory.equality(second, first)));
+        Constraint comparable = constraintManager.intern(factory.comparable(first, second));
+        assertSame(comparable, constraintManager.intern(factory.comparable(second, first)));
+        Constraint subtype = constraintManager.intern(factory.subtype(first, second));
+        assertNotSame(subtype, constraintManager.intern(factory.subtype(second, first)));
+        assertNotSame(equality, comparable);
+    }
+
+    @Test
+    public void testConstantSlotHashAndEquality() {
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot top = factory.constant(factory.top);
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        // A slot with the same value but a different id, which the slot manager does not create.
+        ConstantSlot otherTop = new ConstantSlot(1000, factory.top);
+
+        // The cached hash code is the one computed from the printed value before.
+        assertEquals(31 + factory.top.toString().hashCode(), top.hashCode());
+        assertEquals(factory.top.toString(), top.getCanonicalKey());
+        assertEquals(top, otherTop);
+        assertEquals(top.hashCode(), otherTop.hashCode());
+        assertFalse(top.equals(bottom));
+
+        SourceVariableSlot variable = factory.variable();
+        ConstraintManager constraintManager = new ConstraintManager();
+        Constraint canonical = constraintManager.intern(factory.inequality(variable, top));
+        assertSame(canonical, constraintManager.intern(factory.inequality(variable, otherTop)));
+        assertEquals(Collections.singleton(canonical),
+                new HashSet<>(TestConstraints.list(factory.inequality(variable, top),
+                        factory.inequality(otherTop, variable))));
+    }
+}
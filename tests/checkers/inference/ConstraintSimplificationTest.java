@@ -0,0 +1,152 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Test;
+
+import checkers.inference.ConstraintNormalizer.DuplicateRemoval;
+import checkers.inference.ConstraintNormalizer.EqualityMerging;
+import checkers.inference.ConstraintNormalizer.TrivialConstraintRemoval;
+import checkers.inference.model.BinaryConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import junit.framework.TestCase;
+
+public class ConstraintSimplificationTest extends TestCase {
+
+    private TestConstraints factory;
+    private ConstantSlot top;
+    private ConstantSlot bottom;
+    private List<SourceVariableSlot> vars;
+
+    @Override
+    protected void setUp() {
+        factory = new TestConstraints();
+        top = factory.constant(factory.top);
+        bottom = factory.constant(factory.bottom);
+        vars = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            vars.add(factory.variable());
+        }
+    }
+
+    @Test
+    public void testEqualityMerging() {
+        Set<Constraint> constraints = new LinkedHashSet<>(TestConstraints.list(
+                factory.equality(vars.get(0), vars.get(1)),
+                factory.subtype(vars.get(1), vars.get(2)),
+                factory.subtype(vars.get(2), vars.get(1)),
+                factory.subtype(vars.get(2), vars.get(3)),
+                factory.inequality(vars.get(3), bottom)));
+        SolutionReconstruction reconstruction = new SolutionReconstruction();
+        new EqualityMerging().simplify(constraints, reconstruction);
+
+        // v1 and v2 are substituted by v0, the constraints within the class are removed.
+        assertEquals(2, reconstruction.getNumberOfMergedSlots());
+        assertEquals(new HashSet<>(TestConstraints.list(
+                        factory.subtype(vars.get(0), vars.get(3)),
+                        factory.inequality(vars.get(3), bottom))),
+                constraints);
+    }
+
+    @Test
+    public void testEqualityMergingKeepsPinnedSlots() {
+        Set<Constraint> constraints = new LinkedHashSet<>(TestConstraints.list(
+                factory.equality(vars.get(0), vars.get(1)),
+                factory.equality(vars.get(1), bottom),
+                factory.preference(vars.get(1), factory.top, 1)));
+        new EqualityMerging().simplify(constraints, new SolutionReconstruction());
+
+        // The preference pins v1, which becomes the representative; the constant is linked to it.
+        assertEquals(new HashSet<>(TestConstraints.list(
+                        factory.equality(vars.get(1), bottom),
+                        factory.preference(vars.get(1), factory.top, 1))),
+                constraints);
+    }
+
+    @Test
+    public void testTrivialConstraintRemoval() {
+        BinaryConstraint subtype = (BinaryConstraint) factory.subtype(vars.get(0), vars.get(1));
+        BinaryConstraint comparable = (BinaryConstraint) factory.comparable(vars.get(0), vars.get(1));
+        Constraint inequality = factory.inequality(vars.get(0), top);
+        // Constraints as created by substituting slots, which skips the normalization of create.
+        Set<Constraint> constraints = new LinkedHashSet<>(Arrays.asList(
+                (Constraint) subtype,
+                subtype.make(vars.get(0), top),
+                subtype.make(bottom, vars.get(1)),
+                subtype.make(vars.get(2), vars.get(2)),
+                subtype.make(bottom, top),
+                comparable.make(vars.get(3), bottom),
+                comparable.make(vars.get(3), vars.get(3)),
+                inequality));
+        new TrivialConstraintRemoval(factory.qualifierHierarchy).simplify(constraints, new SolutionReconstruction());
+
+        assertEquals(new HashSet<>(Arrays.asList(subtype, inequality)), constraints);
+    }
+
+    @Test
+    public void testDuplicateRemoval() {
+        Constraint equality = factory.equality(vars.get(0), vars.get(1));
+        Constraint subtype = factory.subtype(vars.get(2), vars.get(3));
+        Constraint comparable = factory.comparable(vars.get(3), vars.get(4));
+        Set<Constraint> constraints = new LinkedHashSet<>(TestConstraints.list(
+                equality,
+                factory.subtype(vars.get(0), vars.get(1)),
+                factory.subtype(vars.get(1), vars.get(0)),
+                factory.comparable(vars.get(1), vars.get(0)),
+                subtype,
+                factory.comparable(vars.get(3), vars.get(2)),
+                comparable));
+        new DuplicateRemoval().simplify(constraints, new SolutionReconstruction());
+
+        assertEquals(new HashSet<>(TestConstraints.list(equality, subtype, comparable)), constraints);
+    }
+
+    @Test
+    public void testExpandedSolutionMatchesUnsimplified() {
+        // The optimal solution is unique: v0 = v1 = v2 = v5 = bottom, v3 = v4 = top.
+        List<Constraint> constraints = TestConstraints.list(
+                factory.equality(vars.get(0), vars.get(1)),
+                factory.subtype(vars.get(1), vars.get(2)),
+                factory.subtype(vars.get(2), vars.get(1)),
+                factory.subtype(vars.get(2), vars.get(3)),
+                factory.comparable(vars.get(2), vars.get(3)),
+                factory.equality(vars.get(3), vars.get(4)),
+                factory.inequality(vars.get(4), bottom),
+                factory.preference(vars.get(0), factory.bottom, 1),
+                factory.subtype(vars.get(5), vars.get(0)));
+        Map<Integer, AnnotationMirror> expected = factory.solveWithMaxSat(constraints);
+        assertTrue(factory.satisfies(expected, constraints));
+
+        ConstraintNormalizer normalizer = new ConstraintNormalizer(ConstraintNormalizer.createSimplifications(
+                "equalities,trivial,duplicates", factory.qualifierHierarchy));
+        Set<Constraint> simplified = normalizer.normalize(new LinkedHashSet<>(constraints));
+        assertTrue(simplified.size() < constraints.size());
+        assertEquals(3, normalizer.getSolutionReconstruction().getNumberOfMergedSlots());
+
+        InferenceResult result = normalizer.getSolutionReconstruction().expand(
+                new DefaultInferenceResult(factory.solveWithMaxSat(simplified)));
+        assertTrue(result.hasSolution());
+        assertEquals(expected, solutionOfVariables(result.getSolutions()));
+    }
+
+    private Map<Integer, AnnotationMirror> solutionOfVariables(Map<Integer, AnnotationMirror> solution) {
+        Map<Integer, AnnotationMirror> result = new HashMap<>();
+        for (Slot var : vars) {
+            result.put(var.getId(), solution.get(var.getId()));
+        }
+        return result;
+    }
+}
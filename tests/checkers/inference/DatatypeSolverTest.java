@@ -0,0 +1,69 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.test.InferenceTestUtilities;
+import dataflow.qual.DataFlow;
+import dataflow.solvers.classic.DataflowSerializer;
+import dataflow.solvers.classic.DatatypeSolution;
+import dataflow.solvers.classic.DatatypeSolver;
+import junit.framework.TestCase;
+
+public class DatatypeSolverTest extends TestCase {
+
+    @Test
+    public void testSolvesConstantPathWithSparseSlotIds() {
+        ProcessingEnvironment processingEnvironment = InferenceTestUtilities.getProcessingEnvironment();
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot string = factory.constant(createDataflow(processingEnvironment, "java.lang.String"));
+        ConstantSlot integer = factory.constant(createDataflow(processingEnvironment, "int"));
+
+        // The variables of the constant path are far apart among the slots of the program.
+        List<SourceVariableSlot> vars = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 1000; j++) {
+                factory.variable();
+            }
+            vars.add(factory.variable());
+        }
+
+        // Even variables are java.lang.String, odd variables are int.
+        List<Constraint> constraints = new ArrayList<>();
+        constraints.add(factory.equality(vars.get(0), string));
+        constraints.add(factory.equality(vars.get(1), integer));
+        for (int i = 2; i < vars.size(); i++) {
+            constraints.add(factory.equality(vars.get(i), vars.get(i - 2)));
+            if (i % 2 == 1) {
+                constraints.add(factory.subtype(vars.get(i), vars.get(i - 1)));
+            }
+        }
+
+        DatatypeSolution solution = new DatatypeSolver("java.lang.String", constraints,
+                new DataflowSerializer("java.lang.String", false)).solve();
+
+        Map<Integer, Boolean> expected = new HashMap<>();
+        for (int i = 0; i < vars.size(); i++) {
+            expected.put(vars.get(i).getId(), i % 2 == 0);
+        }
+        assertEquals(expected, solution.getResult());
+    }
+
+    private static AnnotationMirror createDataflow(ProcessingEnvironment processingEnvironment, String typeName) {
+        AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, DataFlow.class);
+        builder.setValue("typeNames", new String[] { typeName });
+        return builder.build();
+    }
+}
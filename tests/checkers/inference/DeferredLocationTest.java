@@ -0,0 +1,125 @@
+package checkers.inference;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.DeferredLocation;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.TestConstraints;
+import junit.framework.TestCase;
+
+public class DeferredLocationTest extends TestCase {
+
+    private static final String SOURCE =
+            "package test;\n"
+            + "import java.util.List;\n"
+            + "public class Locations<T> {\n"
+            + "    List<String> field;\n"
+            + "    class Inner {}\n"
+            + "    T method(T param, int[] values) {\n"
+            + "        Object local = new Object();\n"
+            + "        for (int value : values) { local = (Object) value; }\n"
+            + "        return param;\n"
+            + "    }\n"
+            + "}\n";
+
+    private static Iterable<? extends CompilationUnitTree> parse() throws IOException {
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///test/Locations.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return SOURCE;
+            }
+        };
+        JavacTask task = (JavacTask) ToolProvider.getSystemJavaCompiler().getTask(null, null, null,
+                Collections.singletonList("-proc:none"), null, Collections.singletonList(source));
+        Iterable<? extends CompilationUnitTree> units = task.parse();
+        // The locations of class declarations use the flat names of their symbols.
+        task.analyze();
+        return units;
+    }
+
+    @Test
+    public void testDeferredLocationsMatchEagerLocations() throws IOException {
+        List<AnnotationLocation> eager = new ArrayList<>();
+        List<AnnotationLocation> deferred = new ArrayList<>();
+        AtomicInteger computations = new AtomicInteger();
+        for (CompilationUnitTree unit : parse()) {
+            new TreePathScanner<Void, Void>() {
+                @Override
+                public Void scan(Tree tree, Void p) {
+                    if (tree != null) {
+                        TreePath path = new TreePath(getCurrentPath(), tree);
+                        eager.add(VariableAnnotator.pathToLocation(null, path));
+                        deferred.add(new DeferredLocation(() -> {
+                            computations.incrementAndGet();
+                            return VariableAnnotator.pathToLocation(null, path);
+                        }));
+                    }
+                    return super.scan(tree, p);
+                }
+            }.scan(unit, null);
+        }
+
+        // Nothing is computed until the locations are used, after the scan has moved on.
+        assertEquals(0, computations.get());
+        assertTrue(eager.size() > 20);
+        int astPathLocations = 0;
+        for (int i = 0; i < eager.size(); i++) {
+            DeferredLocation location = (DeferredLocation) deferred.get(i);
+            assertEquals(eager.get(i), location.resolve());
+            assertEquals(eager.get(i).getKind(), location.getKind());
+            assertEquals(eager.get(i).isInsertable(), location.isInsertable());
+            assertEquals(eager.get(i).toString(), location.toString());
+            assertEquals(eager.get(i).hashCode(), location.hashCode());
+            if (eager.get(i).getKind() == AnnotationLocation.Kind.AST_PATH) {
+                astPathLocations++;
+            }
+        }
+        assertTrue(astPathLocations > 0);
+        assertEquals(eager.size(), computations.get());
+
+        // A location is computed once.
+        for (AnnotationLocation location : deferred) {
+            ((DeferredLocation) location).resolve();
+        }
+        assertEquals(eager.size(), computations.get());
+    }
+
+    @Test
+    public void testConstraintResolvesItsLocation() {
+        TestConstraints factory = new TestConstraints();
+        AnnotationLocation expected = new AnnotationLocation.ClassDeclLocation("test.Locations");
+        AtomicInteger computations = new AtomicInteger();
+        Constraint assumption = factory.equality(factory.variable(), factory.variable());
+        Constraint conclusion = factory.subtype(factory.variable(), factory.variable());
+        Constraint constraint = ImplicationConstraint.create(Collections.singletonList(assumption), conclusion,
+                new DeferredLocation(() -> {
+                    computations.incrementAndGet();
+                    return expected;
+                }));
+
+        assertEquals(0, computations.get());
+        assertSame(expected, constraint.getLocation());
+        assertSame(expected, constraint.getLocation());
+        assertEquals(1, computations.get());
+    }
+}
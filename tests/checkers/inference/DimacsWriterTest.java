@@ -0,0 +1,82 @@
+package checkers.inference;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.solver.backend.maxsat.DimacsWriter;
+import junit.framework.TestCase;
+
+public class DimacsWriterTest extends TestCase {
+
+    private static final int[][] CLAUSES = {{1, -2}, {-123456789, 42, 7}, {3}};
+
+    @Test
+    public void testCnfMatchesStringBuilderOutput() throws Exception {
+        File file = File.createTempFile("cnf", ".txt");
+        try (DimacsWriter writer = DimacsWriter.cnf(file, 123456789)) {
+            for (int[] clause : CLAUSES) {
+                writer.writeHardClause(new VecInt(clause));
+            }
+        }
+
+        // The formula as it was built in a StringBuilder before it was streamed.
+        StringBuilder expected = new StringBuilder();
+        expected.append("p cnf 123456789 3\n");
+        for (int[] clause : CLAUSES) {
+            appendClause(expected, clause);
+        }
+        assertEquals(expected.toString(), withoutComments(file));
+    }
+
+    @Test
+    public void testWcnf() throws Exception {
+        File file = File.createTempFile("wcnf", ".txt");
+        try (DimacsWriter writer = DimacsWriter.wcnf(file, 5, 1000000000000L)) {
+            writer.writeHardClause(new VecInt(CLAUSES[0]));
+            writer.writeSoftClause(new VecInt(CLAUSES[2]), 17);
+            assertEquals(2, writer.getNumberOfClauses());
+        }
+
+        assertEquals("p wcnf 5 2 1000000000000\n1000000000000 1 -2 0\n17 3 0\n", withoutComments(file));
+    }
+
+    @Test
+    public void testManyClausesSpanningBuffers() throws Exception {
+        File file = File.createTempFile("cnf", ".txt");
+        StringBuilder expected = new StringBuilder("p cnf 100000 100000\n");
+        try (DimacsWriter writer = DimacsWriter.cnf(file, 100000)) {
+            for (int i = 1; i <= 100000; i++) {
+                int[] clause = {i, -(100001 - i)};
+                writer.writeHardClause(new VecInt(clause));
+                appendClause(expected, clause);
+            }
+        }
+        assertEquals(expected.toString(), withoutComments(file));
+    }
+
+    private static void appendClause(StringBuilder builder, int[] clause) {
+        for (int literal : clause) {
+            builder.append(literal).append(" ");
+        }
+        builder.append("0\n");
+    }
+
+    /** Returns the content of the file without comment lines, which includes the header padding. */
+    private static String withoutComments(File file) throws Exception {
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII));
+        assertTrue(lines.get(0).startsWith("c"));
+        lines.removeIf(line -> line.startsWith("c"));
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line).append("\n");
+        }
+        file.delete();
+        return result.toString();
+    }
+}
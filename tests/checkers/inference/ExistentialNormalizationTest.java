@@ -0,0 +1,162 @@
+package checkers.inference;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.Test;
+
+import checkers.inference.model.AlwaysFalseConstraint;
+import checkers.inference.model.AlwaysTrueConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.TestConstraints;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the existential selectors normalization is equivalent to the expansion of
+ * existential variables, by evaluating both on every assignment of the two-qualifier lattice.
+ */
+public class ExistentialNormalizationTest extends TestCase {
+
+    @Test
+    public void testSelectorsEquivalentToExpansion() {
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        SourceVariableSlot p1 = factory.variable();
+        SourceVariableSlot a1 = factory.variable();
+        SourceVariableSlot p2 = factory.variable();
+        SourceVariableSlot p3 = factory.variable();
+        SourceVariableSlot a3 = factory.variable();
+        SourceVariableSlot v = factory.variable();
+        ExistentialVariableSlot e1 = factory.existentialVariable(p1, a1);
+        ExistentialVariableSlot e3 = factory.existentialVariable(p3, a3);
+        ExistentialVariableSlot e2 = factory.existentialVariable(p2, e3);
+
+        Set<Constraint> constraints = new LinkedHashSet<>(TestConstraints.list(
+                factory.subtype(e1, e2),
+                factory.equality(e3, v),
+                factory.inequality(a1, bottom)));
+        Set<Constraint> expanded = new ConstraintNormalizer(false, Collections.emptyList()).normalize(constraints);
+        Set<Constraint> selected = new ConstraintNormalizer(true, Collections.emptyList()).normalize(constraints);
+
+        List<Slot> variables = Arrays.asList(p1, a1, p2, p3, a3, v);
+        List<Slot> potentials = Arrays.asList(p1, p2, p3);
+        List<Slot> selectors = Arrays.asList(e1, e2, e3);
+
+        Evaluator evaluator = new Evaluator(factory);
+        for (int existing = 0; existing < 1 << potentials.size(); existing++) {
+            evaluator.existing = subset(potentials, existing);
+            for (int values = 0; values < 1 << variables.size(); values++) {
+                evaluator.tops = subset(variables, values);
+                boolean expected = evaluator.holds(expanded);
+
+                // The selectors are free variables of the selected constraints.
+                boolean actual = false;
+                for (int selectorValues = 0; selectorValues < 1 << selectors.size(); selectorValues++) {
+                    Set<Slot> tops = subset(variables, values);
+                    tops.addAll(subset(selectors, selectorValues));
+                    evaluator.tops = tops;
+                    actual |= evaluator.holds(selected);
+                }
+                assertEquals("existing " + evaluator.existing + ", top " + subset(variables, values),
+                        expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testSelectorsAreLinear() {
+        TestConstraints factory = new TestConstraints();
+        // Two chains of ten existential variables each.
+        Slot first = factory.variable();
+        Slot second = factory.variable();
+        for (int i = 0; i < 10; i++) {
+            first = factory.existentialVariable(factory.variable(), first);
+            second = factory.existentialVariable(factory.variable(), second);
+        }
+
+        Set<Constraint> constraints = new LinkedHashSet<>(TestConstraints.list(factory.subtype(first, second)));
+        Set<Constraint> selected = new ConstraintNormalizer(true, Collections.emptyList()).normalize(constraints);
+
+        // The subtype constraint, and one existential constraint per existential variable.
+        assertEquals(1 + 20, selected.size());
+        assertTrue(selected.containsAll(constraints));
+    }
+
+    private static Set<Slot> subset(List<Slot> slots, int bits) {
+        Set<Slot> subset = new HashSet<>();
+        for (int i = 0; i < slots.size(); i++) {
+            if ((bits & 1 << i) != 0) {
+                subset.add(slots.get(i));
+            }
+        }
+        return subset;
+    }
+
+    /**
+     * Evaluates constraints for the slots that exist and the variables that are top.
+     */
+    private static class Evaluator {
+        private final TestConstraints factory;
+        private Set<Slot> existing;
+        private Set<Slot> tops;
+
+        private Evaluator(TestConstraints factory) {
+            this.factory = factory;
+        }
+
+        private boolean holds(Collection<Constraint> constraints) {
+            for (Constraint constraint : constraints) {
+                if (!holds(constraint)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean holds(Constraint constraint) {
+            if (constraint instanceof ExistentialConstraint) {
+                ExistentialConstraint existential = (ExistentialConstraint) constraint;
+                return existing.contains(existential.getPotentialVariable())
+                        ? holds(existential.potentialConstraints())
+                        : holds(existential.getAlternateConstraints());
+            } else if (constraint instanceof SubtypeConstraint) {
+                SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+                return !isTop(subtype.getSubtype()) || isTop(subtype.getSupertype());
+            } else if (constraint instanceof EqualityConstraint) {
+                EqualityConstraint equality = (EqualityConstraint) constraint;
+                return isTop(equality.getFirst()) == isTop(equality.getSecond());
+            } else if (constraint instanceof InequalityConstraint) {
+                InequalityConstraint inequality = (InequalityConstraint) constraint;
+                return isTop(inequality.getFirst()) != isTop(inequality.getSecond());
+            } else if (constraint instanceof ComparableConstraint
+                    || constraint instanceof AlwaysTrueConstraint) {
+                return true;
+            } else if (constraint instanceof AlwaysFalseConstraint) {
+                return false;
+            }
+            throw new AssertionError("Unexpected constraint " + constraint);
+        }
+
+        private boolean isTop(Slot slot) {
+            if (slot instanceof ConstantSlot) {
+                return AnnotationUtils.areSame(((ConstantSlot) slot).getValue(), factory.top);
+            }
+            return tops.contains(slot);
+        }
+    }
+}
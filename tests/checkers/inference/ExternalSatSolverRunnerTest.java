@@ -0,0 +1,98 @@
+package checkers.inference;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.checkerframework.javacutil.UserError;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sat4j.core.VecInt;
+
+import checkers.inference.solver.backend.maxsat.DimacsWriter;
+import checkers.inference.solver.util.ExternalSatSolverRunner;
+import junit.framework.TestCase;
+
+public class ExternalSatSolverRunnerTest extends TestCase {
+
+    /**
+     * A stand-in for a SAT solver that reports the formula satisfiable if it received as many
+     * clauses as its header announced, and unsatisfiable otherwise.
+     */
+    private static final String[] CHECKING_SOLVER = {"sh", "-c",
+            "read p format variables clauses; n=$(grep -c ' 0$');"
+            + " if [ \"$n\" = \"$clauses\" ]; then echo 's SATISFIABLE'; echo 'v 1 -2'; echo 'v 3 0';"
+            + " else echo 's UNSATISFIABLE'; fi"};
+
+    @Test
+    public void testPipesFormulaAndParsesModel() {
+        int[] model = new ExternalSatSolverRunner(CHECKING_SOLVER, 2).solve(stdIn -> {
+            try (DimacsWriter writer = DimacsWriter.cnf(stdIn, 3, 1000)) {
+                for (int i = 0; i < 1000; i++) {
+                    writer.writeHardClause(new VecInt(new int[] {1, -2, 3}));
+                }
+            }
+        });
+        assertTrue(Arrays.equals(new int[] {1, -2, 3}, model));
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        String[] command = {"sh", "-c", "cat > /dev/null; echo 's UNSATISFIABLE'"};
+        int[] model = new ExternalSatSolverRunner(command, 2).solve(stdIn -> {
+            try (DimacsWriter writer = DimacsWriter.cnf(stdIn, 1, 2)) {
+                writer.writeHardClause(new VecInt(new int[] {1}));
+                writer.writeHardClause(new VecInt(new int[] {-1}));
+            }
+        });
+        assertNull(model);
+    }
+
+    /**
+     * @return a solver that waits up to five seconds until both solvers started, and reports the
+     * formula satisfiable if they did
+     */
+    private static String[] waitingSolver(File dir, String name) {
+        String started = "[ $(ls " + dir + " | wc -l) -ge 2 ]";
+        return new String[] {"sh", "-c", "cat > /dev/null; touch " + new File(dir, name) + ";"
+                + " for i in $(seq 50); do " + started + " && break; sleep 0.1; done;"
+                + " if " + started + "; then echo 's SATISFIABLE'; echo 'v 1 0'; else echo 's UNSATISFIABLE'; fi"};
+    }
+
+    @Test
+    public void testBoundOfLaterRunnersApplies() throws Exception {
+        TemporaryFolder temp = new TemporaryFolder();
+        temp.create();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // A runner with a bound of one process, as in an earlier solving run.
+            File alone = temp.newFolder("alone");
+            assertNull(new ExternalSatSolverRunner(waitingSolver(alone, "a"), 1).solve(stdIn -> { }));
+
+            // Both solvers can only finish satisfiable if they run at the same time.
+            File both = temp.newFolder("both");
+            Future<int[]> first = executor.submit(
+                    () -> new ExternalSatSolverRunner(waitingSolver(both, "a"), 2).solve(stdIn -> { }));
+            Future<int[]> second = executor.submit(
+                    () -> new ExternalSatSolverRunner(waitingSolver(both, "b"), 2).solve(stdIn -> { }));
+            assertTrue(Arrays.equals(new int[] {1}, first.get()));
+            assertTrue(Arrays.equals(new int[] {1}, second.get()));
+        } finally {
+            executor.shutdownNow();
+            temp.delete();
+        }
+    }
+
+    @Test
+    public void testMissingSolverKeepsCause() {
+        String[] command = {"no-such-sat-solver-command"};
+        try {
+            new ExternalSatSolverRunner(command, 2).solve(stdIn -> { });
+            fail("Expected a UserError");
+        } catch (UserError e) {
+            assertNotNull(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package checkers.inference;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.test.InferenceTestUtilities;
+import junit.framework.TestCase;
+import sparta.checkers.propagation.IFlowSinkSolver;
+import sparta.checkers.propagation.IFlowSourceSolver;
+import sparta.checkers.qual.Sink;
+import sparta.checkers.qual.Source;
+
+/**
+ * Compares the worklist propagation of the sparta IFlowSolver with a fixed point over all
+ * constraints, as the solver computed it before.
+ */
+public class IFlowPropagationSolverTest extends TestCase {
+
+    private static final List<String> PERMISSIONS = Arrays.asList("INTERNET", "SMS", "CAMERA", "LOCATION");
+
+    private ProcessingEnvironment processingEnvironment;
+
+    @Override
+    protected void setUp() {
+        processingEnvironment = InferenceTestUtilities.getProcessingEnvironment();
+    }
+
+    @Test
+    public void testSinkSolverMatchesFixedPoint() {
+        assertSameAsFixedPoint(new IFlowSinkSolver(), Sink.class, true);
+    }
+
+    @Test
+    public void testSourceSolverMatchesFixedPoint() {
+        assertSameAsFixedPoint(new IFlowSourceSolver(), Source.class, false);
+    }
+
+    private void assertSameAsFixedPoint(InferenceSolver solver, Class<? extends Annotation> qualifier,
+            boolean isSinkSolver) {
+        TestConstraints factory = new TestConstraints();
+        Random random = new Random(42);
+        List<Slot> slots = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            slots.add(factory.variable());
+        }
+        List<ConstantSlot> constants = new ArrayList<>();
+        for (int i = 0; i < PERMISSIONS.size(); i++) {
+            constants.add(factory.constant(createAnnotation(qualifier, PERMISSIONS.subList(i, i + 1 + i % 2))));
+        }
+
+        // Random subtype and equality constraints, with cycles, between variables and from and
+        // to constants.
+        List<Constraint> constraints = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Slot first = slots.get(random.nextInt(slots.size()));
+            Slot second = slots.get(random.nextInt(slots.size()));
+            if (first == second) {
+                continue;
+            }
+            constraints.add(random.nextInt(4) == 0 ? factory.equality(first, second) : factory.subtype(first, second));
+        }
+        for (ConstantSlot constant : constants) {
+            Slot variable = slots.get(random.nextInt(slots.size()));
+            constraints.add(factory.subtype(constant, variable));
+            constraints.add(factory.subtype(slots.get(random.nextInt(slots.size())), constant));
+        }
+
+        Map<Integer, Set<String>> expected = fixedPoint(constraints, isSinkSolver);
+        InferenceResult result = solver.solve(new HashMap<>(), factory.getSlots(), constraints,
+                factory.qualifierHierarchy, processingEnvironment);
+
+        assertTrue(result.hasSolution());
+        Map<Integer, Set<String>> actual = new HashMap<>();
+        for (Map.Entry<Integer, AnnotationMirror> entry : result.getSolutions().entrySet()) {
+            actual.put(entry.getKey(), getPermissions(entry.getValue()));
+        }
+        assertEquals(expected, actual);
+        assertTrue(expected.values().stream().anyMatch(perms -> perms.size() > 1));
+    }
+
+    /**
+     * Adds the permissions along all constraints until nothing changes.
+     */
+    private Map<Integer, Set<String>> fixedPoint(List<Constraint> constraints, boolean isSinkSolver) {
+        Map<Integer, Set<String>> inferred = new HashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Constraint constraint : constraints) {
+                Slot from;
+                Slot to;
+                if (constraint instanceof SubtypeConstraint) {
+                    SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+                    from = isSinkSolver ? subtype.getSupertype() : subtype.getSubtype();
+                    to = isSinkSolver ? subtype.getSubtype() : subtype.getSupertype();
+                    changed |= propagate(inferred, from, to);
+                } else {
+                    EqualityConstraint equality = (EqualityConstraint) constraint;
+                    changed |= propagate(inferred, equality.getFirst(), equality.getSecond());
+                    changed |= propagate(inferred, equality.getSecond(), equality.getFirst());
+                }
+            }
+        }
+        return inferred;
+    }
+
+    private boolean propagate(Map<Integer, Set<String>> inferred, Slot from, Slot to) {
+        Set<String> fromPerms = from instanceof ConstantSlot
+                ? getPermissions(((ConstantSlot) from).getValue())
+                : inferred.computeIfAbsent(from.getId(), id -> new HashSet<>());
+        if (!(to instanceof VariableSlot)) {
+            return false;
+        }
+        return inferred.computeIfAbsent(to.getId(), id -> new HashSet<>()).addAll(fromPerms);
+    }
+
+    private AnnotationMirror createAnnotation(Class<? extends Annotation> qualifier, List<String> permissions) {
+        AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, qualifier);
+        builder.setValue("value", permissions.toArray());
+        return builder.build();
+    }
+
+    private static Set<String> getPermissions(AnnotationMirror annotation) {
+        return new HashSet<>(AnnotationUtils.getElementValueArray(annotation, "value", String.class, true));
+    }
+}
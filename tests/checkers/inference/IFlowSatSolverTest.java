@@ -0,0 +1,98 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.test.InferenceTestUtilities;
+import junit.framework.TestCase;
+import sparta.checkers.iflow.util.PFPermission;
+import sparta.checkers.qual.FlowPermission;
+import sparta.checkers.qual.Sink;
+import sparta.checkers.sat.PermissionSolution;
+import sparta.checkers.sat.PermissionSolver;
+import sparta.checkers.sat.SharedConstraints;
+import sparta.checkers.sat.SinkSerializer;
+
+/**
+ * Compares the solutions of the sparta PermissionSolver configured with the clauses shared by all
+ * permissions with the solutions of the PermissionSolver that serializes all constraints itself.
+ */
+public class IFlowSatSolverTest extends TestCase {
+
+    @Test
+    public void testSharedConstraintsGiveSameSolution() {
+        ProcessingEnvironment processingEnvironment = InferenceTestUtilities.getProcessingEnvironment();
+        TestConstraints factory = new TestConstraints();
+        List<List<FlowPermission>> sinks = Arrays.asList(
+                Arrays.asList(FlowPermission.INTERNET),
+                Arrays.asList(FlowPermission.SEND_SMS),
+                Arrays.asList(FlowPermission.INTERNET, FlowPermission.SEND_SMS));
+        List<ConstantSlot> constants = new ArrayList<>();
+        for (List<FlowPermission> permissions : sinks) {
+            AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, Sink.class);
+            builder.setValue("value", permissions.stream().map(FlowPermission::name).toArray());
+            constants.add(factory.constant(builder.build()));
+        }
+        List<SourceVariableSlot> vars = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            vars.add(factory.variable());
+        }
+
+        // vars.get(i) has the sinks of constants.get(i % 3). Only the first variable of each
+        // group is constrained by a constant; the constraints between variables are shared by
+        // all permissions.
+        List<Constraint> constraints = new ArrayList<>();
+        for (int i = 0; i < vars.size(); i++) {
+            if (i < constants.size()) {
+                constraints.add(factory.equality(vars.get(i), constants.get(i)));
+            } else {
+                constraints.add(factory.equality(vars.get(i), vars.get(i - constants.size())));
+            }
+            if (i % 3 == 2) {
+                // More sinks are a subtype of fewer sinks.
+                constraints.add(factory.subtype(vars.get(i), vars.get(i - 1)));
+                constraints.add(factory.subtype(vars.get(i), vars.get(i - 2)));
+            }
+        }
+
+        SharedConstraints sharedConstraints = new SharedConstraints(constraints, new SinkSerializer(PFPermission.ANY));
+        assertFalse(sharedConstraints.getSharedClauses().isEmpty());
+        for (FlowPermission flowPermission : Arrays.asList(FlowPermission.INTERNET, FlowPermission.SEND_SMS)) {
+            PFPermission permission = PFPermission.convertStringToPFPermission(flowPermission.name());
+
+            PermissionSolver unshared = new PermissionSolver(permission);
+            unshared.configure(constraints, new SinkSerializer(permission));
+            PermissionSolver shared = new PermissionSolver(permission);
+            shared.configure(sharedConstraints, new SinkSerializer(permission));
+
+            Map<Integer, Boolean> expected = new HashMap<>();
+            for (int i = 0; i < vars.size(); i++) {
+                expected.put(vars.get(i).getId(), sinks.get(i % 3).contains(flowPermission));
+            }
+            assertEquals(expected, solutionOfVariables(unshared.solve(), vars));
+            assertEquals(expected, solutionOfVariables(shared.solve(), vars));
+        }
+    }
+
+    private static Map<Integer, Boolean> solutionOfVariables(PermissionSolution solution,
+            List<SourceVariableSlot> vars) {
+        Map<Integer, Boolean> result = new HashMap<>();
+        for (SourceVariableSlot var : vars) {
+            result.put(var.getId(), solution.getResult().get(var.getId()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,204 @@
+package checkers.inference;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import junit.framework.TestCase;
+
+public class IncrementalInferenceCacheTest extends TestCase {
+
+    private final TemporaryFolder temp = new TemporaryFolder();
+
+    private String originalClasspath;
+    private boolean originalExistentialSelectors;
+    private String originalSimplifyConstraints;
+
+    private File cacheDir;
+    private File source;
+    private File library;
+
+    @Override
+    protected void setUp() throws Exception {
+        temp.create();
+        originalClasspath = InferenceOptions.targetclasspath;
+        originalExistentialSelectors = InferenceOptions.existentialSelectors;
+        originalSimplifyConstraints = InferenceOptions.simplifyConstraints;
+        cacheDir = new File(temp.getRoot(), "cache");
+        source = write(new File(temp.getRoot(), "A.java"), "class A {}");
+        File classpath = temp.newFolder("classes");
+        library = write(new File(classpath, "B.class"), "B version 1");
+        InferenceOptions.targetclasspath = classpath.getPath();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        InferenceOptions.targetclasspath = originalClasspath;
+        InferenceOptions.existentialSelectors = originalExistentialSelectors;
+        InferenceOptions.simplifyConstraints = originalSimplifyConstraints;
+        temp.delete();
+    }
+
+    @Test
+    public void testUpToDateWhenNothingChanged() throws IOException {
+        runAndStore();
+        IncrementalInferenceCache cache = newCache();
+        assertTrue(cache.isUpToDate());
+        assertTrue(cache.getChangedUnits().isEmpty());
+    }
+
+    @Test
+    public void testSourceChangeInvalidates() throws IOException {
+        runAndStore();
+        write(source, "class A { int f; }");
+        IncrementalInferenceCache cache = newCache();
+        assertFalse(cache.isUpToDate());
+        assertEquals(Collections.singleton(source.getAbsolutePath()), cache.getChangedUnits());
+    }
+
+    @Test
+    public void testClasspathChangeInvalidates() throws IOException {
+        runAndStore();
+        write(library, "B version 2");
+        IncrementalInferenceCache cache = newCache();
+        assertFalse(cache.isUpToDate());
+        assertEquals(Collections.singleton(source.getAbsolutePath()), cache.getChangedUnits());
+    }
+
+    @Test
+    public void testNormalizationOptionsInvalidate() throws IOException {
+        runAndStore();
+        InferenceOptions.existentialSelectors = !InferenceOptions.existentialSelectors;
+        assertFalse(newCache().isUpToDate());
+
+        runAndStore();
+        InferenceOptions.simplifyConstraints = "equalities";
+        assertFalse(newCache().isUpToDate());
+    }
+
+    /**
+     * The slots and constraints of one run. The ids of the slots depend on how many slots were
+     * created before, as in a run in which other compilation units changed.
+     */
+    private static class Run {
+        final TestConstraints factory = new TestConstraints();
+        final ConstantSlot top = factory.constant(factory.top);
+        final ConstantSlot bottom = factory.constant(factory.bottom);
+        final SlotManager slotManager = mock(SlotManager.class);
+        final SourceVariableSlot a;
+        final SourceVariableSlot b;
+        final RefinementVariableSlot first;
+        final RefinementVariableSlot second;
+        final SourceVariableSlot changed;
+        final List<Constraint> constraints = new ArrayList<>();
+
+        Run(int firstId, boolean changedIsBottom) {
+            int id = firstId;
+            a = new SourceVariableSlot(id++, new ClassDeclLocation("pkg.A"), null, true);
+            b = new SourceVariableSlot(id++, new ClassDeclLocation("pkg.B"), null, true);
+            // Two refinement slots of the same AST path.
+            first = new RefinementVariableSlot(id++, new ClassDeclLocation("pkg.R"), a);
+            second = new RefinementVariableSlot(id++, new ClassDeclLocation("pkg.R"), a);
+            changed = new SourceVariableSlot(id++, new ClassDeclLocation("pkg.C"), null, true);
+            when(slotManager.getConstantSlots()).thenReturn(Arrays.asList(top, bottom));
+
+            constraints.add(factory.equality(a, b));
+            constraints.add(factory.inequality(first, second));
+            constraints.add(factory.subtype(first, bottom));
+            constraints.add(factory.subtype(top, second));
+            constraints.add(changedIsBottom ? factory.subtype(changed, bottom) : factory.subtype(top, changed));
+        }
+
+        Map<Integer, AnnotationMirror> solution() {
+            Map<Integer, AnnotationMirror> solution = new HashMap<>();
+            solution.put(a.getId(), factory.top);
+            solution.put(b.getId(), factory.top);
+            solution.put(first.getId(), factory.bottom);
+            solution.put(second.getId(), factory.top);
+            solution.put(changed.getId(), factory.bottom);
+            return solution;
+        }
+    }
+
+    @Test
+    public void testReusesSolutionsOfUnchangedComponents() throws IOException {
+        Run previous = new Run(100, true);
+        IncrementalInferenceCache cache = newCache();
+        Map<Integer, AnnotationMirror> reused = new HashMap<>();
+        assertEquals(previous.constraints, cache.reuseSolutions(previous.constraints, previous.slotManager, reused));
+        assertTrue(reused.isEmpty());
+
+        InferenceResult result = mock(InferenceResult.class);
+        when(result.hasSolution()).thenReturn(true);
+        when(result.getSolutions()).thenReturn(previous.solution());
+        cache.store(result, write(new File(temp.getRoot(), "default.jaif"), "package :\n"));
+
+        // Only the component of the changed slot is solved again.
+        Run current = new Run(200, false);
+        cache = newCache();
+        Collection<Constraint> toSolve = cache.reuseSolutions(current.constraints, current.slotManager, reused);
+        assertEquals(Collections.singletonList(current.constraints.get(4)), new ArrayList<>(toSolve));
+
+        Map<Integer, AnnotationMirror> expected = current.solution();
+        expected.remove(current.changed.getId());
+        assertEquals(expected.keySet(), reused.keySet());
+        for (Map.Entry<Integer, AnnotationMirror> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().toString(), reused.get(entry.getKey()).toString());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(current.factory.bottom.toString(), current.factory.top.toString())),
+                new HashSet<>(Arrays.asList(reused.get(current.first.getId()).toString(),
+                        reused.get(current.second.getId()).toString())));
+    }
+
+    @Test
+    public void testUnreadableSourceIsReported() {
+        try {
+            new IncrementalInferenceCache(cacheDir, new String[] {new File(temp.getRoot(), "Missing.java").getPath()});
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    private IncrementalInferenceCache newCache() throws IOException {
+        return new IncrementalInferenceCache(cacheDir, new String[] {source.getPath()});
+    }
+
+    private void runAndStore() throws IOException {
+        IncrementalInferenceCache cache = newCache();
+        assertFalse(cache.isUpToDate());
+        cache.reuseSolutions(Collections.emptyList(), null, new HashMap<>());
+
+        InferenceResult result = mock(InferenceResult.class);
+        when(result.hasSolution()).thenReturn(true);
+        when(result.getSolutions()).thenReturn(new HashMap<>());
+        cache.store(result, write(new File(temp.getRoot(), "default.jaif"), "package :\n"));
+    }
+
+    private static File write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,265 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.Test;
+
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.MaxSatSolver;
+import checkers.inference.solver.frontend.IndexedLattice;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.test.InferenceTestUtilities;
+import dataflow.qual.DataFlow;
+import junit.framework.TestCase;
+
+public class IndexedLatticeTest extends TestCase {
+
+    /**
+     * A partial order on the indices 0 to n - 1: 0 is top, n - 1 is bottom, and the other
+     * indices form three chains by their residue modulo 3.
+     */
+    private static boolean isSubtypeInChains(int sub, int sup, int n) {
+        return sub == sup || sup == 0 || sub == n - 1 || (sup != n - 1 && sub != 0 && sub % 3 == sup % 3 && sub > sup);
+    }
+
+    /**
+     * The diamond {@code B <: L, R <: T}, with the indices T = 0, L = 1, R = 2 and B = 3.
+     */
+    private static boolean isSubtypeInDiamond(int sub, int sup) {
+        return sub == sup || sup == 0 || sub == 3;
+    }
+
+    private interface Order {
+        boolean isSubtype(int sub, int sup);
+    }
+
+    private static List<AnnotationMirror> createTypes(String prefix, int n) {
+        ProcessingEnvironment processingEnvironment = InferenceTestUtilities.getProcessingEnvironment();
+        List<AnnotationMirror> types = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, DataFlow.class);
+            builder.setValue("typeNames", new String[] { prefix + i });
+            types.add(builder.build());
+        }
+        return types;
+    }
+
+    private static Lattice createLattice(List<AnnotationMirror> types, Order order) {
+        Map<AnnotationMirror, Collection<AnnotationMirror>> subType = AnnotationUtils.createAnnotationMap();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> superType = AnnotationUtils.createAnnotationMap();
+        Map<AnnotationMirror, Collection<AnnotationMirror>> incomparableType = AnnotationUtils.createAnnotationMap();
+        Set<AnnotationMirror> allTypes = AnnotationUtils.createAnnotationSet();
+        allTypes.addAll(types);
+        for (int i = 0; i < types.size(); i++) {
+            Set<AnnotationMirror> subtypes = AnnotationUtils.createAnnotationSet();
+            Set<AnnotationMirror> supertypes = AnnotationUtils.createAnnotationSet();
+            Set<AnnotationMirror> incomparables = AnnotationUtils.createAnnotationSet();
+            for (int j = 0; j < types.size(); j++) {
+                if (order.isSubtype(j, i)) {
+                    subtypes.add(types.get(j));
+                }
+                if (order.isSubtype(i, j)) {
+                    supertypes.add(types.get(j));
+                }
+                if (!order.isSubtype(i, j) && !order.isSubtype(j, i)) {
+                    incomparables.add(types.get(j));
+                }
+            }
+            subType.put(types.get(i), subtypes);
+            superType.put(types.get(i), supertypes);
+            if (!incomparables.isEmpty()) {
+                incomparableType.put(types.get(i), incomparables);
+            }
+        }
+        return new Lattice(subType, superType, incomparableType, allTypes, types.get(0),
+                types.get(types.size() - 1), types.size(), null, null);
+    }
+
+    @Test
+    public void testRelationsMatchTheLattice() {
+        // More than 64 qualifiers, so the relations span several words.
+        int n = 70;
+        List<AnnotationMirror> types = createTypes("T", n);
+        Lattice lattice = createLattice(types, (sub, sup) -> isSubtypeInChains(sub, sup, n));
+        IndexedLattice indexed = lattice.getIndexedLattice();
+
+        assertEquals(n, indexed.numTypes);
+        assertTrue(AnnotationUtils.areSame(lattice.top, indexed.getType(indexed.top)));
+        assertTrue(AnnotationUtils.areSame(lattice.bottom, indexed.getType(indexed.bottom)));
+        for (int i = 0; i < n; i++) {
+            AnnotationMirror type = indexed.getType(i);
+            assertEquals(i, indexed.indexOf(type));
+            assertEquals(asSet(lattice.subType.get(type)), asSet(indexed, indexed.getSubtypes(i)));
+            assertEquals(asSet(lattice.superType.get(type)), asSet(indexed, indexed.getSupertypes(i)));
+            assertEquals(asSet(lattice.incomparableType.get(type)), asSet(indexed, indexed.getIncomparableTypes(i)));
+            for (int j = 0; j < n; j++) {
+                AnnotationMirror other = indexed.getType(j);
+                assertEquals(AnnotationUtils.containsSame(lattice.subType.get(other), type), indexed.isSubtype(i, j));
+                Collection<AnnotationMirror> incomparables = lattice.incomparableType.get(type);
+                assertEquals(incomparables != null && AnnotationUtils.containsSame(incomparables, other),
+                        indexed.isIncomparable(i, j));
+            }
+        }
+    }
+
+    private static Set<AnnotationMirror> asSet(Collection<AnnotationMirror> types) {
+        Set<AnnotationMirror> result = AnnotationUtils.createAnnotationSet();
+        if (types != null) {
+            result.addAll(types);
+        }
+        return result;
+    }
+
+    private static Set<AnnotationMirror> asSet(IndexedLattice indexed, int[] indices) {
+        Set<AnnotationMirror> result = AnnotationUtils.createAnnotationSet();
+        for (int index : indices) {
+            assertTrue(result.add(indexed.getType(index)));
+        }
+        return result;
+    }
+
+    @Test
+    public void testMaxSatOnDiamondMatchesEnumeration() {
+        TestConstraints factory = new TestConstraints();
+        List<AnnotationMirror> types = createTypes("D", 4);
+        Lattice lattice = createLattice(types, IndexedLatticeTest::isSubtypeInDiamond);
+        AnnotationMirror left = types.get(1);
+        AnnotationMirror right = types.get(2);
+        AnnotationMirror bottom = types.get(3);
+
+        List<SourceVariableSlot> vars = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            vars.add(factory.variable());
+        }
+        List<Constraint> constraints = TestConstraints.list(
+                factory.subtype(vars.get(0), factory.constant(left)),
+                factory.inequality(vars.get(0), factory.constant(bottom)),
+                factory.comparable(vars.get(1), vars.get(0)),
+                factory.subtype(vars.get(1), vars.get(3)),
+                factory.equality(vars.get(3), factory.constant(right)),
+                factory.subtype(vars.get(0), vars.get(2)),
+                factory.preference(vars.get(2), left, 1),
+                factory.inequality(vars.get(4), vars.get(2)),
+                factory.subtype(vars.get(4), vars.get(3)),
+                factory.preference(vars.get(4), right, 1));
+
+        List<Map<Integer, AnnotationMirror>> optima = enumerateOptima(types, vars, constraints);
+        assertEquals(1, optima.size());
+
+        Map<Integer, AnnotationMirror> solution = new MaxSatSolver(new SolverEnvironment(new HashMap<>(), null),
+                factory.getSlots(), constraints, new MaxSatFormatTranslator(lattice), lattice).solve();
+        assertNotNull(solution);
+        for (SourceVariableSlot var : vars) {
+            assertTrue(AnnotationUtils.areSame(optima.get(0).get(var.getId()), solution.get(var.getId())));
+        }
+    }
+
+    /**
+     * Tries every assignment of the diamond qualifiers to the variables.
+     *
+     * @return the assignments that satisfy the hard constraints with the largest preference weight
+     */
+    private static List<Map<Integer, AnnotationMirror>> enumerateOptima(List<AnnotationMirror> types,
+            List<SourceVariableSlot> vars, List<Constraint> constraints) {
+        List<Map<Integer, AnnotationMirror>> optima = new ArrayList<>();
+        int bestWeight = -1;
+        int[] values = new int[vars.size()];
+        int assignments = (int) Math.pow(types.size(), vars.size());
+        for (int assignment = 0; assignment < assignments; assignment++) {
+            Map<Integer, Integer> solution = new HashMap<>();
+            for (int i = 0, rest = assignment; i < vars.size(); i++, rest /= types.size()) {
+                values[i] = rest % types.size();
+                solution.put(vars.get(i).getId(), values[i]);
+            }
+            int weight = evaluate(types, solution, constraints);
+            if (weight < 0 || weight < bestWeight) {
+                continue;
+            }
+            if (weight > bestWeight) {
+                bestWeight = weight;
+                optima.clear();
+            }
+            Map<Integer, AnnotationMirror> optimum = new HashMap<>();
+            for (int i = 0; i < vars.size(); i++) {
+                optimum.put(vars.get(i).getId(), types.get(values[i]));
+            }
+            optima.add(optimum);
+        }
+        return optima;
+    }
+
+    /**
+     * @return the total weight of the satisfied preferences, or -1 if a hard constraint is violated
+     */
+    private static int evaluate(List<AnnotationMirror> types, Map<Integer, Integer> solution,
+            List<Constraint> constraints) {
+        int weight = 0;
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint) {
+                SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+                if (!isSubtypeInDiamond(valueOf(types, solution, subtype.getSubtype()),
+                        valueOf(types, solution, subtype.getSupertype()))) {
+                    return -1;
+                }
+            } else if (constraint instanceof EqualityConstraint) {
+                EqualityConstraint equality = (EqualityConstraint) constraint;
+                if (valueOf(types, solution, equality.getFirst()) != valueOf(types, solution, equality.getSecond())) {
+                    return -1;
+                }
+            } else if (constraint instanceof InequalityConstraint) {
+                InequalityConstraint inequality = (InequalityConstraint) constraint;
+                if (valueOf(types, solution, inequality.getFirst()) == valueOf(types, solution, inequality.getSecond())) {
+                    return -1;
+                }
+            } else if (constraint instanceof ComparableConstraint) {
+                ComparableConstraint comparable = (ComparableConstraint) constraint;
+                int first = valueOf(types, solution, comparable.getFirst());
+                int second = valueOf(types, solution, comparable.getSecond());
+                if (!isSubtypeInDiamond(first, second) && !isSubtypeInDiamond(second, first)) {
+                    return -1;
+                }
+            } else if (constraint instanceof PreferenceConstraint) {
+                PreferenceConstraint preference = (PreferenceConstraint) constraint;
+                if (valueOf(types, solution, preference.getVariable()) == valueOf(types, solution, preference.getGoal())) {
+                    weight += preference.getWeight();
+                }
+            } else {
+                throw new AssertionError("Unexpected constraint " + constraint);
+            }
+        }
+        return weight;
+    }
+
+    private static int valueOf(List<AnnotationMirror> types, Map<Integer, Integer> solution, Slot slot) {
+        if (slot instanceof ConstantSlot) {
+            for (int i = 0; i < types.size(); i++) {
+                if (AnnotationUtils.areSame(types.get(i), ((ConstantSlot) slot).getValue())) {
+                    return i;
+                }
+            }
+            throw new AssertionError("Constant outside the lattice: " + slot);
+        }
+        return solution.get(slot.getId());
+    }
+}
@@ -0,0 +1,367 @@
+package checkers.inference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+
+import checkers.inference.solver.MaxSat2TypeSolver;
+import checkers.inference.solver.SolverEngine;
+import checkers.inference.util.JaifSplitter;
+import junit.framework.TestCase;
+import ostrusted.OsTrustedChecker;
+
+public class InferenceLauncherTest extends TestCase {
+
+    private final TemporaryFolder temp = new TemporaryFolder();
+
+    @Override
+    protected void setUp() throws Exception {
+        temp.create();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        temp.delete();
+    }
+
+    private static File write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * @return the package name javac parses from the source, or null if it has none
+     */
+    private static String parsePackageName(String source) throws IOException {
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Source.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavacTask task = (JavacTask) ToolProvider.getSystemJavaCompiler().getTask(null, null, diagnostic -> { },
+                Collections.singletonList("-proc:none"), null, Collections.singletonList(file));
+        CompilationUnitTree unit = task.parse().iterator().next();
+        return unit.getPackageName() == null ? null : unit.getPackageName().toString();
+    }
+
+    @Test
+    public void testScanPackageNameMatchesJavac() throws IOException {
+        List<String> sources = Arrays.asList(
+                "package a.b;\nclass A {}\n",
+                "/* header\n package wrong; */\n// package wrong2;\npackage a.b.c;\nclass A {}\n",
+                "/** doc */ @java.lang.Deprecated() package a;\n",
+                "@Deprecated\n@SuppressWarnings({\"x)\", \"package y;\"})\npackage a.withAnnotations;\n",
+                "@Foo(value = ')', other = \"\\\")\") package a.withLiterals;\n",
+                "@Foo(// )\n) @ Bar . Baz package a.withComments;\n",
+                "package a . /* c */ b\n;\nclass A {}\n",
+                "  \r\n\tpackage\ta.tabs\t;",
+                "import java.util.List;\nclass A { String s = \"package x;\"; }\n",
+                "class A {}\n// package x;\n",
+                "@interface A {}\n",
+                "@Deprecated class A {}\n",
+                "");
+
+        for (String source : sources) {
+            assertEquals(source, parsePackageName(source), InferenceLauncher.scanPackageName(source));
+        }
+        assertEquals("a.withAnnotations", InferenceLauncher.scanPackageName(sources.get(3)));
+        assertEquals("a.b", InferenceLauncher.scanPackageName(sources.get(6)));
+        assertNull(InferenceLauncher.scanPackageName(sources.get(8)));
+    }
+
+    @Test
+    public void testGetPackageNameLogsTheDefaultPackage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InferenceLauncher launcher = new InferenceLauncher(new PrintStream(out, true), System.err);
+
+        File packaged = write(new File(temp.getRoot(), "A.java"), "// comment\n@Deprecated\npackage a.b;\nclass A {}\n");
+        assertEquals("a.b", launcher.getPackageName(packaged));
+        assertEquals(0, out.size());
+
+        File unpackaged = write(new File(temp.getRoot(), "B.java"), "class B {}\n");
+        assertEquals("", launcher.getPackageName(unpackaged));
+        assertTrue(out.toString().contains("No package declaration found in " + unpackaged));
+    }
+
+    @Test
+    public void testSplitByPackageKeepsEveryClass() throws IOException {
+        String header = "package ostrusted.qual:\n  annotation @OsTrusted:\n\n"
+                + "package ostrusted.qual:\n  annotation @OsUntrusted:\n\n";
+        String jaif = header
+                + "package a:\nclass A:\nfield f:\ninsert-annotation Variable.type: @ostrusted.qual.OsTrusted\n\n"
+                + "package b:\nclass B:@ostrusted.qual.OsUntrusted\n\n"
+                + "package :\nclass C:\nmethod m()V:\ninsert-annotation Method.type: @ostrusted.qual.OsTrusted\n\n"
+                + "package a:\nclass D:\nfield g:\ninsert-annotation Variable.type: @ostrusted.qual.OsUntrusted\n\n";
+        File jaifFile = write(temp.newFile("all.jaif"), jaif);
+
+        Map<String, File> packageJaifs = JaifSplitter.splitByPackage(jaifFile, temp.newFolder("packages"));
+        assertEquals(Arrays.asList("a", "b", ""), new ArrayList<>(packageJaifs.keySet()));
+
+        List<String> headerLines = lines(header);
+        List<String> classLines = new ArrayList<>();
+        for (File packageJaif : packageJaifs.values()) {
+            List<String> lines = lines(new String(Files.readAllBytes(packageJaif.toPath()), StandardCharsets.UTF_8));
+            assertEquals(headerLines, lines.subList(0, headerLines.size()));
+            classLines.addAll(lines.subList(headerLines.size(), lines.size()));
+        }
+
+        // Every line of the classes is in the jaif of its package.
+        List<String> expected = lines(jaif.substring(header.length()));
+        Collections.sort(expected);
+        Collections.sort(classLines);
+        assertEquals(expected, classLines);
+    }
+
+    /**
+     * A stand-in for insert-annotations-to-source that fails for the jaif of package b, and
+     * otherwise copies the sources to the output directory and reports them like the AFU.
+     */
+    private static final String INSERT_ANNOTATIONS_SCRIPT = "#!/bin/sh\n"
+            + "for arg; do\n"
+            + "  case \"$arg\" in\n"
+            + "    --outdir=*) out=\"${arg#--outdir=}\" ;;\n"
+            + "    *.jaif) jaif=\"$arg\" ;;\n"
+            + "    *.java) files=\"$files $arg\" ;;\n"
+            + "  esac\n"
+            + "done\n"
+            + "if grep -q '^package b:' \"$jaif\"; then echo 'Cannot insert into b'; exit 1; fi\n"
+            + "for file in $files; do\n"
+            + "  cp \"$file\" \"$out/$(basename \"$file\")\"\n"
+            + "  echo \"Writing $out/$(basename \"$file\")\"\n"
+            + "done\n";
+
+    @Test
+    public void testInsertJaifByPackageIsolatesFailures() throws IOException {
+        String[] originalJavaFiles = InferenceOptions.javaFiles;
+        String originalPathToAfuScripts = InferenceOptions.pathToAfuScripts;
+        String originalAfuOutputDir = InferenceOptions.afuOutputDir;
+        String originalJaifFile = InferenceOptions.jaifFile;
+        int originalInsertionThreads = InferenceOptions.insertionThreads;
+        boolean originalInPlace = InferenceOptions.inPlace;
+        try {
+            File scripts = temp.newFolder("scripts");
+            assertTrue(write(new File(scripts, "insert-annotations-to-source"), INSERT_ANNOTATIONS_SCRIPT)
+                    .setExecutable(true));
+            File a1 = write(new File(temp.newFolder("a"), "A1.java"), "package a;\nclass A1 {}\n");
+            File a2 = write(new File(temp.getRoot(), "a/A2.java"), "package a;\nclass A2 {}\n");
+            File b = write(new File(temp.newFolder("b"), "B.java"), "package b;\nclass B {}\n");
+            File c = write(new File(temp.newFolder("c"), "C.java"), "package c;\nclass C {}\n");
+            File outputDir = new File(temp.getRoot(), "output");
+            String classJaif = "class %s:\nfield f:\ninsert-annotation Variable.type: @ostrusted.qual.OsTrusted\n\n";
+            File jaifFile = write(temp.newFile("all.jaif"), "package ostrusted.qual:\n  annotation @OsTrusted:\n\n"
+                    + "package a:\n" + String.format(classJaif, "A1")
+                    + "package b:\n" + String.format(classJaif, "B")
+                    + "package a:\n" + String.format(classJaif, "A2"));
+
+            InferenceOptions.javaFiles = new String[] {a1.getPath(), b.getPath(), a2.getPath(), c.getPath()};
+            InferenceOptions.pathToAfuScripts = scripts.getPath();
+            InferenceOptions.afuOutputDir = outputDir.getPath();
+            InferenceOptions.jaifFile = jaifFile.getPath();
+            InferenceOptions.insertionThreads = 2;
+            InferenceOptions.inPlace = false;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            List<String> javaFiles = new InferenceLauncher(new PrintStream(out, true), new PrintStream(err, true))
+                    .insertJaif();
+
+            // The written files of package a, and the original files of the failed package b and of
+            // package c, which has no annotations.
+            File writtenA1 = new File(outputDir, "A1.java");
+            File writtenA2 = new File(outputDir, "A2.java");
+            assertEquals(new HashSet<>(Arrays.asList(writtenA1.getAbsolutePath(), writtenA2.getAbsolutePath(),
+                    b.getPath(), c.getPath())), new HashSet<>(javaFiles));
+            assertEquals(4, javaFiles.size());
+            assertTrue(writtenA1.exists() && writtenA2.exists());
+            assertFalse(new File(outputDir, "B.java").exists());
+
+            String output = out.toString();
+            assertTrue(output, output.contains("[a] Writing " + writtenA1.getAbsolutePath()));
+            assertTrue(output, output.contains("[b] Cannot insert into b"));
+            assertTrue(output, output.contains("Could not insert annotations into packages: b"));
+            assertFalse(output, output.contains("[c]"));
+            assertTrue(err.toString().contains("Insert annotations into package b failed"));
+        } finally {
+            InferenceOptions.javaFiles = originalJavaFiles;
+            InferenceOptions.pathToAfuScripts = originalPathToAfuScripts;
+            InferenceOptions.afuOutputDir = originalAfuOutputDir;
+            InferenceOptions.jaifFile = originalJaifFile;
+            InferenceOptions.insertionThreads = originalInsertionThreads;
+            InferenceOptions.inPlace = originalInPlace;
+        }
+    }
+
+    /**
+     * @return the launcher arguments that infer the source with the given solver and options into
+     * the jaif file
+     */
+    private String[] inferenceArgs(File source, File jaifFile, String solver, String... options)
+            throws IOException {
+        List<String> args = new ArrayList<>(Arrays.asList("--mode=INFER",
+                "--checker=" + OsTrustedChecker.class.getCanonicalName(),
+                "--solver=" + solver,
+                "--jaifFile=" + jaifFile.getPath()));
+        args.addAll(Arrays.asList(options));
+        args.addAll(Arrays.asList("--", "-Astubs=src/ostrusted/jdk.astub", "-d", temp.newFolder().getPath(),
+                source.getPath()));
+        return args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Infers the source with the given launcher options, and returns the annotations of the jaif.
+     */
+    private Map<String, String> infer(File source, String name, String... options) throws IOException {
+        File jaifFile = new File(temp.getRoot(), name + ".jaif");
+        new InferenceLauncher(System.out, System.err).launch(
+                inferenceArgs(source, jaifFile, MaxSat2TypeSolver.class.getCanonicalName(), options));
+
+        assertTrue(jaifFile.exists());
+        return annotations(new String(Files.readAllBytes(jaifFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInferInProcessReturnsStatusWithoutSolution() throws IOException {
+        // The parameter must be both a subtype of @OsTrusted and a supertype of @OsUntrusted.
+        File source = write(new File(temp.getRoot(), "NoSolution.java"),
+                "import ostrusted.qual.OsTrusted;\n"
+                + "import ostrusted.qual.OsUntrusted;\n"
+                + "class NoSolution {\n"
+                + "    @OsTrusted String trusted;\n"
+                + "    @OsUntrusted String untrusted;\n"
+                + "    void both(String value) {\n"
+                + "        trusted = value;\n"
+                + "        value = untrusted;\n"
+                + "    }\n"
+                + "}\n");
+        File jaifFile = new File(temp.getRoot(), "noSolution.jaif");
+
+        Logger root = Logger.getLogger("");
+        Level rootLevel = root.getLevel();
+        List<Handler> handlers = Arrays.asList(root.getHandlers());
+        Map<Handler, Level> handlerLevels = new LinkedHashMap<>();
+        for (Handler handler : handlers) {
+            handlerLevels.put(handler, handler.getLevel());
+        }
+
+        // Inference exits with status 1 if there is no solution, which must not exit this JVM.
+        InferenceLauncher launcher = new InferenceLauncher(System.out, System.err);
+        launcher.initInferenceOptions(inferenceArgs(source, jaifFile, SolverEngine.class.getCanonicalName(),
+                "--inProcess", "--logLevel=FINEST"));
+        assertEquals(1, launcher.inferInProcess());
+        assertFalse(jaifFile.exists());
+
+        assertEquals(rootLevel, root.getLevel());
+        assertEquals(handlers, Arrays.asList(root.getHandlers()));
+        for (Handler handler : handlers) {
+            assertEquals(handlerLevels.get(handler), handler.getLevel());
+        }
+    }
+
+    @Test
+    public void testInferInProcessMatchesForkedJvm() throws IOException {
+        File source = write(new File(temp.getRoot(), "InProcess.java"),
+                "import ostrusted.qual.OsTrusted;\n"
+                + "import ostrusted.qual.OsUntrusted;\n"
+                + "class InProcess {\n"
+                + "    @OsTrusted String trusted;\n"
+                + "    @OsUntrusted String untrusted;\n"
+                + "    void toTrusted(String value) { trusted = value; }\n"
+                + "    void fromUntrusted(String value) { value = untrusted; }\n"
+                + "}\n");
+
+        // The in-process run comes second, as the launcher options are static.
+        Map<String, String> forked = infer(source, "forked");
+        Map<String, String> inProcess = infer(source, "inProcess", "--inProcess");
+
+        // Unconstrained slots may be solved differently, so only the forced solutions are compared.
+        assertFalse(forked.isEmpty());
+        assertEquals(forked.keySet(), inProcess.keySet());
+        for (Map<String, String> annotations : Arrays.asList(forked, inProcess)) {
+            assertEquals("@ostrusted.qual.OsTrusted", parameter(annotations, "toTrusted"));
+            assertEquals("@ostrusted.qual.OsUntrusted", parameter(annotations, "fromUntrusted"));
+        }
+    }
+
+    /**
+     * @return the annotation of the first parameter of the method
+     */
+    private static String parameter(Map<String, String> annotations, String method) {
+        String annotation = null;
+        for (Map.Entry<String, String> entry : annotations.entrySet()) {
+            if (entry.getKey().contains("method " + method + "(") && entry.getKey().contains("parameter 0")) {
+                assertNull(entry.getKey(), annotation);
+                annotation = entry.getValue();
+            }
+        }
+        assertNotNull(method, annotation);
+        return annotation;
+    }
+
+    /**
+     * @return the inserted annotations of a jaif, keyed by class, member and AST path
+     */
+    private static Map<String, String> annotations(String jaif) {
+        Map<String, String> annotations = new LinkedHashMap<>();
+        String className = null;
+        String member = null;
+        for (String line : jaif.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                // The end of a member.
+                member = null;
+            } else if (line.startsWith("class ")) {
+                className = line;
+                member = null;
+            } else if (line.startsWith("insert-annotation ")) {
+                int separator = line.lastIndexOf(": @");
+                annotations.put(className + " " + member + " " + line.substring(0, separator),
+                        line.substring(separator + 2));
+            } else if (line.startsWith("method ") || line.startsWith("field ")) {
+                member = line;
+            } else if (className != null && !line.startsWith("package ")) {
+                // The parameter of a method, or a receiver.
+                member += " " + line;
+            }
+        }
+        return annotations;
+    }
+
+    /**
+     * @return the trimmed non-empty lines of a jaif
+     */
+    private static List<String> lines(String jaif) {
+        List<String> lines = new ArrayList<>();
+        for (String line : jaif.split("\n")) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim());
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,79 @@
+package checkers.inference;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.Test;
+
+import checkers.inference.solver.frontend.LatticeBuilder;
+import checkers.inference.solver.frontend.TwoQualifiersLattice;
+import checkers.inference.test.InferenceTestUtilities;
+import dataflow.qual.DataFlow;
+import dataflow.qual.DataFlowInferenceBottom;
+import junit.framework.TestCase;
+
+public class LatticeBuilderTest extends TestCase {
+
+    private static AnnotationMirror createDataflow(String typeName) {
+        AnnotationBuilder builder = new AnnotationBuilder(InferenceTestUtilities.getProcessingEnvironment(),
+                DataFlow.class);
+        builder.setValue("typeNames", new String[] { typeName });
+        return builder.build();
+    }
+
+    private static AnnotationMirror createBottom() {
+        return AnnotationBuilder.fromClass(InferenceTestUtilities.getElements(), DataFlowInferenceBottom.class);
+    }
+
+    @Override
+    protected void setUp() {
+        InferenceMain.resetInstance();
+    }
+
+    @Test
+    public void testSamePairSharesTheLattice() {
+        // Equal qualifiers built separately, as DataflowGraphSolvingStrategy builds a top per constant.
+        TwoQualifiersLattice first = new LatticeBuilder().buildTwoTypeLattice(createDataflow("java.lang.String"),
+                createBottom());
+        TwoQualifiersLattice second = new LatticeBuilder().buildTwoTypeLattice(createDataflow("java.lang.String"),
+                createBottom());
+        assertSame(first, second);
+
+        TwoQualifiersLattice other = new LatticeBuilder().buildTwoTypeLattice(createDataflow("java.lang.Object"),
+                createBottom());
+        assertNotSame(first, other);
+        assertTrue(AnnotationUtils.areSame(createDataflow("java.lang.Object"), other.top));
+    }
+
+    @Test
+    public void testLatticesAreNotSharedAcrossRuns() {
+        TwoQualifiersLattice first = new LatticeBuilder().buildTwoTypeLattice(createDataflow("java.lang.String"),
+                createBottom());
+        InferenceMain.resetInstance();
+        TwoQualifiersLattice second = new LatticeBuilder().buildTwoTypeLattice(createDataflow("java.lang.String"),
+                createBottom());
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testSharedLatticeIsUnchangedByLaterBuilds() {
+        LatticeBuilder builder = new LatticeBuilder();
+        AnnotationMirror top = createDataflow("int");
+        AnnotationMirror bottom = createBottom();
+        TwoQualifiersLattice lattice = builder.buildTwoTypeLattice(top, bottom);
+        builder.buildTwoTypeLattice(createDataflow("long"), bottom);
+
+        assertEquals(2, lattice.numTypes);
+        assertEquals(2, lattice.allTypes.size());
+        assertTrue(AnnotationUtils.areSame(top, lattice.top));
+        assertTrue(AnnotationUtils.areSame(bottom, lattice.bottom));
+        assertEquals(2, lattice.subType.get(top).size());
+        assertEquals(1, lattice.subType.get(bottom).size());
+        assertEquals(1, lattice.superType.get(top).size());
+        assertEquals(2, lattice.superType.get(bottom).size());
+        assertTrue(lattice.incomparableType.isEmpty());
+        assertTrue(lattice.isSubtype(bottom, top));
+        assertFalse(lattice.isSubtype(top, bottom));
+    }
+}
@@ -0,0 +1,113 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.solver.backend.maxsat.AtMostOneEncoding;
+import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.MaxSatSolver;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.solver.util.Statistics;
+import junit.framework.TestCase;
+
+public class MaxSatEncodingTest extends TestCase {
+
+    private TestConstraints factory;
+    private List<SourceVariableSlot> vars;
+    private List<Constraint> constraints;
+
+    @Override
+    protected void setUp() {
+        factory = new TestConstraints();
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        vars = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            vars.add(factory.variable());
+        }
+        // The optimal solution is unique: v0 = v4 = v5 = bottom, v1 = v2 = v3 = top.
+        constraints = TestConstraints.list(
+                factory.equality(vars.get(0), bottom),
+                factory.subtype(vars.get(0), vars.get(1)),
+                factory.equality(vars.get(1), vars.get(2)),
+                factory.inequality(vars.get(3), bottom),
+                factory.comparable(vars.get(2), vars.get(3)),
+                factory.inequality(vars.get(4), vars.get(3)),
+                factory.subtype(vars.get(5), vars.get(4)),
+                factory.preference(vars.get(1), factory.top, 1),
+                factory.preference(vars.get(5), factory.top, 1));
+        Statistics.clearStatistics();
+    }
+
+    @Test
+    public void testEncodingsGiveSameSolution() {
+        Map<Integer, AnnotationMirror> expected = solve(AtMostOneEncoding.PAIRWISE);
+        assertTrue(factory.satisfies(expected, constraints));
+        assertTrue(AnnotationUtils.areSame(factory.top, expected.get(vars.get(1).getId())));
+        for (AtMostOneEncoding encoding : AtMostOneEncoding.values()) {
+            assertEquals(encoding.name(), expected, solve(encoding));
+        }
+    }
+
+    @Test
+    public void testRecordsPairwiseBaseline() {
+        solve(AtMostOneEncoding.SEQUENTIAL);
+
+        Map<String, Long> statistics = Statistics.getStatistics();
+        // Two types: the pairwise encoding needs one at-least-one and one binary clause per slot,
+        // the sequential counter one at-least-one and two binary clauses.
+        assertEquals(Long.valueOf(2 * vars.size()), statistics.get("well_formedness_pairwise_clause_size"));
+        assertEquals(Long.valueOf(3 * vars.size()), statistics.get("well_formedness_clause_size"));
+        assertEquals(Long.valueOf(vars.size()), statistics.get("well_formedness_auxiliary_variable_size"));
+        assertNotNull(statistics.get("sat_solving_time_sequential(ms)"));
+    }
+
+    @Test
+    public void testEncodingAgainDoesNotCountTwice() {
+        solve(AtMostOneEncoding.SEQUENTIAL);
+        Map<String, Long> expected = wellFormednessStatistics();
+        Statistics.clearStatistics();
+
+        MaxSatSolver solver = new MaxSatSolver(new SolverEnvironment(
+                Collections.singletonMap("atMostOneEncoding", "sequential"), null), factory.getSlots(),
+                constraints, new MaxSatFormatTranslator(factory.lattice()), factory.lattice()) {
+            @Override
+            public Map<Integer, AnnotationMirror> solve() {
+                Map<Integer, AnnotationMirror> solution = super.solve();
+                // Encodes the constraints again, as after an external solver found no solution.
+                initUnsatisfiableConstraintExplainer();
+                return solution;
+            }
+        };
+        solver.solve();
+
+        assertEquals(expected, wellFormednessStatistics());
+    }
+
+    private static Map<String, Long> wellFormednessStatistics() {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, Long> entry : Statistics.getStatistics().entrySet()) {
+            if (entry.getKey().startsWith("well_formedness")) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        assertEquals(3, result.size());
+        return result;
+    }
+
+    private Map<Integer, AnnotationMirror> solve(AtMostOneEncoding encoding) {
+        return factory.solveWithMaxSat(constraints,
+                Collections.singletonMap("atMostOneEncoding", encoding.name().toLowerCase()));
+    }
+}
@@ -0,0 +1,102 @@
+package checkers.inference;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.Serializer;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SlotStore;
+import checkers.inference.model.VariableSlot;
+import junit.framework.TestCase;
+
+public class SlotStoreTest extends TestCase {
+
+    @Test
+    public void testDenseLookupAndViews() {
+        SlotStore store = new SlotStore(2);
+        for (int id = 1; id <= 10; id++) {
+            store.add(id % 2 == 0 ? new DummyVariableSlot(id) : new DummySlot(id));
+        }
+
+        assertEquals(10, store.size());
+        assertNull(store.get(0));
+        assertNull(store.get(11));
+        assertEquals(7, store.get(7).getId());
+
+        List<Slot> slots = store.getSlots();
+        List<VariableSlot> variables = store.getVariableSlots();
+        assertEquals(10, slots.size());
+        assertEquals(5, variables.size());
+        assertEquals(4, variables.get(1).getId());
+        assertEquals(0, store.getConstantSlots().size());
+
+        int[] ids = store.variableIds().toArray();
+        assertEquals(5, ids.length);
+        assertEquals(2, ids[0]);
+        assertEquals(10, ids[4]);
+        assertEquals(6, store.nextVariableId(5));
+        assertEquals(-1, store.nextVariableId(11));
+
+        // existing views are not affected by later additions
+        store.add(new DummyVariableSlot(12));
+        assertEquals(5, variables.size());
+        assertEquals(6, store.getVariableSlots().size());
+        assertTrue(store.isVariable(12));
+        assertFalse(store.contains(11));
+    }
+
+    @Test
+    public void testViewsAreReadOnly() {
+        SlotStore store = new SlotStore();
+        store.add(new DummySlot(1));
+        try {
+            store.getSlots().add(new DummySlot(2));
+            fail("Slot views should not be modifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    private static class DummySlot extends Slot {
+        public DummySlot(int id) {
+            super(id);
+        }
+
+        @Override
+        public <S, T> S serialize(Serializer<S, T> serializer) {
+            return null;
+        }
+
+        @Override
+        public Kind getKind() {
+            return null;
+        }
+
+        @Override
+        public boolean isInsertable() {
+            return false;
+        }
+    }
+
+    private static class DummyVariableSlot extends VariableSlot {
+        public DummyVariableSlot(int id) {
+            super(id, AnnotationLocation.MISSING_LOCATION);
+        }
+
+        @Override
+        public <S, T> S serialize(Serializer<S, T> serializer) {
+            return null;
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.VARIABLE;
+        }
+
+        @Override
+        public boolean isInsertable() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.Test;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.maxsat.SlotVariableMapping;
+import checkers.inference.solver.frontend.Lattice;
+import junit.framework.TestCase;
+
+public class SlotVariableMappingTest extends TestCase {
+
+    @Test
+    public void testSparseSlotIdsMapToDenseVariables() {
+        Lattice lattice = new TestConstraints().lattice();
+        SlotVariableMapping mapping = new SlotVariableMapping(lattice);
+        int[] slotIds = {1000000, 7, 123456, 8};
+
+        Set<Integer> variables = new HashSet<>();
+        for (int i = 0; i < slotIds.length; i++) {
+            for (int type = 0; type < lattice.numTypes; type++) {
+                int var = mapping.getVariable(slotIds[i], type);
+                // The same layout as the global mapping, with the dense index in place of the id.
+                assertEquals(MathUtils.mapIdToMatrixEntry(i + 1, type, lattice), var);
+                assertEquals(slotIds[i], mapping.getSlotId(var));
+                assertEquals(slotIds[i], mapping.getSlotId(-var));
+                assertEquals(type, mapping.getIntRep(var));
+                variables.add(var);
+            }
+        }
+        assertEquals(slotIds.length * lattice.numTypes, mapping.getNumberOfVariables());
+        assertEquals(mapping.getNumberOfVariables(), variables.size());
+        for (int var : variables) {
+            assertTrue(var >= 1 && var <= mapping.getNumberOfVariables());
+        }
+        // Indices never change once assigned.
+        assertEquals(2, mapping.getIndex(7));
+    }
+
+    @Test
+    public void testSolvingComponentWithLargeSlotIds() {
+        TestConstraints factory = new TestConstraints();
+        ConstantSlot top = factory.constant(factory.top);
+        // Slots that are not part of the solved component.
+        for (int i = 0; i < 1000; i++) {
+            factory.variable();
+        }
+        List<SourceVariableSlot> vars = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            vars.add(factory.variable());
+        }
+        List<Constraint> constraints = TestConstraints.list(
+                factory.inequality(vars.get(0), top),
+                factory.equality(vars.get(0), vars.get(1)),
+                factory.inequality(vars.get(2), vars.get(1)));
+
+        Map<Integer, AnnotationMirror> solution = factory.solveWithMaxSat(constraints);
+        assertEquals(3, solution.size());
+        assertTrue(AnnotationUtils.areSame(factory.bottom, solution.get(vars.get(0).getId())));
+        assertTrue(AnnotationUtils.areSame(factory.bottom, solution.get(vars.get(1).getId())));
+        assertTrue(AnnotationUtils.areSame(factory.top, solution.get(vars.get(2).getId())));
+    }
+}
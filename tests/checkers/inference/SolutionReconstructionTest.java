@@ -0,0 +1,89 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Test;
+
+import checkers.inference.ConstraintNormalizer.EqualityMerging;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.TestConstraints;
+import junit.framework.TestCase;
+
+public class SolutionReconstructionTest extends TestCase {
+
+    private TestConstraints factory;
+    private ConstantSlot bottom;
+    private List<SourceVariableSlot> vars;
+
+    @Override
+    protected void setUp() {
+        factory = new TestConstraints();
+        bottom = factory.constant(factory.bottom);
+        vars = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            vars.add(factory.variable());
+        }
+    }
+
+    @Test
+    public void testExpandFollowsRepeatedMerges() {
+        SolutionReconstruction reconstruction = new SolutionReconstruction();
+        // v0 is merged into v1, which is later merged into v2, and so on.
+        for (int i = 0; i + 1 < vars.size(); i++) {
+            reconstruction.recordMerge(vars.get(i), vars.get(i + 1));
+        }
+        Map<Integer, AnnotationMirror> solution = new HashMap<>();
+        solution.put(vars.get(vars.size() - 1).getId(), factory.top);
+
+        InferenceResult result = reconstruction.expand(new DefaultInferenceResult(solution));
+        for (SourceVariableSlot var : vars) {
+            assertSame(factory.top, result.getSolutionForVariable(var.getId()));
+        }
+    }
+
+    @Test
+    public void testExpandExplainsUnsatisfiableConstraints() {
+        List<Constraint> constraints = TestConstraints.list(
+                factory.equality(vars.get(0), vars.get(1)),
+                factory.equality(vars.get(1), bottom),
+                factory.inequality(vars.get(0), bottom));
+        Set<Constraint> simplified = new LinkedHashSet<>(constraints);
+        SolutionReconstruction reconstruction = new SolutionReconstruction();
+        new EqualityMerging().simplify(simplified, reconstruction);
+
+        // All constraints of the simplified set are unsatisfiable together, and so are the
+        // original constraints they are expanded to.
+        InferenceResult result = reconstruction.expand(new DefaultInferenceResult(simplified));
+        assertFalse(result.hasSolution());
+        assertEquals(new HashSet<>(constraints), new HashSet<>(result.getUnsatisfiableConstraints()));
+    }
+
+    @Test
+    public void testRewriteEqualToOriginalExplainsItself() {
+        Constraint rewrittenOrigin = factory.subtype(vars.get(1), vars.get(2));
+        // Equal to the rewrite of the constraint above, once v1 is substituted by v0.
+        Constraint original = factory.subtype(vars.get(0), vars.get(2));
+        Constraint merging = factory.equality(vars.get(0), vars.get(1));
+        Set<Constraint> simplified = new LinkedHashSet<>(TestConstraints.list(
+                merging, rewrittenOrigin, original));
+        SolutionReconstruction reconstruction = new SolutionReconstruction();
+        new EqualityMerging().simplify(simplified, reconstruction);
+        assertEquals(Collections.singleton(original), simplified);
+
+        InferenceResult result = reconstruction.expand(
+                new DefaultInferenceResult(Collections.singleton(original)));
+        assertEquals(new HashSet<>(TestConstraints.list(original, merging)),
+                new HashSet<>(result.getUnsatisfiableConstraints()));
+    }
+}
@@ -0,0 +1,380 @@
+package checkers.inference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.junit.Test;
+
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+
+import checkers.inference.model.ArithmeticConstraint;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.SourceVariableSlot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.TestConstraints;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.ArithmeticConstraintEncoder;
+import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.backend.encoder.binary.ComparableConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.EqualityConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.InequalityConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.SubtypeConstraintEncoder;
+import checkers.inference.solver.backend.encoder.combine.CombineConstraintEncoder;
+import checkers.inference.solver.backend.encoder.existential.ExistentialConstraintEncoder;
+import checkers.inference.solver.backend.encoder.implication.ImplicationConstraintEncoder;
+import checkers.inference.solver.backend.encoder.preference.PreferenceConstraintEncoder;
+import checkers.inference.solver.backend.z3smt.Z3SmtFormatTranslator;
+import checkers.inference.solver.backend.z3smt.Z3SmtSolver;
+import checkers.inference.solver.backend.z3smt.encoder.Z3SmtConstraintEncoderFactory;
+import checkers.inference.solver.backend.z3smt.encoder.Z3SmtSoftConstraintEncoder;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+import junit.framework.TestCase;
+
+/**
+ * Compares the solutions of the in-process mode of {@link Z3SmtSolver} with those of the MaxSAT
+ * back end, and checks its unsat cores with the MaxSAT back end. The tests do nothing if the Z3
+ * library cannot be loaded.
+ */
+public class Z3SmtSolverTest extends TestCase {
+
+    private TestConstraints factory;
+    private List<SourceVariableSlot> vars;
+
+    @Override
+    protected void setUp() {
+        factory = new TestConstraints();
+        vars = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            vars.add(factory.variable());
+        }
+    }
+
+    @Test
+    public void testOptimizingInProcessMatchesMaxSat() {
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        // The optimal solution is unique: v0 = v4 = v5 = bottom, v1 = v2 = v3 = top.
+        List<Constraint> constraints = TestConstraints.list(
+                factory.equality(vars.get(0), bottom),
+                factory.subtype(vars.get(0), vars.get(1)),
+                factory.equality(vars.get(1), vars.get(2)),
+                factory.inequality(vars.get(3), bottom),
+                factory.inequality(vars.get(4), vars.get(3)),
+                factory.subtype(vars.get(5), vars.get(4)),
+                factory.preference(vars.get(1), factory.top, 1),
+                factory.preference(vars.get(5), factory.top, 1));
+
+        Map<String, String> args = new HashMap<>();
+        args.put("inProcess", "true");
+        args.put("optimizingMode", "true");
+        assertSameSolution(constraints, args);
+    }
+
+    @Test
+    public void testTrackedConstraintsInProcessMatchesMaxSat() {
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        ConstantSlot top = factory.constant(factory.top);
+        // Without preferences, the constraints fix every variable.
+        List<Constraint> constraints = TestConstraints.list(
+                factory.equality(vars.get(0), bottom),
+                factory.inequality(vars.get(1), vars.get(0)),
+                factory.equality(vars.get(2), vars.get(1)),
+                factory.subtype(vars.get(3), vars.get(0)),
+                factory.inequality(vars.get(4), bottom),
+                factory.subtype(top, vars.get(5)));
+
+        // In the non-optimizing in-process mode, every constraint is tracked by an assumption
+        // literal, which is a boolean constant of the model but not a slot.
+        Map<String, String> args = new HashMap<>();
+        args.put("inProcess", "true");
+        assertSameSolution(constraints, args);
+    }
+
+    @Test
+    public void testMinimizedUnsatCoreInProcess() {
+        assertMinimalUnsatCore(false);
+    }
+
+    @Test
+    public void testMinimizedUnsatCoreAfterOptimizing() {
+        // The session of the unsat core is created from the constraints encoded for the Optimize.
+        assertMinimalUnsatCore(true);
+    }
+
+    private void assertMinimalUnsatCore(boolean optimizingMode) {
+        ConstantSlot bottom = factory.constant(factory.bottom);
+        ConstantSlot top = factory.constant(factory.top);
+        // v0 is bottom and equal to v1, which is top directly and through v2. The constraints
+        // on v3, v4 and v5 are satisfiable.
+        List<Constraint> constraints = TestConstraints.list(
+                factory.equality(vars.get(0), bottom),
+                factory.subtype(vars.get(3), vars.get(4)),
+                factory.equality(vars.get(1), top),
+                factory.equality(vars.get(0), vars.get(1)),
+                factory.inequality(vars.get(4), vars.get(5)),
+                factory.equality(vars.get(2), top),
+                factory.equality(vars.get(1), vars.get(2)));
+        assertNull(factory.solveWithMaxSat(constraints));
+
+        Map<String, String> args = new HashMap<>();
+        args.put("inProcess", "true");
+        args.put("optimizingMode", String.valueOf(optimizingMode));
+        args.put("minimizeUnsatCore", "true");
+        Z3SmtSolver<BoolExpr, Boolean> solver = createSolver(constraints, args);
+        if (solver == null) {
+            return;
+        }
+        assertNull(solver.solve());
+
+        Collection<Constraint> core = solver.explainUnsatisfiable();
+        assertFalse(core.isEmpty());
+        assertTrue(constraints.containsAll(core));
+        assertNull(factory.solveWithMaxSat(new ArrayList<>(core)));
+        // Every constraint of the core is necessary.
+        for (Constraint constraint : core) {
+            List<Constraint> rest = new ArrayList<>(core);
+            rest.remove(constraint);
+            assertNotNull(constraint.toString(), factory.solveWithMaxSat(rest));
+        }
+    }
+
+    /**
+     * @return the in-process solver, or null if the Z3 library is not available
+     */
+    private Z3SmtSolver<BoolExpr, Boolean> createSolver(List<Constraint> constraints, Map<String, String> z3Args) {
+        try {
+            return new Z3SmtSolver<>(new SolverEnvironment(z3Args, null), factory.getSlots(), constraints,
+                    new TwoQualifiersZ3Translator(factory), factory.lattice());
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            System.err.println("Skipping Z3 test, the Z3 library is not available: " + e);
+            return null;
+        }
+    }
+
+    private void assertSameSolution(List<Constraint> constraints, Map<String, String> z3Args) {
+        Map<Integer, AnnotationMirror> expected = factory.solveWithMaxSat(constraints);
+        assertTrue(factory.satisfies(expected, constraints));
+
+        Z3SmtSolver<BoolExpr, Boolean> solver = createSolver(constraints, z3Args);
+        if (solver == null) {
+            return;
+        }
+        Map<Integer, AnnotationMirror> actual = solver.solve();
+        assertNotNull(actual);
+
+        // Z3 also assigns variables that are not in any constraint, those are not compared.
+        Map<Integer, AnnotationMirror> actualOfConstrained = new HashMap<>();
+        for (Integer slotId : expected.keySet()) {
+            actualOfConstrained.put(slotId, actual.get(slotId));
+        }
+        assertEquals(expected, actualOfConstrained);
+    }
+
+    /**
+     * Encodes a slot of the lattice {@code bottom <: top} as a boolean that is true iff the slot
+     * is top. Variables are named "v" followed by the slot id.
+     */
+    static class TwoQualifiersZ3Translator extends Z3SmtFormatTranslator<BoolExpr, Boolean> {
+
+        private final TestConstraints factory;
+
+        TwoQualifiersZ3Translator(TestConstraints factory) {
+            super(factory.lattice());
+            this.factory = factory;
+        }
+
+        @Override
+        protected BoolExpr serializeVariableSlot(VariableSlot slot) {
+            return serializedSlots.computeIfAbsent(slot.getId(), id -> ctx.mkBoolConst("v" + id));
+        }
+
+        @Override
+        protected BoolExpr serializeConstantSlot(ConstantSlot slot) {
+            return ctx.mkBool(AnnotationUtils.areSame(slot.getValue(), factory.top));
+        }
+
+        @Override
+        protected Z3SmtSoftConstraintEncoder<BoolExpr, Boolean> createSoftConstraintEncoder() {
+            return new SoftConstraintEncoder(lattice, ctx, this);
+        }
+
+        @Override
+        public BoolExpr encodeSlotWellformednessConstraint(VariableSlot slot) {
+            return ctx.mkTrue();
+        }
+
+        @Override
+        public BoolExpr encodeSlotPreferenceConstraint(VariableSlot slot) {
+            return ctx.mkTrue();
+        }
+
+        @Override
+        public AnnotationMirror decodeSolution(Boolean solution, ProcessingEnvironment processingEnvironment) {
+            return solution ? factory.top : factory.bottom;
+        }
+
+        @Override
+        public Map<Integer, AnnotationMirror> decodeSolution(List<String> model, ProcessingEnvironment processingEnv) {
+            Map<Integer, AnnotationMirror> solution = new HashMap<>();
+            for (String line : model) {
+                String[] nameAndValue = line.split(" ");
+                if (!nameAndValue[0].startsWith("v")) {
+                    throw new AssertionError("Not a slot variable: " + line);
+                }
+                solution.put(Integer.parseInt(nameAndValue[0].substring(1)),
+                        decodeSolution(Boolean.parseBoolean(nameAndValue[1]), processingEnv));
+            }
+            return solution;
+        }
+
+        @Override
+        protected ConstraintEncoderFactory<BoolExpr> createConstraintEncoderFactory() {
+            return new EncoderFactory(lattice, ctx, this);
+        }
+    }
+
+    /** Encodes a binary constraint from the encodings of its two slots. */
+    private static class BinaryEncoder implements SubtypeConstraintEncoder<BoolExpr>,
+            EqualityConstraintEncoder<BoolExpr>, InequalityConstraintEncoder<BoolExpr>,
+            ComparableConstraintEncoder<BoolExpr> {
+
+        private final Z3SmtFormatTranslator<BoolExpr, Boolean> translator;
+        private final BinaryOperator<BoolExpr> encoding;
+
+        private BinaryEncoder(Z3SmtFormatTranslator<BoolExpr, Boolean> translator, BinaryOperator<BoolExpr> encoding) {
+            this.translator = translator;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public BoolExpr encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
+            return encoding.apply(fst.serialize(translator), snd.serialize(translator));
+        }
+
+        @Override
+        public BoolExpr encodeVariable_Constant(VariableSlot fst, ConstantSlot snd) {
+            return encoding.apply(fst.serialize(translator), snd.serialize(translator));
+        }
+
+        @Override
+        public BoolExpr encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
+            return encoding.apply(fst.serialize(translator), snd.serialize(translator));
+        }
+    }
+
+    private static class EncoderFactory extends Z3SmtConstraintEncoderFactory<BoolExpr, Boolean> {
+
+        private EncoderFactory(Lattice lattice, Context ctx, Z3SmtFormatTranslator<BoolExpr, Boolean> translator) {
+            super(lattice, ctx, translator);
+        }
+
+        @Override
+        public SubtypeConstraintEncoder<BoolExpr> createSubtypeConstraintEncoder() {
+            // A top subtype implies a top supertype.
+            return new BinaryEncoder(formatTranslator, ctx::mkImplies);
+        }
+
+        @Override
+        public EqualityConstraintEncoder<BoolExpr> createEqualityConstraintEncoder() {
+            return new BinaryEncoder(formatTranslator, ctx::mkEq);
+        }
+
+        @Override
+        public InequalityConstraintEncoder<BoolExpr> createInequalityConstraintEncoder() {
+            return new BinaryEncoder(formatTranslator, (fst, snd) -> ctx.mkNot(ctx.mkEq(fst, snd)));
+        }
+
+        @Override
+        public ComparableConstraintEncoder<BoolExpr> createComparableConstraintEncoder() {
+            return new BinaryEncoder(formatTranslator, (fst, snd) -> ctx.mkTrue());
+        }
+
+        @Override
+        public PreferenceConstraintEncoder<BoolExpr> createPreferenceConstraintEncoder() {
+            // Preferences are soft constraints, they are not part of the hard constraints.
+            return constraint -> ctx.mkTrue();
+        }
+
+        @Override
+        public CombineConstraintEncoder<BoolExpr> createCombineConstraintEncoder() {
+            return null;
+        }
+
+        @Override
+        public ExistentialConstraintEncoder<BoolExpr> createExistentialConstraintEncoder() {
+            return null;
+        }
+
+        @Override
+        public ImplicationConstraintEncoder<BoolExpr> createImplicationConstraintEncoder() {
+            return null;
+        }
+
+        @Override
+        public ArithmeticConstraintEncoder<BoolExpr> createArithmeticConstraintEncoder() {
+            return null;
+        }
+    }
+
+    private static class SoftConstraintEncoder extends Z3SmtSoftConstraintEncoder<BoolExpr, Boolean> {
+
+        private SoftConstraintEncoder(Lattice lattice, Context ctx, Z3SmtFormatTranslator<BoolExpr, Boolean> translator) {
+            super(lattice, ctx, translator);
+        }
+
+        @Override
+        protected void encodePreferenceConstraint(PreferenceConstraint constraint) {
+            addSoftConstraint(ctx.mkEq(constraint.getVariable().serialize(z3SmtFormatTranslator),
+                    constraint.getGoal().serialize(z3SmtFormatTranslator)), constraint.getWeight());
+        }
+
+        @Override
+        protected void encodeSubtypeConstraint(SubtypeConstraint constraint) {
+        }
+
+        @Override
+        protected void encodeComparableConstraint(ComparableConstraint constraint) {
+        }
+
+        @Override
+        protected void encodeArithmeticConstraint(ArithmeticConstraint constraint) {
+        }
+
+        @Override
+        protected void encodeEqualityConstraint(EqualityConstraint constraint) {
+        }
+
+        @Override
+        protected void encodeInequalityConstraint(InequalityConstraint constraint) {
+        }
+
+        @Override
+        protected void encodeImplicationConstraint(ImplicationConstraint constraint) {
+        }
+
+        @Override
+        protected void encodeExistentialConstraint(ExistentialConstraint constraint) {
+        }
+
+        @Override
+        protected void encodeCombineConstraint(CombineConstraint constraint) {
+        }
+    }
+}
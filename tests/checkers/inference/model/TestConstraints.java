@@ -0,0 +1,253 @@
+package checkers.inference.model;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.util.Elements;
+
+import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.MaxSatSolver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.LatticeBuilder;
+import checkers.inference.solver.frontend.TwoQualifiersLattice;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.test.InferenceTestUtilities;
+import ostrusted.qual.OsTrusted;
+import ostrusted.qual.OsUntrusted;
+
+/**
+ * Creates slots and constraints for unit tests of the constraint processing and the solvers,
+ * without running a type factory. The qualifiers are {@code @OsTrusted <: @OsUntrusted}.
+ *
+ * Like DefaultSlotManager, there is one ConstantSlot per qualifier, and slot ids start at 1.
+ * Creating a TestConstraints installs an InferenceMain instance whose slot manager knows the
+ * created slots, since the solvers look slots up through InferenceMain.
+ */
+public class TestConstraints {
+
+    public final AnnotationMirror top;
+    public final AnnotationMirror bottom;
+
+    public final QualifierHierarchy qualifierHierarchy;
+
+    private final Map<AnnotationMirror, ConstantSlot> constants = AnnotationUtils.createAnnotationMap();
+
+    private final Map<Integer, Slot> slots = new LinkedHashMap<>();
+
+    private int nextId = 1;
+
+    public TestConstraints() {
+        Elements elements = InferenceTestUtilities.getElements();
+        top = AnnotationBuilder.fromClass(elements, OsUntrusted.class);
+        bottom = AnnotationBuilder.fromClass(elements, OsTrusted.class);
+
+        qualifierHierarchy = mock(QualifierHierarchy.class);
+        Set<AnnotationMirror> tops = AnnotationUtils.createAnnotationSet();
+        tops.add(top);
+        Set<AnnotationMirror> bottoms = AnnotationUtils.createAnnotationSet();
+        bottoms.add(bottom);
+        when(qualifierHierarchy.getTopAnnotations()).thenAnswer(invocation -> tops);
+        when(qualifierHierarchy.getBottomAnnotations()).thenAnswer(invocation -> bottoms);
+        when(qualifierHierarchy.isSubtype(any(AnnotationMirror.class), any(AnnotationMirror.class)))
+                .thenAnswer(invocation -> isSubtype((AnnotationMirror) invocation.getArguments()[0],
+                        (AnnotationMirror) invocation.getArguments()[1]));
+
+        SlotManager slotManager = mock(SlotManager.class);
+        when(slotManager.getSlot(anyInt())).thenAnswer(invocation -> slots.get(invocation.getArguments()[0]));
+        when(slotManager.getSlots()).thenAnswer(invocation -> getSlots());
+        when(slotManager.getNumberOfSlots()).thenAnswer(invocation -> slots.size());
+
+        // Without a type factory there is no current location, so the constraints created during
+        // normalization get none.
+        ConstraintManager constraintManager = mock(ConstraintManager.class);
+        when(constraintManager.intern(any(Constraint.class)))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+        when(constraintManager.createEqualityConstraint(any(Slot.class), any(Slot.class)))
+                .thenAnswer(invocation -> equality((Slot) invocation.getArguments()[0],
+                        (Slot) invocation.getArguments()[1]));
+        when(constraintManager.createExistentialConstraint(any(Slot.class), any(), any()))
+                .thenAnswer(invocation -> existential((Slot) invocation.getArguments()[0],
+                        castToConstraints(invocation.getArguments()[1]),
+                        castToConstraints(invocation.getArguments()[2])));
+        new TestInferenceMain(slotManager, constraintManager);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Constraint> castToConstraints(Object constraints) {
+        return (List<Constraint>) constraints;
+    }
+
+    private static class TestInferenceMain extends InferenceMain {
+        private final SlotManager slotManager;
+        private final ConstraintManager constraintManager;
+
+        TestInferenceMain(SlotManager slotManager, ConstraintManager constraintManager) {
+            this.slotManager = slotManager;
+            this.constraintManager = constraintManager;
+        }
+
+        @Override
+        public SlotManager getSlotManager() {
+            return slotManager;
+        }
+
+        @Override
+        public ConstraintManager getConstraintManager() {
+            return constraintManager;
+        }
+    }
+
+    public boolean isSubtype(AnnotationMirror subtype, AnnotationMirror supertype) {
+        return AnnotationUtils.areSame(subtype, bottom) || AnnotationUtils.areSame(supertype, top);
+    }
+
+    public TwoQualifiersLattice lattice() {
+        return new LatticeBuilder().buildTwoTypeLattice(top, bottom);
+    }
+
+    public SourceVariableSlot variable() {
+        SourceVariableSlot variable = new SourceVariableSlot(nextId++, new ClassDeclLocation("Test"), null, true);
+        slots.put(variable.getId(), variable);
+        return variable;
+    }
+
+    public ExistentialVariableSlot existentialVariable(Slot potentialSlot, Slot alternativeSlot) {
+        ExistentialVariableSlot variable = new ExistentialVariableSlot(nextId++, potentialSlot, alternativeSlot);
+        slots.put(variable.getId(), variable);
+        return variable;
+    }
+
+    public ConstantSlot constant(AnnotationMirror value) {
+        ConstantSlot constant = constants.get(value);
+        if (constant == null) {
+            constant = new ConstantSlot(nextId++, value);
+            constants.put(value, constant);
+            slots.put(constant.getId(), constant);
+        }
+        return constant;
+    }
+
+    /**
+     * @return all slots created so far, in the order of their ids
+     */
+    public List<Slot> getSlots() {
+        return new ArrayList<>(slots.values());
+    }
+
+    public MaxSatSolver maxSatSolver(Collection<Constraint> constraints, Map<String, String> solverArgs) {
+        Lattice lattice = lattice();
+        return new MaxSatSolver(new SolverEnvironment(solverArgs, null), getSlots(), constraints,
+                new MaxSatFormatTranslator(lattice), lattice);
+    }
+
+    /**
+     * Solves the constraints with the MaxSat back end.
+     *
+     * @return the solution, or null if the constraints are unsatisfiable
+     */
+    public Map<Integer, AnnotationMirror> solveWithMaxSat(Collection<Constraint> constraints,
+            Map<String, String> solverArgs) {
+        return maxSatSolver(constraints, solverArgs).solve();
+    }
+
+    public Map<Integer, AnnotationMirror> solveWithMaxSat(Collection<Constraint> constraints) {
+        return solveWithMaxSat(constraints, new HashMap<>());
+    }
+
+    /**
+     * @return true if the solution satisfies all subtype, equality, inequality and comparable
+     * constraints. Other constraints are ignored.
+     */
+    public boolean satisfies(Map<Integer, AnnotationMirror> solution, Collection<Constraint> constraints) {
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof SubtypeConstraint) {
+                SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+                if (!isSubtype(valueOf(solution, subtype.getSubtype()), valueOf(solution, subtype.getSupertype()))) {
+                    return false;
+                }
+            } else if (constraint instanceof EqualityConstraint) {
+                EqualityConstraint equality = (EqualityConstraint) constraint;
+                if (!AnnotationUtils.areSame(valueOf(solution, equality.getFirst()), valueOf(solution, equality.getSecond()))) {
+                    return false;
+                }
+            } else if (constraint instanceof InequalityConstraint) {
+                InequalityConstraint inequality = (InequalityConstraint) constraint;
+                if (AnnotationUtils.areSame(valueOf(solution, inequality.getFirst()), valueOf(solution, inequality.getSecond()))) {
+                    return false;
+                }
+            } else if (constraint instanceof AlwaysFalseConstraint) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AnnotationMirror valueOf(Map<Integer, AnnotationMirror> solution, Slot slot) {
+        if (slot instanceof ConstantSlot) {
+            return ((ConstantSlot) slot).getValue();
+        }
+        AnnotationMirror value = solution.get(slot.getId());
+        if (value == null) {
+            throw new AssertionError("No solution for " + slot);
+        }
+        return value;
+    }
+
+    public Constraint subtype(Slot subtype, Slot supertype) {
+        return SubtypeConstraint.create(subtype, supertype, AnnotationLocation.MISSING_LOCATION,
+                qualifierHierarchy);
+    }
+
+    public Constraint equality(Slot first, Slot second) {
+        return EqualityConstraint.create(first, second, AnnotationLocation.MISSING_LOCATION);
+    }
+
+    public Constraint inequality(Slot first, Slot second) {
+        return InequalityConstraint.create(first, second, AnnotationLocation.MISSING_LOCATION);
+    }
+
+    public Constraint comparable(Slot first, Slot second) {
+        return ComparableConstraint.create(first, second, AnnotationLocation.MISSING_LOCATION,
+                qualifierHierarchy);
+    }
+
+    public Constraint preference(VariableSlot variable, AnnotationMirror goal, int weight) {
+        return PreferenceConstraint.create(variable, constant(goal), weight,
+                AnnotationLocation.MISSING_LOCATION);
+    }
+
+    public Constraint implication(Constraint assumption, Constraint conclusion) {
+        return ImplicationConstraint.create(Collections.singletonList(assumption), conclusion,
+                AnnotationLocation.MISSING_LOCATION);
+    }
+
+    public ExistentialConstraint existential(Slot potentialVariable, List<Constraint> potentialConstraints,
+            List<Constraint> alternateConstraints) {
+        return ExistentialConstraint.create(potentialVariable, potentialConstraints, alternateConstraints,
+                AnnotationLocation.MISSING_LOCATION);
+    }
+
+    public static List<Constraint> list(Constraint... constraints) {
+        return Arrays.asList(constraints);
+    }
+}
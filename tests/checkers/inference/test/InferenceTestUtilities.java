@@ -1,5 +1,8 @@
 package checkers.inference.test;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 import org.checkerframework.framework.test.TestUtilities;
 import org.checkerframework.framework.test.TypecheckResult;
 
@@ -10,17 +13,50 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.util.Elements;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
 import org.junit.Assert;
 
+import com.sun.source.util.JavacTask;
+
 /**
  * Created by jburke on 7/7/15.
  */
 public class InferenceTestUtilities {
 
+    /**
+     * @return Elements of a javac instance using the test classpath, e.g. to create AnnotationMirrors
+     * in unit tests that do not run a checker
+     */
+    public static Elements getElements() {
+        return createJavacTask().getElements();
+    }
+
+    /**
+     * @return a ProcessingEnvironment that only provides the Elements and Types of a javac instance
+     * using the test classpath, e.g. for solvers that build AnnotationMirrors in unit tests
+     */
+    public static ProcessingEnvironment getProcessingEnvironment() {
+        JavacTask task = createJavacTask();
+        ProcessingEnvironment processingEnvironment = mock(ProcessingEnvironment.class);
+        when(processingEnvironment.getElementUtils()).thenReturn(task.getElements());
+        when(processingEnvironment.getTypeUtils()).thenReturn(task.getTypes());
+        return processingEnvironment;
+    }
+
+    private static JavacTask createJavacTask() {
+        return (JavacTask) ToolProvider.getSystemJavaCompiler().getTask(null, null, null,
+                Collections.singletonList("-proc:none"), null, Collections.<JavaFileObject>emptyList());
+    }
+
     public static List<File> replaceParentDirs(File newParent, List<File> testSourceFiles) {
         List<File> outFiles = new ArrayList<>(testSourceFiles.size());
         for (File file : testSourceFiles) {
@@ -0,0 +1,213 @@
+package checkers.inference.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.annotation.Annotation;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree.Kind;
+import com.sun.source.util.JavacTask;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import junit.framework.TestCase;
+import ostrusted.qual.OsTrusted;
+import ostrusted.qual.OsUntrusted;
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTRecord;
+
+public class JaifWriterTest extends TestCase {
+
+    private static final String TRUSTED = "@ostrusted.qual.OsTrusted";
+    private static final String UNTRUSTED = "@ostrusted.qual.OsUntrusted";
+
+    /** The directory of the expected Jaifs. */
+    private static final String JAIF_DIR = "testdata/jaif";
+
+    private static final Set<Class<? extends Annotation>> SUPPORTED_ANNOTATIONS =
+            new LinkedHashSet<>(Arrays.asList(OsUntrusted.class, OsTrusted.class));
+
+    private CompilationUnitTree ast;
+
+    @Override
+    protected void setUp() throws IOException {
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///pkg/A.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return "package pkg;\nclass A {}\n";
+            }
+        };
+        JavacTask task = (JavacTask) ToolProvider.getSystemJavaCompiler().getTask(null, null, null,
+                Collections.singletonList("-proc:none"), null, Collections.singletonList(source));
+        ast = task.parse().iterator().next();
+    }
+
+    private ASTRecord record(String className, String methodName, String varName) {
+        return new ASTRecord(ast, className, methodName, varName, ASTPath.empty());
+    }
+
+    /**
+     * Creates the locations of a class: a declaration annotation, and annotations on fields,
+     * methods, parameters, receivers, initializers and local variables.
+     */
+    private void addLocations(String className, List<AnnotationLocation> locations) {
+        locations.add(new ClassDeclLocation(className));
+        for (int i = 2; i >= 0; i--) {
+            ASTRecord field = record(className, null, "f" + i).extend(Kind.VARIABLE, ASTPath.TYPE, -1);
+            locations.add(new AstPathLocation(field.extend(Kind.PARAMETERIZED_TYPE, ASTPath.TYPE_ARGUMENT, 0)));
+            locations.add(new AstPathLocation(field));
+        }
+        for (int i = 0; i < 2; i++) {
+            String method = "m" + i + "()V";
+            locations.add(new AstPathLocation(record(className, method, null).extend(Kind.METHOD, "type", -1)));
+            locations.add(new AstPathLocation(record(className, method, "0").extend(Kind.VARIABLE, ASTPath.TYPE, -1)));
+            locations.add(new AstPathLocation(record(className, method, "-1").extend(Kind.METHOD, "parameter", -1)));
+            for (int statement = 0; statement < 2; statement++) {
+                // The main modifier of a local variable, and a type argument of its type.
+                ASTRecord local = record(className, method, null).extend(Kind.METHOD, "body", -1)
+                        .extend(Kind.BLOCK, ASTPath.STATEMENT, statement).extend(Kind.VARIABLE, ASTPath.TYPE, -1);
+                locations.add(new AstPathLocation(local));
+                locations.add(new AstPathLocation(
+                        local.extend(Kind.PARAMETERIZED_TYPE, ASTPath.TYPE_ARGUMENT, 0)));
+            }
+        }
+        locations.add(new AstPathLocation(record(className, null, null).extend(Kind.BLOCK, ASTPath.STATEMENT, 0)
+                .extend(Kind.EXPRESSION_STATEMENT, "expression", -1).extend(Kind.NEW_CLASS, "identifier", -1)));
+        // An empty AST path is not written.
+        locations.add(new AstPathLocation(record(className, "m0()V", null)));
+    }
+
+    /**
+     * @return annotations for the locations of three classes, alternating between the two
+     * annotations; neither the classes nor their fields are added in sorted order
+     */
+    private Map<AnnotationLocation, String> createAnnotations() {
+        List<AnnotationLocation> locations = new ArrayList<>();
+        for (String className : Arrays.asList("pkg.sub.C$Inner", "pkg.B", "pkg.A")) {
+            addLocations(className, locations);
+        }
+        Map<AnnotationLocation, String> annotations = new LinkedHashMap<>();
+        for (AnnotationLocation location : locations) {
+            annotations.put(location, annotations.size() % 2 == 0 ? TRUSTED : UNTRUSTED);
+        }
+        return annotations;
+    }
+
+    private static String write(Map<AnnotationLocation, String> annotations, boolean insertMainModOfLocalVar,
+            int chunkSize) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JaifWriter writer = new JaifWriter(out, SUPPORTED_ANNOTATIONS, insertMainModOfLocalVar, chunkSize)) {
+            for (Map.Entry<AnnotationLocation, String> entry : annotations.entrySet()) {
+                writer.add(entry.getKey(), entry.getValue());
+            }
+            writer.finish();
+        }
+        return out.toString();
+    }
+
+    private static String readJaif(String name) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(JAIF_DIR, name)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The classes are written in the order of their names, and the members of a class in the order
+     * of their kind and name.
+     */
+    @Test
+    public void testJaifMatchesGoldenFile() throws IOException {
+        Map<AnnotationLocation, String> annotations = createAnnotations();
+        String expected = readJaif("sorted-classes.jaif");
+        assertEquals(expected, new JaifBuilder(annotations, SUPPORTED_ANNOTATIONS).createJaif());
+
+        // Spilling and merging chunks does not change the Jaif.
+        for (int chunkSize : Arrays.asList(1, 3, 7)) {
+            assertEquals(expected, write(annotations, false, chunkSize));
+        }
+    }
+
+    @Test
+    public void testJaifWithLocalVariablesMatchesGoldenFile() throws IOException {
+        Map<AnnotationLocation, String> annotations = createAnnotations();
+        String expected = readJaif("sorted-classes-local-variables.jaif");
+        assertEquals(expected, new JaifBuilder(annotations, SUPPORTED_ANNOTATIONS, true).createJaif());
+        assertEquals(expected, write(annotations, true, 5));
+    }
+
+    @Test
+    public void testLastAnnotationWinsAcrossChunks() throws IOException {
+        AnnotationLocation location = new AstPathLocation(
+                record("pkg.A", null, "f").extend(Kind.VARIABLE, ASTPath.TYPE, -1));
+        AnnotationLocation other = new AstPathLocation(
+                record("pkg.A", null, "g").extend(Kind.VARIABLE, ASTPath.TYPE, -1));
+        StringWriter out = new StringWriter();
+        try (JaifWriter writer = new JaifWriter(out, SUPPORTED_ANNOTATIONS, false, 1)) {
+            writer.add(location, TRUSTED);
+            writer.add(other, TRUSTED);
+            writer.add(location, UNTRUSTED);
+            writer.finish();
+        }
+
+        // As if the annotations were put in a map.
+        Map<AnnotationLocation, String> annotations = new LinkedHashMap<>();
+        annotations.put(location, TRUSTED);
+        annotations.put(other, TRUSTED);
+        annotations.put(location, UNTRUSTED);
+        assertEquals(write(annotations, false, JaifWriter.DEFAULT_CHUNK_SIZE), out.toString());
+        assertTrue(out.toString().contains(": " + UNTRUSTED + "\n"));
+    }
+
+    @Test
+    public void testSpillsLongAstPaths() throws IOException {
+        // The AST path is longer than the 65535 bytes that writeUTF supports.
+        ASTRecord record = record("pkg.A", null, "f").extend(Kind.VARIABLE, ASTPath.TYPE, -1);
+        for (int i = 0; i < 3000; i++) {
+            record = record.extend(Kind.PARAMETERIZED_TYPE, ASTPath.TYPE_ARGUMENT, 0);
+        }
+        assertTrue(record.astPath.toString().length() > 65535);
+        Map<AnnotationLocation, String> annotations = new LinkedHashMap<>();
+        annotations.put(new AstPathLocation(record), TRUSTED);
+        annotations.put(new AstPathLocation(record("pkg.A", null, "g").extend(Kind.VARIABLE, ASTPath.TYPE, -1)),
+                "@ostrusted.qual.OsUntrusted(\u00e9)");
+
+        // The records are only spilled with a chunk size of 1.
+        String expected = new JaifBuilder(annotations, SUPPORTED_ANNOTATIONS).createJaif();
+        assertEquals(expected, write(annotations, false, 1));
+        assertTrue(expected.contains(record.astPath.toString()));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testJaifBuilderSubclassHook() {
+        Map<AnnotationLocation, String> annotations = createAnnotations();
+
+        // A subclass that does not insert any annotation on an AST path.
+        String jaif = new JaifBuilder(annotations, SUPPORTED_ANNOTATIONS) {
+            @Override
+            protected boolean isMainModOfLocalVar(ASTPath astPath) {
+                return true;
+            }
+        }.createJaif();
+        assertFalse(jaif.contains("insert-annotation"));
+        assertTrue(jaif.contains("class A:" + annotations.get(new ClassDeclLocation("pkg.A")) + "\n"));
+    }
+}